@@ -0,0 +1,77 @@
+package eu.ammw.transfer.benchmark;
+
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.domain.AccountLocks;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.HotAccounts;
+import eu.ammw.transfer.domain.LockingWriteExecutor;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Throughput of deposits by many threads to a single account whose balance is split into {@code slots}, where 1
+ * means a regular account. Commits of {@code ledger} storage are delayed by {@code commitMicros}, standing in for
+ * the time a database or a forced log holds the account lock, which is what the slots let writers share.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotAccountBenchmark {
+    private static final int THREADS = 16;
+    private static final Money AMOUNT = Money.of(1);
+
+    @Param({"1", "2", "4", "8"})
+    public int slots;
+
+    @Param({"0", "100"})
+    public long commitMicros;
+
+    private TransferService transferService;
+    private UUID hot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Storages.create("ledger");
+        long commitNanos = TimeUnit.MICROSECONDS.toNanos(commitMicros);
+        LedgerDataSource dataSource = new LedgerDataSource() {
+            @Override
+            public void commit() {
+                if (commitNanos > 0) {
+                    LockSupport.parkNanos(commitNanos);
+                }
+                super.commit();
+            }
+        };
+        hot = Storages.createAccounts(dataSource, 1).get(0);
+        HotAccounts hotAccounts = slots > 1 ? new HotAccounts(Collections.singleton(hot), slots) : HotAccounts.NONE;
+        transferService = new TransferService(dataSource, new AccountService(dataSource),
+                new LockingWriteExecutor(dataSource, new AccountLocks()), hotAccounts);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void deposit() throws Exception {
+        transferService.deposit(hot, AMOUNT);
+    }
+}
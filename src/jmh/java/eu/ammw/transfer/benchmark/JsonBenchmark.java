@@ -0,0 +1,63 @@
+package eu.ammw.transfer.benchmark;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import eu.ammw.transfer.rest.JsonTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time {@link JsonTransformer} takes to render lists of accounts and transfers as returned by the API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    @Param({"10", "1000"})
+    public int size;
+
+    private final JsonTransformer transformer = new JsonTransformer();
+    private List<Account> accounts;
+    private List<Transfer> transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accounts = new ArrayList<>(size);
+        transfers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            accounts.add(new Account(UUID.randomUUID(), "Benchmark " + i, Money.ofMinorUnits(100_000L * i + 99)));
+            transfers.add(new Transfer(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinorUnits(1000L + i))
+                    .withBalances(Money.ofMinorUnits(5000L * i), Money.ofMinorUnits(7000L * i)));
+        }
+    }
+
+    @Benchmark
+    public String renderAccounts() {
+        return transformer.render(accounts);
+    }
+
+    @Benchmark
+    public String renderTransfers() {
+        return transformer.render(transfers);
+    }
+}
@@ -0,0 +1,165 @@
+package eu.ammw.transfer.benchmark;
+
+import eu.ammw.transfer.binary.BinaryClient;
+import eu.ammw.transfer.binary.BinaryServer;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import eu.ammw.transfer.rest.AccountController;
+import eu.ammw.transfer.rest.ServerConfiguration;
+import eu.ammw.transfer.rest.TransferController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import spark.Spark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of transfers made over the network on {@code ledger} storage, through the REST API and through the
+ * binary protocol, one request at a time and with {@value #PIPELINE} requests in flight per connection, or as batches
+ * of as many transfers. Every thread has its own connection and pair of accounts, so that the cost of the protocols
+ * is measured rather than contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProtocolBenchmark {
+    private static final int THREADS = 4;
+    private static final int PIPELINE = 64;
+    private static final Money AMOUNT = Money.of(1);
+
+    private BinaryServer binaryServer;
+    private int httpPort;
+    private List<UUID> ids;
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DataSource dataSource = Storages.create("ledger");
+        AccountService accountService = new AccountService(dataSource);
+        TransferService transferService = new TransferService(dataSource, accountService);
+        ids = Storages.createAccounts(dataSource, 2 * THREADS);
+        try (ServerSocket socket = new ServerSocket(0)) {
+            httpPort = socket.getLocalPort();
+        }
+        new ServerConfiguration(new AccountController(accountService), new TransferController(transferService))
+                .configureAndStart(httpPort);
+        Spark.awaitInitialization();
+        binaryServer = new BinaryServer(transferService, accountService, THREADS);
+        binaryServer.start(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        binaryServer.close();
+        Spark.stop();
+        Spark.awaitStop();
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private UUID from;
+        private UUID to;
+        private URL transferUrl;
+        private byte[] transferBody;
+        private BinaryClient client;
+        private List<Transfer> batch;
+
+        @Setup(Level.Trial)
+        public void setUp(ProtocolBenchmark benchmark) throws IOException {
+            int index = benchmark.nextThread.getAndIncrement();
+            from = benchmark.ids.get(2 * index);
+            to = benchmark.ids.get(2 * index + 1);
+            transferUrl = new URL("http://localhost:" + benchmark.httpPort + "/accounts/" + from + "/transfer");
+            transferBody = ("{\"to\":\"" + to + "\",\"amount\":1}").getBytes(StandardCharsets.UTF_8);
+            client = new BinaryClient("localhost", benchmark.binaryServer.getPort());
+            batch = new ArrayList<>();
+            for (int i = 0; i < PIPELINE; i++) {
+                batch.add(new Transfer(from, to, AMOUNT));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public int rest(Connection connection) throws IOException {
+        HttpURLConnection http = (HttpURLConnection) connection.transferUrl.openConnection();
+        http.setRequestMethod("POST");
+        http.setDoOutput(true);
+        http.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream body = http.getOutputStream()) {
+            body.write(connection.transferBody);
+        }
+        int status = http.getResponseCode();
+        // reading the whole response lets the connection be kept alive
+        try (InputStream response = http.getInputStream()) {
+            byte[] buffer = new byte[1024];
+            while (response.read(buffer) >= 0) {
+                // discarded
+            }
+        }
+        return status;
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Transfer binary(Connection connection) throws IOException {
+        return connection.client.transfer(connection.from, connection.to, AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    @OperationsPerInvocation(PIPELINE)
+    public Transfer binaryPipelined(Connection connection) {
+        List<CompletableFuture<Transfer>> futures = new ArrayList<>(PIPELINE);
+        for (int i = 0; i < PIPELINE; i++) {
+            futures.add(connection.client.transferAsync(connection.from, connection.to, AMOUNT));
+        }
+        Transfer last = null;
+        for (CompletableFuture<Transfer> future : futures) {
+            last = future.join();
+        }
+        return last;
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    @OperationsPerInvocation(PIPELINE)
+    public Object binaryBatch(Connection connection) throws IOException {
+        return connection.client.transferBatch(connection.batch, false);
+    }
+}
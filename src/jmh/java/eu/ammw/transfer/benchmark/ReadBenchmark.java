@@ -0,0 +1,79 @@
+package eu.ammw.transfer.benchmark;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Page;
+import eu.ammw.transfer.model.Transfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of account and history lookups of random accounts by table size: the storage holds {@code size} accounts
+ * and ten times as many transfers between random accounts, so every history holds about twenty transfers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+    private static final int TRANSFERS_PER_ACCOUNT = 10;
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"h2", "ledger"})
+    public String storage;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private AccountService accountService;
+    private TransferService transferService;
+    private List<UUID> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DataSource dataSource = Storages.create(storage);
+        accountService = new AccountService(dataSource);
+        transferService = new TransferService(dataSource, accountService);
+        ids = Storages.createAccounts(dataSource, size);
+        Storages.createTransfers(dataSource, ids, size * TRANSFERS_PER_ACCOUNT, new Random(42));
+    }
+
+    private UUID randomAccount() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    @Benchmark
+    public Account getAccount() throws Exception {
+        return accountService.getAccount(randomAccount());
+    }
+
+    @Benchmark
+    public List<Transfer> getHistory() throws Exception {
+        return transferService.getHistory(randomAccount());
+    }
+
+    @Benchmark
+    public Page<Transfer> getHistoryPage() throws Exception {
+        return transferService.getHistory(randomAccount(), null, PAGE_SIZE);
+    }
+}
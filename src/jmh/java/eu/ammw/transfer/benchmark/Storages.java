@@ -0,0 +1,76 @@
+package eu.ammw.transfer.benchmark;
+
+import ch.qos.logback.classic.Level;
+import eu.ammw.transfer.db.ConnectionPool;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.db.InMemoryDatabase;
+import eu.ammw.transfer.db.InMemoryDatabaseService;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Creates the storages compared by the benchmarks and fills them straight through the data source, committing in
+ * chunks, so that large tables are set up in seconds. Every benchmark runs in a fresh fork, which gets its own H2
+ * database.
+ */
+final class Storages {
+    static final Money INITIAL_BALANCE = Money.of(1_000_000_000);
+
+    private static final int POOL_SIZE = 16;
+    private static final int CHUNK = 1000;
+
+    private Storages() {
+    }
+
+    static DataSource create(String storage) {
+        // the services log every operation, which would be measured along with it
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        switch (storage) {
+            case "h2":
+                InMemoryDatabase.create();
+                return new InMemoryDatabaseService(new ConnectionPool(InMemoryDatabase::getConnection, POOL_SIZE));
+            case "ledger":
+                return new LedgerDataSource();
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+    }
+
+    static List<UUID> createAccounts(DataSource dataSource, int count) {
+        List<UUID> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Account account = new Account(UUID.randomUUID(), "Benchmark " + i, INITIAL_BALANCE);
+            dataSource.createAccount(account);
+            accounts.add(account.getId());
+            if ((i + 1) % CHUNK == 0) {
+                dataSource.commit();
+            }
+        }
+        dataSource.commit();
+        return accounts;
+    }
+
+    /**
+     * Records transfers of one unit between random accounts, without changing the balances.
+     */
+    static void createTransfers(DataSource dataSource, List<UUID> accounts, int count, Random random) {
+        for (int i = 0; i < count; i++) {
+            UUID from = accounts.get(random.nextInt(accounts.size()));
+            UUID to = accounts.get(random.nextInt(accounts.size()));
+            dataSource.createTransfer(new Transfer(from, to, Money.of(1)));
+            if ((i + 1) % CHUNK == 0) {
+                dataSource.commit();
+            }
+        }
+        dataSource.commit();
+    }
+}
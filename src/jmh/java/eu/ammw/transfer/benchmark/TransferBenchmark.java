@@ -0,0 +1,105 @@
+package eu.ammw.transfer.benchmark;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of the write operations of {@link TransferService}. With {@code disjoint} accounts every thread
+ * transfers between its own pair of accounts, with {@code hot} accounts all threads contend for the same pair.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+    private static final int THREADS = 4;
+    private static final Money AMOUNT = Money.of(1);
+
+    @Param({"h2", "ledger"})
+    public String storage;
+
+    @Param({"disjoint", "hot"})
+    public String accounts;
+
+    private TransferService transferService;
+    private List<UUID> ids;
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DataSource dataSource = Storages.create(storage);
+        AccountService accountService = new AccountService(dataSource);
+        transferService = new TransferService(dataSource, accountService);
+        ids = Storages.createAccounts(dataSource, 2 * THREADS);
+    }
+
+    @State(Scope.Thread)
+    public static class Pair {
+        private UUID first;
+        private UUID second;
+        private boolean reversed;
+
+        @Setup(Level.Trial)
+        public void setUp(TransferBenchmark benchmark) {
+            int index = benchmark.accounts.equals("hot") ? 0 : benchmark.nextThread.getAndIncrement();
+            first = benchmark.ids.get(2 * index);
+            second = benchmark.ids.get(2 * index + 1);
+        }
+
+        /**
+         * Alternates the direction of the transfers, so that the balances stay put.
+         */
+        private Transfer next(TransferService transferService) throws Exception {
+            reversed = !reversed;
+            return reversed ? transferService.transfer(second, first, AMOUNT)
+                    : transferService.transfer(first, second, AMOUNT);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Transfer transferSingleThreaded(Pair pair) throws Exception {
+        return pair.next(transferService);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Transfer transferMultiThreaded(Pair pair) throws Exception {
+        return pair.next(transferService);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void deposit(Pair pair) throws Exception {
+        transferService.deposit(pair.first, AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void withdraw(Pair pair) throws Exception {
+        transferService.withdraw(pair.second, AMOUNT);
+    }
+}
@@ -1,44 +1,307 @@
 package eu.ammw.transfer;
 
+import eu.ammw.transfer.binary.BinaryServer;
+import eu.ammw.transfer.db.CachingDataSource;
+import eu.ammw.transfer.db.ConnectionPool;
 import eu.ammw.transfer.db.DataSource;
 import eu.ammw.transfer.db.InMemoryDatabase;
 import eu.ammw.transfer.db.InMemoryDatabaseService;
+import eu.ammw.transfer.db.InstrumentedDataSource;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.db.ShardedDataSource;
+import eu.ammw.transfer.domain.AccountLocks;
 import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.AsyncTransferService;
+import eu.ammw.transfer.domain.GroupCommitExecutor;
+import eu.ammw.transfer.domain.HotAccounts;
+import eu.ammw.transfer.domain.LockingWriteExecutor;
+import eu.ammw.transfer.domain.SequencerExecutor;
+import eu.ammw.transfer.domain.ShardedTransferService;
+import eu.ammw.transfer.domain.ShardedWriteExecutor;
 import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.domain.WriteExecutor;
+import eu.ammw.transfer.journal.JournalingDataSource;
+import eu.ammw.transfer.journal.SnapshotStore;
+import eu.ammw.transfer.journal.WriteAheadLog;
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import eu.ammw.transfer.metrics.MetricsSource;
 import eu.ammw.transfer.rest.AccountController;
+import eu.ammw.transfer.rest.AsyncTransferController;
+import eu.ammw.transfer.rest.IdempotencyStore;
+import eu.ammw.transfer.rest.JettySettings;
+import eu.ammw.transfer.rest.MetricsController;
 import eu.ammw.transfer.rest.ServerConfiguration;
+import eu.ammw.transfer.rest.StatsController;
 import eu.ammw.transfer.rest.TransferController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.SQLException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 
 public class Main {
     private final static int DEFAULT_PORT = 1234;
+    private final static int DEFAULT_POOL_SIZE = 16;
+    private final static int DEFAULT_CACHE_SIZE = 10_000;
+    private final static int DEFAULT_GROUP_SIZE = 128;
+    private final static long DEFAULT_GROUP_LINGER_MICROS = 1000;
+    private final static int DEFAULT_RING_SIZE = 1024;
+    private final static int DEFAULT_WAL_SEGMENT_SIZE_MB = 64;
+    private final static long DEFAULT_WAL_FSYNC_INTERVAL_MILLIS = 10;
+    private final static long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 60;
+    private final static int DEFAULT_IDEMPOTENCY_KEYS = 100_000;
+    private final static long DEFAULT_IDEMPOTENCY_TTL_SECONDS = 86_400;
+    private final static int DEFAULT_ASYNC_THREADS = 4;
+    private final static int DEFAULT_ASYNC_QUEUE_SIZE = 10_000;
+    private final static int DEFAULT_ASYNC_RETAINED_STATUSES = 100_000;
+    private final static int DEFAULT_HTTP_MIN_THREADS = 8;
+    private final static int DEFAULT_HTTP_MAX_THREADS = 200;
+    private final static int DEFAULT_HTTP_IDLE_TIMEOUT_MILLIS = 60_000;
+    private final static int DEFAULT_HOT_ACCOUNT_SLOTS = 8;
+    private final static int DEFAULT_BINARY_THREADS = 16;
     private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
 
+    private static final List<JournalingDataSource> JOURNALS = new ArrayList<>();
+    private static final List<WriteExecutor> WRITE_EXECUTORS = new ArrayList<>();
+    private static AsyncTransferService asyncTransferService;
+    private static BinaryServer binaryServer;
+
     public static void main(String[] args) {
         try {
-            initDatabase();
             int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
             configureServices().configureAndStart(port);
-            Runtime.getRuntime().addShutdownHook(new Thread(ServerConfiguration::stop));
+            Runtime.getRuntime().addShutdownHook(new Thread(Main::stop));
         } catch (Exception e) {
             LOGGER.error("Error while starting application", e);
             System.exit(1);
         }
     }
 
-    private static void initDatabase() {
-        InMemoryDatabase.create();
+    private static void stop() {
+        ServerConfiguration.stop();
+        if (binaryServer != null) {
+            binaryServer.close();
+        }
+        try {
+            // queued transfers have to reach the journals before they are closed
+            asyncTransferService.stop();
+            for (WriteExecutor writeExecutor : WRITE_EXECUTORS) {
+                writeExecutor.stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        JOURNALS.forEach(JournalingDataSource::close);
     }
 
-    private static ServerConfiguration configureServices() throws SQLException {
-        DataSource dataSource = new InMemoryDatabaseService(InMemoryDatabase.getConnection());
-        AccountService accountService = new AccountService(dataSource);
-        TransferService transferService = new TransferService(dataSource, accountService);
+    private static ServerConfiguration configureServices() throws IOException {
+        List<MetricsSource> metricsSources = new ArrayList<>();
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        int shards = Integer.getInteger("transfer.shards", 1);
+        HotAccounts hotAccounts = configureHotAccounts();
+        AccountService accountService;
+        TransferService transferService;
+        if (shards > 1) {
+            if (hotAccounts != HotAccounts.NONE) {
+                // the lock keys of the slots would be routed to other shards than their accounts
+                throw new IllegalArgumentException("Hot accounts are not supported with sharding");
+            }
+            ShardedDataSource dataSource = configureShards(shards, metricsRegistry);
+            List<WriteExecutor> writeExecutors = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                // per-shard metrics would collide by name, the sharded service reports the totals
+                writeExecutors.add(configureWriteExecutor(dataSource.getShard(i), new ArrayList<>(), metricsRegistry));
+            }
+            accountService = new AccountService(dataSource);
+            ShardedWriteExecutor shardedWriteExecutor = new ShardedWriteExecutor(dataSource, writeExecutors);
+            WRITE_EXECUTORS.add(shardedWriteExecutor);
+            ShardedTransferService shardedTransferService = new ShardedTransferService(dataSource, accountService,
+                    shardedWriteExecutor);
+            metricsSources.add(shardedTransferService);
+            shardedTransferService.recover();
+            transferService = shardedTransferService;
+        } else {
+            DataSource dataSource = new InstrumentedDataSource(configureDataSource(metricsSources), metricsRegistry);
+            accountService = new AccountService(dataSource);
+            WriteExecutor writeExecutor = configureWriteExecutor(dataSource, metricsSources, metricsRegistry);
+            WRITE_EXECUTORS.add(writeExecutor);
+            transferService = new TransferService(dataSource, accountService, writeExecutor, hotAccounts);
+        }
         AccountController accountController = new AccountController(accountService);
-        TransferController transferController = new TransferController(transferService);
-        return new ServerConfiguration(accountController, transferController);
+        TransferController transferController = new TransferController(transferService,
+                configureIdempotency(metricsSources));
+        configureAsyncTransfers(transferService);
+        metricsSources.add(asyncTransferService);
+        AsyncTransferController asyncTransferController = new AsyncTransferController(asyncTransferService);
+        configureBinaryServer(transferService, accountService, metricsSources);
+        StatsController statsController = new StatsController(metricsSources.toArray(new MetricsSource[0]));
+        metricsSources.forEach(metricsRegistry::register);
+        return new ServerConfiguration(configureJetty(), metricsRegistry, accountController, transferController,
+                asyncTransferController, statsController, new MetricsController(metricsRegistry));
+    }
+
+    private static JettySettings configureJetty() {
+        String threads = System.getProperty("transfer.http.threads", "platform");
+        if (!threads.equals("platform") && !threads.equals("virtual")) {
+            throw new IllegalArgumentException("Unknown HTTP thread type: " + threads);
+        }
+        return new JettySettings(
+                Integer.getInteger("transfer.http.minThreads", DEFAULT_HTTP_MIN_THREADS),
+                Integer.getInteger("transfer.http.maxThreads", DEFAULT_HTTP_MAX_THREADS),
+                Integer.getInteger("transfer.http.idleTimeoutMillis", DEFAULT_HTTP_IDLE_TIMEOUT_MILLIS),
+                Integer.getInteger("transfer.http.acceptQueueSize", 0),
+                threads.equals("virtual"));
+    }
+
+    private static DataSource configureDataSource(List<MetricsSource> metricsSources) throws IOException {
+        String storage = System.getProperty("transfer.storage", "h2");
+        switch (storage) {
+            case "h2":
+                InMemoryDatabase.create();
+                int poolSize = Integer.getInteger("transfer.db.poolSize", DEFAULT_POOL_SIZE);
+                ConnectionPool connectionPool = new ConnectionPool(InMemoryDatabase::getConnection, poolSize);
+                DataSource database = configureJournal(new InMemoryDatabaseService(connectionPool), "", metricsSources);
+                return configureCache(database, metricsSources);
+            case "ledger":
+                return configureJournal(new LedgerDataSource(), "", metricsSources);
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+    }
+
+    private static ShardedDataSource configureShards(int shards, MetricsRegistry metricsRegistry) throws IOException {
+        String storage = System.getProperty("transfer.storage", "h2");
+        if (!"ledger".equals(storage)) {
+            throw new IllegalArgumentException("Sharding requires ledger storage, not " + storage);
+        }
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            // the shards share the histograms, which report the calls to all of them
+            dataSources.add(new InstrumentedDataSource(
+                    configureJournal(new LedgerDataSource(true), "shard-" + i, new ArrayList<>()), metricsRegistry));
+        }
+        LOGGER.info("Partitioned accounts into {} shards", shards);
+        return new ShardedDataSource(dataSources);
+    }
+
+    private static DataSource configureJournal(DataSource dataSource, String subdirectory,
+                                               List<MetricsSource> metricsSources) throws IOException {
+        String root = System.getProperty("transfer.wal.dir");
+        if (root == null || root.isEmpty()) {
+            return dataSource;
+        }
+        Path directory = Paths.get(root).resolve(subdirectory);
+        WriteAheadLog log = openLog(directory);
+        int loadThreads = Integer.getInteger("transfer.snapshot.loadThreads", Runtime.getRuntime().availableProcessors());
+        SnapshotStore snapshots = new SnapshotStore(directory, loadThreads);
+        JournalingDataSource journal = new JournalingDataSource(dataSource, log, snapshots);
+        JOURNALS.add(journal);
+        journal.recover();
+        long snapshotInterval = Long.getLong("transfer.snapshot.intervalSeconds", DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+        if (snapshotInterval > 0) {
+            snapshots.start(log, snapshotInterval);
+        }
+        metricsSources.add(journal);
+        metricsSources.add(snapshots);
+        return journal;
+    }
+
+    private static WriteAheadLog openLog(Path directory) throws IOException {
+        int segmentSize = Integer.getInteger("transfer.wal.segmentSizeMb", DEFAULT_WAL_SEGMENT_SIZE_MB) << 20;
+        WriteAheadLog.FsyncPolicy fsyncPolicy = WriteAheadLog.FsyncPolicy.valueOf(
+                System.getProperty("transfer.wal.fsync", "always").toUpperCase(Locale.ROOT));
+        long fsyncIntervalMillis = Long.getLong("transfer.wal.fsyncIntervalMillis", DEFAULT_WAL_FSYNC_INTERVAL_MILLIS);
+        return new WriteAheadLog(directory, segmentSize, fsyncPolicy, fsyncIntervalMillis);
+    }
+
+    private static void configureAsyncTransfers(TransferService transferService) throws IOException {
+        String root = System.getProperty("transfer.wal.dir");
+        // submitted transfers are only accepted once they are in a log of their own, next to the journal
+        WriteAheadLog log = root == null || root.isEmpty() ? null : openLog(Paths.get(root).resolve("async"));
+        asyncTransferService = new AsyncTransferService(transferService,
+                Integer.getInteger("transfer.async.threads", DEFAULT_ASYNC_THREADS),
+                Integer.getInteger("transfer.async.queueSize", DEFAULT_ASYNC_QUEUE_SIZE),
+                Integer.getInteger("transfer.async.retainedStatuses", DEFAULT_ASYNC_RETAINED_STATUSES), log);
+        try {
+            asyncTransferService.recover();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering asynchronous transfers", e);
+        }
+    }
+
+    private static HotAccounts configureHotAccounts() {
+        String accounts = System.getProperty("transfer.hotAccounts", "");
+        if (accounts.trim().isEmpty()) {
+            return HotAccounts.NONE;
+        }
+        List<UUID> ids = new ArrayList<>();
+        for (String id : accounts.split(",")) {
+            ids.add(UUID.fromString(id.trim()));
+        }
+        int slots = Integer.getInteger("transfer.hotAccounts.slots", DEFAULT_HOT_ACCOUNT_SLOTS);
+        LOGGER.info("Splitting balances of {} hot accounts into {} slots", ids.size(), slots);
+        return new HotAccounts(ids, slots);
+    }
+
+    private static void configureBinaryServer(TransferService transferService, AccountService accountService,
+                                              List<MetricsSource> metricsSources) throws IOException {
+        int port = Integer.getInteger("transfer.binary.port", 0);
+        if (port <= 0) {
+            return;
+        }
+        binaryServer = new BinaryServer(transferService, accountService,
+                Integer.getInteger("transfer.binary.threads", DEFAULT_BINARY_THREADS));
+        binaryServer.start(port);
+        metricsSources.add(binaryServer);
+    }
+
+    private static IdempotencyStore configureIdempotency(List<MetricsSource> metricsSources) {
+        int maxKeys = Integer.getInteger("transfer.idempotency.maxKeys", DEFAULT_IDEMPOTENCY_KEYS);
+        if (maxKeys <= 0) {
+            return null;
+        }
+        long ttlSeconds = Long.getLong("transfer.idempotency.ttlSeconds", DEFAULT_IDEMPOTENCY_TTL_SECONDS);
+        IdempotencyStore idempotencyStore = new IdempotencyStore(maxKeys, ttlSeconds);
+        metricsSources.add(idempotencyStore);
+        return idempotencyStore;
+    }
+
+    private static DataSource configureCache(DataSource dataSource, List<MetricsSource> metricsSources) {
+        int cacheSize = Integer.getInteger("transfer.cache.size", DEFAULT_CACHE_SIZE);
+        if (cacheSize <= 0) {
+            return dataSource;
+        }
+        CachingDataSource cachingDataSource = new CachingDataSource(dataSource, cacheSize);
+        metricsSources.add(cachingDataSource);
+        return cachingDataSource;
+    }
+
+    private static WriteExecutor configureWriteExecutor(DataSource dataSource, List<MetricsSource> metricsSources,
+                                                        MetricsRegistry metricsRegistry) {
+        String writeMode = System.getProperty("transfer.writeMode", "locking");
+        switch (writeMode) {
+            case "locking":
+                return new LockingWriteExecutor(dataSource, new AccountLocks(), metricsRegistry.histogram(
+                        "lock_wait_seconds", "Time spent by transfers waiting for the locks of their accounts."));
+            case "group-commit":
+                int maxBatchSize = Integer.getInteger("transfer.groupCommit.maxBatchSize", DEFAULT_GROUP_SIZE);
+                long maxLingerMicros = Long.getLong("transfer.groupCommit.maxLingerMicros", DEFAULT_GROUP_LINGER_MICROS);
+                GroupCommitExecutor groupCommitExecutor = new GroupCommitExecutor(dataSource, maxBatchSize, maxLingerMicros);
+                metricsSources.add(groupCommitExecutor);
+                return groupCommitExecutor;
+            case "sequencer":
+                int ringSize = Integer.getInteger("transfer.sequencer.ringSize", DEFAULT_RING_SIZE);
+                SequencerExecutor sequencerExecutor = new SequencerExecutor(dataSource, ringSize);
+                metricsSources.add(sequencerExecutor);
+                return sequencerExecutor;
+            default:
+                throw new IllegalArgumentException("Unknown write mode: " + writeMode);
+        }
     }
 }
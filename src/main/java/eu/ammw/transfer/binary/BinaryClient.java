@@ -0,0 +1,292 @@
+package eu.ammw.transfer.binary;
+
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static eu.ammw.transfer.binary.BinaryProtocol.*;
+
+/**
+ * Client of {@link BinaryServer} over a single connection, which may be shared by many threads. The asynchronous
+ * methods return as soon as the request is sent, so that further requests can be sent before it is answered, and the
+ * futures are completed by a reader thread as the responses arrive. The other methods wait for the response.
+ * <p>
+ * A request the server refused fails with a {@link RequestFailedException}. When the connection breaks, all requests
+ * waiting for a response fail with the cause; whether they were performed is unknown.
+ */
+public class BinaryClient implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TRANSFER_SIZE = 2 * 16 + 8;
+
+    private final Socket socket;
+    private final OutputStream output;
+    private final DataInputStream input;
+    private final Map<Long, PendingRequest<?>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private volatile IOException failure;
+
+    public BinaryClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        Thread reader = new Thread(this::readResponses, "binary-client-" + socket.getLocalPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public Transfer transfer(UUID from, UUID to, Money amount) throws IOException {
+        return await(transferAsync(from, to, amount));
+    }
+
+    public void deposit(UUID accountId, Money amount) throws IOException {
+        await(depositAsync(accountId, amount));
+    }
+
+    public void withdraw(UUID accountId, Money amount) throws IOException {
+        await(withdrawAsync(accountId, amount));
+    }
+
+    public Money getBalance(UUID accountId) throws IOException {
+        return await(getBalanceAsync(accountId));
+    }
+
+    public List<BatchResult> transferBatch(List<Transfer> transfers, boolean allOrNothing) throws IOException {
+        return await(transferBatchAsync(transfers, allOrNothing));
+    }
+
+    public CompletableFuture<Transfer> transferAsync(UUID from, UUID to, Money amount) {
+        return send(TRANSFER, TRANSFER_SIZE, request -> {
+            putId(request, from);
+            putId(request, to);
+            putAmount(request, amount);
+        }, response -> getTransferResult(response, from, to, amount));
+    }
+
+    public CompletableFuture<Void> depositAsync(UUID accountId, Money amount) {
+        return send(DEPOSIT, 16 + 8, request -> {
+            putId(request, accountId);
+            putAmount(request, amount);
+        }, response -> null);
+    }
+
+    public CompletableFuture<Void> withdrawAsync(UUID accountId, Money amount) {
+        return send(WITHDRAW, 16 + 8, request -> {
+            putId(request, accountId);
+            putAmount(request, amount);
+        }, response -> null);
+    }
+
+    public CompletableFuture<Money> getBalanceAsync(UUID accountId) {
+        return send(GET_BALANCE, 16, request -> putId(request, accountId), BinaryProtocol::getAmount);
+    }
+
+    /**
+     * Sends the transfers as one request, performed like {@code POST /transfers/batch}. The results of transfers that
+     * were not applied hold the requested transfer.
+     */
+    public CompletableFuture<List<BatchResult>> transferBatchAsync(List<Transfer> transfers, boolean allOrNothing) {
+        return send(TRANSFER_BATCH, 1 + 4 + transfers.size() * TRANSFER_SIZE, request -> {
+            request.put((byte) (allOrNothing ? 1 : 0));
+            request.putInt(transfers.size());
+            for (Transfer transfer : transfers) {
+                putId(request, transfer.getFrom());
+                putId(request, transfer.getTo());
+                putAmount(request, transfer.getAmount());
+            }
+        }, response -> {
+            int count = response.getInt();
+            if (count != transfers.size()) {
+                throw new IllegalStateException(count + " results of a batch of " + transfers.size() + " transfers");
+            }
+            List<BatchResult> results = new ArrayList<>(count);
+            for (Transfer transfer : transfers) {
+                byte status = response.get();
+                if (status == COMPLETED) {
+                    results.add(BatchResult.completed(getTransferResult(response, transfer.getFrom(),
+                            transfer.getTo(), transfer.getAmount())));
+                } else if (status == FAILED) {
+                    results.add(BatchResult.failed(transfer, getMessage(response)));
+                } else {
+                    results.add(BatchResult.notApplied(transfer));
+                }
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        failure = new IOException("Client closed");
+        socket.close();
+    }
+
+    private <T> CompletableFuture<T> send(byte operation, int size, Consumer<ByteBuffer> arguments,
+                                          Function<ByteBuffer, T> result) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (REQUEST_HEADER_SIZE + size > MAX_FRAME_SIZE) {
+            future.completeExceptionally(new IllegalArgumentException(
+                    "Request of " + size + " bytes exceeds the frame size of " + MAX_FRAME_SIZE));
+            return future;
+        }
+        long requestId = nextRequestId.incrementAndGet();
+        ByteBuffer request = ByteBuffer.allocate(4 + REQUEST_HEADER_SIZE + size);
+        request.putInt(REQUEST_HEADER_SIZE + size);
+        request.putLong(requestId);
+        request.put(operation);
+        arguments.accept(request);
+        pending.put(requestId, new PendingRequest<>(future, result));
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            synchronized (output) {
+                output.write(request.array());
+                output.flush();
+            }
+        } catch (IOException e) {
+            // the reader may have failed the pending requests already, before this one was added
+            pending.remove(requestId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void readResponses() {
+        IOException cause;
+        try {
+            while (true) {
+                int length = input.readInt();
+                if (length < RESPONSE_HEADER_SIZE || length > MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid response frame of " + length + " bytes");
+                }
+                byte[] frame = new byte[length];
+                input.readFully(frame);
+                ByteBuffer response = ByteBuffer.wrap(frame);
+                long requestId = response.getLong();
+                PendingRequest<?> request = pending.remove(requestId);
+                if (request == null) {
+                    throw new IOException("Response to unknown request " + requestId);
+                }
+                request.complete(response.get(), response);
+            }
+        } catch (IOException e) {
+            cause = failure == null ? e : failure;
+        }
+        failure = cause;
+        closeQuietly();
+        for (Long requestId : pending.keySet()) {
+            PendingRequest<?> request = pending.remove(requestId);
+            if (request != null) {
+                request.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // the connection is broken already
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static class PendingRequest<T> {
+        private final CompletableFuture<T> future;
+        private final Function<ByteBuffer, T> result;
+
+        private PendingRequest(CompletableFuture<T> future, Function<ByteBuffer, T> result) {
+            this.future = future;
+            this.result = result;
+        }
+
+        private void complete(byte status, ByteBuffer response) {
+            try {
+                if (status == OK) {
+                    future.complete(result.apply(response));
+                } else {
+                    future.completeExceptionally(new RequestFailedException(status, getMessage(response)));
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(new IOException("Malformed response", e));
+            }
+        }
+    }
+
+    /**
+     * Thrown when the server answered a request with an error.
+     */
+    public static class RequestFailedException extends IOException {
+        private final Reason reason;
+
+        RequestFailedException(byte status, String message) {
+            super(message);
+            this.reason = Reason.of(status);
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public enum Reason {
+            /** The request was malformed or its arguments invalid. */
+            BAD_REQUEST,
+            /** An account of the request does not exist. */
+            NOT_FOUND,
+            /** The account has insufficient funds or the amount is negative. */
+            CONFLICT,
+            /** The server failed to perform the request. */
+            ERROR;
+
+            private static Reason of(byte status) {
+                switch (status) {
+                    case BinaryProtocol.BAD_REQUEST:
+                        return BAD_REQUEST;
+                    case BinaryProtocol.NOT_FOUND:
+                        return NOT_FOUND;
+                    case BinaryProtocol.CONFLICT:
+                        return CONFLICT;
+                    default:
+                        return ERROR;
+                }
+            }
+        }
+    }
+}
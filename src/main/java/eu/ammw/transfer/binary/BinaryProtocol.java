@@ -0,0 +1,120 @@
+package eu.ammw.transfer.binary;
+
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Compact binary format spoken by {@link BinaryServer} and {@link BinaryClient}. Every message is a frame: its length
+ * as an int, followed by that many bytes. All numbers are big-endian, IDs are two longs and amounts longs counting
+ * minor units (cents).
+ * <p>
+ * A request frame holds the request ID chosen by the client, the operation and its arguments. A response frame holds
+ * the ID of the request it answers, a status and, for {@link #OK}, the result of the operation, or else an error
+ * message as a short length followed by UTF-8 bytes. A client may send further requests before the responses to the
+ * previous ones arrive; the requests of a connection are performed and answered in the order they were sent.
+ * <p>
+ * Transfers are answered with their ID, timestamp in milliseconds and the balances of both sides after them, where an
+ * unrecorded balance is {@link Long#MIN_VALUE}. A batch of transfers is answered with the number of results followed
+ * by every result's status, the transfer result for completed ones and the error message for failed ones.
+ */
+final class BinaryProtocol {
+    static final byte TRANSFER = 1;
+    static final byte DEPOSIT = 2;
+    static final byte WITHDRAW = 3;
+    static final byte GET_BALANCE = 4;
+    static final byte TRANSFER_BATCH = 5;
+
+    static final byte OK = 0;
+    static final byte BAD_REQUEST = 1;
+    static final byte NOT_FOUND = 2;
+    static final byte CONFLICT = 3;
+    static final byte ERROR = 4;
+
+    static final byte COMPLETED = 0;
+    static final byte FAILED = 1;
+    static final byte NOT_APPLIED = 2;
+
+    static final int REQUEST_HEADER_SIZE = 8 + 1;
+    static final int RESPONSE_HEADER_SIZE = 8 + 1;
+    static final int MAX_FRAME_SIZE = 1 << 20;
+    static final int MAX_MESSAGE_SIZE = 0xFFFF;
+
+    private static final long NO_BALANCE = Long.MIN_VALUE;
+
+    private BinaryProtocol() {}
+
+    static void putId(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    static UUID getId(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    static void putAmount(ByteBuffer buffer, Money amount) {
+        buffer.putLong(amount.getMinorUnits());
+    }
+
+    static Money getAmount(ByteBuffer buffer) {
+        return Money.ofMinorUnits(buffer.getLong());
+    }
+
+    static int transferResultSize() {
+        return 16 + 3 * 8;
+    }
+
+    static void putTransferResult(ByteBuffer buffer, Transfer transfer) {
+        putId(buffer, transfer.getId());
+        buffer.putLong(transfer.getTimestamp() == null ? Long.MIN_VALUE : transfer.getTimestamp().toEpochMilli());
+        putBalance(buffer, transfer.getFromBalanceAfter());
+        putBalance(buffer, transfer.getToBalanceAfter());
+    }
+
+    /**
+     * Reads the result of a transfer made as requested.
+     */
+    static Transfer getTransferResult(ByteBuffer buffer, UUID from, UUID to, Money amount) {
+        UUID id = getId(buffer);
+        long timestamp = buffer.getLong();
+        Money fromBalance = getBalance(buffer);
+        Money toBalance = getBalance(buffer);
+        return new Transfer(id, from, to, amount, timestamp == Long.MIN_VALUE ? null : Instant.ofEpochMilli(timestamp),
+                fromBalance, toBalance);
+    }
+
+    static byte[] messageBytes(String message) {
+        byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_MESSAGE_SIZE) {
+            return bytes;
+        }
+        byte[] truncated = new byte[MAX_MESSAGE_SIZE];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_MESSAGE_SIZE);
+        return truncated;
+    }
+
+    static void putMessage(ByteBuffer buffer, byte[] message) {
+        buffer.putShort((short) message.length);
+        buffer.put(message);
+    }
+
+    static String getMessage(ByteBuffer buffer) {
+        byte[] message = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    private static void putBalance(ByteBuffer buffer, Money balance) {
+        buffer.putLong(balance == null ? NO_BALANCE : balance.getMinorUnits());
+    }
+
+    private static Money getBalance(ByteBuffer buffer) {
+        long balance = buffer.getLong();
+        return balance == NO_BALANCE ? null : Money.ofMinorUnits(balance);
+    }
+}
@@ -0,0 +1,499 @@
+package eu.ammw.transfer.binary;
+
+import eu.ammw.transfer.domain.AccountNotFoundException;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.InsufficientFundsException;
+import eu.ammw.transfer.domain.InvalidTransferException;
+import eu.ammw.transfer.domain.NegativeTransferException;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.metrics.MetricsSource;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static eu.ammw.transfer.binary.BinaryProtocol.*;
+
+/**
+ * Serves the {@link BinaryProtocol} next to the HTTP server, calling the same services. A single selector thread
+ * accepts connections, reads whole frames and writes responses, while the requests are performed on worker threads.
+ * <p>
+ * The requests of a connection are performed one after another by one worker at a time, which takes all requests read
+ * so far and hands all their responses over to be written together, so that a client pipelining its requests gets
+ * many responses per write. Requests of different connections run in parallel. A connection with too many requests
+ * waiting to be performed or responses waiting to be written is not read from until it catches up.
+ */
+public class BinaryServer implements MetricsSource, Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_QUEUED = 1024;
+    private static final int MAX_BUFFERS_PER_WRITE = 256;
+    private static final int BATCH_ITEM_SIZE = 2 * 16 + 8;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryServer.class);
+
+    private final TransferService transferService;
+    private final AccountService accountService;
+    private final ExecutorService workers;
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    public BinaryServer(TransferService transferService, AccountService accountService, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.transferService = transferService;
+        this.accountService = accountService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "binary-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts listening on the port, 0 for any free one.
+     */
+    public void start(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::run, "binary-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        LOGGER.info("Binary protocol listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Closes all connections and waits until the requests being performed are finished.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Binary protocol listener stopped");
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("connections", connections.get());
+        metrics.put("accepted", accepted.sum());
+        metrics.put("requests", requests.sum());
+        metrics.put("errors", errors.sum());
+        metrics.put("bytesRead", bytesRead.sum());
+        metrics.put("bytesWritten", bytesWritten.sum());
+        return metrics;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Connection flushed;
+                while ((flushed = flushes.poll()) != null) {
+                    flush(flushed);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.error("Binary protocol listener failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close((Connection) key.attachment());
+                }
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        connections.incrementAndGet();
+        accepted.increment();
+    }
+
+    private void read(Connection connection) {
+        int count;
+        try {
+            count = connection.channel.read(connection.input);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (count < 0) {
+            close(connection);
+            return;
+        }
+        bytesRead.add(count);
+        ByteBuffer input = connection.input;
+        input.flip();
+        int received = 0;
+        while (input.remaining() >= 4) {
+            int length = input.getInt(input.position());
+            if (length < REQUEST_HEADER_SIZE || length > MAX_FRAME_SIZE) {
+                // without a valid frame there is no request ID to answer
+                LOGGER.warn("Closing connection after a frame of {} bytes", length);
+                close(connection);
+                return;
+            }
+            if (input.remaining() < 4 + length) {
+                break;
+            }
+            input.position(input.position() + 4);
+            byte[] frame = new byte[length];
+            input.get(frame);
+            connection.requests.add(ByteBuffer.wrap(frame));
+            received++;
+        }
+        if (input.remaining() >= 4 && 4 + input.getInt(input.position()) > input.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(4 + input.getInt(input.position()));
+            larger.put(input);
+            connection.input = larger;
+        } else {
+            input.compact();
+        }
+        if (received > 0) {
+            connection.queued.addAndGet(received);
+            if (connection.isBacklogged()) {
+                connection.paused = true;
+                connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            schedule(connection);
+        }
+    }
+
+    private void schedule(Connection connection) {
+        if (connection.scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(() -> perform(connection));
+            } catch (RejectedExecutionException e) {
+                connection.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Performs the requests of the connection in order until none are left, on a worker thread.
+     */
+    private void perform(Connection connection) {
+        do {
+            ByteBuffer request;
+            while ((request = connection.requests.poll()) != null) {
+                if (!connection.closed) {
+                    connection.responses.add(handle(request));
+                }
+                connection.queued.decrementAndGet();
+            }
+            if (connection.flushRequested.compareAndSet(false, true)) {
+                flushes.add(connection);
+                selector.wakeup();
+            }
+            connection.scheduled.set(false);
+        } while (!connection.requests.isEmpty() && connection.scheduled.compareAndSet(false, true));
+    }
+
+    private void flush(Connection connection) {
+        connection.flushRequested.set(false);
+        if (connection.closed) {
+            return;
+        }
+        ArrayDeque<ByteBuffer> writing = connection.writing;
+        ByteBuffer response;
+        while ((response = connection.responses.poll()) != null) {
+            writing.add(response);
+        }
+        try {
+            while (!writing.isEmpty()) {
+                ByteBuffer[] buffers = new ByteBuffer[Math.min(writing.size(), MAX_BUFFERS_PER_WRITE)];
+                Iterator<ByteBuffer> pending = writing.iterator();
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = pending.next();
+                }
+                long written = connection.channel.write(buffers);
+                bytesWritten.add(written);
+                while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                    writing.poll();
+                }
+                if (written == 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        int interestOps = connection.key.interestOps();
+        interestOps = writing.isEmpty() ? interestOps & ~SelectionKey.OP_WRITE : interestOps | SelectionKey.OP_WRITE;
+        if (connection.paused && !connection.isBacklogged()) {
+            connection.paused = false;
+            interestOps |= SelectionKey.OP_READ;
+        } else if (!connection.paused && connection.isBacklogged()) {
+            connection.paused = true;
+            interestOps &= ~SelectionKey.OP_READ;
+        }
+        connection.key.interestOps(interestOps);
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Performs a request and returns its response frame, ready to be written.
+     */
+    ByteBuffer handle(ByteBuffer request) {
+        requests.increment();
+        long requestId = request.getLong();
+        byte operation = request.get();
+        try {
+            switch (operation) {
+                case TRANSFER: {
+                    UUID from = getId(request);
+                    UUID to = getId(request);
+                    Money amount = getAmount(request);
+                    expectEnd(request);
+                    Transfer transfer = transferService.transfer(from, to, amount);
+                    ByteBuffer response = response(requestId, OK, transferResultSize());
+                    putTransferResult(response, transfer);
+                    return finish(response);
+                }
+                case DEPOSIT: {
+                    UUID accountId = getId(request);
+                    Money amount = getAmount(request);
+                    expectEnd(request);
+                    transferService.deposit(accountId, amount);
+                    return finish(response(requestId, OK, 0));
+                }
+                case WITHDRAW: {
+                    UUID accountId = getId(request);
+                    Money amount = getAmount(request);
+                    expectEnd(request);
+                    transferService.withdraw(accountId, amount);
+                    return finish(response(requestId, OK, 0));
+                }
+                case GET_BALANCE: {
+                    UUID accountId = getId(request);
+                    expectEnd(request);
+                    Money balance = accountService.getAccount(accountId).getBalance();
+                    ByteBuffer response = response(requestId, OK, 8);
+                    putAmount(response, balance);
+                    return finish(response);
+                }
+                case TRANSFER_BATCH:
+                    return transferBatch(requestId, request);
+                default:
+                    return error(requestId, BAD_REQUEST, "Unknown operation " + operation);
+            }
+        } catch (BufferUnderflowException e) {
+            return error(requestId, BAD_REQUEST, "Truncated request");
+        } catch (AccountNotFoundException e) {
+            return error(requestId, NOT_FOUND, e.getMessage());
+        } catch (InsufficientFundsException | NegativeTransferException e) {
+            return error(requestId, CONFLICT, e.getMessage());
+        } catch (IllegalArgumentException | InvalidTransferException e) {
+            return error(requestId, BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            LOGGER.error("Error while performing binary request", e);
+            return error(requestId, ERROR, e.getCause() == null ? e.getMessage()
+                    : e.getMessage() + ": " + e.getCause().getMessage());
+        }
+    }
+
+    private ByteBuffer transferBatch(long requestId, ByteBuffer request) throws Exception {
+        boolean allOrNothing = request.get() != 0;
+        int count = request.getInt();
+        if (count < 0 || (long) count * BATCH_ITEM_SIZE != request.remaining()) {
+            return error(requestId, BAD_REQUEST, "Batch of " + count + " transfers in " + request.remaining()
+                    + " bytes");
+        }
+        List<Transfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transfers.add(new Transfer(getId(request), getId(request), getAmount(request)));
+        }
+        List<BatchResult> results = transferService.transferBatch(transfers, allOrNothing);
+        int size = 4;
+        List<byte[]> messages = new ArrayList<>();
+        for (BatchResult result : results) {
+            size += 1;
+            if (result.getStatus() == BatchResult.Status.COMPLETED) {
+                size += transferResultSize();
+            } else if (result.getStatus() == BatchResult.Status.FAILED) {
+                byte[] message = messageBytes(result.getError());
+                messages.add(message);
+                size += 2 + message.length;
+            }
+        }
+        ByteBuffer response = response(requestId, OK, size);
+        response.putInt(results.size());
+        Iterator<byte[]> message = messages.iterator();
+        for (BatchResult result : results) {
+            switch (result.getStatus()) {
+                case COMPLETED:
+                    response.put(COMPLETED);
+                    putTransferResult(response, result.getTransfer());
+                    break;
+                case FAILED:
+                    response.put(FAILED);
+                    putMessage(response, message.next());
+                    break;
+                default:
+                    response.put(NOT_APPLIED);
+            }
+        }
+        return finish(response);
+    }
+
+    private ByteBuffer error(long requestId, byte status, String message) {
+        errors.increment();
+        byte[] bytes = messageBytes(message);
+        ByteBuffer response = response(requestId, status, 2 + bytes.length);
+        putMessage(response, bytes);
+        return finish(response);
+    }
+
+    private static ByteBuffer response(long requestId, byte status, int size) {
+        ByteBuffer response = ByteBuffer.allocate(4 + RESPONSE_HEADER_SIZE + size);
+        response.putInt(RESPONSE_HEADER_SIZE + size);
+        response.putLong(requestId);
+        response.put(status);
+        return response;
+    }
+
+    private static ByteBuffer finish(ByteBuffer response) {
+        response.flip();
+        return response;
+    }
+
+    private static void expectEnd(ByteBuffer request) {
+        if (request.hasRemaining()) {
+            throw new IllegalArgumentException(request.remaining() + " unexpected bytes at the end of the request");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close {}", closeable, e);
+        }
+    }
+
+    private static class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        // read and written by the selector thread only
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+        private boolean paused;
+        // handed from the selector thread to the workers and back
+        private final Queue<ByteBuffer> requests = new ConcurrentLinkedQueue<>();
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        private boolean isBacklogged() {
+            return queued.get() + writing.size() >= MAX_QUEUED;
+        }
+    }
+}
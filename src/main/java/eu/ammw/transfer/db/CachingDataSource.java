@@ -0,0 +1,313 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.metrics.MetricsSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Keeps up to {@code maxSize} recently used accounts in memory in front of another data source, evicting the least
+ * recently used ones. The cache is split into segments by account ID, each with its own lock and its own order of use,
+ * so that readers of different accounts rarely wait for each other.
+ * <p>
+ * Accounts written in a transaction are kept aside for the writing thread and put in the cache only after the
+ * transaction commits, so that rolled back balances are never seen by others. Accounts read from the underlying
+ * source do not replace ones published by a commit in the meantime, and are not cached at all if accounts of their
+ * segment were invalidated or evicted while they were read, as an evicted account may have been published after the
+ * read started.
+ * Cached accounts are copied on the way in and out, as callers modify them.
+ * <p>
+ * Changes of sub-balances, credits and debits are added to the cached balance on commit. An account that is not
+ * cached at that point counts as invalidated, so that a balance read before the commit is not cached afterwards.
+ */
+public class CachingDataSource implements DataSource, MetricsSource {
+    private static final int MAX_SEGMENTS = 16;
+    // smaller caches are not split, as the least recently used account of a small segment may be a hot one
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final Segment[] segments;
+    private final ThreadLocal<Map<UUID, Account>> pending = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<UUID, Money>> pendingChanges = ThreadLocal.withInitial(HashMap::new);
+
+    public CachingDataSource(DataSource dataSource, int maxSize) {
+        this(dataSource, maxSize, Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+    }
+
+    public CachingDataSource(DataSource dataSource, int maxSize, int segmentCount) {
+        if (maxSize <= 0 || segmentCount <= 0 || segmentCount > maxSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Cache size and number of segments must be positive, with no more segments than accounts: %d, %d",
+                    maxSize, segmentCount));
+        }
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // the first segments take the remainder, so that the sizes add up to the maximum size
+            segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public void commit() {
+        Map<UUID, Account> written = pending.get();
+        Map<UUID, Money> changes = pendingChanges.get();
+        try {
+            dataSource.commit();
+        } catch (RuntimeException e) {
+            // the outcome is unknown, so the accounts have to be read again
+            invalidate(written, changes);
+            throw e;
+        }
+        publish(written, changes);
+    }
+
+    @Override
+    public void rollback() {
+        pending.get().clear();
+        pendingChanges.get().clear();
+        dataSource.rollback();
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        dataSource.createAccount(account);
+        pending.get().put(account.getId(), copy(account));
+    }
+
+    @Override
+    public void updateAccount(Account account) {
+        dataSource.updateAccount(account);
+        pending.get().put(account.getId(), copy(account));
+        pendingChanges.get().remove(account.getId());
+    }
+
+    @Override
+    public Optional<Account> getAccount(UUID id) {
+        Money change = pendingChanges.get().get(id);
+        Optional<Account> account = getCommittedAccount(id);
+        if (change != null) {
+            account.ifPresent(found -> found.setBalance(found.getBalance().plus(change)));
+        }
+        return account;
+    }
+
+    /**
+     * Returns the account as written by the current transaction or else as committed, leaving out the changes of
+     * sub-balances made by the transaction.
+     */
+    private Optional<Account> getCommittedAccount(UUID id) {
+        Account written = pending.get().get(id);
+        if (written != null) {
+            return Optional.of(copy(written));
+        }
+        Segment segment = segmentFor(id);
+        long invalidationsBefore;
+        synchronized (segment) {
+            Account cached = segment.accounts.get(id);
+            if (cached != null) {
+                segment.hits++;
+                return Optional.of(copy(cached));
+            }
+            segment.misses++;
+            invalidationsBefore = segment.invalidations;
+        }
+        Optional<Account> account = dataSource.getAccount(id);
+        account.ifPresent(loaded -> {
+            synchronized (segment) {
+                if (segment.invalidations == invalidationsBefore) {
+                    segment.accounts.putIfAbsent(id, copy(loaded));
+                }
+            }
+        });
+        return account;
+    }
+
+    @Override
+    public Money getSubBalance(UUID accountId, int slot) {
+        return dataSource.getSubBalance(accountId, slot);
+    }
+
+    @Override
+    public void addToSubBalance(UUID accountId, int slot, Money change) {
+        dataSource.addToSubBalance(accountId, slot, change);
+        pendingChanges.get().merge(accountId, change, Money::plus);
+    }
+
+    @Override
+    public Optional<Money> credit(UUID accountId, Money amount) {
+        Optional<Money> balance = dataSource.credit(accountId, amount);
+        balance.ifPresent(after -> pendingChanges.get().merge(accountId, amount, Money::plus));
+        return balance;
+    }
+
+    @Override
+    public Optional<Money> debitIfSufficient(UUID accountId, Money amount) {
+        Optional<Money> balance = dataSource.debitIfSufficient(accountId, amount);
+        balance.ifPresent(after -> pendingChanges.get().merge(accountId, amount.negate(), Money::plus));
+        return balance;
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return dataSource.getAllAccounts();
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        dataSource.forEachAccount(consumer);
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        return dataSource.getAccounts(after, limit);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId) {
+        return dataSource.getHistory(accountId);
+    }
+
+    @Override
+    public void forEachTransfer(UUID accountId, Consumer<Transfer> consumer) {
+        dataSource.forEachTransfer(accountId, consumer);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, UUID after, int limit) {
+        return dataSource.getHistory(accountId, after, limit);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit) {
+        return dataSource.getHistory(accountId, from, to, after, limit);
+    }
+
+    @Override
+    public List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to) {
+        return dataSource.getBuckets(accountId, resolution, from, to);
+    }
+
+    @Override
+    public Optional<Transfer> getTransfer(UUID id) {
+        return dataSource.getTransfer(id);
+    }
+
+    @Override
+    public void createTransfer(Transfer transfer) {
+        dataSource.createTransfer(transfer);
+    }
+
+    @Override
+    public String getName() {
+        return "accountCache";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        long size = 0;
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.accounts.size();
+                hits += segment.hits;
+                misses += segment.misses;
+                evictions += segment.evictions;
+            }
+        }
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("size", size);
+        metrics.put("maxSize", maxSize);
+        metrics.put("segments", segments.length);
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("evictions", evictions);
+        metrics.put("hitRatio", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        return metrics;
+    }
+
+    private void publish(Map<UUID, Account> written, Map<UUID, Money> changes) {
+        written.forEach((id, account) -> {
+            Segment segment = segmentFor(id);
+            synchronized (segment) {
+                segment.accounts.put(id, account);
+            }
+        });
+        changes.forEach((id, change) -> {
+            Segment segment = segmentFor(id);
+            synchronized (segment) {
+                Account cached = segment.accounts.get(id);
+                if (cached != null) {
+                    cached.setBalance(cached.getBalance().plus(change));
+                } else {
+                    segment.invalidations++;
+                }
+            }
+        });
+        written.clear();
+        changes.clear();
+    }
+
+    private void invalidate(Map<UUID, Account> written, Map<UUID, Money> changes) {
+        written.keySet().forEach(this::invalidate);
+        changes.keySet().forEach(this::invalidate);
+        written.clear();
+        changes.clear();
+    }
+
+    private void invalidate(UUID id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.invalidations++;
+            segment.accounts.remove(id);
+        }
+    }
+
+    private Segment segmentFor(UUID id) {
+        return segments[Math.floorMod(id.hashCode(), segments.length)];
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getId(), account.getName(), account.getBalance());
+    }
+
+    /**
+     * Least recently used accounts of one segment, guarded by the segment itself.
+     */
+    private static final class Segment {
+        private final Map<UUID, Account> accounts;
+        // bumped whenever an account may have changed without the new version being cached, e.g. on eviction
+        private long invalidations;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Segment(int maxSize) {
+            accounts = new LinkedHashMap<UUID, Account>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Account> eldest) {
+                    if (size() > maxSize) {
+                        evictions++;
+                        invalidations++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package eu.ammw.transfer.db;
+
+/**
+ * Thrown when a commit failed at a point where its changes may have been made durable nonetheless, e.g. while
+ * journaling them. Such a transaction must be neither retried nor compensated as if it had no effect; its outcome is
+ * settled by recovery.
+ */
+public class CommitOutcomeUnknownException extends RuntimeException {
+    public CommitOutcomeUnknownException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,9 @@
+package eu.ammw.transfer.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface ConnectionFactory {
+    Connection getConnection() throws SQLException;
+}
@@ -0,0 +1,107 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.db.InMemoryDatabaseService.DatabaseServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size pool of connections. Connections are opened lazily, up to the pool size, and keep their prepared
+ * statements between uses.
+ */
+public class ConnectionPool {
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final ConnectionFactory connectionFactory;
+    private final int size;
+    private final long timeoutMillis;
+    private final BlockingQueue<PooledConnection> idle;
+    private final AtomicInteger opened = new AtomicInteger();
+
+    public ConnectionPool(ConnectionFactory connectionFactory, int size) {
+        this(connectionFactory, size, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionPool(ConnectionFactory connectionFactory, int size, long timeoutMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Connection pool size must be positive: " + size);
+        }
+        this.connectionFactory = connectionFactory;
+        this.size = size;
+        this.timeoutMillis = timeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    public PooledConnection acquire() {
+        PooledConnection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        if (opened.getAndIncrement() < size) {
+            return open();
+        }
+        opened.decrementAndGet();
+        try {
+            connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseServiceException("Interrupted while waiting for connection", e);
+        }
+        if (connection == null) {
+            throw new DatabaseServiceException("No connection available within " + timeoutMillis + " ms");
+        }
+        return connection;
+    }
+
+    public void release(PooledConnection connection) {
+        idle.offer(connection);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private PooledConnection open() {
+        try {
+            PooledConnection connection = new PooledConnection(connectionFactory.getConnection());
+            LOGGER.info("Opened connection {} of {}", opened.get(), size);
+            return connection;
+        } catch (SQLException e) {
+            opened.decrementAndGet();
+            throw new DatabaseServiceException("Could not open connection", e);
+        }
+    }
+
+    public static class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public PreparedStatement statement(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+}
@@ -1,26 +1,143 @@
 package eu.ammw.transfer.db;
 
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
 import eu.ammw.transfer.model.Transfer;
 
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface DataSource {
     void commit();
 
+    /**
+     * Commits like {@link #commit()}, running {@code beforeCommit} once the transaction is known to be valid but before
+     * its changes become visible, e.g. to journal it first. If it throws, nothing is committed. Storages that check
+     * every write as it is made run it right before committing.
+     */
+    default void commit(Runnable beforeCommit) {
+        try {
+            beforeCommit.run();
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        commit();
+    }
+
     void rollback();
 
     void createAccount(Account account);
 
+    /**
+     * Sets the name and the whole balance of the account, folding its sub-balances into it.
+     */
     void updateAccount(Account account);
 
+    /**
+     * Returns the account with its balance including all its sub-balances.
+     */
     Optional<Account> getAccount(UUID id);
 
+    /**
+     * Returns the sub-balance of the account kept in the given slot, zero if nothing was added to it.
+     */
+    Money getSubBalance(UUID accountId, int slot);
+
+    /**
+     * Adds the change to the sub-balance of the account kept in the given slot. Sub-balances let writers of the same
+     * account change separate slots, rows or entries instead of all of them rewriting the account's own balance.
+     */
+    void addToSubBalance(UUID accountId, int slot, Money change);
+
+    /**
+     * Adds the amount to the balance of the account with a single write, without reading the account first.
+     * A negative amount is subtracted unconditionally. Returns the balance after it, including all sub-balances, or
+     * empty if there is no such account.
+     */
+    Optional<Money> credit(UUID accountId, Money amount);
+
+    /**
+     * Subtracts the amount from the balance of the account with a single write, provided that the balance including
+     * all sub-balances covers it. Returns the balance after it, or empty without writing anything if the balance is
+     * too low or there is no such account.
+     */
+    Optional<Money> debitIfSufficient(UUID accountId, Money amount);
+
     List<Account> getAllAccounts();
 
+    /**
+     * Passes all accounts to the consumer one by one, without collecting them first.
+     */
+    void forEachAccount(Consumer<Account> consumer);
+
+    /**
+     * Returns up to {@code limit} accounts ordered by ID, starting after account {@code after} (or from the first one).
+     */
+    List<Account> getAccounts(UUID after, int limit);
+
     List<Transfer> getHistory(UUID accountId);
 
+    /**
+     * Passes all transfers of the account to the consumer one by one, without collecting them first.
+     */
+    void forEachTransfer(UUID accountId, Consumer<Transfer> consumer);
+
+    /**
+     * Returns up to {@code limit} transfers of the account in the order they were made, starting after transfer
+     * {@code after} (or from the first one).
+     */
+    List<Transfer> getHistory(UUID accountId, UUID after, int limit);
+
+    /**
+     * Returns up to {@code limit} transfers of the account made from {@code from} (inclusive) until {@code to}
+     * (exclusive) in time order, starting after transfer {@code after} (or from the first one). Transfers without
+     * a timestamp are left out.
+     */
+    List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit);
+
+    /**
+     * Returns the account's buckets of the given resolution starting from {@code from} (inclusive) until {@code to}
+     * (exclusive) in time order. Buckets without transfers are left out.
+     */
+    List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to);
+
+    /**
+     * Returns the transfer with the given ID together with the balances recorded with it, with a single lookup.
+     */
+    Optional<Transfer> getTransfer(UUID id);
+
+    /**
+     * Records the transfer, including its balances after, in the same transaction as the updates of its accounts.
+     * The buckets of its accounts are updated in the same transaction as well.
+     */
     void createTransfer(Transfer transfer);
+
+    /**
+     * Records a transfer to an account held elsewhere, e.g. on another shard, whose amount was taken from its account
+     * here but not yet added to the other side. It is kept until removed, so that an interrupted transfer can be
+     * settled later. Only storages that can be sharded support it.
+     */
+    default void addReservation(Transfer transfer) {
+        throw new UnsupportedOperationException("Reservations are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Removes the reservation of the transfer once it was either completed or cancelled.
+     */
+    default void removeReservation(Transfer transfer) {
+        throw new UnsupportedOperationException("Reservations are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Returns the committed reservations that were not removed yet.
+     */
+    default List<Transfer> getReservations() {
+        return Collections.emptyList();
+    }
 }
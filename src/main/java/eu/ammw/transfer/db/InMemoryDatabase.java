@@ -11,7 +11,7 @@ import java.sql.Statement;
 public class InMemoryDatabase {
     private static final String JDBC_DRIVER = "org.h2.Driver";
     private static final String SQL_PATH = InMemoryDatabase.class.getResource("/db_init.sql").getPath();
-    private static final String DB_URL = "jdbc:h2:mem:transfer-api-db;INIT=RUNSCRIPT FROM '" + SQL_PATH + "'";
+    private static final String DB_URL = "jdbc:h2:mem:transfer-api-db;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM '" + SQL_PATH + "'";
     private static final String USER = "sa";
     private static final String PASS = "";
 
@@ -1,56 +1,86 @@
 package eu.ammw.transfer.db;
 
+import eu.ammw.transfer.db.ConnectionPool.PooledConnection;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
 import eu.ammw.transfer.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class InMemoryDatabaseService implements DataSource {
-    private static final String ALL_ACCOUNTS_QUERY = "SELECT id, name, balance FROM Accounts;";
-    private static final String ACCOUNT_SEARCH_QUERY = "SELECT id, name, balance FROM Accounts WHERE id=?;";
+    // the balance of an account includes its sub-balances, summed up with a lookup on the primary key of SubBalances
+    private static final String ACCOUNT_COLUMNS = "SELECT id, name, balance + COALESCE((SELECT SUM(s.balance) FROM SubBalances s WHERE s.account_id=a.id), 0) balance FROM Accounts a";
+    private static final String ALL_ACCOUNTS_QUERY = ACCOUNT_COLUMNS + ";";
+    private static final String FIRST_ACCOUNTS_PAGE_QUERY = ACCOUNT_COLUMNS + " ORDER BY id LIMIT ?;";
+    private static final String ACCOUNTS_PAGE_QUERY = ACCOUNT_COLUMNS + " WHERE id>? ORDER BY id LIMIT ?;";
+    private static final String ACCOUNT_SEARCH_QUERY = ACCOUNT_COLUMNS + " WHERE id=?;";
     private static final String ACCOUNT_INSERT_QUERY = "INSERT INTO Accounts VALUES (?, ?, ?);";
     private static final String ACCOUNT_UPDATE_QUERY = "UPDATE Accounts SET name=?, balance=? WHERE id=?;";
-    private static final String TRANSFER_HISTORY_QUERY = "SELECT id, account_from, account_to, amount FROM History WHERE account_from=? OR account_to=?;";
-    private static final String TRANSFER_INSERT_QUERY = "INSERT INTO History VALUES (?, ?, ?, ?);";
+    private static final String ACCOUNT_CREDIT_QUERY = "UPDATE Accounts SET balance=balance+? WHERE id=?;";
+    private static final String ACCOUNT_DEBIT_QUERY = "UPDATE Accounts a SET balance=balance-? WHERE id=? AND balance + COALESCE((SELECT SUM(s.balance) FROM SubBalances s WHERE s.account_id=a.id), 0)>=?;";
+    private static final String SUB_BALANCES_DELETE_QUERY = "DELETE FROM SubBalances WHERE account_id=?;";
+    private static final String SUB_BALANCE_QUERY = "SELECT balance FROM SubBalances WHERE account_id=? AND slot=?;";
+    private static final String SUB_BALANCE_MERGE_QUERY = "MERGE INTO SubBalances s USING (SELECT CAST(? AS UUID) account_id, CAST(? AS INT) slot, CAST(? AS BIGINT) change) v " +
+            "ON (s.account_id=v.account_id AND s.slot=v.slot) WHEN MATCHED THEN UPDATE SET balance=s.balance+v.change " +
+            "WHEN NOT MATCHED THEN INSERT VALUES (v.account_id, v.slot, v.change);";
+    // each branch is a range scan on its (account, seq) index; deposits and withdrawals match only the first one
+    private static final String TRANSFER_HISTORY_QUERY = "SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at, seq FROM History WHERE account_from=? " +
+            "UNION ALL SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at, seq FROM History WHERE account_to=? AND account_from<>? ORDER BY seq;";
+    private static final String TRANSFER_HISTORY_PAGE_QUERY = "(SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at, seq FROM History WHERE account_from=? AND seq>? ORDER BY seq LIMIT ?) " +
+            "UNION ALL (SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at, seq FROM History WHERE account_to=? AND account_from<>? AND seq>? ORDER BY seq LIMIT ?) ORDER BY seq LIMIT ?;";
+    // the same as the page query on the (account, created_at, seq) indexes, the last condition skipping the transfers up to the previous page;
+    // H2 stops reading a branch after its limit only when it is ordered by all index columns and the union is a derived table
+    private static final String TRANSFER_HISTORY_TIME_QUERY = "SELECT * FROM ((SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at, seq FROM History USE INDEX (idx_history_from_time) " +
+            "WHERE account_from=? AND created_at>=? AND created_at<? AND (created_at>? OR seq>?) ORDER BY account_from, created_at, seq LIMIT ?) " +
+            "UNION ALL (SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at, seq FROM History USE INDEX (idx_history_to_time) " +
+            "WHERE account_to=? AND account_from<>? AND created_at>=? AND created_at<? AND (created_at>? OR seq>?) ORDER BY account_to, created_at, seq LIMIT ?)) ORDER BY created_at, seq LIMIT ?;";
+    private static final String TRANSFER_SEQ_QUERY = "SELECT seq FROM History WHERE id=?;";
+    private static final String TRANSFER_POSITION_QUERY = "SELECT created_at, seq FROM History WHERE id=?;";
+    private static final String TRANSFER_SEARCH_QUERY = "SELECT id, account_from, account_to, amount, balance_from, balance_to, created_at FROM History WHERE id=?;";
+    private static final String TRANSFER_INSERT_QUERY = "INSERT INTO History (id, account_from, account_to, amount, balance_from, balance_to, created_at) VALUES (?, ?, ?, ?, ?, ?, ?);";
+    private static final String BUCKETS_QUERY = "SELECT start, transfers, credits, debits FROM Buckets WHERE account_id=? AND resolution=? AND start>=? AND start<? ORDER BY start;";
+    private static final String BUCKET_MERGE_QUERY = "MERGE INTO Buckets b USING (SELECT CAST(? AS UUID) account_id, CAST(? AS VARCHAR) resolution, CAST(? AS BIGINT) start, " +
+            "CAST(? AS BIGINT) credits, CAST(? AS BIGINT) debits) v ON (b.account_id=v.account_id AND b.resolution=v.resolution AND b.start=v.start) " +
+            "WHEN MATCHED THEN UPDATE SET transfers=b.transfers+1, credits=b.credits+v.credits, debits=b.debits+v.debits " +
+            "WHEN NOT MATCHED THEN INSERT VALUES (v.account_id, v.resolution, v.start, 1, v.credits, v.debits);";
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryDatabaseService.class);
+    // rows read with one connection by forEachAccount and forEachTransfer
+    private static final int STREAM_PAGE_SIZE = 1_000;
 
-    private final Connection connection;
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryDatabaseService.class);
 
-    private final PreparedStatement allAccountsStatement;
-    private final PreparedStatement accountSearchStatement;
-    private final PreparedStatement accountUpdateStatement;
-    private final PreparedStatement newAccountStatement;
-    private final PreparedStatement transferHistoryStatement;
-    private final PreparedStatement newTransferStatement;
+    private final ConnectionPool connectionPool;
+    private final ThreadLocal<PooledConnection> transaction = new ThreadLocal<>();
 
-    public InMemoryDatabaseService(Connection connection) throws SQLException {
-        this.connection = connection;
-        this.allAccountsStatement = connection.prepareStatement(ALL_ACCOUNTS_QUERY);
-        this.accountSearchStatement = connection.prepareStatement(ACCOUNT_SEARCH_QUERY);
-        this.accountUpdateStatement = connection.prepareStatement(ACCOUNT_UPDATE_QUERY);
-        this.newAccountStatement = connection.prepareStatement(ACCOUNT_INSERT_QUERY);
-        this.transferHistoryStatement = connection.prepareStatement(TRANSFER_HISTORY_QUERY);
-        this.newTransferStatement = connection.prepareStatement(TRANSFER_INSERT_QUERY);
+    /**
+     * A connection is bound to the calling thread from its first write until commit or rollback, so that concurrent
+     * transactions are isolated from each other. Reads outside of a transaction borrow a connection just for
+     * the duration of the query.
+     */
+    public InMemoryDatabaseService(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     @Override
     public void createAccount(Account account) {
         try {
+            PreparedStatement newAccountStatement = bind().statement(ACCOUNT_INSERT_QUERY);
             newAccountStatement.clearParameters();
             newAccountStatement.setString(1, account.getId().toString());
             newAccountStatement.setString(2, account.getName());
-            newAccountStatement.setBigDecimal(3, account.getBalance());
+            newAccountStatement.setLong(3, account.getBalance().getMinorUnits());
             newAccountStatement.executeUpdate();
         } catch (SQLException e) {
             throw new DatabaseServiceException("Could not create account", e);
@@ -60,43 +90,123 @@ public class InMemoryDatabaseService implements DataSource {
     @Override
     public void updateAccount(Account account) {
         try {
+            PooledConnection connection = bind();
+            PreparedStatement accountUpdateStatement = connection.statement(ACCOUNT_UPDATE_QUERY);
             accountUpdateStatement.clearParameters();
             accountUpdateStatement.setString(1, account.getName());
-            accountUpdateStatement.setBigDecimal(2, account.getBalance());
+            accountUpdateStatement.setLong(2, account.getBalance().getMinorUnits());
             accountUpdateStatement.setString(3, account.getId().toString());
             accountUpdateStatement.executeUpdate();
+            PreparedStatement subBalancesDeleteStatement = connection.statement(SUB_BALANCES_DELETE_QUERY);
+            subBalancesDeleteStatement.clearParameters();
+            subBalancesDeleteStatement.setString(1, account.getId().toString());
+            subBalancesDeleteStatement.executeUpdate();
         } catch (SQLException e) {
             throw new DatabaseServiceException("Could not update account", e);
         }
     }
 
+    @Override
+    public Money getSubBalance(UUID accountId, int slot) {
+        try {
+            return read(connection -> {
+                PreparedStatement subBalanceStatement = connection.statement(SUB_BALANCE_QUERY);
+                subBalanceStatement.clearParameters();
+                subBalanceStatement.setString(1, accountId.toString());
+                subBalanceStatement.setInt(2, slot);
+                ResultSet resultSet = subBalanceStatement.executeQuery();
+                return resultSet.next() ? Money.ofMinorUnits(resultSet.getLong(1)) : Money.ZERO;
+            });
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve sub-balance " + slot + " of account " + accountId,
+                    e);
+        }
+    }
+
+    @Override
+    public void addToSubBalance(UUID accountId, int slot, Money change) {
+        if (slot < 0) {
+            throw new IllegalArgumentException("Negative slot: " + slot);
+        }
+        try {
+            PreparedStatement subBalanceMergeStatement = bind().statement(SUB_BALANCE_MERGE_QUERY);
+            subBalanceMergeStatement.clearParameters();
+            subBalanceMergeStatement.setString(1, accountId.toString());
+            subBalanceMergeStatement.setInt(2, slot);
+            subBalanceMergeStatement.setLong(3, change.getMinorUnits());
+            subBalanceMergeStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not update sub-balance " + slot + " of account " + accountId, e);
+        }
+    }
+
+    @Override
+    public Optional<Money> credit(UUID accountId, Money amount) {
+        try {
+            PreparedStatement accountCreditStatement = bind().statement(ACCOUNT_CREDIT_QUERY);
+            accountCreditStatement.clearParameters();
+            accountCreditStatement.setLong(1, amount.getMinorUnits());
+            accountCreditStatement.setString(2, accountId.toString());
+            return accountCreditStatement.executeUpdate() == 0 ? Optional.empty() : getBalance(accountId);
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not credit account " + accountId, e);
+        }
+    }
+
+    @Override
+    public Optional<Money> debitIfSufficient(UUID accountId, Money amount) {
+        try {
+            PreparedStatement accountDebitStatement = bind().statement(ACCOUNT_DEBIT_QUERY);
+            accountDebitStatement.clearParameters();
+            accountDebitStatement.setLong(1, amount.getMinorUnits());
+            accountDebitStatement.setString(2, accountId.toString());
+            accountDebitStatement.setLong(3, amount.getMinorUnits());
+            return accountDebitStatement.executeUpdate() == 0 ? Optional.empty() : getBalance(accountId);
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not debit account " + accountId, e);
+        }
+    }
+
+    /**
+     * Reads the balance left by an update in the current transaction, which keeps the row locked until it ends.
+     */
+    private Optional<Money> getBalance(UUID accountId) {
+        return getAccount(accountId).map(Account::getBalance);
+    }
+
     @Override
     public Optional<Account> getAccount(UUID id) {
         try {
-            accountSearchStatement.clearParameters();
-            accountSearchStatement.setString(1, id.toString());
-            ResultSet resultSet = accountSearchStatement.executeQuery();
-            if (resultSet.next()) {
-                Account account = getAccount(resultSet);
+            return read(connection -> {
+                PreparedStatement accountSearchStatement = connection.statement(ACCOUNT_SEARCH_QUERY);
+                accountSearchStatement.clearParameters();
+                accountSearchStatement.setString(1, id.toString());
+                ResultSet resultSet = accountSearchStatement.executeQuery();
                 if (resultSet.next()) {
-                    throw new DatabaseServiceException("Multiple results for account ID " + id);
+                    Account account = getAccount(resultSet);
+                    if (resultSet.next()) {
+                        throw new DatabaseServiceException("Multiple results for account ID " + id);
+                    }
+                    return Optional.of(account);
                 }
-                return Optional.of(account);
-            }
+                return Optional.empty();
+            });
         } catch (SQLException e) {
             throw new DatabaseServiceException("Could not retrieve account for ID " + id, e);
         }
-        return Optional.empty();
     }
 
     @Override
     public List<Account> getAllAccounts() {
         try {
-            ResultSet resultSet = allAccountsStatement.executeQuery();
-            List<Account> accounts = new ArrayList<>();
-            while (resultSet.next()) {
-                accounts.add(getAccount(resultSet));
-            }
+            List<Account> accounts = read(connection -> {
+                ResultSet resultSet = connection.statement(ALL_ACCOUNTS_QUERY).executeQuery();
+                List<Account> result = new ArrayList<>();
+                while (resultSet.next()) {
+                    result.add(getAccount(resultSet));
+                }
+                return result;
+            });
             LOGGER.info("Retrieved {} accounts", accounts.size());
             return accounts;
         } catch (SQLException e) {
@@ -104,18 +214,68 @@ public class InMemoryDatabaseService implements DataSource {
         }
     }
 
+    /**
+     * Reads the accounts in pages of {@link #STREAM_PAGE_SIZE}, releasing the connection between them, so that a slow
+     * consumer does not hold a pooled connection. Accounts changed while they are read may be seen before or after the
+     * change.
+     */
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        UUID after = null;
+        List<Account> page;
+        do {
+            page = getAccounts(after, STREAM_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        try {
+            return read(connection -> {
+                PreparedStatement accountsPageStatement;
+                if (after == null) {
+                    accountsPageStatement = connection.statement(FIRST_ACCOUNTS_PAGE_QUERY);
+                    accountsPageStatement.clearParameters();
+                    accountsPageStatement.setInt(1, limit);
+                } else {
+                    accountsPageStatement = connection.statement(ACCOUNTS_PAGE_QUERY);
+                    accountsPageStatement.clearParameters();
+                    accountsPageStatement.setString(1, after.toString());
+                    accountsPageStatement.setInt(2, limit);
+                }
+                ResultSet resultSet = accountsPageStatement.executeQuery();
+                List<Account> result = new ArrayList<>(limit);
+                while (resultSet.next()) {
+                    result.add(getAccount(resultSet));
+                }
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve accounts", e);
+        }
+    }
+
     @Override
     public List<Transfer> getHistory(UUID accountId) {
         try {
-            transferHistoryStatement.clearParameters();
-            transferHistoryStatement.setString(1, accountId.toString());
-            transferHistoryStatement.setString(2, accountId.toString());
-            ResultSet resultSet = transferHistoryStatement.executeQuery();
+            List<Transfer> history = read(connection -> {
+                PreparedStatement transferHistoryStatement = connection.statement(TRANSFER_HISTORY_QUERY);
+                transferHistoryStatement.clearParameters();
+                transferHistoryStatement.setString(1, accountId.toString());
+                transferHistoryStatement.setString(2, accountId.toString());
+                transferHistoryStatement.setString(3, accountId.toString());
+                ResultSet resultSet = transferHistoryStatement.executeQuery();
 
-            List<Transfer> history = new ArrayList<>();
-            while (resultSet.next()) {
-                history.add(getTransfer(resultSet));
-            }
+                List<Transfer> result = new ArrayList<>();
+                while (resultSet.next()) {
+                    result.add(getTransfer(resultSet));
+                }
+                return result;
+            });
             LOGGER.info("Retrieved {} transfers", history.size());
             return history;
         } catch (SQLException e) {
@@ -123,24 +283,231 @@ public class InMemoryDatabaseService implements DataSource {
         }
     }
 
+    /**
+     * Reads the history in pages of {@link #STREAM_PAGE_SIZE} as {@link #forEachAccount(Consumer)} does.
+     */
+    @Override
+    public void forEachTransfer(UUID accountId, Consumer<Transfer> consumer) {
+        try {
+            List<Transfer> page = new ArrayList<>(STREAM_PAGE_SIZE);
+            long afterSeq = 0;
+            do {
+                page.clear();
+                long previousSeq = afterSeq;
+                afterSeq = read(connection ->
+                        readHistoryPage(connection, accountId, previousSeq, STREAM_PAGE_SIZE, page::add));
+                page.forEach(consumer);
+            } while (page.size() == STREAM_PAGE_SIZE);
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve history", e);
+        }
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, UUID after, int limit) {
+        try {
+            return read(connection -> {
+                long afterSeq = after == null ? 0 : getSequence(connection, after);
+                List<Transfer> result = new ArrayList<>(limit);
+                readHistoryPage(connection, accountId, afterSeq, limit, result::add);
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve history", e);
+        }
+    }
+
+    /**
+     * Reads up to {@code limit} transfers of the account after the given sequence number and returns the sequence
+     * number of the last one read, or {@code afterSeq} when there are none.
+     */
+    private long readHistoryPage(PooledConnection connection, UUID accountId, long afterSeq, int limit,
+                                 Consumer<Transfer> consumer) throws SQLException {
+        PreparedStatement historyPageStatement = connection.statement(TRANSFER_HISTORY_PAGE_QUERY);
+        historyPageStatement.clearParameters();
+        historyPageStatement.setString(1, accountId.toString());
+        historyPageStatement.setLong(2, afterSeq);
+        historyPageStatement.setInt(3, limit);
+        historyPageStatement.setString(4, accountId.toString());
+        historyPageStatement.setString(5, accountId.toString());
+        historyPageStatement.setLong(6, afterSeq);
+        historyPageStatement.setInt(7, limit);
+        historyPageStatement.setInt(8, limit);
+        long lastSeq = afterSeq;
+        try (ResultSet resultSet = historyPageStatement.executeQuery()) {
+            while (resultSet.next()) {
+                consumer.accept(getTransfer(resultSet));
+                lastSeq = resultSet.getLong("seq");
+            }
+        }
+        return lastSeq;
+    }
+
+    private long getSequence(PooledConnection connection, UUID transferId) throws SQLException {
+        PreparedStatement transferSeqStatement = connection.statement(TRANSFER_SEQ_QUERY);
+        transferSeqStatement.clearParameters();
+        transferSeqStatement.setString(1, transferId.toString());
+        ResultSet resultSet = transferSeqStatement.executeQuery();
+        if (!resultSet.next()) {
+            throw new IllegalArgumentException("No transfer with ID " + transferId);
+        }
+        return resultSet.getLong(1);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit) {
+        try {
+            return read(connection -> {
+                long afterTimestamp = from.toEpochMilli();
+                long afterSeq = 0;
+                if (after != null) {
+                    PreparedStatement transferPositionStatement = connection.statement(TRANSFER_POSITION_QUERY);
+                    transferPositionStatement.clearParameters();
+                    transferPositionStatement.setString(1, after.toString());
+                    ResultSet position = transferPositionStatement.executeQuery();
+                    if (!position.next()) {
+                        throw new IllegalArgumentException("No transfer with ID " + after);
+                    }
+                    afterTimestamp = position.getLong(1);
+                    afterSeq = position.getLong(2);
+                }
+                long lower = Math.max(from.toEpochMilli(), afterTimestamp);
+                PreparedStatement historyTimeStatement = connection.statement(TRANSFER_HISTORY_TIME_QUERY);
+                historyTimeStatement.clearParameters();
+                historyTimeStatement.setString(1, accountId.toString());
+                setTimeRange(historyTimeStatement, 2, lower, to.toEpochMilli(), afterTimestamp, afterSeq);
+                historyTimeStatement.setInt(6, limit);
+                historyTimeStatement.setString(7, accountId.toString());
+                historyTimeStatement.setString(8, accountId.toString());
+                setTimeRange(historyTimeStatement, 9, lower, to.toEpochMilli(), afterTimestamp, afterSeq);
+                historyTimeStatement.setInt(13, limit);
+                historyTimeStatement.setInt(14, limit);
+                ResultSet resultSet = historyTimeStatement.executeQuery();
+
+                List<Transfer> result = new ArrayList<>(limit);
+                while (resultSet.next()) {
+                    result.add(getTransfer(resultSet));
+                }
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve history", e);
+        }
+    }
+
+    private static void setTimeRange(PreparedStatement statement, int index, long from, long to, long afterTimestamp,
+                                     long afterSeq) throws SQLException {
+        statement.setLong(index, from);
+        statement.setLong(index + 1, to);
+        statement.setLong(index + 2, afterTimestamp);
+        statement.setLong(index + 3, afterSeq);
+    }
+
+    @Override
+    public List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to) {
+        try {
+            return read(connection -> {
+                PreparedStatement bucketsStatement = connection.statement(BUCKETS_QUERY);
+                bucketsStatement.clearParameters();
+                bucketsStatement.setString(1, accountId.toString());
+                bucketsStatement.setString(2, resolution.name());
+                bucketsStatement.setLong(3, from.toEpochMilli());
+                bucketsStatement.setLong(4, to.toEpochMilli());
+                ResultSet resultSet = bucketsStatement.executeQuery();
+
+                List<Bucket> result = new ArrayList<>();
+                while (resultSet.next()) {
+                    result.add(new Bucket(Instant.ofEpochMilli(resultSet.getLong("start")),
+                            resultSet.getLong("transfers"), Money.ofMinorUnits(resultSet.getLong("credits")),
+                            Money.ofMinorUnits(resultSet.getLong("debits"))));
+                }
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve buckets", e);
+        }
+    }
+
     @Override
     public void createTransfer(Transfer transfer) {
         try {
+            PooledConnection connection = bind();
+            PreparedStatement newTransferStatement = connection.statement(TRANSFER_INSERT_QUERY);
             newTransferStatement.clearParameters();
             newTransferStatement.setString(1, transfer.getId().toString());
             newTransferStatement.setString(2, transfer.getFrom().toString());
             newTransferStatement.setString(3, transfer.getTo().toString());
-            newTransferStatement.setBigDecimal(4, transfer.getAmount());
+            newTransferStatement.setLong(4, transfer.getAmount().getMinorUnits());
+            setBalance(newTransferStatement, 5, transfer.getFromBalanceAfter());
+            setBalance(newTransferStatement, 6, transfer.getToBalanceAfter());
+            if (transfer.getTimestamp() == null) {
+                newTransferStatement.setNull(7, Types.BIGINT);
+            } else {
+                newTransferStatement.setLong(7, transfer.getTimestamp().toEpochMilli());
+            }
             newTransferStatement.executeUpdate();
+            if (transfer.getTimestamp() != null) {
+                updateBuckets(connection, transfer);
+            }
         } catch (SQLException e) {
             throw new DatabaseServiceException("Could not create transfer", e);
         }
     }
 
+    private void updateBuckets(PooledConnection connection, Transfer transfer) throws SQLException {
+        PreparedStatement bucketMergeStatement = connection.statement(BUCKET_MERGE_QUERY);
+        bucketMergeStatement.clearParameters();
+        addBuckets(bucketMergeStatement, transfer, transfer.getFrom());
+        if (!transfer.getTo().equals(transfer.getFrom())) {
+            addBuckets(bucketMergeStatement, transfer, transfer.getTo());
+        }
+        bucketMergeStatement.executeBatch();
+    }
+
+    private static void addBuckets(PreparedStatement statement, Transfer transfer, UUID accountId) throws SQLException {
+        long change = transfer.getSignedAmount(accountId).getMinorUnits();
+        for (Bucket.Resolution resolution : Bucket.Resolution.values()) {
+            statement.setString(1, accountId.toString());
+            statement.setString(2, resolution.name());
+            statement.setLong(3, resolution.startOf(transfer.getTimestamp().toEpochMilli()));
+            statement.setLong(4, Math.max(change, 0));
+            statement.setLong(5, Math.max(-change, 0));
+            statement.addBatch();
+        }
+    }
+
+    @Override
+    public Optional<Transfer> getTransfer(UUID id) {
+        try {
+            return read(connection -> {
+                PreparedStatement transferSearchStatement = connection.statement(TRANSFER_SEARCH_QUERY);
+                transferSearchStatement.clearParameters();
+                transferSearchStatement.setString(1, id.toString());
+                ResultSet resultSet = transferSearchStatement.executeQuery();
+                return resultSet.next() ? Optional.of(getTransfer(resultSet)) : Optional.<Transfer>empty();
+            });
+        } catch (SQLException e) {
+            throw new DatabaseServiceException("Could not retrieve transfer " + id, e);
+        }
+    }
+
+    private static void setBalance(PreparedStatement statement, int index, Money balance) throws SQLException {
+        if (balance == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, balance.getMinorUnits());
+        }
+    }
+
+    private static Money getBalance(ResultSet resultSet, String column) throws SQLException {
+        long balance = resultSet.getLong(column);
+        return resultSet.wasNull() ? null : Money.ofMinorUnits(balance);
+    }
+
     private Account getAccount(ResultSet resultSet) throws SQLException {
         UUID uuid = UUID.fromString(resultSet.getString("id"));
         String name = resultSet.getString("name");
-        BigDecimal balance = resultSet.getBigDecimal("balance");
+        Money balance = Money.ofMinorUnits(resultSet.getLong("balance"));
         return new Account(uuid, name, balance);
     }
 
@@ -148,26 +515,71 @@ public class InMemoryDatabaseService implements DataSource {
         UUID uuid = UUID.fromString(resultSet.getString("id"));
         UUID from = UUID.fromString(resultSet.getString("account_from"));
         UUID to = UUID.fromString(resultSet.getString("account_to"));
-        BigDecimal amount = resultSet.getBigDecimal("amount");
-        return new Transfer(uuid, from, to, amount);
+        Money amount = Money.ofMinorUnits(resultSet.getLong("amount"));
+        long createdAt = resultSet.getLong("created_at");
+        Instant timestamp = resultSet.wasNull() ? null : Instant.ofEpochMilli(createdAt);
+        return new Transfer(uuid, from, to, amount, timestamp, getBalance(resultSet, "balance_from"),
+                getBalance(resultSet, "balance_to"));
     }
 
     @Override
     public void commit() {
+        PooledConnection connection = transaction.get();
+        if (connection == null) {
+            return;
+        }
         try {
-            connection.commit();
+            connection.getConnection().commit();
         } catch (SQLException e) {
             throw new DatabaseServiceException("Could not commit", e);
         }
+        unbind(connection);
     }
 
     @Override
     public void rollback() {
+        PooledConnection connection = transaction.get();
+        if (connection == null) {
+            return;
+        }
         try {
-            connection.rollback();
+            connection.getConnection().rollback();
         } catch (SQLException e) {
-            throw new DatabaseServiceException("Could not commit", e);
+            throw new DatabaseServiceException("Could not rollback", e);
+        } finally {
+            unbind(connection);
+        }
+    }
+
+    private PooledConnection bind() {
+        PooledConnection connection = transaction.get();
+        if (connection == null) {
+            connection = connectionPool.acquire();
+            transaction.set(connection);
         }
+        return connection;
+    }
+
+    private void unbind(PooledConnection connection) {
+        transaction.remove();
+        connectionPool.release(connection);
+    }
+
+    private <T> T read(Query<T> query) throws SQLException {
+        PooledConnection connection = transaction.get();
+        if (connection != null) {
+            return query.execute(connection);
+        }
+        connection = connectionPool.acquire();
+        try {
+            return query.execute(connection);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    private interface Query<T> {
+        T execute(PooledConnection connection) throws SQLException;
     }
 
     public static class DatabaseServiceException extends RuntimeException {
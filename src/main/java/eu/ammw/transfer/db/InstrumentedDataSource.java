@@ -0,0 +1,297 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.metrics.LatencyHistogram;
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Records the latency of every call to another data source in a histogram per method, failed calls included.
+ * Overloaded methods are told apart by a suffix, and the time of the {@code forEach} methods includes the consumer.
+ * Instances wrapping different data sources with the same registry share the histograms.
+ */
+public class InstrumentedDataSource implements DataSource {
+    static final String CALL_DURATION = "datasource_call_duration_seconds";
+
+    private final DataSource dataSource;
+    private final LatencyHistogram commit;
+    private final LatencyHistogram rollback;
+    private final LatencyHistogram createAccount;
+    private final LatencyHistogram updateAccount;
+    private final LatencyHistogram getAccount;
+    private final LatencyHistogram getSubBalance;
+    private final LatencyHistogram addToSubBalance;
+    private final LatencyHistogram credit;
+    private final LatencyHistogram debitIfSufficient;
+    private final LatencyHistogram getAllAccounts;
+    private final LatencyHistogram forEachAccount;
+    private final LatencyHistogram getAccounts;
+    private final LatencyHistogram getHistory;
+    private final LatencyHistogram forEachTransfer;
+    private final LatencyHistogram getHistoryPage;
+    private final LatencyHistogram getHistoryInRange;
+    private final LatencyHistogram getBuckets;
+    private final LatencyHistogram getTransfer;
+    private final LatencyHistogram createTransfer;
+    private final LatencyHistogram addReservation;
+    private final LatencyHistogram removeReservation;
+    private final LatencyHistogram getReservations;
+
+    public InstrumentedDataSource(DataSource dataSource, MetricsRegistry metricsRegistry) {
+        this.dataSource = dataSource;
+        this.commit = histogram(metricsRegistry, "commit");
+        this.rollback = histogram(metricsRegistry, "rollback");
+        this.createAccount = histogram(metricsRegistry, "createAccount");
+        this.updateAccount = histogram(metricsRegistry, "updateAccount");
+        this.getAccount = histogram(metricsRegistry, "getAccount");
+        this.getSubBalance = histogram(metricsRegistry, "getSubBalance");
+        this.addToSubBalance = histogram(metricsRegistry, "addToSubBalance");
+        this.credit = histogram(metricsRegistry, "credit");
+        this.debitIfSufficient = histogram(metricsRegistry, "debitIfSufficient");
+        this.getAllAccounts = histogram(metricsRegistry, "getAllAccounts");
+        this.forEachAccount = histogram(metricsRegistry, "forEachAccount");
+        this.getAccounts = histogram(metricsRegistry, "getAccounts");
+        this.getHistory = histogram(metricsRegistry, "getHistory");
+        this.forEachTransfer = histogram(metricsRegistry, "forEachTransfer");
+        this.getHistoryPage = histogram(metricsRegistry, "getHistoryPage");
+        this.getHistoryInRange = histogram(metricsRegistry, "getHistoryInRange");
+        this.getBuckets = histogram(metricsRegistry, "getBuckets");
+        this.getTransfer = histogram(metricsRegistry, "getTransfer");
+        this.createTransfer = histogram(metricsRegistry, "createTransfer");
+        this.addReservation = histogram(metricsRegistry, "addReservation");
+        this.removeReservation = histogram(metricsRegistry, "removeReservation");
+        this.getReservations = histogram(metricsRegistry, "getReservations");
+    }
+
+    private static LatencyHistogram histogram(MetricsRegistry metricsRegistry, String method) {
+        return metricsRegistry.histogram(CALL_DURATION, "Time spent in calls to the data source.", "method", method);
+    }
+
+    @Override
+    public void commit() {
+        long start = System.nanoTime();
+        try {
+            dataSource.commit();
+        } finally {
+            commit.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void rollback() {
+        long start = System.nanoTime();
+        try {
+            dataSource.rollback();
+        } finally {
+            rollback.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        long start = System.nanoTime();
+        try {
+            dataSource.createAccount(account);
+        } finally {
+            createAccount.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void updateAccount(Account account) {
+        long start = System.nanoTime();
+        try {
+            dataSource.updateAccount(account);
+        } finally {
+            updateAccount.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<Account> getAccount(UUID id) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getAccount(id);
+        } finally {
+            getAccount.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Money getSubBalance(UUID accountId, int slot) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getSubBalance(accountId, slot);
+        } finally {
+            getSubBalance.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void addToSubBalance(UUID accountId, int slot, Money change) {
+        long start = System.nanoTime();
+        try {
+            dataSource.addToSubBalance(accountId, slot, change);
+        } finally {
+            addToSubBalance.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<Money> credit(UUID accountId, Money amount) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.credit(accountId, amount);
+        } finally {
+            credit.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<Money> debitIfSufficient(UUID accountId, Money amount) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.debitIfSufficient(accountId, amount);
+        } finally {
+            debitIfSufficient.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getAllAccounts();
+        } finally {
+            getAllAccounts.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        long start = System.nanoTime();
+        try {
+            dataSource.forEachAccount(consumer);
+        } finally {
+            forEachAccount.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getAccounts(after, limit);
+        } finally {
+            getAccounts.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getHistory(accountId);
+        } finally {
+            getHistory.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void forEachTransfer(UUID accountId, Consumer<Transfer> consumer) {
+        long start = System.nanoTime();
+        try {
+            dataSource.forEachTransfer(accountId, consumer);
+        } finally {
+            forEachTransfer.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, UUID after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getHistory(accountId, after, limit);
+        } finally {
+            getHistoryPage.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getHistory(accountId, from, to, after, limit);
+        } finally {
+            getHistoryInRange.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getBuckets(accountId, resolution, from, to);
+        } finally {
+            getBuckets.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<Transfer> getTransfer(UUID id) {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getTransfer(id);
+        } finally {
+            getTransfer.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void createTransfer(Transfer transfer) {
+        long start = System.nanoTime();
+        try {
+            dataSource.createTransfer(transfer);
+        } finally {
+            createTransfer.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void addReservation(Transfer transfer) {
+        long start = System.nanoTime();
+        try {
+            dataSource.addReservation(transfer);
+        } finally {
+            addReservation.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void removeReservation(Transfer transfer) {
+        long start = System.nanoTime();
+        try {
+            dataSource.removeReservation(transfer);
+        } finally {
+            removeReservation.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Transfer> getReservations() {
+        long start = System.nanoTime();
+        try {
+            return dataSource.getReservations();
+        } finally {
+            getReservations.record(System.nanoTime() - start);
+        }
+    }
+}
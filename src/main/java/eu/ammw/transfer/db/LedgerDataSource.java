@@ -0,0 +1,667 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * Keeps accounts and their history in plain Java structures instead of a database. Balances are stored as longs
+ * counting minor units (cents) and every account has an append-only log of its transfers, so lookups involve neither
+ * SQL nor conversions to and from strings.
+ * <p>
+ * Writes are buffered per thread and validated and applied together on commit, or dropped on rollback.
+ * Commits are serialized, while reads never block: a single account is always read consistently, but a listing taken
+ * while a transaction is being applied may show only part of it.
+ * <p>
+ * A partial ledger holds only some of the accounts, e.g. one shard of them. It accepts transfers with one side held
+ * elsewhere and keeps them in the history of its own side.
+ * <p>
+ * Transfers with a timestamp are also indexed by time per account, and added to the account's hourly and daily
+ * buckets as they are applied.
+ * <p>
+ * Sub-balances are kept next to the account's own balance and replaced together with it, so that readers always see
+ * their sum as of a single commit.
+ * <p>
+ * Credits and debits are buffered as changes of the balance rather than as the balance they lead to. A debit is checked
+ * against the balance again on commit, so that concurrent transactions cannot take the same money twice.
+ * <p>
+ * Reservations are kept by transfer ID and added or removed on commit together with the rest of the transaction.
+ */
+public class LedgerDataSource implements DataSource {
+    // the same order as UUIDs compared by their text, so that pages match those of the database
+    static final Comparator<UUID> ID_ORDER = (first, second) -> {
+        int high = Long.compareUnsigned(first.getMostSignificantBits(), second.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(first.getLeastSignificantBits(), second.getLeastSignificantBits());
+    };
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LedgerDataSource.class);
+    // marks a balance or timestamp that was not recorded with the transfer
+    private static final long NO_BALANCE = Long.MIN_VALUE;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final Runnable NOTHING = () -> {
+    };
+    // sequence numbers start at 1, so a probe with sequence 0 sorts before all transfers made at its time
+    private static final Comparator<Record> TIME_ORDER = Comparator.<Record>comparingLong(record -> record.timestamp)
+            .thenComparingLong(record -> record.seq);
+
+    private final ConcurrentMap<UUID, Entry> accounts = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<UUID, Entry> accountsById = new ConcurrentSkipListMap<>(ID_ORDER);
+    private final ConcurrentMap<UUID, Record> transfers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Transfer> reservations = new ConcurrentHashMap<>();
+    private final ThreadLocal<Transaction> transaction = new ThreadLocal<>();
+    private final Object commitLock = new Object();
+    private final boolean partial;
+    private long sequence;
+
+    public LedgerDataSource() {
+        this(false);
+    }
+
+    public LedgerDataSource(boolean partial) {
+        this.partial = partial;
+    }
+
+    @Override
+    public void commit() {
+        commit(NOTHING);
+    }
+
+    /**
+     * Runs {@code beforeCommit} after the transaction was validated and under the commit lock, so that it sees the
+     * transactions in the order they are applied and is never followed by a rejection.
+     */
+    @Override
+    public void commit(Runnable beforeCommit) {
+        Transaction pending = transaction.get();
+        transaction.remove();
+        synchronized (commitLock) {
+            if (pending != null) {
+                validate(pending);
+            }
+            beforeCommit.run();
+            if (pending == null) {
+                return;
+            }
+            pending.accounts.values().forEach(this::apply);
+            pending.subBalanceChanges.forEach(this::apply);
+            pending.balanceChanges.forEach(this::apply);
+            pending.transfers.forEach(this::apply);
+            pending.reservations.forEach(this::apply);
+        }
+    }
+
+    @Override
+    public void rollback() {
+        transaction.remove();
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        Transaction pending = bind();
+        if (accounts.containsKey(account.getId()) || pending.accounts.containsKey(account.getId())) {
+            throw new LedgerException("Account " + account.getId() + " already exists");
+        }
+        pending.accounts.put(account.getId(), copy(account));
+        pending.created.add(account.getId());
+    }
+
+    @Override
+    public void updateAccount(Account account) {
+        Transaction pending = bind();
+        if (!accounts.containsKey(account.getId()) && !pending.accounts.containsKey(account.getId())) {
+            throw new LedgerException("No account with ID " + account.getId());
+        }
+        pending.accounts.put(account.getId(), copy(account));
+        pending.subBalanceChanges.remove(account.getId());
+        pending.balanceChanges.remove(account.getId());
+        pending.debited.remove(account.getId());
+    }
+
+    @Override
+    public Optional<Account> getAccount(UUID id) {
+        Transaction pending = transaction.get();
+        Account account;
+        if (pending != null && pending.accounts.containsKey(id)) {
+            account = copy(pending.accounts.get(id));
+        } else {
+            Entry entry = accounts.get(id);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            account = entry.toAccount();
+        }
+        if (pending != null) {
+            account.setBalance(account.getBalance().plus(Money.ofMinorUnits(pending.getChange(id))));
+        }
+        return Optional.of(account);
+    }
+
+    @Override
+    public Money getSubBalance(UUID accountId, int slot) {
+        Transaction pending = transaction.get();
+        long balance = 0;
+        if (pending == null || !pending.accounts.containsKey(accountId)) {
+            Entry entry = accounts.get(accountId);
+            balance = entry == null ? 0 : entry.getSubBalance(slot);
+        }
+        long[] changes = pending == null ? null : pending.subBalanceChanges.get(accountId);
+        if (changes != null && slot < changes.length) {
+            balance += changes[slot];
+        }
+        return Money.ofMinorUnits(balance);
+    }
+
+    @Override
+    public void addToSubBalance(UUID accountId, int slot, Money change) {
+        if (slot < 0) {
+            throw new IllegalArgumentException("Negative slot: " + slot);
+        }
+        Transaction pending = bind();
+        if (!accounts.containsKey(accountId) && !pending.accounts.containsKey(accountId)) {
+            throw new LedgerException("No account with ID " + accountId);
+        }
+        long[] changes = pending.subBalanceChanges.get(accountId);
+        if (changes == null || changes.length <= slot) {
+            changes = changes == null ? new long[slot + 1] : Arrays.copyOf(changes, slot + 1);
+            pending.subBalanceChanges.put(accountId, changes);
+        }
+        changes[slot] = Math.addExact(changes[slot], change.getMinorUnits());
+    }
+
+    @Override
+    public Optional<Money> credit(UUID accountId, Money amount) {
+        Optional<Money> balance = getAccount(accountId).map(account -> account.getBalance().plus(amount));
+        balance.ifPresent(after -> addToBalance(bind(), accountId, amount.getMinorUnits()));
+        return balance;
+    }
+
+    @Override
+    public Optional<Money> debitIfSufficient(UUID accountId, Money amount) {
+        Optional<Money> balance = getAccount(accountId).map(account -> account.getBalance().minus(amount))
+                .filter(after -> after.signum() >= 0);
+        balance.ifPresent(after -> {
+            Transaction pending = bind();
+            addToBalance(pending, accountId, Math.negateExact(amount.getMinorUnits()));
+            pending.debited.add(accountId);
+        });
+        return balance;
+    }
+
+    private static void addToBalance(Transaction pending, UUID accountId, long change) {
+        Account written = pending.accounts.get(accountId);
+        if (written != null) {
+            // the account is replaced as a whole anyway, which makes the change part of it
+            written.setBalance(written.getBalance().plus(Money.ofMinorUnits(change)));
+        } else {
+            pending.balanceChanges.merge(accountId, change, Math::addExact);
+        }
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> result = new ArrayList<>(accounts.size());
+        forEachAccount(result::add);
+        LOGGER.info("Retrieved {} accounts", result.size());
+        return result;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        accountsById.values().forEach(entry -> consumer.accept(entry.toAccount()));
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        Map<UUID, Entry> page = after == null ? accountsById : accountsById.tailMap(after, false);
+        List<Account> result = new ArrayList<>(limit);
+        for (Entry entry : page.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(entry.toAccount());
+        }
+        return result;
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId) {
+        List<Transfer> history = new ArrayList<>();
+        forEachTransfer(accountId, history::add);
+        LOGGER.info("Retrieved {} transfers", history.size());
+        return history;
+    }
+
+    @Override
+    public void forEachTransfer(UUID accountId, Consumer<Transfer> consumer) {
+        Entry entry = accounts.get(accountId);
+        if (entry != null) {
+            entry.history.forEach(0, Integer.MAX_VALUE, consumer);
+        }
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, UUID after, int limit) {
+        long afterSeq = 0;
+        if (after != null) {
+            Record record = transfers.get(after);
+            if (record == null) {
+                throw new IllegalArgumentException("No transfer with ID " + after);
+            }
+            afterSeq = record.seq;
+        }
+        List<Transfer> result = new ArrayList<>(limit);
+        Entry entry = accounts.get(accountId);
+        if (entry != null) {
+            entry.history.forEach(entry.history.indexAfter(afterSeq), limit, result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit) {
+        Record start = Record.probe(from.toEpochMilli());
+        Record end = Record.probe(to.toEpochMilli());
+        if (after != null) {
+            Record record = transfers.get(after);
+            if (record == null) {
+                throw new IllegalArgumentException("No transfer with ID " + after);
+            }
+            if (TIME_ORDER.compare(record, start) > 0) {
+                start = record;
+            }
+        }
+        Entry entry = accounts.get(accountId);
+        Activity activity = entry == null ? null : entry.activity;
+        if (activity == null || TIME_ORDER.compare(start, end) >= 0) {
+            return Collections.emptyList();
+        }
+        List<Transfer> result = new ArrayList<>(limit);
+        for (Record record : activity.byTime.subSet(start, false, end, false)) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(record.toTransfer());
+        }
+        return result;
+    }
+
+    @Override
+    public List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to) {
+        Entry entry = accounts.get(accountId);
+        Activity activity = entry == null ? null : entry.activity;
+        if (activity == null || !from.isBefore(to)) {
+            return Collections.emptyList();
+        }
+        List<Bucket> result = new ArrayList<>();
+        activity.buckets.get(resolution).subMap(from.toEpochMilli(), true, to.toEpochMilli(), false)
+                .forEach((start, totals) -> result.add(totals.toBucket(start)));
+        return result;
+    }
+
+    @Override
+    public Optional<Transfer> getTransfer(UUID id) {
+        Record record = transfers.get(id);
+        return record == null ? Optional.empty() : Optional.of(record.toTransfer());
+    }
+
+    @Override
+    public void createTransfer(Transfer transfer) {
+        bind().transfers.add(new Record(0, transfer.getId(), transfer.getFrom(), transfer.getTo(),
+                transfer.getAmount().getMinorUnits(), toEpochMilli(transfer.getTimestamp()),
+                toMinorUnits(transfer.getFromBalanceAfter()), toMinorUnits(transfer.getToBalanceAfter())));
+    }
+
+    @Override
+    public void addReservation(Transfer transfer) {
+        bind().reservations.put(transfer.getId(), transfer);
+    }
+
+    @Override
+    public void removeReservation(Transfer transfer) {
+        bind().reservations.put(transfer.getId(), null);
+    }
+
+    @Override
+    public List<Transfer> getReservations() {
+        return new ArrayList<>(reservations.values());
+    }
+
+    private Transaction bind() {
+        Transaction pending = transaction.get();
+        if (pending == null) {
+            pending = new Transaction();
+            transaction.set(pending);
+        }
+        return pending;
+    }
+
+    private void validate(Transaction pending) {
+        for (UUID id : pending.created) {
+            if (accounts.containsKey(id)) {
+                throw new LedgerException("Account " + id + " already exists");
+            }
+        }
+        for (Record record : pending.transfers) {
+            if (transfers.containsKey(record.id)) {
+                throw new LedgerException("Transfer " + record.id + " already exists");
+            }
+            boolean fromHeld = accounts.containsKey(record.from) || pending.created.contains(record.from);
+            boolean toHeld = accounts.containsKey(record.to) || pending.created.contains(record.to);
+            if (partial ? !fromHeld && !toHeld : !fromHeld || !toHeld) {
+                throw new LedgerException("No account with ID " + (fromHeld ? record.to : record.from));
+            }
+        }
+        for (UUID id : pending.debited) {
+            Entry entry = accounts.get(id);
+            if (entry != null && Math.addExact(entry.getBalance(), pending.getChange(id)) < 0) {
+                throw new LedgerException("Insufficient balance on account " + id);
+            }
+        }
+    }
+
+    private void apply(Account account) {
+        Entry entry = accounts.get(account.getId());
+        if (entry == null) {
+            entry = new Entry(account.getId());
+            accounts.put(account.getId(), entry);
+            accountsById.put(account.getId(), entry);
+        }
+        entry.name = account.getName();
+        entry.balance = account.getBalance().getMinorUnits();
+        // published after the balance, so that a reader seeing no sub-balances sees the balance they were folded into
+        entry.subBalances = null;
+    }
+
+    private void apply(UUID accountId, long[] changes) {
+        Entry entry = accounts.get(accountId);
+        long[] current = entry.subBalances;
+        long[] updated = current == null ? new long[changes.length + 1]
+                : Arrays.copyOf(current, Math.max(current.length, changes.length + 1));
+        if (current == null) {
+            updated[0] = entry.balance;
+        }
+        for (int slot = 0; slot < changes.length; slot++) {
+            updated[slot + 1] += changes[slot];
+        }
+        entry.subBalances = updated;
+    }
+
+    private void apply(UUID accountId, Long change) {
+        Entry entry = accounts.get(accountId);
+        long[] current = entry.subBalances;
+        if (current == null) {
+            entry.balance = entry.balance + change;
+        } else {
+            long[] updated = current.clone();
+            updated[0] += change;
+            entry.subBalances = updated;
+        }
+    }
+
+    private void apply(Record pending) {
+        Record record = new Record(++sequence, pending.id, pending.from, pending.to, pending.amount,
+                pending.timestamp, pending.fromBalance, pending.toBalance);
+        Entry from = accounts.get(record.from);
+        Entry to = accounts.get(record.to);
+        if (from == to) {
+            from.append(record, record.amount);
+        } else {
+            if (from != null) {
+                from.append(record, -record.amount);
+            }
+            if (to != null) {
+                to.append(record, record.amount);
+            }
+        }
+        transfers.put(record.id, record);
+    }
+
+    private void apply(UUID transferId, Transfer reservation) {
+        if (reservation == null) {
+            reservations.remove(transferId);
+        } else {
+            reservations.put(transferId, reservation);
+        }
+    }
+
+    private static long toMinorUnits(Money balance) {
+        return balance == null ? NO_BALANCE : balance.getMinorUnits();
+    }
+
+    private static Money toMoney(long balance) {
+        return balance == NO_BALANCE ? null : Money.ofMinorUnits(balance);
+    }
+
+    private static long toEpochMilli(Instant timestamp) {
+        return timestamp == null ? NO_TIMESTAMP : timestamp.toEpochMilli();
+    }
+
+    private static Instant toInstant(long timestamp) {
+        return timestamp == NO_TIMESTAMP ? null : Instant.ofEpochMilli(timestamp);
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getId(), account.getName(), account.getBalance());
+    }
+
+    private static class Entry {
+        private final UUID id;
+        private final History history = new History();
+        private volatile String name;
+        private volatile long balance;
+        // null until a sub-balance is changed, then the own balance followed by the sub-balances, replacing the
+        // balance field until they are folded again
+        private volatile long[] subBalances;
+        // created with the first timestamped transfer, as many accounts never get one
+        private volatile Activity activity;
+
+        private Entry(UUID id) {
+            this.id = id;
+        }
+
+        private void append(Record record, long change) {
+            history.append(record);
+            if (record.timestamp != NO_TIMESTAMP) {
+                if (activity == null) {
+                    activity = new Activity();
+                }
+                activity.add(record, change);
+            }
+        }
+
+        private long getBalance() {
+            long[] current = subBalances;
+            return current == null ? balance : Arrays.stream(current).sum();
+        }
+
+        private long getSubBalance(int slot) {
+            long[] current = subBalances;
+            return current != null && slot + 1 < current.length ? current[slot + 1] : 0;
+        }
+
+        private Account toAccount() {
+            return new Account(id, name, Money.ofMinorUnits(getBalance()));
+        }
+    }
+
+    private static class Record {
+        private final long seq;
+        private final UUID id;
+        private final UUID from;
+        private final UUID to;
+        private final long amount;
+        private final long timestamp;
+        private final long fromBalance;
+        private final long toBalance;
+
+        private Record(long seq, UUID id, UUID from, UUID to, long amount, long timestamp, long fromBalance,
+                       long toBalance) {
+            this.seq = seq;
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.timestamp = timestamp;
+            this.fromBalance = fromBalance;
+            this.toBalance = toBalance;
+        }
+
+        /**
+         * Returns a record sorting before all transfers made at the given time, to bound searches by time.
+         */
+        private static Record probe(long timestamp) {
+            return new Record(0, null, null, null, 0, timestamp, NO_BALANCE, NO_BALANCE);
+        }
+
+        private Transfer toTransfer() {
+            return new Transfer(id, from, to, Money.ofMinorUnits(amount), toInstant(timestamp), toMoney(fromBalance),
+                    toMoney(toBalance));
+        }
+    }
+
+    /**
+     * Time index and buckets of an account. Written under the commit lock only, read without locking.
+     */
+    private static class Activity {
+        private final ConcurrentSkipListSet<Record> byTime = new ConcurrentSkipListSet<>(TIME_ORDER);
+        private final Map<Bucket.Resolution, ConcurrentNavigableMap<Long, Totals>> buckets =
+                new EnumMap<>(Bucket.Resolution.class);
+
+        private Activity() {
+            for (Bucket.Resolution resolution : Bucket.Resolution.values()) {
+                buckets.put(resolution, new ConcurrentSkipListMap<>());
+            }
+        }
+
+        private void add(Record record, long change) {
+            byTime.add(record);
+            buckets.forEach((resolution, totals) -> {
+                long start = resolution.startOf(record.timestamp);
+                Totals current = totals.get(start);
+                totals.put(start, current == null ? Totals.EMPTY.plus(change) : current.plus(change));
+            });
+        }
+    }
+
+    /**
+     * Immutable contents of a bucket, replaced as a whole on every update so that readers never see it half done.
+     */
+    private static class Totals {
+        private static final Totals EMPTY = new Totals(0, 0, 0);
+
+        private final long transfers;
+        private final long credits;
+        private final long debits;
+
+        private Totals(long transfers, long credits, long debits) {
+            this.transfers = transfers;
+            this.credits = credits;
+            this.debits = debits;
+        }
+
+        private Totals plus(long change) {
+            return change >= 0 ? new Totals(transfers + 1, credits + change, debits)
+                    : new Totals(transfers + 1, credits, debits - change);
+        }
+
+        private Bucket toBucket(long start) {
+            return new Bucket(Instant.ofEpochMilli(start), transfers, Money.ofMinorUnits(credits),
+                    Money.ofMinorUnits(debits));
+        }
+    }
+
+    /**
+     * Append-only list of records in ascending sequence order. Appends happen under the commit lock, readers see
+     * a prefix of the list without locking, as the size is published only after the record is stored.
+     */
+    private static class History {
+        private volatile Record[] records = new Record[4];
+        private volatile int size;
+
+        private void append(Record record) {
+            Record[] current = records;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                records = current;
+            }
+            current[size] = record;
+            size = size + 1;
+        }
+
+        private int indexAfter(long seq) {
+            int count = size;
+            Record[] snapshot = records;
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (snapshot[middle].seq <= seq) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void forEach(int from, int limit, Consumer<Transfer> consumer) {
+            int count = size;
+            Record[] snapshot = records;
+            int end = (int) Math.min(count, (long) from + limit);
+            for (int i = from; i < end; i++) {
+                consumer.accept(snapshot[i].toTransfer());
+            }
+        }
+    }
+
+    private static class Transaction {
+        private final Map<UUID, Account> accounts = new LinkedHashMap<>();
+        private final Set<UUID> created = new HashSet<>();
+        // per account, the changes of its sub-balances indexed by slot
+        private final Map<UUID, long[]> subBalanceChanges = new LinkedHashMap<>();
+        // credits and debits of accounts not written as a whole, and the accounts debited, to be checked on commit
+        private final Map<UUID, Long> balanceChanges = new LinkedHashMap<>();
+        private final Set<UUID> debited = new HashSet<>();
+        private final List<Record> transfers = new ArrayList<>();
+        // reservations by transfer ID, null for those removed
+        private final Map<UUID, Transfer> reservations = new LinkedHashMap<>();
+
+        /**
+         * Returns the sum of the changes of the balance and the sub-balances of the account in this transaction.
+         */
+        private long getChange(UUID accountId) {
+            long[] changes = subBalanceChanges.get(accountId);
+            long change = balanceChanges.getOrDefault(accountId, 0L);
+            return changes == null ? change : change + Arrays.stream(changes).sum();
+        }
+    }
+
+    public static class LedgerException extends RuntimeException {
+        LedgerException(String message) {
+            super(message);
+        }
+    }
+}
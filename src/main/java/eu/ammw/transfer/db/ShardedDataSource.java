@@ -0,0 +1,243 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Partitions accounts into shards by the hash of their ID, each shard being a separate data source. Operations on
+ * an account go to its shard, listings of all accounts merge the shards in ID order, so that they look the same as
+ * those of a single data source. A transfer between shards is kept by both of them, each with its own side.
+ * <p>
+ * Commit and rollback apply to all shards written by the current thread, one after another. Writes spanning shards
+ * are therefore not atomic; they have to be split into steps on single shards by the caller.
+ */
+public class ShardedDataSource implements DataSource {
+    private static final int MERGE_PAGE_SIZE = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedDataSource.class);
+
+    private final List<DataSource> shards;
+
+    public ShardedDataSource(List<DataSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = new ArrayList<>(shards);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int shardOf(UUID id) {
+        return Math.floorMod(id.hashCode(), shards.size());
+    }
+
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    public void commit() {
+        shards.forEach(DataSource::commit);
+    }
+
+    @Override
+    public void rollback() {
+        shards.forEach(DataSource::rollback);
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        shardFor(account.getId()).createAccount(account);
+    }
+
+    @Override
+    public void updateAccount(Account account) {
+        shardFor(account.getId()).updateAccount(account);
+    }
+
+    @Override
+    public Optional<Account> getAccount(UUID id) {
+        return shardFor(id).getAccount(id);
+    }
+
+    @Override
+    public Money getSubBalance(UUID accountId, int slot) {
+        return shardFor(accountId).getSubBalance(accountId, slot);
+    }
+
+    @Override
+    public void addToSubBalance(UUID accountId, int slot, Money change) {
+        shardFor(accountId).addToSubBalance(accountId, slot, change);
+    }
+
+    @Override
+    public Optional<Money> credit(UUID accountId, Money amount) {
+        return shardFor(accountId).credit(accountId, amount);
+    }
+
+    @Override
+    public Optional<Money> debitIfSufficient(UUID accountId, Money amount) {
+        return shardFor(accountId).debitIfSufficient(accountId, amount);
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> result = new ArrayList<>();
+        forEachAccount(result::add);
+        LOGGER.info("Retrieved {} accounts from {} shards", result.size(), shards.size());
+        return result;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Comparator.comparing(Cursor::current,
+                (first, second) -> LedgerDataSource.ID_ORDER.compare(first.getId(), second.getId())));
+        for (DataSource shard : shards) {
+            Cursor cursor = new Cursor(shard);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        while (!cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            consumer.accept(cursor.current());
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        List<Account> merged = new ArrayList<>();
+        for (DataSource shard : shards) {
+            merged.addAll(shard.getAccounts(after, limit));
+        }
+        merged.sort((first, second) -> LedgerDataSource.ID_ORDER.compare(first.getId(), second.getId()));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId) {
+        return shardFor(accountId).getHistory(accountId);
+    }
+
+    @Override
+    public void forEachTransfer(UUID accountId, Consumer<Transfer> consumer) {
+        shardFor(accountId).forEachTransfer(accountId, consumer);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, UUID after, int limit) {
+        return shardFor(accountId).getHistory(accountId, after, limit);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit) {
+        return shardFor(accountId).getHistory(accountId, from, to, after, limit);
+    }
+
+    @Override
+    public List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to) {
+        return shardFor(accountId).getBuckets(accountId, resolution, from, to);
+    }
+
+    /**
+     * Looks the transfer up in all shards, as its ID does not tell its shard. A transfer between shards is combined
+     * from both of them, each knowing the balance after it of its own side only.
+     */
+    @Override
+    public Optional<Transfer> getTransfer(UUID id) {
+        for (DataSource shard : shards) {
+            Optional<Transfer> found = shard.getTransfer(id);
+            if (found.isPresent()) {
+                Transfer transfer = found.get();
+                Transfer fromSide = shardFor(transfer.getFrom()).getTransfer(id).orElse(transfer);
+                Transfer toSide = shardFor(transfer.getTo()).getTransfer(id).orElse(transfer);
+                return Optional.of(transfer.withBalances(fromSide.getFromBalanceAfter(), toSide.getToBalanceAfter()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void createTransfer(Transfer transfer) {
+        DataSource from = shardFor(transfer.getFrom());
+        DataSource to = shardFor(transfer.getTo());
+        from.createTransfer(transfer);
+        if (to != from) {
+            to.createTransfer(transfer);
+        }
+    }
+
+    /**
+     * Keeps the reservation on the shard of the account the amount was taken from.
+     */
+    @Override
+    public void addReservation(Transfer transfer) {
+        shardFor(transfer.getFrom()).addReservation(transfer);
+    }
+
+    @Override
+    public void removeReservation(Transfer transfer) {
+        shardFor(transfer.getFrom()).removeReservation(transfer);
+    }
+
+    @Override
+    public List<Transfer> getReservations() {
+        List<Transfer> reservations = new ArrayList<>();
+        shards.forEach(shard -> reservations.addAll(shard.getReservations()));
+        return reservations;
+    }
+
+    private DataSource shardFor(UUID id) {
+        return shards.get(shardOf(id));
+    }
+
+    /**
+     * Reads the accounts of a shard page by page.
+     */
+    private static class Cursor {
+        private final DataSource shard;
+        private Iterator<Account> page;
+        private Account current;
+        private boolean exhausted;
+
+        private Cursor(DataSource shard) {
+            this.shard = shard;
+        }
+
+        private Account current() {
+            return current;
+        }
+
+        private boolean advance() {
+            if ((page == null || !page.hasNext()) && !exhausted) {
+                List<Account> next = shard.getAccounts(current == null ? null : current.getId(), MERGE_PAGE_SIZE);
+                exhausted = next.size() < MERGE_PAGE_SIZE;
+                page = next.iterator();
+            }
+            if (!page.hasNext()) {
+                return false;
+            }
+            current = page.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package eu.ammw.transfer.domain;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks keyed by account ID. Locks guarding several accounts are always acquired in ascending stripe order,
+ * so that A->B and B->A running concurrently cannot deadlock, while operations on disjoint accounts run in parallel.
+ */
+public class AccountLocks {
+    private static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] stripes;
+
+    public AccountLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public AccountLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of lock stripes must be positive: " + stripes);
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks all stripes covering given accounts. Null IDs are ignored, so that lookups of missing accounts
+     * can still fail with {@link AccountNotFoundException} after locking.
+     */
+    public Held lock(UUID... ids) {
+        int[] indices = stripeIndices(ids);
+        for (int i = 0; i < indices.length; i++) {
+            stripes[indices[i]].lock();
+        }
+        return () -> {
+            for (int i = indices.length - 1; i >= 0; i--) {
+                stripes[indices[i]].unlock();
+            }
+        };
+    }
+
+    int stripeOf(UUID id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    private int[] stripeIndices(UUID[] ids) {
+        int[] indices = new int[ids.length];
+        int count = 0;
+        for (UUID id : ids) {
+            if (id != null) {
+                indices[count++] = stripeOf(id);
+            }
+        }
+        Arrays.sort(indices, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indices[distinct - 1] != indices[i]) {
+                indices[distinct++] = indices[i];
+            }
+        }
+        return Arrays.copyOf(indices, distinct);
+    }
+
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
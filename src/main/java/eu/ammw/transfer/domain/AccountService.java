@@ -2,13 +2,15 @@ package eu.ammw.transfer.domain;
 
 import eu.ammw.transfer.db.DataSource;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
 import eu.ammw.transfer.validator.NameValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class AccountService {
     private static final Logger LOGGER = LoggerFactory.getLogger(AccountService.class);
@@ -23,6 +25,14 @@ public class AccountService {
         return dataSource.getAllAccounts();
     }
 
+    public void forEachAccount(Consumer<Account> consumer) {
+        dataSource.forEachAccount(consumer);
+    }
+
+    public Page<Account> getAccounts(UUID after, int limit) {
+        return Page.of(dataSource.getAccounts(after, limit + 1), limit, Account::getId);
+    }
+
     public Account getAccount(UUID id) throws AccountNotFoundException {
         if (id == null) {
             throw new AccountNotFoundException(null);
@@ -32,9 +42,14 @@ public class AccountService {
 
     public Account createAccount(String name) {
         NameValidator.validate(name);
-        Account account = new Account(null, name, BigDecimal.ZERO);
-        dataSource.createAccount(account);
-        dataSource.commit();
+        Account account = new Account(null, name, Money.ZERO);
+        try {
+            dataSource.createAccount(account);
+            dataSource.commit();
+        } catch (RuntimeException e) {
+            dataSource.rollback();
+            throw e;
+        }
         LOGGER.info("Created account {}", account.getId());
         return account;
     }
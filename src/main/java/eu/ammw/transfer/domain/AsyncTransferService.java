@@ -0,0 +1,268 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.journal.WriteAheadLog;
+import eu.ammw.transfer.metrics.MetricsSource;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import eu.ammw.transfer.model.TransferStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accepts transfers into a bounded queue and performs them on its own worker threads, so that callers do not wait for
+ * locks and commits. Submitted transfers get an ID their status can be looked up by: pending until a worker performs
+ * the transfer, then completed or failed. When the queue is full, submissions are rejected instead of piling up.
+ * <p>
+ * Only the statuses of the most recently finished transfers are retained.
+ * <p>
+ * With a {@link WriteAheadLog}, every submitted transfer is appended to it before it is accepted, and its end is
+ * appended once it finished, so that {@link #recover()} queues again the transfers still pending when the process died.
+ * Transfers are performed under the ID they were submitted with, so one that was made before the process died is
+ * found and not made again. One whose commit had an unknown outcome stays pending until the next recovery. Segments
+ * of the log are deleted once every transfer in them finished. Without a log, pending transfers are lost.
+ */
+public class AsyncTransferService implements MetricsSource {
+    private static final byte SUBMITTED = 1;
+    private static final byte FINISHED = 2;
+    private static final int SUBMITTED_SIZE = 1 + 3 * 16 + 8;
+    private static final int FINISHED_SIZE = 1 + 16;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncTransferService.class);
+
+    private final TransferService transferService;
+    private final ThreadPoolExecutor workers;
+    private final int retainedStatuses;
+    private final Map<UUID, TransferStatus> statuses = new ConcurrentHashMap<>();
+    private final Queue<UUID> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finishedCount = new AtomicInteger();
+    private final WriteAheadLog log;
+    // sequence numbers of the log records of transfers not finished yet, guarded by itself
+    private final TreeSet<Long> pendingLsns = new TreeSet<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile long recovered;
+
+    public AsyncTransferService(TransferService transferService, int threads, int queueSize, int retainedStatuses) {
+        this(transferService, threads, queueSize, retainedStatuses, null);
+    }
+
+    public AsyncTransferService(TransferService transferService, int threads, int queueSize, int retainedStatuses,
+                                WriteAheadLog log) {
+        if (threads <= 0 || queueSize <= 0 || retainedStatuses <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Threads, queue size and retained statuses must be positive: %d, %d, %d",
+                    threads, queueSize, retainedStatuses));
+        }
+        this.transferService = transferService;
+        this.retainedStatuses = retainedStatuses;
+        this.log = log;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "async-transfer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Started {} asynchronous transfer workers with a queue of {}", threads, queueSize);
+    }
+
+    /**
+     * Replays the log and queues again the transfers that did not finish, waiting for room in the queue. Has to be
+     * called once, before transfers are submitted. Returns the number of queued transfers.
+     */
+    public int recover() throws IOException, InterruptedException {
+        if (log == null) {
+            return 0;
+        }
+        Map<UUID, Transfer> requests = new LinkedHashMap<>();
+        Map<UUID, Long> lsns = new LinkedHashMap<>();
+        log.replay(log.getFirstLsn(), (lsn, payload) -> {
+            if (payload.get() == SUBMITTED) {
+                Transfer request = new Transfer(getId(payload), getId(payload), getId(payload),
+                        Money.ofMinorUnits(payload.getLong()));
+                requests.put(request.getId(), request);
+                lsns.put(request.getId(), lsn);
+            } else {
+                UUID id = getId(payload);
+                requests.remove(id);
+                lsns.remove(id);
+            }
+        });
+        synchronized (pendingLsns) {
+            pendingLsns.addAll(lsns.values());
+        }
+        workers.prestartAllCoreThreads();
+        for (Transfer request : requests.values()) {
+            long lsn = lsns.get(request.getId());
+            statuses.put(request.getId(), TransferStatus.pending(request.getId(), request));
+            workers.getQueue().put(() -> perform(request, lsn, true));
+        }
+        recovered = requests.size();
+        LOGGER.info("Queued {} asynchronous transfers pending before restart", requests.size());
+        return requests.size();
+    }
+
+    /**
+     * Queues the transfer and returns its pending status. With a log, the transfer is in the log on return.
+     *
+     * @throws SubmissionRejectedException if the queue is full, the service is stopped or the log cannot be written
+     */
+    public TransferStatus submit(UUID from, UUID to, Money amount) throws SubmissionRejectedException {
+        UUID id = UUID.randomUUID();
+        Transfer request = new Transfer(id, from, to, amount);
+        TransferStatus pending = TransferStatus.pending(id, request);
+        long lsn = journal(submitted(request));
+        statuses.put(id, pending);
+        try {
+            workers.execute(() -> perform(request, lsn, false));
+        } catch (RejectedExecutionException e) {
+            statuses.remove(id);
+            finish(id, lsn);
+            rejected.increment();
+            throw new SubmissionRejectedException("Too many pending transfers, try again later");
+        }
+        submitted.increment();
+        return pending;
+    }
+
+    public Optional<TransferStatus> getStatus(UUID id) {
+        return Optional.ofNullable(statuses.get(id));
+    }
+
+    /**
+     * Stops accepting new transfers, waits until the queued ones are performed and closes the log.
+     */
+    public void stop() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "async";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("submitted", submitted.sum());
+        metrics.put("completed", completed.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("recovered", recovered);
+        metrics.put("queued", workers.getQueue().size());
+        metrics.put("active", workers.getActiveCount());
+        return metrics;
+    }
+
+    private void perform(Transfer request, long lsn, boolean recovering) {
+        TransferStatus status;
+        boolean outcomeUnknown = false;
+        try {
+            Optional<Transfer> made = recovering ? transferService.findTransfer(request.getId()) : Optional.empty();
+            Transfer transfer = made.isPresent() ? made.get()
+                    : transferService.transfer(request.getId(), request.getFrom(), request.getTo(), request.getAmount());
+            status = TransferStatus.completed(request.getId(), transfer);
+            completed.increment();
+        } catch (Exception e) {
+            LOGGER.warn("Asynchronous transfer {} failed", request.getId(), e);
+            status = TransferStatus.failed(request.getId(), request, e.getMessage());
+            outcomeUnknown = TransferService.isOutcomeUnknown(e);
+            failed.increment();
+        }
+        if (!outcomeUnknown) {
+            finish(request.getId(), lsn);
+        }
+        statuses.put(request.getId(), status);
+        finished.add(request.getId());
+        if (finishedCount.incrementAndGet() > retainedStatuses) {
+            statuses.remove(finished.poll());
+            finishedCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Appends a record to the log, if there is one, and returns its sequence number, or 0 without a log.
+     */
+    private long journal(byte[] record) throws SubmissionRejectedException {
+        if (log == null) {
+            return 0;
+        }
+        try {
+            synchronized (pendingLsns) {
+                long lsn = log.append(record);
+                pendingLsns.add(lsn);
+                return lsn;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not journal asynchronous transfer", e);
+            rejected.increment();
+            throw new SubmissionRejectedException("Could not record transfer, try again later");
+        }
+    }
+
+    /**
+     * Records the end of a transfer and deletes the log segments holding only finished transfers. A failure leaves
+     * the transfer to be looked up again on recovery.
+     */
+    private void finish(UUID id, long lsn) {
+        if (log == null) {
+            return;
+        }
+        try {
+            synchronized (pendingLsns) {
+                log.append(finished(id));
+                pendingLsns.remove(lsn);
+                log.truncate((pendingLsns.isEmpty() ? log.getNextLsn() : pendingLsns.first()) - 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not journal end of asynchronous transfer {}", id, e);
+        }
+    }
+
+    private static byte[] submitted(Transfer request) {
+        ByteBuffer buffer = ByteBuffer.allocate(SUBMITTED_SIZE).put(SUBMITTED);
+        putId(buffer, request.getId());
+        putId(buffer, request.getFrom());
+        putId(buffer, request.getTo());
+        return buffer.putLong(request.getAmount().getMinorUnits()).array();
+    }
+
+    private static byte[] finished(UUID id) {
+        ByteBuffer buffer = ByteBuffer.allocate(FINISHED_SIZE).put(FINISHED);
+        putId(buffer, id);
+        return buffer.array();
+    }
+
+    private static void putId(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID getId(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,126 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Applies and commits batches of operations for the single writer of {@link GroupCommitExecutor} and
+ * {@link SequencerExecutor}. If a batch fails to apply or commit, it is rolled back and its operations are retried one
+ * by one, so that a single faulty operation does not fail the others. A batch whose commit may have taken effect
+ * nonetheless, signalled by a {@link CommitOutcomeUnknownException}, is never retried, as that could apply it twice;
+ * all its operations fail with that exception.
+ * <p>
+ * Only the writer thread commits; the counters are volatile so that metrics can be read by other threads.
+ */
+class BatchCommitter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchCommitter.class);
+
+    private final DataSource dataSource;
+
+    private volatile long batchesCommitted;
+    private volatile long operationsCommitted;
+    private volatile long batchFailures;
+    private volatile int lastBatchSize;
+    private volatile int largestBatchSize;
+
+    BatchCommitter(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Commits the operations together, or one by one if that fails. Each of them ends up with either a result or
+     * an error; releasing their callers is left to the executor.
+     */
+    void commit(List<? extends Pending> batch) {
+        try {
+            for (Pending pending : batch) {
+                pending.apply();
+            }
+            dataSource.commit();
+        } catch (CommitOutcomeUnknownException e) {
+            batchFailures++;
+            LOGGER.error("Batch of {} operations failed with unknown outcome", batch.size(), e);
+            rollback();
+            batch.forEach(pending -> pending.error = e);
+            return;
+        } catch (RuntimeException e) {
+            batchFailures++;
+            LOGGER.warn("Batch of {} operations failed, applying them one by one", batch.size(), e);
+            rollback();
+            batch.forEach(this::commitAlone);
+            return;
+        }
+        batchesCommitted++;
+        operationsCommitted += batch.size();
+        lastBatchSize = batch.size();
+        largestBatchSize = Math.max(largestBatchSize, batch.size());
+    }
+
+    long getBatchesCommitted() {
+        return batchesCommitted;
+    }
+
+    long getOperationsCommitted() {
+        return operationsCommitted;
+    }
+
+    long getBatchFailures() {
+        return batchFailures;
+    }
+
+    int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    int getLargestBatchSize() {
+        return largestBatchSize;
+    }
+
+    private void commitAlone(Pending pending) {
+        try {
+            pending.apply();
+            dataSource.commit();
+            batchesCommitted++;
+            operationsCommitted++;
+        } catch (RuntimeException e) {
+            pending.error = e;
+            rollback();
+        }
+    }
+
+    private void rollback() {
+        try {
+            dataSource.rollback();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not roll back failed batch", e);
+        }
+    }
+
+    /**
+     * An operation waiting to be committed, together with its outcome.
+     */
+    static class Pending {
+        WriteExecutor.Operation<?> operation;
+        Object result;
+        Exception error;
+
+        /**
+         * Applies the operation, keeping checked exceptions as its outcome. Runtime exceptions are propagated,
+         * as the operation might have left partial writes behind.
+         */
+        private void apply() {
+            error = null;
+            try {
+                result = operation.apply();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.metrics.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues operations of concurrent callers and applies them in order on a single writer thread, committing them
+ * together once the group reaches its maximum size or the first operation waited for the maximum linger time.
+ * Callers are released only after their group is committed. As the writer is the only thread modifying balances,
+ * no account locks are taken.
+ * <p>
+ * If a group fails to apply or commit, it is rolled back and its operations are retried one by one, so that a single
+ * faulty operation does not fail the others. A group whose commit may have taken effect nonetheless, signalled by
+ * a {@link CommitOutcomeUnknownException}, is never retried; all its operations fail with that exception. See
+ * {@link BatchCommitter}.
+ */
+public class GroupCommitExecutor implements WriteExecutor, MetricsSource {
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitExecutor.class);
+
+    private final BatchCommitter committer;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public GroupCommitExecutor(DataSource dataSource, int maxBatchSize, long maxLingerMicros) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+        }
+        this.committer = new BatchCommitter(dataSource);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+        this.writer = new Thread(this::run, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        LOGGER.info("Started group commit with batches of up to {} operations, lingering up to {} us",
+                maxBatchSize, maxLingerMicros);
+    }
+
+    @Override
+    public <T> T execute(Operation<T> operation, UUID... accounts) throws Exception {
+        if (!running) {
+            throw new IllegalStateException("Group commit executor is stopped");
+        }
+        Task<T> task = new Task<>(operation);
+        queue.add(task);
+        // the writer may have drained the queue for the last time before the task was added
+        if (!running && queue.remove(task)) {
+            throw new IllegalStateException("Group commit executor is stopped");
+        }
+        return task.await();
+    }
+
+    /**
+     * Stops accepting new operations and waits until the queued ones are committed.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join();
+    }
+
+    @Override
+    public String getName() {
+        return "groupCommit";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        long groups = committer.getBatchesCommitted();
+        long operations = committer.getOperationsCommitted();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", queue.size());
+        metrics.put("groupsCommitted", groups);
+        metrics.put("operationsCommitted", operations);
+        metrics.put("groupFailures", committer.getBatchFailures());
+        metrics.put("lastBatchSize", committer.getLastBatchSize());
+        metrics.put("largestBatchSize", committer.getLargestBatchSize());
+        metrics.put("averageBatchSize", groups == 0 ? 0 : (double) operations / groups);
+        return metrics;
+    }
+
+    private void run() {
+        List<Task<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch, System.nanoTime() + maxLingerNanos);
+            } catch (InterruptedException e) {
+                LOGGER.warn("Group commit writer interrupted");
+            }
+            if (!batch.isEmpty()) {
+                committer.commit(batch);
+                batch.forEach(Task::complete);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<Task<?>> batch, long deadline) throws InterruptedException {
+        while (batch.size() < maxBatchSize) {
+            Task<?> next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+            }
+            batch.add(next);
+        }
+    }
+
+    private static class Task<T> extends BatchCommitter.Pending {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Task(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        private void complete() {
+            done.countDown();
+        }
+
+        @SuppressWarnings("unchecked")
+        private T await() throws Exception {
+            done.await();
+            if (error != null) {
+                throw error;
+            }
+            return (T) result;
+        }
+    }
+}
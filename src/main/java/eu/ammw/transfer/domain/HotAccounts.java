@@ -0,0 +1,86 @@
+package eu.ammw.transfer.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Accounts receiving so many credits that their balance is split into sub-balances kept in separate slots. Every slot
+ * has its own lock key derived from the account ID, so that credits to different slots neither wait for the same lock
+ * nor write the same row. Operations needing the whole balance lock the account together with all its slots.
+ */
+public class HotAccounts {
+    /**
+     * Stands for the whole balance of an account, as opposed to one of its slots.
+     */
+    public static final int WHOLE = -1;
+    public static final HotAccounts NONE = new HotAccounts(Collections.emptySet(), 1);
+
+    private final Map<UUID, UUID[]> slotKeys = new HashMap<>();
+
+    public HotAccounts(Collection<UUID> accounts, int slots) {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("Number of slots must be positive: " + slots);
+        }
+        for (UUID account : accounts) {
+            UUID[] keys = new UUID[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                keys[slot] = UUID.nameUUIDFromBytes((account + "/" + slot).getBytes(StandardCharsets.UTF_8));
+            }
+            slotKeys.put(account, keys);
+        }
+    }
+
+    public boolean isHot(UUID account) {
+        return slotKeys.containsKey(account);
+    }
+
+    public int getSlots(UUID account) {
+        UUID[] keys = slotKeys.get(account);
+        return keys == null ? 0 : keys.length;
+    }
+
+    /**
+     * Returns a random slot of a hot account, so that concurrent writers spread over the slots, or {@link #WHOLE}
+     * for any other account.
+     */
+    public int pickSlot(UUID account) {
+        UUID[] keys = slotKeys.get(account);
+        return keys == null ? WHOLE : ThreadLocalRandom.current().nextInt(keys.length);
+    }
+
+    /**
+     * Returns the key locking a slot of the account, or the account ID itself for {@link #WHOLE}.
+     */
+    public UUID lockKey(UUID account, int slot) {
+        return slot == WHOLE ? account : slotKeys.get(account)[slot];
+    }
+
+    /**
+     * Returns the keys locking the whole balances of the accounts: their IDs followed by the keys of all slots of
+     * the hot ones.
+     */
+    public UUID[] lockKeys(UUID... accounts) {
+        if (slotKeys.isEmpty()) {
+            return accounts;
+        }
+        List<UUID> keys = new ArrayList<>(Arrays.asList(accounts));
+        Set<UUID> expanded = new HashSet<>();
+        for (UUID account : accounts) {
+            UUID[] slots = account == null ? null : slotKeys.get(account);
+            if (slots != null && expanded.add(account)) {
+                keys.addAll(Arrays.asList(slots));
+            }
+        }
+        return keys.toArray(new UUID[0]);
+    }
+}
@@ -1,11 +1,10 @@
 package eu.ammw.transfer.domain;
 
 import eu.ammw.transfer.model.Account;
-
-import java.math.BigDecimal;
+import eu.ammw.transfer.model.Money;
 
 public class InsufficientFundsException extends Exception {
-    public InsufficientFundsException(Account account, BigDecimal amount) {
+    public InsufficientFundsException(Account account, Money amount) {
         super(String.format("Account '%s' (%s) has insufficient funds to transfer out %s", account.getName(), account.getId(), amount));
     }
 }
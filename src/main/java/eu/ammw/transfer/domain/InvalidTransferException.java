@@ -0,0 +1,10 @@
+package eu.ammw.transfer.domain;
+
+/**
+ * Thrown when a transfer is rejected by validation, before anything is written.
+ */
+public class InvalidTransferException extends TransferException {
+    public InvalidTransferException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,45 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.metrics.LatencyHistogram;
+
+import java.util.UUID;
+
+/**
+ * Runs every operation on the calling thread in its own transaction, holding the locks of all involved accounts
+ * until the transaction is committed.
+ */
+public class LockingWriteExecutor implements WriteExecutor {
+    private final DataSource dataSource;
+    private final AccountLocks accountLocks;
+    private final LatencyHistogram lockWait;
+
+    public LockingWriteExecutor(DataSource dataSource, AccountLocks accountLocks) {
+        this(dataSource, accountLocks, new LatencyHistogram());
+    }
+
+    /**
+     * @param lockWait histogram of the time spent waiting for the account locks
+     */
+    public LockingWriteExecutor(DataSource dataSource, AccountLocks accountLocks, LatencyHistogram lockWait) {
+        this.dataSource = dataSource;
+        this.accountLocks = accountLocks;
+        this.lockWait = lockWait;
+    }
+
+    @Override
+    public <T> T execute(Operation<T> operation, UUID... accounts) throws Exception {
+        long start = System.nanoTime();
+        try (AccountLocks.Held ignored = accountLocks.lock(accounts)) {
+            lockWait.record(System.nanoTime() - start);
+            try {
+                T result = operation.apply();
+                dataSource.commit();
+                return result;
+            } catch (Exception e) {
+                dataSource.rollback();
+                throw e;
+            }
+        }
+    }
+}
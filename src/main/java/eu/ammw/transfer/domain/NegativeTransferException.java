@@ -1,9 +1,9 @@
 package eu.ammw.transfer.domain;
 
-import java.math.BigDecimal;
+import eu.ammw.transfer.model.Money;
 
 public class NegativeTransferException extends Exception {
-    public NegativeTransferException(BigDecimal amount) {
+    public NegativeTransferException(Money amount) {
         super("Attempted to transfer non-positive amount of " + amount);
     }
 }
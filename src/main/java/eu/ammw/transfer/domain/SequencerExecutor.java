@@ -0,0 +1,226 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.metrics.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies operations on a single writer thread in the order callers published them into a preallocated ring of
+ * slots. Publishing claims a sequence number with a single atomic increment; the writer and the callers hand slots
+ * to each other through volatile fields only, so no locks are taken on the way. Each caller waits on its own slot
+ * until the writer completes it and then frees the slot for the caller one lap later.
+ * <p>
+ * The writer applies all operations published so far before committing them together, so batches grow with load
+ * and no time is spent lingering. If a batch fails to commit, it is rolled back and its operations are retried one by
+ * one, as in {@link GroupCommitExecutor}, unless its outcome is unknown. See {@link BatchCommitter}.
+ */
+public class SequencerExecutor implements WriteExecutor, MetricsSource {
+    private static final int SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SequencerExecutor.class);
+
+    private final BatchCommitter committer;
+    private final Slot[] ring;
+    private final List<Slot> batch;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final Thread writer;
+    private volatile long next;
+    private volatile boolean writerParked;
+    private volatile boolean running = true;
+
+    public SequencerExecutor(DataSource dataSource, int ringSize) {
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two: " + ringSize);
+        }
+        this.committer = new BatchCommitter(dataSource);
+        this.ring = new Slot[ringSize];
+        this.batch = new ArrayList<>(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Slot(i);
+        }
+        this.mask = ringSize - 1;
+        this.writer = new Thread(this::run, "sequencer-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        LOGGER.info("Started sequencer with a ring of {} slots", ringSize);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Operation<T> operation, UUID... accounts) throws Exception {
+        if (!running) {
+            throw new IllegalStateException("Sequencer is stopped");
+        }
+        long sequence = claimed.getAndIncrement();
+        Slot slot = ring[(int) sequence & mask];
+        for (int spins = 0; slot.sequence != sequence; spins++) {
+            if (isWriterGone()) {
+                throw new IllegalStateException("Sequencer is stopped");
+            }
+            backOff(spins);
+        }
+        slot.operation = operation;
+        slot.caller = Thread.currentThread();
+        slot.state = Slot.PUBLISHED;
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+
+        for (int spins = 0; slot.state != Slot.DONE; spins++) {
+            if (spins < SPINS) {
+                continue;
+            }
+            if (running) {
+                // a writer that sees the claim after this check is still running commits it
+                LockSupport.park(this);
+            } else if (isWriterGone() && slot.state != Slot.DONE) {
+                throw new IllegalStateException("Sequencer is stopped");
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        Object result = slot.result;
+        Exception error = slot.error;
+        slot.clear();
+        slot.state = Slot.FREE;
+        slot.sequence = sequence + ring.length;
+        if (error != null) {
+            throw error;
+        }
+        return (T) result;
+    }
+
+    /**
+     * Stops accepting new operations and waits until the published ones are committed.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+    }
+
+    @Override
+    public String getName() {
+        return "sequencer";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        long batches = committer.getBatchesCommitted();
+        long operations = committer.getOperationsCommitted();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("ringSize", ring.length);
+        metrics.put("backlog", Math.max(0, claimed.get() - next));
+        metrics.put("operationsCommitted", operations);
+        metrics.put("batchesCommitted", batches);
+        metrics.put("batchFailures", committer.getBatchFailures());
+        metrics.put("largestBatchSize", committer.getLargestBatchSize());
+        metrics.put("averageBatchSize", batches == 0 ? 0 : (double) operations / batches);
+        return metrics;
+    }
+
+    private void run() {
+        long sequence = next;
+        int idle = 0;
+        while (running || sequence < claimed.get()) {
+            long end = sequence;
+            while (end - sequence < ring.length && isPublished(end)) {
+                end++;
+            }
+            if (end == sequence) {
+                idle(sequence, idle++);
+                continue;
+            }
+            idle = 0;
+            for (long published = sequence; published < end; published++) {
+                batch.add(ring[(int) published & mask]);
+            }
+            committer.commit(batch);
+            // the backlog reported to callers has to be up to date once they are released
+            next = end;
+            batch.forEach(Slot::complete);
+            batch.clear();
+            sequence = end;
+        }
+    }
+
+    private boolean isPublished(long sequence) {
+        Slot slot = ring[(int) sequence & mask];
+        return slot.sequence == sequence && slot.state == Slot.PUBLISHED;
+    }
+
+    private void idle(long sequence, int idle) {
+        if (idle < SPINS) {
+            return;
+        }
+        writerParked = true;
+        if (!isPublished(sequence) && running) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        writerParked = false;
+    }
+
+    /**
+     * Tells a caller that claimed its sequence after the stopped writer checked for the last time that it waits in
+     * vain.
+     */
+    private boolean isWriterGone() {
+        return !running && !writer.isAlive();
+    }
+
+    private static void backOff(int spins) {
+        if (spins < SPINS) {
+            return;
+        }
+        if (spins < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(1000);
+        }
+    }
+
+    /**
+     * Cell of the ring. The sequence says which caller may publish into the slot, the state moves from free to
+     * published by the caller, to done by the writer and back to free by the caller. Plain fields are written before
+     * and read after the volatile state, which orders them.
+     */
+    private static class Slot extends BatchCommitter.Pending {
+        private static final int FREE = 0;
+        private static final int PUBLISHED = 1;
+        private static final int DONE = 2;
+
+        private volatile long sequence;
+        private volatile int state = FREE;
+        private Thread caller;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void complete() {
+            Thread waiting = caller;
+            state = DONE;
+            LockSupport.unpark(waiting);
+        }
+
+        private void clear() {
+            operation = null;
+            caller = null;
+            result = null;
+            error = null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.db.ShardedDataSource;
+import eu.ammw.transfer.metrics.MetricsSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.BatchItem;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transfer service over sharded accounts. Transfers within a shard run as a single operation of that shard's writer,
+ * transfers between shards go through three steps, each committed on its own shard:
+ * <ol>
+ * <li>reserve: the amount is taken from the source account, the transfer is recorded in its history and kept as
+ * a reservation of the source shard,</li>
+ * <li>complete: the amount is added to the target account and the transfer is recorded in its history, unless the
+ * target shard recorded it already,</li>
+ * <li>release: the reservation is removed.</li>
+ * </ol>
+ * Between the steps the amount is counted as in flight. If the target shard certainly did not complete the transfer,
+ * the reservation is cancelled instead by returning the amount to the source account, recorded as a deposit. If that
+ * is unknown, e.g. because its journal failed, the reservation is kept. Reservations are journaled like any other
+ * write, so those left behind by a failure or a restart are settled by {@link #recover()}. Hence the sum of all
+ * balances and the money in flight never changes, and no transfer is added to its target twice.
+ */
+public class ShardedTransferService extends TransferService implements MetricsSource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedTransferService.class);
+
+    private final ShardedDataSource dataSource;
+    private final ShardedWriteExecutor writeExecutor;
+    private final AtomicLong sameShardTransfers = new AtomicLong();
+    private final AtomicLong crossShardTransfers = new AtomicLong();
+    private final AtomicLong cancelledReservations = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public ShardedTransferService(ShardedDataSource dataSource, AccountService accountService,
+                                  ShardedWriteExecutor writeExecutor) {
+        super(dataSource, accountService, writeExecutor);
+        this.dataSource = dataSource;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * Settles the reservations of transfers between shards that were interrupted, e.g. by a restart, by completing
+     * them. Has to be called once the shards are recovered and before transfers are made. Returns the number of
+     * reservations found.
+     */
+    public int recover() {
+        List<Transfer> reservations = dataSource.getReservations();
+        inFlight.set(reservations.stream().mapToLong(reservation -> reservation.getAmount().getMinorUnits()).sum());
+        for (Transfer reservation : reservations) {
+            try {
+                settle(reservation);
+            } catch (Exception e) {
+                LOGGER.error("Could not settle reservation of transfer {}", reservation.getId(), e);
+            }
+        }
+        LOGGER.info("Settled {} reservations of interrupted transfers", reservations.size());
+        return reservations.size();
+    }
+
+    /**
+     * Applies a batch within one shard as {@link TransferService#transferItems(List, boolean)} does. A batch spanning
+     * several shards could not be committed together, so it is rejected before anything is locked.
+     *
+     * @throws IllegalArgumentException if the accounts of the batch are held by several shards
+     */
+    @Override
+    public List<BatchResult> transferItems(List<BatchItem> items, boolean allOrNothing) throws TransferException {
+        int shard = -1;
+        for (BatchItem item : items) {
+            for (UUID account : new UUID[]{item.getFrom(), item.getTo()}) {
+                if (account == null) {
+                    continue;
+                }
+                int accountShard = dataSource.shardOf(account);
+                if (shard >= 0 && accountShard != shard) {
+                    throw new IllegalArgumentException("Batch spans several shards, transfers of a batch have to "
+                            + "stay within one shard");
+                }
+                shard = accountShard;
+            }
+        }
+        return super.transferItems(items, allOrNothing);
+    }
+
+    @Override
+    protected Transfer executeTransfer(Transfer request) throws Exception {
+        UUID from = request.getFrom();
+        UUID to = request.getTo();
+        if (dataSource.shardOf(from) == dataSource.shardOf(to)) {
+            Transfer transfer = super.executeTransfer(request);
+            sameShardTransfers.incrementAndGet();
+            return transfer;
+        }
+        DataSource source = shardFor(from);
+        if (!shardFor(to).getAccount(to).isPresent()) {
+            throw new AccountNotFoundException(to);
+        }
+        Transfer transfer = writeExecutor.executorFor(from)
+                .execute(() -> reserve(source, request), from);
+        inFlight.addAndGet(request.getAmount().getMinorUnits());
+        Transfer completed = settle(transfer);
+        crossShardTransfers.incrementAndGet();
+        return completed;
+    }
+
+    /**
+     * Completes the reserved transfer and releases its reservation, or cancels the reservation if the target shard
+     * certainly did not complete it.
+     */
+    private Transfer settle(Transfer transfer) throws Exception {
+        UUID from = transfer.getFrom();
+        UUID to = transfer.getTo();
+        DataSource source = shardFor(from);
+        DataSource target = shardFor(to);
+        Transfer completed;
+        try {
+            completed = writeExecutor.executorFor(to).execute(() -> complete(target, transfer), to);
+        } catch (Exception e) {
+            if (isOutcomeUnknown(e)) {
+                LOGGER.error("Outcome of transfer {} on its target is unknown, {} stays reserved until recovery",
+                        transfer.getId(), transfer.getAmount(), e);
+                throw e;
+            }
+            Optional<Transfer> applied = target.getTransfer(transfer.getId());
+            if (!applied.isPresent()) {
+                cancel(source, transfer, e);
+                throw e;
+            }
+            completed = transfer.withBalances(transfer.getFromBalanceAfter(), applied.get().getToBalanceAfter());
+        }
+        try {
+            writeExecutor.executorFor(from).execute(() -> {
+                source.removeReservation(transfer);
+                return null;
+            }, from);
+        } catch (Exception e) {
+            // the transfer is complete, recovery finds it on the target and only releases the reservation
+            LOGGER.warn("Could not release reservation of completed transfer {}", transfer.getId(), e);
+        }
+        inFlight.addAndGet(-transfer.getAmount().getMinorUnits());
+        return completed;
+    }
+
+    private void cancel(DataSource source, Transfer transfer, Exception cause) {
+        LOGGER.warn("Could not complete transfer {}, cancelling reservation", transfer.getId(), cause);
+        try {
+            writeExecutor.executorFor(transfer.getFrom()).execute(() -> refund(source, transfer), transfer.getFrom());
+        } catch (Exception cancelFailure) {
+            LOGGER.error("Could not cancel reservation of transfer {}, {} stays reserved until recovery",
+                    transfer.getId(), transfer.getAmount(), cancelFailure);
+            cause.addSuppressed(cancelFailure);
+            return;
+        }
+        inFlight.addAndGet(-transfer.getAmount().getMinorUnits());
+        cancelledReservations.incrementAndGet();
+    }
+
+    private Transfer reserve(DataSource source, Transfer transfer)
+            throws AccountNotFoundException, InsufficientFundsException {
+        Account account = source.getAccount(transfer.getFrom())
+                .orElseThrow(() -> new AccountNotFoundException(transfer.getFrom()));
+        if (account.getBalance().compareTo(transfer.getAmount()) < 0) {
+            throw new InsufficientFundsException(account, transfer.getAmount());
+        }
+        account.setBalance(account.getBalance().minus(transfer.getAmount()));
+        source.updateAccount(account);
+        Transfer reserved = transfer.withBalances(account.getBalance(), null);
+        source.createTransfer(reserved);
+        source.addReservation(reserved);
+        return reserved;
+    }
+
+    private Transfer complete(DataSource target, Transfer transfer) throws AccountNotFoundException {
+        Optional<Transfer> applied = target.getTransfer(transfer.getId());
+        if (applied.isPresent()) {
+            // completed by an earlier attempt whose outcome was unknown
+            return transfer.withBalances(transfer.getFromBalanceAfter(), applied.get().getToBalanceAfter());
+        }
+        Account account = target.getAccount(transfer.getTo())
+                .orElseThrow(() -> new AccountNotFoundException(transfer.getTo()));
+        account.setBalance(account.getBalance().plus(transfer.getAmount()));
+        target.updateAccount(account);
+        target.createTransfer(transfer.withBalances(null, account.getBalance()));
+        return transfer.withBalances(transfer.getFromBalanceAfter(), account.getBalance());
+    }
+
+    /**
+     * Returns the reserved amount to the source account the way {@link #deposit deposits} are made, with a credit
+     * recorded as a transfer from the account to itself, and removes the reservation.
+     */
+    private Transfer refund(DataSource source, Transfer transfer) throws AccountNotFoundException {
+        Money balance = source.credit(transfer.getFrom(), transfer.getAmount())
+                .orElseThrow(() -> new AccountNotFoundException(transfer.getFrom()));
+        Transfer refund = new Transfer(transfer.getFrom(), transfer.getFrom(), transfer.getAmount())
+                .withBalances(balance, balance);
+        source.createTransfer(refund);
+        source.removeReservation(transfer);
+        return refund;
+    }
+
+    private DataSource shardFor(UUID accountId) {
+        return dataSource.getShard(dataSource.shardOf(accountId));
+    }
+
+    @Override
+    public String getName() {
+        return "shards";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("shards", dataSource.getShardCount());
+        metrics.put("sameShardTransfers", sameShardTransfers.get());
+        metrics.put("crossShardTransfers", crossShardTransfers.get());
+        metrics.put("cancelledReservations", cancelledReservations.get());
+        metrics.put("inFlight", Money.ofMinorUnits(inFlight.get()).toBigDecimal());
+        return metrics;
+    }
+}
@@ -0,0 +1,53 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.ShardedDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs every operation with the write executor of the shard holding its accounts, so that shards are written in
+ * parallel, each by its own writer. Operations spanning several shards are rejected, as their writes could not be
+ * committed together.
+ */
+public class ShardedWriteExecutor implements WriteExecutor {
+    private final ShardedDataSource dataSource;
+    private final List<WriteExecutor> executors;
+
+    public ShardedWriteExecutor(ShardedDataSource dataSource, List<WriteExecutor> executors) {
+        if (executors.size() != dataSource.getShardCount()) {
+            throw new IllegalArgumentException("Expected " + dataSource.getShardCount() + " executors, got "
+                    + executors.size());
+        }
+        this.dataSource = dataSource;
+        this.executors = new ArrayList<>(executors);
+    }
+
+    @Override
+    public <T> T execute(Operation<T> operation, UUID... accounts) throws Exception {
+        int shard = -1;
+        for (UUID account : accounts) {
+            if (account == null) {
+                continue;
+            }
+            int accountShard = dataSource.shardOf(account);
+            if (shard >= 0 && accountShard != shard) {
+                throw new TransferException("Operation spans several shards");
+            }
+            shard = accountShard;
+        }
+        return executors.get(Math.max(shard, 0)).execute(operation, accounts);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        for (WriteExecutor executor : executors) {
+            executor.stop();
+        }
+    }
+
+    WriteExecutor executorFor(UUID account) {
+        return executors.get(dataSource.shardOf(account));
+    }
+}
@@ -0,0 +1,7 @@
+package eu.ammw.transfer.domain;
+
+public class SubmissionRejectedException extends Exception {
+    public SubmissionRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package eu.ammw.transfer.domain;
+
+import java.util.UUID;
+
+public class TransferNotFoundException extends Exception {
+    public TransferNotFoundException(UUID id) {
+        super("No transfer with ID " + id);
+    }
+}
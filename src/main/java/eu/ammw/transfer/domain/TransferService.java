@@ -1,58 +1,326 @@
 package eu.ammw.transfer.domain;
 
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
 import eu.ammw.transfer.db.DataSource;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.BatchItem;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
+import eu.ammw.transfer.model.Statement;
 import eu.ammw.transfer.model.Transfer;
 import eu.ammw.transfer.validator.AmountValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public class TransferService {
+    public static final int MAX_BUCKETS = 1000;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(TransferService.class);
 
     private final DataSource dataSource;
     private final AccountService accountService;
+    private final WriteExecutor writeExecutor;
+    private final HotAccounts hotAccounts;
 
     public TransferService(DataSource dataSource, AccountService accountService) {
+        this(dataSource, accountService, new LockingWriteExecutor(dataSource, new AccountLocks()));
+    }
+
+    public TransferService(DataSource dataSource, AccountService accountService, WriteExecutor writeExecutor) {
+        this(dataSource, accountService, writeExecutor, HotAccounts.NONE);
+    }
+
+    /**
+     * Credits to hot accounts go to a random slot, debits take the amount from a random slot if it holds enough, and
+     * otherwise lock the whole account and spread what remains evenly over its slots again. Transfers record no
+     * balance after them on the side of a single slot.
+     */
+    public TransferService(DataSource dataSource, AccountService accountService, WriteExecutor writeExecutor,
+                           HotAccounts hotAccounts) {
         this.dataSource = dataSource;
         this.accountService = accountService;
+        this.writeExecutor = writeExecutor;
+        this.hotAccounts = hotAccounts;
+    }
+
+    public Transfer transfer(UUID from, UUID to, Money amount)
+            throws InsufficientFundsException, NegativeTransferException, AccountNotFoundException, TransferException {
+        return transfer(UUID.randomUUID(), from, to, amount);
     }
 
-    public synchronized Transfer transfer(UUID from, UUID to, BigDecimal amount)
+    /**
+     * Makes a transfer under the given ID, e.g. one handed out before the transfer was performed.
+     */
+    public Transfer transfer(UUID id, UUID from, UUID to, Money amount)
             throws InsufficientFundsException, NegativeTransferException, AccountNotFoundException, TransferException {
+        if (amount == null) {
+            throw new InvalidTransferException("Missing amount");
+        }
         if (amount.signum() <= 0) {
             throw new NegativeTransferException(amount);
         }
         AmountValidator.validate(amount);
         if (from.equals(to)) {
-            throw new TransferException("Cannot transfer money to yourself!");
+            throw new InvalidTransferException("Cannot transfer money to yourself!");
+        }
+
+        try {
+            Transfer transfer = executeTransfer(
+                    new Transfer(id, from, to, amount, Instant.ofEpochMilli(System.currentTimeMillis()), null, null));
+            LOGGER.info("Transferred {} from {} to {}", amount, from, to);
+            return transfer;
+        } catch (InsufficientFundsException | AccountNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TransferException("Exception while transferring", e);
+        }
+    }
+
+    /**
+     * Runs a validated transfer between two distinct accounts. The request carries no balances yet.
+     */
+    protected Transfer executeTransfer(Transfer request) throws Exception {
+        UUID from = request.getFrom();
+        UUID to = request.getTo();
+        if (hotAccounts.isHot(from) || hotAccounts.isHot(to)) {
+            return executeHotTransfer(request);
         }
+        return writeExecutor.execute(() -> doTransfer(request), from, to);
+    }
+
+    /**
+     * Returns the transfer with the given ID, if it was made.
+     */
+    public Optional<Transfer> findTransfer(UUID transferId) {
+        return dataSource.getTransfer(transferId);
+    }
 
+    /**
+     * Returns whether the exception was caused by a commit that may or may not have been made.
+     */
+    static boolean isOutcomeUnknown(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CommitOutcomeUnknownException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Transfer executeHotTransfer(Transfer request) throws Exception {
+        UUID from = request.getFrom();
+        UUID to = request.getTo();
+        int toSlot = hotAccounts.pickSlot(to);
+        UUID toKey = hotAccounts.lockKey(to, toSlot);
+        int fromSlot = hotAccounts.pickSlot(from);
+        if (fromSlot != HotAccounts.WHOLE) {
+            Transfer transfer = writeExecutor.execute(() -> doTransfer(request, fromSlot, toSlot),
+                    hotAccounts.lockKey(from, fromSlot), toKey);
+            if (transfer != null) {
+                return transfer;
+            }
+        }
+        UUID[] keys = hotAccounts.lockKeys(from, toKey);
+        return writeExecutor.execute(() -> doTransfer(request, HotAccounts.WHOLE, toSlot), keys);
+    }
+
+    private Transfer doTransfer(Transfer request) throws InsufficientFundsException, AccountNotFoundException {
+        UUID from = request.getFrom();
+        UUID to = request.getTo();
+        Money amount = request.getAmount();
         Account accountTo = accountService.getAccount(to);
         Account accountFrom = accountService.getAccount(from);
         if (accountFrom.getBalance().compareTo(amount) < 0) {
             throw new InsufficientFundsException(accountFrom, amount);
         }
 
-        Transfer transfer = new Transfer(from, to, amount);
-        accountFrom.setBalance(accountFrom.getBalance().subtract(amount));
-        accountTo.setBalance(accountTo.getBalance().add(amount));
+        accountFrom.setBalance(accountFrom.getBalance().minus(amount));
+        accountTo.setBalance(accountTo.getBalance().plus(amount));
+        Transfer transfer = request.withBalances(accountFrom.getBalance(), accountTo.getBalance());
+
+        dataSource.createTransfer(transfer);
+        dataSource.updateAccount(accountFrom);
+        dataSource.updateAccount(accountTo);
+        return transfer;
+    }
 
+    /**
+     * Runs a transfer on the whole balances or single slots of the accounts. Returns {@code null} without writing
+     * anything if the source slot holds less than the amount.
+     */
+    private Transfer doTransfer(Transfer request, int fromSlot, int toSlot)
+            throws InsufficientFundsException, AccountNotFoundException {
+        UUID from = request.getFrom();
+        UUID to = request.getTo();
+        Money amount = request.getAmount();
+        Account accountTo = accountService.getAccount(to);
+        Account accountFrom = accountService.getAccount(from);
+        Money fromBalance = null;
+        if (fromSlot == HotAccounts.WHOLE) {
+            if (accountFrom.getBalance().compareTo(amount) < 0) {
+                throw new InsufficientFundsException(accountFrom, amount);
+            }
+            accountFrom.setBalance(accountFrom.getBalance().minus(amount));
+            fromBalance = accountFrom.getBalance();
+            updateBalance(accountFrom);
+        } else if (dataSource.getSubBalance(from, fromSlot).compareTo(amount) < 0) {
+            return null;
+        } else {
+            dataSource.addToSubBalance(from, fromSlot, amount.negate());
+        }
+        Money toBalance = null;
+        if (toSlot == HotAccounts.WHOLE) {
+            accountTo.setBalance(accountTo.getBalance().plus(amount));
+            toBalance = accountTo.getBalance();
+            updateBalance(accountTo);
+        } else {
+            dataSource.addToSubBalance(to, toSlot, amount);
+        }
+        Transfer transfer = request.withBalances(fromBalance, toBalance);
+        dataSource.createTransfer(transfer);
+        return transfer;
+    }
+
+    /**
+     * Writes the balance of an account locked as a whole. A hot account gets it spread evenly over its slots, so that
+     * the following debits can be taken from single slots again.
+     */
+    private void updateBalance(Account account) {
+        int slots = hotAccounts.getSlots(account.getId());
+        if (slots == 0) {
+            dataSource.updateAccount(account);
+            return;
+        }
+        long balance = account.getBalance().getMinorUnits();
+        Money share = Money.ofMinorUnits(balance / slots);
+        dataSource.updateAccount(new Account(account.getId(), account.getName(),
+                Money.ofMinorUnits(balance - share.getMinorUnits() * slots)));
+        if (share.signum() != 0) {
+            for (int slot = 0; slot < slots; slot++) {
+                dataSource.addToSubBalance(account.getId(), slot, share);
+            }
+        }
+    }
+
+    /**
+     * Applies all transfers under a single lock acquisition and a single commit. When {@code allOrNothing} is set,
+     * a failure of any transfer leaves all balances untouched, otherwise only the failed transfers are skipped.
+     */
+    public List<BatchResult> transferBatch(List<Transfer> transfers, boolean allOrNothing) throws TransferException {
+        return transferItems(transfers.stream().map(BatchItem::of).collect(Collectors.toList()), allOrNothing);
+    }
+
+    /**
+     * Applies a batch as {@link #transferBatch(List, boolean)} does, with the amounts as they were requested. An amount
+     * that is not valid money fails only its own transfer.
+     */
+    public List<BatchResult> transferItems(List<BatchItem> items, boolean allOrNothing) throws TransferException {
+        UUID[] ids = new UUID[2 * items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            ids[2 * i] = items.get(i).getFrom();
+            ids[2 * i + 1] = items.get(i).getTo();
+        }
         try {
-            dataSource.createTransfer(transfer);
-            dataSource.updateAccount(accountFrom);
-            dataSource.updateAccount(accountTo);
-            dataSource.commit();
-            LOGGER.info("Transferred {} from {} to {}", amount, from, to);
-            return transfer;
+            List<BatchResult> results = writeExecutor.execute(() -> doTransferBatch(items, allOrNothing),
+                    hotAccounts.lockKeys(ids));
+            LOGGER.info("Processed batch of {} transfers", items.size());
+            return results;
         } catch (Exception e) {
-            dataSource.rollback();
-            throw new TransferException("Exception while transferring", e);
+            throw new TransferException("Exception during batch transfer", e);
+        }
+    }
+
+    private List<BatchResult> doTransferBatch(List<BatchItem> items, boolean allOrNothing) {
+        Map<UUID, Account> accounts = new HashMap<>();
+        List<Transfer> applied = new ArrayList<>(items.size());
+        List<BatchResult> results = new ArrayList<>(items.size());
+        boolean failed = false;
+        for (BatchItem item : items) {
+            Transfer request;
+            try {
+                request = item.toTransfer();
+            } catch (NumberFormatException e) {
+                failed = true;
+                results.add(BatchResult.failed(new Transfer(null, item.getFrom(), item.getTo(), null), e.getMessage()));
+                continue;
+            }
+            try {
+                Transfer transfer = applyInMemory(request, accounts);
+                applied.add(transfer);
+                results.add(BatchResult.completed(transfer));
+            } catch (InsufficientFundsException | NegativeTransferException | AccountNotFoundException
+                    | TransferException | NumberFormatException e) {
+                failed = true;
+                results.add(BatchResult.failed(request, e.getMessage()));
+            }
+        }
+        if (allOrNothing && failed) {
+            LOGGER.info("Rejected batch of {} transfers", items.size());
+            return results.stream()
+                    .map(result -> result.getStatus() == BatchResult.Status.COMPLETED
+                            ? BatchResult.notApplied(result.getTransfer()) : result)
+                    .collect(Collectors.toList());
+        }
+
+        Set<UUID> touched = new LinkedHashSet<>();
+        for (Transfer transfer : applied) {
+            dataSource.createTransfer(transfer);
+            touched.add(transfer.getFrom());
+            touched.add(transfer.getTo());
+        }
+        for (UUID id : touched) {
+            updateBalance(accounts.get(id));
+        }
+        return results;
+    }
+
+    private Transfer applyInMemory(Transfer request, Map<UUID, Account> accounts)
+            throws InsufficientFundsException, NegativeTransferException, AccountNotFoundException, TransferException {
+        Money amount = request.getAmount();
+        if (amount == null) {
+            throw new InvalidTransferException("Missing amount");
+        }
+        if (amount.signum() <= 0) {
+            throw new NegativeTransferException(amount);
         }
+        AmountValidator.validate(amount);
+        if (Objects.equals(request.getFrom(), request.getTo())) {
+            throw new InvalidTransferException("Cannot transfer money to yourself!");
+        }
+
+        Account accountTo = loadAccount(request.getTo(), accounts);
+        Account accountFrom = loadAccount(request.getFrom(), accounts);
+        if (accountFrom.getBalance().compareTo(amount) < 0) {
+            throw new InsufficientFundsException(accountFrom, amount);
+        }
+        accountFrom.setBalance(accountFrom.getBalance().minus(amount));
+        accountTo.setBalance(accountTo.getBalance().plus(amount));
+        return new Transfer(accountFrom.getId(), accountTo.getId(), amount)
+                .withBalances(accountFrom.getBalance(), accountTo.getBalance());
+    }
+
+    private Account loadAccount(UUID id, Map<UUID, Account> accounts) throws AccountNotFoundException {
+        Account account = accounts.get(id);
+        if (account == null) {
+            account = accountService.getAccount(id);
+            accounts.put(id, account);
+        }
+        return account;
     }
 
     public List<Transfer> getHistory(UUID id) throws AccountNotFoundException {
@@ -62,38 +330,189 @@ public class TransferService {
         throw new AccountNotFoundException(id);
     }
 
-    public synchronized void deposit(UUID accountId, BigDecimal amount)
+    public void forEachTransfer(UUID id, Consumer<Transfer> consumer) throws AccountNotFoundException {
+        if (accountService.accountExists(id)) {
+            dataSource.forEachTransfer(id, consumer);
+            return;
+        }
+        throw new AccountNotFoundException(id);
+    }
+
+    public Page<Transfer> getHistory(UUID id, UUID after, int limit) throws AccountNotFoundException {
+        if (accountService.accountExists(id)) {
+            return Page.of(dataSource.getHistory(id, after, limit + 1), limit, Transfer::getId);
+        }
+        throw new AccountNotFoundException(id);
+    }
+
+    /**
+     * Returns a page of the account's transfers made from {@code from} (inclusive) until {@code to} (exclusive),
+     * in time order.
+     */
+    public Page<Transfer> getHistory(UUID id, Instant from, Instant to, UUID after, int limit)
+            throws AccountNotFoundException {
+        if (accountService.accountExists(id)) {
+            return Page.of(dataSource.getHistory(id, from, to, after, limit + 1), limit, Transfer::getId);
+        }
+        throw new AccountNotFoundException(id);
+    }
+
+    /**
+     * Returns the account's buckets covering the time from {@code from} until {@code to} (exclusive), starting with
+     * the bucket holding {@code from}. Buckets without transfers are left out, and at most {@link #MAX_BUCKETS} can
+     * be covered at once.
+     */
+    public List<Bucket> getBuckets(UUID id, Bucket.Resolution resolution, Instant from, Instant to)
+            throws AccountNotFoundException {
+        long start = resolution.startOf(from.toEpochMilli());
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Empty time range: " + from + " - " + to);
+        }
+        if ((to.toEpochMilli() - start - 1) / resolution.getMillis() >= MAX_BUCKETS) {
+            throw new IllegalArgumentException("Time range " + from + " - " + to + " spans more than " + MAX_BUCKETS
+                    + " buckets of one " + resolution.name().toLowerCase());
+        }
+        if (accountService.accountExists(id)) {
+            return dataSource.getBuckets(id, resolution, Instant.ofEpochMilli(start), to);
+        }
+        throw new AccountNotFoundException(id);
+    }
+
+    /**
+     * Returns a transfer of the account, with the balances recorded right after it.
+     */
+    public Transfer getTransfer(UUID accountId, UUID transferId)
+            throws AccountNotFoundException, TransferNotFoundException {
+        if (!accountService.accountExists(accountId)) {
+            throw new AccountNotFoundException(accountId);
+        }
+        Transfer transfer = dataSource.getTransfer(transferId)
+                .orElseThrow(() -> new TransferNotFoundException(transferId));
+        if (!accountId.equals(transfer.getFrom()) && !accountId.equals(transfer.getTo())) {
+            throw new TransferNotFoundException(transferId);
+        }
+        return transfer;
+    }
+
+    /**
+     * Returns the balance of the account right after the transfer, as recorded with it. Transfers journaled before
+     * balances were recorded get them filled in when the journal is read; a transfer still without the balance, e.g. on
+     * the side of a hot account that only touched a slot, is rejected rather than summing up the history before it.
+     */
+    public Money getBalanceAfter(UUID accountId, UUID transferId)
+            throws AccountNotFoundException, TransferNotFoundException {
+        Money balance = getTransfer(accountId, transferId).getBalanceAfter(accountId);
+        if (balance == null) {
+            throw new IllegalStateException("Balance of account " + accountId + " after transfer " + transferId
+                    + " was not recorded");
+        }
+        return balance;
+    }
+
+    /**
+     * Returns a page of the account's history with the balances around it. The opening balance is read from the
+     * transfer preceding the page, the closing one follows from the transfers on the page.
+     */
+    public Statement getStatement(UUID accountId, UUID after, int limit)
+            throws AccountNotFoundException, TransferNotFoundException {
+        Money opening = after == null ? Money.ZERO : getBalanceAfter(accountId, after);
+        Page<Transfer> page = getHistory(accountId, after, limit);
+        Money closing = opening;
+        for (Transfer transfer : page.getItems()) {
+            closing = closing.plus(transfer.getSignedAmount(accountId));
+        }
+        return new Statement(opening, page, closing);
+    }
+
+    public void deposit(UUID accountId, Money amount)
             throws AccountNotFoundException, TransferException {
         AmountValidator.validate(amount);
-        Account account = accountService.getAccount(accountId);
-        account.setBalance(account.getBalance().add(amount));
         try {
-            dataSource.updateAccount(account);
-            dataSource.createTransfer(new Transfer(accountId, accountId, amount));
-            dataSource.commit();
-            LOGGER.info("Deposited {} on '{}' account ({})", amount, account.getName(), account.getId());
+            int slot = hotAccounts.pickSlot(accountId);
+            writeExecutor.execute(() -> doDeposit(accountId, slot, amount), hotAccounts.lockKey(accountId, slot));
+            LOGGER.info("Deposited {} on account {}", amount, accountId);
+        } catch (AccountNotFoundException e) {
+            throw e;
         } catch (Exception e) {
-            dataSource.rollback();
             throw new TransferException("Exception during deposit", e);
         }
     }
 
-    public synchronized void withdraw(UUID accountId, BigDecimal amount)
+    private Transfer doDeposit(UUID accountId, int slot, Money amount) throws AccountNotFoundException {
+        if (slot != HotAccounts.WHOLE) {
+            accountService.getAccount(accountId);
+            dataSource.addToSubBalance(accountId, slot, amount);
+            Transfer transfer = new Transfer(accountId, accountId, amount);
+            dataSource.createTransfer(transfer);
+            return transfer;
+        }
+        Money balance = dataSource.credit(accountId, amount).orElseThrow(() -> new AccountNotFoundException(accountId));
+        Transfer transfer = new Transfer(accountId, accountId, amount).withBalances(balance, balance);
+        dataSource.createTransfer(transfer);
+        return transfer;
+    }
+
+    public void withdraw(UUID accountId, Money amount)
             throws AccountNotFoundException, InsufficientFundsException, TransferException {
         AmountValidator.validate(amount);
-        Account account = accountService.getAccount(accountId);
-        if (amount.compareTo(account.getBalance()) > 0) {
-            throw new InsufficientFundsException(account, amount);
-        }
-        account.setBalance(account.getBalance().subtract(amount));
         try {
-            dataSource.updateAccount(account);
-            dataSource.createTransfer(new Transfer(accountId, accountId, amount.negate()));
-            dataSource.commit();
-            LOGGER.info("Withdrawal of {} from '{}' account ({})", amount, account.getName(), account.getId());
+            int slot = hotAccounts.pickSlot(accountId);
+            Transfer transfer = null;
+            if (slot != HotAccounts.WHOLE) {
+                transfer = writeExecutor.execute(() -> doWithdraw(accountId, slot, amount),
+                        hotAccounts.lockKey(accountId, slot));
+            }
+            if (transfer == null) {
+                writeExecutor.execute(() -> doWithdraw(accountId, amount), hotAccounts.lockKeys(accountId));
+            }
+            LOGGER.info("Withdrawal of {} from account {}", amount, accountId);
+        } catch (AccountNotFoundException | InsufficientFundsException e) {
+            throw e;
         } catch (Exception e) {
-            dataSource.rollback();
             throw new TransferException("Exception during withdrawal", e);
         }
     }
+
+    /**
+     * Takes the amount from the whole balance. A regular account is debited with a single conditional write, a hot
+     * account is read and gets what remains spread over its slots again.
+     */
+    private Transfer doWithdraw(UUID accountId, Money amount)
+            throws AccountNotFoundException, InsufficientFundsException {
+        Money balance;
+        if (!hotAccounts.isHot(accountId)) {
+            Optional<Money> debited = dataSource.debitIfSufficient(accountId, amount);
+            if (!debited.isPresent()) {
+                // nothing was written, the account is only read to tell whether it is missing or short
+                throw new InsufficientFundsException(accountService.getAccount(accountId), amount);
+            }
+            balance = debited.get();
+        } else {
+            Account account = accountService.getAccount(accountId);
+            if (amount.compareTo(account.getBalance()) > 0) {
+                throw new InsufficientFundsException(account, amount);
+            }
+            account.setBalance(account.getBalance().minus(amount));
+            updateBalance(account);
+            balance = account.getBalance();
+        }
+        Transfer transfer = new Transfer(accountId, accountId, amount.negate()).withBalances(balance, balance);
+        dataSource.createTransfer(transfer);
+        return transfer;
+    }
+
+    /**
+     * Takes the amount from a slot of a hot account. Returns {@code null} without writing anything if the slot holds
+     * less than the amount.
+     */
+    private Transfer doWithdraw(UUID accountId, int slot, Money amount) throws AccountNotFoundException {
+        accountService.getAccount(accountId);
+        if (dataSource.getSubBalance(accountId, slot).compareTo(amount) < 0) {
+            return null;
+        }
+        dataSource.addToSubBalance(accountId, slot, amount.negate());
+        Transfer transfer = new Transfer(accountId, accountId, amount.negate());
+        dataSource.createTransfer(transfer);
+        return transfer;
+    }
 }
@@ -0,0 +1,22 @@
+package eu.ammw.transfer.domain;
+
+import java.util.UUID;
+
+/**
+ * Runs write operations of {@link TransferService} and commits them. Operations may throw checked exceptions
+ * only before they write anything, so that rejecting one operation never requires undoing the work of another.
+ */
+public interface WriteExecutor {
+    <T> T execute(Operation<T> operation, UUID... accounts) throws Exception;
+
+    /**
+     * Stops accepting new operations and waits until the accepted ones are committed. Executors committing on the
+     * calling thread have nothing to wait for.
+     */
+    default void stop() throws InterruptedException {
+    }
+
+    interface Operation<T> {
+        T apply() throws Exception;
+    }
+}
@@ -0,0 +1,214 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.model.Transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store of the transfers folded out of the log, kept apart from the snapshots so that a snapshot writes
+ * only the transfers made since the previous one. Transfers are stored in commit order in chunk files of at most
+ * {@link #CHUNK_SIZE} transfers by default, named after the position of their first transfer in the history:
+ * <pre>
+ * [int magic][int version]
+ * [transfer]*
+ * </pre>
+ * A chunk is written to a temporary file and renamed when complete. The last chunk is rewritten with the new transfers
+ * until it is full, and a chunk may hold transfers past the end of the history recorded in the latest snapshot, left
+ * by a snapshot that did not complete; readers ignore them and the next append overwrites them.
+ */
+final class HistoryStore {
+    static final int CHUNK_SIZE = 65_536;
+
+    private static final String SUFFIX = ".hist";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x54534E48;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final int chunkSize;
+
+    HistoryStore(Path directory) {
+        this(directory, CHUNK_SIZE);
+    }
+
+    HistoryStore(Path directory, int chunkSize) {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the chunks holding the first {@code count} transfers of the history, in order.
+     */
+    List<Chunk> chunks(long count) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long next = 0;
+        for (Path path : list()) {
+            long start = startOf(path);
+            if (start >= count) {
+                break;
+            }
+            if (start != next) {
+                throw new IOException("History chunk " + path + " does not follow transfer " + next);
+            }
+            long stored = (Files.size(path) - HEADER_SIZE) / JournalCodec.TRANSFER_SIZE;
+            Chunk chunk = new Chunk(path, start, (int) Math.min(stored, count - start));
+            chunks.add(chunk);
+            next = start + chunk.count;
+        }
+        if (next != count) {
+            throw new IOException("History holds " + next + " transfers, expected " + count);
+        }
+        return chunks;
+    }
+
+    /**
+     * Starts appending transfers after the first {@code count} transfers of the history, dropping any stored after
+     * them.
+     */
+    Appender append(long count) throws IOException {
+        List<Chunk> kept = chunks(count);
+        for (Path path : list()) {
+            if (startOf(path) >= count) {
+                Files.delete(path);
+            }
+        }
+        Chunk last = kept.isEmpty() ? null : kept.get(kept.size() - 1);
+        if (last == null || last.count == chunkSize) {
+            return new Appender(count);
+        }
+        Appender appender = new Appender(last.start);
+        for (Transfer transfer : read(last)) {
+            appender.transfer(transfer);
+        }
+        return appender;
+    }
+
+    /**
+     * Reads the transfers of a chunk. Chunks no longer change once written, so they can be read in parallel.
+     */
+    static List<Transfer> read(Chunk chunk) throws IOException {
+        List<Transfer> transfers = new ArrayList<>(chunk.count);
+        try (FileChannel channel = FileChannel.open(chunk.path)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_SIZE + (long) chunk.count * JournalCodec.TRANSFER_SIZE);
+            if (buffer.getInt() != MAGIC || buffer.getInt() > VERSION) {
+                throw new IOException("Not a history chunk: " + chunk.path);
+            }
+            for (int i = 0; i < chunk.count; i++) {
+                transfers.add(JournalCodec.getTransfer(buffer));
+            }
+        }
+        return transfers;
+    }
+
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path pathOf(long start, String suffix) {
+        return directory.resolve(String.format("%020d%s", start, suffix));
+    }
+
+    private static long startOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    static final class Chunk {
+        private final Path path;
+        private final long start;
+        private final int count;
+
+        private Chunk(Path path, long start, int count) {
+            this.path = path;
+            this.start = start;
+            this.count = count;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Writes transfers into chunks, each forced to disk and renamed when full or when the appender is finished.
+     */
+    final class Appender implements Closeable {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private FileChannel channel;
+        private long start;
+        private long count;
+
+        private Appender(long start) {
+            this.start = start;
+            this.count = start;
+        }
+
+        void transfer(Transfer transfer) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(pathOf(start, SUFFIX + TEMPORARY_SUFFIX), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                buffer.putInt(MAGIC).putInt(VERSION);
+            }
+            if (buffer.remaining() < JournalCodec.TRANSFER_SIZE) {
+                flush();
+            }
+            JournalCodec.putTransfer(buffer, transfer);
+            if (++count - start == chunkSize) {
+                seal();
+            }
+        }
+
+        /**
+         * Seals the last chunk and returns the number of transfers in the history.
+         */
+        long finish() throws IOException {
+            if (channel != null) {
+                seal();
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                Files.deleteIfExists(pathOf(start, SUFFIX + TEMPORARY_SUFFIX));
+            }
+        }
+
+        private void seal() throws IOException {
+            flush();
+            channel.force(true);
+            channel.close();
+            channel = null;
+            Files.move(pathOf(start, SUFFIX + TEMPORARY_SUFFIX), pathOf(start, SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            start = count;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Binary format of a committed transaction: the number of entries followed by the entries in the order they were
+ * written, each prefixed with its type. Accounts are stored with their balance after the transaction, so that applying
+ * an entry twice has the same effect as applying it once. Transfers carry the balances of both sides after them and
+ * their timestamp in milliseconds, an unrecorded balance or timestamp is stored as {@link Long#MIN_VALUE}; transfers of
+ * the older types without balances or without a timestamp are still read. Transfers without balances get them from the
+ * balances their accounts were journaled with in the same transaction.
+ * <p>
+ * Changes of sub-balances are stored as the amounts added, since their writers lock a single slot and never learn the
+ * balance of the whole account, and so are credits and debits, which never read it. Unlike the other entries they have
+ * to be applied exactly once, on top of the state before them.
+ * <p>
+ * Reservations are stored as the whole transfer both when added and when removed.
+ */
+final class JournalCodec {
+    private static final byte ACCOUNT = 1;
+    private static final byte TRANSFER_WITHOUT_BALANCES = 2;
+    private static final byte TRANSFER_WITHOUT_TIMESTAMP = 3;
+    private static final byte TRANSFER = 4;
+    private static final byte SUB_BALANCE_CHANGE = 5;
+    private static final byte BALANCE_CHANGE = 6;
+    private static final byte RESERVATION = 7;
+    private static final byte RESERVATION_REMOVAL = 8;
+    private static final long NO_BALANCE = Long.MIN_VALUE;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    static final int ACCOUNT_SIZE = 16 + 8 + 2;
+    static final int TRANSFER_WITHOUT_BALANCES_SIZE = 3 * 16 + 8;
+    static final int TRANSFER_WITHOUT_TIMESTAMP_SIZE = TRANSFER_WITHOUT_BALANCES_SIZE + 2 * 8;
+    static final int TRANSFER_SIZE = TRANSFER_WITHOUT_TIMESTAMP_SIZE + 8;
+    static final int SUB_BALANCE_CHANGE_SIZE = 16 + 4 + 8;
+    static final int BALANCE_CHANGE_SIZE = 16 + 8;
+
+    private JournalCodec() {}
+
+    static byte[] encode(List<Object> entries) {
+        int size = 4;
+        for (Object entry : entries) {
+            if (entry instanceof Account) {
+                size += 1 + sizeOf((Account) entry);
+            } else if (entry instanceof SubBalanceChange) {
+                size += 1 + SUB_BALANCE_CHANGE_SIZE;
+            } else if (entry instanceof BalanceChange) {
+                size += 1 + BALANCE_CHANGE_SIZE;
+            } else {
+                size += 1 + TRANSFER_SIZE;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(entries.size());
+        for (Object entry : entries) {
+            if (entry instanceof Account) {
+                buffer.put(ACCOUNT);
+                putAccount(buffer, (Account) entry);
+            } else if (entry instanceof SubBalanceChange) {
+                buffer.put(SUB_BALANCE_CHANGE);
+                putSubBalanceChange(buffer, (SubBalanceChange) entry);
+            } else if (entry instanceof BalanceChange) {
+                buffer.put(BALANCE_CHANGE);
+                putBalanceChange(buffer, (BalanceChange) entry);
+            } else if (entry instanceof Reservation) {
+                buffer.put(RESERVATION);
+                putTransfer(buffer, ((Reservation) entry).transfer);
+            } else if (entry instanceof ReservationRemoval) {
+                buffer.put(RESERVATION_REMOVAL);
+                putTransfer(buffer, ((ReservationRemoval) entry).transfer);
+            } else {
+                buffer.put(TRANSFER);
+                putTransfer(buffer, (Transfer) entry);
+            }
+        }
+        return buffer.array();
+    }
+
+    static void decode(ByteBuffer buffer, EntryHandler handler) {
+        if (holdsTransfersWithoutBalances(buffer.duplicate())) {
+            decodeFillingBalances(buffer, handler);
+        } else {
+            decodeEntries(buffer, handler);
+        }
+    }
+
+    private static void decodeEntries(ByteBuffer buffer, EntryHandler handler) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            byte type = buffer.get();
+            if (type == ACCOUNT) {
+                handler.account(getAccount(buffer));
+            } else if (type == TRANSFER) {
+                handler.transfer(getTransfer(buffer));
+            } else if (type == SUB_BALANCE_CHANGE) {
+                SubBalanceChange change = getSubBalanceChange(buffer);
+                handler.subBalanceChange(change.accountId, change.slot, change.change);
+            } else if (type == BALANCE_CHANGE) {
+                BalanceChange change = getBalanceChange(buffer);
+                handler.balanceChange(change.accountId, change.change);
+            } else if (type == RESERVATION) {
+                handler.reservation(getTransfer(buffer));
+            } else if (type == RESERVATION_REMOVAL) {
+                handler.reservationRemoval(getTransfer(buffer));
+            } else if (type == TRANSFER_WITHOUT_TIMESTAMP) {
+                handler.transfer(getTransferWithoutTimestamp(buffer));
+            } else if (type == TRANSFER_WITHOUT_BALANCES) {
+                handler.transfer(getTransferWithoutBalances(buffer));
+            } else {
+                throw new IllegalStateException("Unknown journal entry type " + type);
+            }
+        }
+    }
+
+    /**
+     * Decodes a transaction journaled before transfers carried balances, filling them in from the balances the accounts
+     * were journaled with after it: the balance after a transfer is that balance less the changes of the transfers of
+     * the account that follow it in the transaction. A side without its account in the transaction, e.g. held by
+     * another shard, is left without a balance.
+     */
+    private static void decodeFillingBalances(ByteBuffer buffer, EntryHandler handler) {
+        List<Object> entries = new ArrayList<>();
+        decodeEntries(buffer, new EntryHandler() {
+            @Override
+            public void account(Account account) {
+                entries.add(account);
+            }
+
+            @Override
+            public void subBalanceChange(UUID accountId, int slot, Money change) {
+                entries.add(new SubBalanceChange(accountId, slot, change));
+            }
+
+            @Override
+            public void balanceChange(UUID accountId, Money change) {
+                entries.add(new BalanceChange(accountId, change));
+            }
+
+            @Override
+            public void transfer(Transfer transfer) {
+                entries.add(transfer);
+            }
+
+            @Override
+            public void reservation(Transfer transfer) {
+                entries.add(new Reservation(transfer));
+            }
+
+            @Override
+            public void reservationRemoval(Transfer transfer) {
+                entries.add(new ReservationRemoval(transfer));
+            }
+        });
+        Map<UUID, Money> balances = new HashMap<>();
+        for (Object entry : entries) {
+            if (entry instanceof Account) {
+                balances.put(((Account) entry).getId(), ((Account) entry).getBalance());
+            }
+        }
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i) instanceof Transfer) {
+                Transfer transfer = (Transfer) entries.get(i);
+                Money fromBalance = balances.get(transfer.getFrom());
+                Money toBalance = balances.get(transfer.getTo());
+                entries.set(i, transfer.withBalances(fromBalance, toBalance));
+                balances.computeIfPresent(transfer.getFrom(),
+                        (id, balance) -> balance.minus(transfer.getSignedAmount(id)));
+                if (!transfer.getFrom().equals(transfer.getTo())) {
+                    balances.computeIfPresent(transfer.getTo(),
+                            (id, balance) -> balance.minus(transfer.getSignedAmount(id)));
+                }
+            }
+        }
+        for (Object entry : entries) {
+            if (entry instanceof Account) {
+                handler.account((Account) entry);
+            } else if (entry instanceof SubBalanceChange) {
+                SubBalanceChange change = (SubBalanceChange) entry;
+                handler.subBalanceChange(change.accountId, change.slot, change.change);
+            } else if (entry instanceof BalanceChange) {
+                handler.balanceChange(((BalanceChange) entry).accountId, ((BalanceChange) entry).change);
+            } else if (entry instanceof Reservation) {
+                handler.reservation(((Reservation) entry).transfer);
+            } else if (entry instanceof ReservationRemoval) {
+                handler.reservationRemoval(((ReservationRemoval) entry).transfer);
+            } else {
+                handler.transfer((Transfer) entry);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the transaction holds transfers of the type written before balances were recorded, reading the
+     * given buffer up to the first one.
+     */
+    private static boolean holdsTransfersWithoutBalances(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            byte type = buffer.get();
+            if (type == TRANSFER_WITHOUT_BALANCES) {
+                return true;
+            } else if (type == ACCOUNT) {
+                buffer.position(buffer.position() + ACCOUNT_SIZE - 2);
+                int nameLength = buffer.getShort() & 0xFFFF;
+                buffer.position(buffer.position() + nameLength);
+            } else if (type == TRANSFER || type == RESERVATION || type == RESERVATION_REMOVAL) {
+                buffer.position(buffer.position() + TRANSFER_SIZE);
+            } else if (type == TRANSFER_WITHOUT_TIMESTAMP) {
+                buffer.position(buffer.position() + TRANSFER_WITHOUT_TIMESTAMP_SIZE);
+            } else if (type == SUB_BALANCE_CHANGE) {
+                buffer.position(buffer.position() + SUB_BALANCE_CHANGE_SIZE);
+            } else if (type == BALANCE_CHANGE) {
+                buffer.position(buffer.position() + BALANCE_CHANGE_SIZE);
+            } else {
+                // unknown entries are reported by decoding
+                return false;
+            }
+        }
+        return false;
+    }
+
+    static int sizeOf(Account account) {
+        return ACCOUNT_SIZE + nameBytes(account).length;
+    }
+
+    static void putAccount(ByteBuffer buffer, Account account) {
+        byte[] name = nameBytes(account);
+        putId(buffer, account.getId());
+        buffer.putLong(account.getBalance().getMinorUnits());
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+    }
+
+    static Account getAccount(ByteBuffer buffer) {
+        UUID id = getId(buffer);
+        Money balance = Money.ofMinorUnits(buffer.getLong());
+        byte[] name = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(name);
+        return new Account(id, new String(name, StandardCharsets.UTF_8), balance);
+    }
+
+    static void putSubBalanceChange(ByteBuffer buffer, SubBalanceChange change) {
+        putId(buffer, change.accountId);
+        buffer.putInt(change.slot);
+        buffer.putLong(change.change.getMinorUnits());
+    }
+
+    static SubBalanceChange getSubBalanceChange(ByteBuffer buffer) {
+        UUID accountId = getId(buffer);
+        int slot = buffer.getInt();
+        return new SubBalanceChange(accountId, slot, Money.ofMinorUnits(buffer.getLong()));
+    }
+
+    static void putBalanceChange(ByteBuffer buffer, BalanceChange change) {
+        putId(buffer, change.accountId);
+        buffer.putLong(change.change.getMinorUnits());
+    }
+
+    static BalanceChange getBalanceChange(ByteBuffer buffer) {
+        UUID accountId = getId(buffer);
+        return new BalanceChange(accountId, Money.ofMinorUnits(buffer.getLong()));
+    }
+
+    static void putTransfer(ByteBuffer buffer, Transfer transfer) {
+        putId(buffer, transfer.getId());
+        putId(buffer, transfer.getFrom());
+        putId(buffer, transfer.getTo());
+        buffer.putLong(transfer.getAmount().getMinorUnits());
+        putBalance(buffer, transfer.getFromBalanceAfter());
+        putBalance(buffer, transfer.getToBalanceAfter());
+        buffer.putLong(transfer.getTimestamp() == null ? NO_TIMESTAMP : transfer.getTimestamp().toEpochMilli());
+    }
+
+    static Transfer getTransfer(ByteBuffer buffer) {
+        Transfer transfer = getTransferWithoutTimestamp(buffer);
+        long timestamp = buffer.getLong();
+        return new Transfer(transfer.getId(), transfer.getFrom(), transfer.getTo(), transfer.getAmount(),
+                timestamp == NO_TIMESTAMP ? null : Instant.ofEpochMilli(timestamp), transfer.getFromBalanceAfter(),
+                transfer.getToBalanceAfter());
+    }
+
+    static Transfer getTransferWithoutTimestamp(ByteBuffer buffer) {
+        Transfer transfer = getTransferWithoutBalances(buffer);
+        Money fromBalance = getBalance(buffer);
+        return transfer.withBalances(fromBalance, getBalance(buffer));
+    }
+
+    static Transfer getTransferWithoutBalances(ByteBuffer buffer) {
+        UUID id = getId(buffer);
+        UUID from = getId(buffer);
+        UUID to = getId(buffer);
+        return new Transfer(id, from, to, Money.ofMinorUnits(buffer.getLong()));
+    }
+
+    private static void putBalance(ByteBuffer buffer, Money balance) {
+        buffer.putLong(balance == null ? NO_BALANCE : balance.getMinorUnits());
+    }
+
+    private static Money getBalance(ByteBuffer buffer) {
+        long balance = buffer.getLong();
+        return balance == NO_BALANCE ? null : Money.ofMinorUnits(balance);
+    }
+
+    private static byte[] nameBytes(Account account) {
+        byte[] name = account.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Account name too long to journal: " + account.getId());
+        }
+        return name;
+    }
+
+    private static void putId(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID getId(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    static final class SubBalanceChange {
+        private final UUID accountId;
+        private final int slot;
+        private final Money change;
+
+        SubBalanceChange(UUID accountId, int slot, Money change) {
+            this.accountId = accountId;
+            this.slot = slot;
+            this.change = change;
+        }
+
+        UUID getAccountId() {
+            return accountId;
+        }
+
+        int getSlot() {
+            return slot;
+        }
+
+        Money getChange() {
+            return change;
+        }
+    }
+
+    static final class BalanceChange {
+        private final UUID accountId;
+        private final Money change;
+
+        BalanceChange(UUID accountId, Money change) {
+            this.accountId = accountId;
+            this.change = change;
+        }
+    }
+
+    static final class Reservation {
+        private final Transfer transfer;
+
+        Reservation(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    static final class ReservationRemoval {
+        private final Transfer transfer;
+
+        ReservationRemoval(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    interface EntryHandler {
+        void account(Account account);
+
+        void subBalanceChange(UUID accountId, int slot, Money change);
+
+        void balanceChange(UUID accountId, Money change);
+
+        void transfer(Transfer transfer);
+
+        void reservation(Transfer transfer);
+
+        void reservationRemoval(Transfer transfer);
+    }
+}
@@ -0,0 +1,326 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.metrics.MetricsSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Records every committed transaction of the underlying data source in a {@link WriteAheadLog}, so that its state can
+ * be rebuilt after a restart. Written accounts are journaled with their balance after the transaction, changes of
+ * sub-balances, credits, debits, transfers and reservations as they were made.
+ * <p>
+ * A transaction is appended once the underlying data source has validated it and before it becomes visible, so that
+ * nothing is committed that is not in the log, and the log holds the updates of every account in the order they were
+ * committed. If appending fails, the record may still reach the disk, and if the commit fails after appending, the log
+ * holds a transaction the storage does not. Either way the commit fails with a {@link CommitOutcomeUnknownException}
+ * and the journal stops accepting writes, as the outcome is only settled by recovering from the log on restart.
+ * <p>
+ * With a {@link SnapshotStore}, recovery loads the latest snapshot and replays only the log records after it.
+ */
+public class JournalingDataSource implements DataSource, MetricsSource, Closeable {
+    private static final int RECOVERY_BATCH_SIZE = 10_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalingDataSource.class);
+
+    private final DataSource dataSource;
+    private final WriteAheadLog log;
+    private final SnapshotStore snapshots;
+    private final ThreadLocal<List<Object>> pending = ThreadLocal.withInitial(ArrayList::new);
+    private volatile long recoveredRecords;
+    private volatile long recoveryMillis;
+    private volatile Exception failure;
+
+    public JournalingDataSource(DataSource dataSource, WriteAheadLog log) {
+        this(dataSource, log, null);
+    }
+
+    public JournalingDataSource(DataSource dataSource, WriteAheadLog log, SnapshotStore snapshots) {
+        this.dataSource = dataSource;
+        this.log = log;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Replays the log into the underlying data source. Has to be called once, before the data source is used.
+     * Returns the number of replayed log records.
+     */
+    public long recover() throws IOException {
+        long start = System.nanoTime();
+        long[] uncommitted = {0};
+        JournalCodec.EntryHandler replayer = new JournalCodec.EntryHandler() {
+            @Override
+            public void account(Account account) {
+                if (dataSource.getAccount(account.getId()).isPresent()) {
+                    dataSource.updateAccount(account);
+                } else {
+                    dataSource.createAccount(account);
+                }
+            }
+
+            @Override
+            public void subBalanceChange(UUID accountId, int slot, Money change) {
+                dataSource.addToSubBalance(accountId, slot, change);
+            }
+
+            @Override
+            public void balanceChange(UUID accountId, Money change) {
+                // a debit was checked when it was made, replaying it must not depend on the order of the commits
+                dataSource.credit(accountId, change);
+            }
+
+            @Override
+            public void transfer(Transfer transfer) {
+                dataSource.createTransfer(transfer);
+            }
+
+            @Override
+            public void reservation(Transfer transfer) {
+                dataSource.addReservation(transfer);
+            }
+
+            @Override
+            public void reservationRemoval(Transfer transfer) {
+                dataSource.removeReservation(transfer);
+            }
+        };
+        try {
+            long snapshotLsn = snapshots == null ? 0 : snapshots.load(dataSource);
+            recoveredRecords = log.replay(snapshotLsn + 1, (lsn, payload) -> {
+                JournalCodec.decode(payload, replayer);
+                if (++uncommitted[0] == RECOVERY_BATCH_SIZE) {
+                    dataSource.commit();
+                    uncommitted[0] = 0;
+                }
+            });
+            dataSource.commit();
+        } catch (IOException | RuntimeException e) {
+            dataSource.rollback();
+            throw e;
+        }
+        recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        LOGGER.info("Recovered {} transactions in {} ms", recoveredRecords, recoveryMillis);
+        return recoveredRecords;
+    }
+
+    @Override
+    public void commit() {
+        List<Object> entries = pending.get();
+        try {
+            if (failure != null) {
+                dataSource.rollback();
+                throw new IllegalStateException("Journal stopped accepting writes after a failure, restart to recover",
+                        failure);
+            }
+            if (entries.isEmpty()) {
+                dataSource.commit();
+                return;
+            }
+            byte[] record = JournalCodec.encode(entries);
+            boolean[] appended = {false};
+            try {
+                dataSource.commit(() -> {
+                    append(record);
+                    appended[0] = true;
+                });
+            } catch (RuntimeException e) {
+                if (!appended[0]) {
+                    throw e;
+                }
+                stop(e);
+                throw new CommitOutcomeUnknownException("Journaled transaction could not be committed", e);
+            }
+        } finally {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns whether the journal stopped accepting writes, because the log may no longer match the storage.
+     */
+    public boolean isStopped() {
+        return failure != null;
+    }
+
+    @Override
+    public void rollback() {
+        pending.get().clear();
+        dataSource.rollback();
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        dataSource.createAccount(account);
+        pending.get().add(copy(account));
+    }
+
+    @Override
+    public void updateAccount(Account account) {
+        dataSource.updateAccount(account);
+        pending.get().add(copy(account));
+    }
+
+    @Override
+    public Optional<Account> getAccount(UUID id) {
+        return dataSource.getAccount(id);
+    }
+
+    @Override
+    public Money getSubBalance(UUID accountId, int slot) {
+        return dataSource.getSubBalance(accountId, slot);
+    }
+
+    @Override
+    public void addToSubBalance(UUID accountId, int slot, Money change) {
+        dataSource.addToSubBalance(accountId, slot, change);
+        pending.get().add(new JournalCodec.SubBalanceChange(accountId, slot, change));
+    }
+
+    @Override
+    public Optional<Money> credit(UUID accountId, Money amount) {
+        Optional<Money> balance = dataSource.credit(accountId, amount);
+        balance.ifPresent(after -> pending.get().add(new JournalCodec.BalanceChange(accountId, amount)));
+        return balance;
+    }
+
+    @Override
+    public Optional<Money> debitIfSufficient(UUID accountId, Money amount) {
+        Optional<Money> balance = dataSource.debitIfSufficient(accountId, amount);
+        balance.ifPresent(after -> pending.get().add(new JournalCodec.BalanceChange(accountId, amount.negate())));
+        return balance;
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return dataSource.getAllAccounts();
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        dataSource.forEachAccount(consumer);
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        return dataSource.getAccounts(after, limit);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId) {
+        return dataSource.getHistory(accountId);
+    }
+
+    @Override
+    public void forEachTransfer(UUID accountId, Consumer<Transfer> consumer) {
+        dataSource.forEachTransfer(accountId, consumer);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, UUID after, int limit) {
+        return dataSource.getHistory(accountId, after, limit);
+    }
+
+    @Override
+    public List<Transfer> getHistory(UUID accountId, Instant from, Instant to, UUID after, int limit) {
+        return dataSource.getHistory(accountId, from, to, after, limit);
+    }
+
+    @Override
+    public List<Bucket> getBuckets(UUID accountId, Bucket.Resolution resolution, Instant from, Instant to) {
+        return dataSource.getBuckets(accountId, resolution, from, to);
+    }
+
+    @Override
+    public Optional<Transfer> getTransfer(UUID id) {
+        return dataSource.getTransfer(id);
+    }
+
+    @Override
+    public void createTransfer(Transfer transfer) {
+        dataSource.createTransfer(transfer);
+        pending.get().add(transfer);
+    }
+
+    @Override
+    public void addReservation(Transfer transfer) {
+        dataSource.addReservation(transfer);
+        pending.get().add(new JournalCodec.Reservation(transfer));
+    }
+
+    @Override
+    public void removeReservation(Transfer transfer) {
+        dataSource.removeReservation(transfer);
+        pending.get().add(new JournalCodec.ReservationRemoval(transfer));
+    }
+
+    @Override
+    public List<Transfer> getReservations() {
+        return dataSource.getReservations();
+    }
+
+    private void append(byte[] record) {
+        try {
+            log.append(record);
+        } catch (IllegalArgumentException e) {
+            // rejected before anything was written
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // the record may reach the disk all the same, only recovery can tell whether it was committed
+            stop(e);
+            throw new CommitOutcomeUnknownException("Could not journal transaction", e);
+        }
+    }
+
+    private void stop(Exception cause) {
+        if (failure == null) {
+            failure = cause;
+            LOGGER.error("Journal stopped accepting writes, the log may not match the storage until restarted", cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (snapshots != null) {
+            snapshots.close();
+        }
+        log.close();
+    }
+
+    @Override
+    public String getName() {
+        return "journal";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("appended", log.getAppended());
+        metrics.put("appendedBytes", log.getAppendedBytes());
+        metrics.put("syncs", log.getSyncs());
+        metrics.put("segments", log.getSegmentCount());
+        metrics.put("recovered", recoveredRecords);
+        metrics.put("recoveryMillis", recoveryMillis);
+        metrics.put("stopped", failure == null ? 0 : 1);
+        return metrics;
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getId(), account.getName(), account.getBalance());
+    }
+}
@@ -0,0 +1,355 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the state up to a log record: the open reservations, the sub-balances and all accounts, split
+ * into chunks that can be loaded independently. The transfers are kept in a {@link HistoryStore}, the snapshot only
+ * records how many of them it covers. The file ends with an index of the chunks and a fixed-size footer:
+ * <pre>
+ * [int magic][int version]
+ * [reservation]*
+ * [account id][int slot][long balance] per sub-balance
+ * [account]* per chunk
+ * [long offset][int count] per chunk
+ * [long reservations]
+ * [long last lsn][long transfers][long accounts][long index offset][int chunks][int magic]
+ * </pre>
+ * Reservations are stored like transfers, the sub-balances fill the space between them and the first chunk, and the
+ * balances of the accounts do not include their sub-balances.
+ * <p>
+ * Snapshots before version 5 hold the transfers themselves, in commit order after the header, and balances including
+ * the sub-balances, which they do not hold. Those of version 1 hold transfers without balances, those of version 2
+ * transfers without a timestamp, and only those of version 4 hold reservations, after the transfers.
+ */
+final class SnapshotFile {
+    static final int CHUNK_SIZE = 65_536;
+
+    private static final int MAGIC = 0x54534E50;
+    private static final int VERSION = 5;
+    private static final int HEADER_SIZE = 8;
+    private static final int FOOTER_SIZE = 4 * 8 + 2 * 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path path;
+    private final int version;
+    private final long lastLsn;
+    private final long transferCount;
+    private final long accountCount;
+    private final long reservationCount;
+    private final long[] chunkOffsets;
+    private final int[] chunkCounts;
+
+    private SnapshotFile(Path path, int version, long lastLsn, long transferCount, long accountCount,
+                         long reservationCount, long[] chunkOffsets, int[] chunkCounts) {
+        this.path = path;
+        this.version = version;
+        this.lastLsn = lastLsn;
+        this.transferCount = transferCount;
+        this.accountCount = accountCount;
+        this.reservationCount = reservationCount;
+        this.chunkOffsets = chunkOffsets;
+        this.chunkCounts = chunkCounts;
+    }
+
+    static SnapshotFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(channel, footer, channel.size() - FOOTER_SIZE);
+            footer.flip();
+            long lastLsn = footer.getLong();
+            long transferCount = footer.getLong();
+            long accountCount = footer.getLong();
+            long indexOffset = footer.getLong();
+            int chunkCount = footer.getInt();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (footer.getInt() != MAGIC || header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+            int version = header.getInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            }
+            ByteBuffer index = ByteBuffer.allocate(chunkCount * 12);
+            readFully(channel, index, indexOffset);
+            index.flip();
+            long[] chunkOffsets = new long[chunkCount + 1];
+            int[] chunkCounts = new int[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                chunkOffsets[i] = index.getLong();
+                chunkCounts[i] = index.getInt();
+            }
+            chunkOffsets[chunkCount] = indexOffset;
+            long reservationCount;
+            if (version >= 5) {
+                ByteBuffer reservations = ByteBuffer.allocate(8);
+                readFully(channel, reservations, channel.size() - FOOTER_SIZE - 8);
+                reservationCount = reservations.getLong(0);
+            } else if (version == 4) {
+                long transfersEnd = HEADER_SIZE + transferCount * JournalCodec.TRANSFER_SIZE;
+                reservationCount = (chunkOffsets[0] - transfersEnd) / JournalCodec.TRANSFER_SIZE;
+            } else {
+                reservationCount = 0;
+            }
+            return new SnapshotFile(path, version, lastLsn, transferCount, accountCount, reservationCount,
+                    chunkOffsets, chunkCounts);
+        }
+    }
+
+    long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Returns the number of transfers in the history up to the last log record.
+     */
+    long getTransferCount() {
+        return transferCount;
+    }
+
+    /**
+     * Returns whether the snapshot holds the transfers itself rather than leaving them to the history store.
+     */
+    boolean holdsTransfers() {
+        return version < 5;
+    }
+
+    long getAccountCount() {
+        return accountCount;
+    }
+
+    int getChunkCount() {
+        return chunkCounts.length;
+    }
+
+    long getReservationCount() {
+        return reservationCount;
+    }
+
+    long getSubBalanceCount() {
+        return version < 5 ? 0 : (chunkOffsets[0] - subBalancesOffset()) / JournalCodec.SUB_BALANCE_CHANGE_SIZE;
+    }
+
+    /**
+     * Passes the transfers held by a snapshot older than version 5 to the consumer.
+     */
+    void forEachTransfer(Consumer<Transfer> consumer) throws IOException {
+        long count = holdsTransfers() ? transferCount : 0;
+        try (Input input = new Input(path, HEADER_SIZE)) {
+            for (long i = 0; i < count; i++) {
+                if (version == 1) {
+                    consumer.accept(JournalCodec.getTransferWithoutBalances(
+                            input.require(JournalCodec.TRANSFER_WITHOUT_BALANCES_SIZE)));
+                } else if (version == 2) {
+                    consumer.accept(JournalCodec.getTransferWithoutTimestamp(
+                            input.require(JournalCodec.TRANSFER_WITHOUT_TIMESTAMP_SIZE)));
+                } else {
+                    consumer.accept(JournalCodec.getTransfer(input.require(JournalCodec.TRANSFER_SIZE)));
+                }
+            }
+        }
+    }
+
+    void forEachReservation(Consumer<Transfer> consumer) throws IOException {
+        long offset = version < 5 ? HEADER_SIZE + transferCount * JournalCodec.TRANSFER_SIZE : HEADER_SIZE;
+        try (Input input = new Input(path, offset)) {
+            for (long i = 0; i < reservationCount; i++) {
+                consumer.accept(JournalCodec.getTransfer(input.require(JournalCodec.TRANSFER_SIZE)));
+            }
+        }
+    }
+
+    void forEachSubBalance(SubBalanceConsumer consumer) throws IOException {
+        long count = getSubBalanceCount();
+        try (Input input = new Input(path, subBalancesOffset())) {
+            for (long i = 0; i < count; i++) {
+                JournalCodec.SubBalanceChange subBalance = JournalCodec.getSubBalanceChange(
+                        input.require(JournalCodec.SUB_BALANCE_CHANGE_SIZE));
+                consumer.accept(subBalance.getAccountId(), subBalance.getSlot(), subBalance.getChange());
+            }
+        }
+    }
+
+    void forEachAccount(Consumer<Account> consumer) throws IOException {
+        if (chunkCounts.length == 0) {
+            return;
+        }
+        try (Input input = new Input(path, chunkOffsets[0])) {
+            for (long i = 0; i < accountCount; i++) {
+                consumer.accept(input.account());
+            }
+        }
+    }
+
+    void forEachAccount(int chunk, Consumer<Account> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkOffsets[chunk],
+                    chunkOffsets[chunk + 1] - chunkOffsets[chunk]);
+            for (int i = 0; i < chunkCounts[chunk]; i++) {
+                consumer.accept(JournalCodec.getAccount(buffer));
+            }
+        }
+    }
+
+    private long subBalancesOffset() {
+        return HEADER_SIZE + reservationCount * JournalCodec.TRANSFER_SIZE;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+    }
+
+    interface SubBalanceConsumer {
+        void accept(UUID accountId, int slot, Money balance);
+    }
+
+    /**
+     * Writes a snapshot sequentially. Reservations have to be written before sub-balances, and those before accounts.
+     */
+    static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long[] chunkOffsets = new long[16];
+        private long position;
+        private long reservationCount;
+        private long subBalanceCount;
+        private long accountCount;
+        private int chunkCount;
+
+        Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+
+        void reservation(Transfer transfer) throws IOException {
+            if (subBalanceCount > 0 || accountCount > 0) {
+                throw new IllegalStateException("Reservations have to be written before sub-balances and accounts");
+            }
+            JournalCodec.putTransfer(reserve(JournalCodec.TRANSFER_SIZE), transfer);
+            reservationCount++;
+        }
+
+        void subBalance(UUID accountId, int slot, Money balance) throws IOException {
+            if (accountCount > 0) {
+                throw new IllegalStateException("Sub-balances have to be written before accounts");
+            }
+            JournalCodec.putSubBalanceChange(reserve(JournalCodec.SUB_BALANCE_CHANGE_SIZE),
+                    new JournalCodec.SubBalanceChange(accountId, slot, balance));
+            subBalanceCount++;
+        }
+
+        void account(Account account) throws IOException {
+            if (accountCount % CHUNK_SIZE == 0) {
+                if (chunkCount == chunkOffsets.length) {
+                    chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+                }
+                chunkOffsets[chunkCount++] = position + buffer.position();
+            }
+            JournalCodec.putAccount(reserve(JournalCodec.sizeOf(account)), account);
+            accountCount++;
+        }
+
+        /**
+         * Writes the index and forces the snapshot to disk. The snapshot covers the first {@code transferCount}
+         * transfers of the history.
+         */
+        void finish(long lastLsn, long transferCount) throws IOException {
+            long indexOffset = position + buffer.position();
+            for (int i = 0; i < chunkCount; i++) {
+                int count = (int) Math.min(CHUNK_SIZE, accountCount - (long) i * CHUNK_SIZE);
+                reserve(12).putLong(chunkOffsets[i]).putInt(count);
+            }
+            reserve(8).putLong(reservationCount);
+            reserve(FOOTER_SIZE).putLong(lastLsn).putLong(transferCount).putLong(accountCount).putLong(indexOffset)
+                    .putInt(chunkCount).putInt(MAGIC);
+            flush();
+            channel.force(true);
+        }
+
+        long getReservationCount() {
+            return reservationCount;
+        }
+
+        long getSubBalanceCount() {
+            return subBalanceCount;
+        }
+
+        long getAccountCount() {
+            return accountCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private ByteBuffer reserve(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static class Input implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private Input(Path path, long position) throws IOException {
+            channel = FileChannel.open(path);
+            channel.position(position);
+            buffer.flip();
+        }
+
+        private ByteBuffer require(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                buffer.compact();
+                while (buffer.position() < size) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Unexpected end of snapshot");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        private Account account() throws IOException {
+            ByteBuffer header = require(JournalCodec.ACCOUNT_SIZE);
+            int nameLength = header.getShort(header.position() + JournalCodec.ACCOUNT_SIZE - 2) & 0xFFFF;
+            return JournalCodec.getAccount(require(JournalCodec.ACCOUNT_SIZE + nameLength));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
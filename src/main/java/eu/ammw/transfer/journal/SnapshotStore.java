@@ -0,0 +1,361 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.metrics.MetricsSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps snapshots of the state recorded in a {@link WriteAheadLog}, so that a restart does not have to replay the
+ * whole log. A new snapshot is made by folding the sealed log segments into the previous snapshot: the latest version
+ * of every account is kept, with the later credits and debits added to its balance and the later changes of its
+ * sub-balances added to those, and reservations are kept until they are removed. New transfers are appended to a
+ * {@link HistoryStore} instead, so the cost of a snapshot does not grow with the history. This reads only files that
+ * no longer change, so writers are never blocked. Afterwards, the folded segments and the previous snapshot are
+ * deleted.
+ * <p>
+ * Snapshots are written to a temporary file and renamed when complete, after the history they cover, so a crash
+ * leaves either the old or the new snapshot in place.
+ */
+public class SnapshotStore implements MetricsSource, Closeable {
+    private static final String SUFFIX = ".snap";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int TRANSFER_BATCH_SIZE = 10_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private final Path directory;
+    private final HistoryStore history;
+    private final int loadThreads;
+    private ScheduledExecutorService scheduler;
+    private volatile long snapshots;
+    private volatile long lastLsn;
+    private volatile long lastSnapshotMillis;
+    private volatile long loadMillis;
+
+    public SnapshotStore(Path directory, int loadThreads) throws IOException {
+        if (loadThreads <= 0) {
+            throw new IllegalArgumentException("Number of loading threads must be positive: " + loadThreads);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.history = new HistoryStore(directory);
+        this.loadThreads = loadThreads;
+        for (Path temporary : list(TEMPORARY_SUFFIX)) {
+            Files.delete(temporary);
+        }
+    }
+
+    /**
+     * Loads the latest snapshot into the data source and returns the sequence number of the last log record it covers,
+     * or 0 if there is no snapshot. Chunks of accounts are loaded in parallel, then the sub-balances and reservations.
+     * Chunks of the history are read in parallel and their transfers added in order, as the data source numbers them
+     * as they are committed. Adding them takes a single thread, so loading time still grows with the history.
+     */
+    public long load(DataSource dataSource) throws IOException {
+        SnapshotFile snapshot = latest();
+        if (snapshot == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(loadThreads);
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int i = 0; i < snapshot.getChunkCount(); i++) {
+                int chunk = i;
+                chunks.add(executor.submit(() -> {
+                    inTransaction(dataSource, () -> snapshot.forEachAccount(chunk, dataSource::createAccount));
+                    return null;
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+            if (snapshot.holdsTransfers()) {
+                loadTransfers(dataSource, snapshot);
+            } else {
+                loadHistory(dataSource, executor, history.chunks(snapshot.getTransferCount()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading snapshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Could not load snapshot", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (snapshot.getSubBalanceCount() > 0) {
+            inTransaction(dataSource, () -> snapshot.forEachSubBalance(dataSource::addToSubBalance));
+        }
+        if (snapshot.getReservationCount() > 0) {
+            inTransaction(dataSource, () -> snapshot.forEachReservation(dataSource::addReservation));
+        }
+        lastLsn = snapshot.getLastLsn();
+        loadMillis = (System.nanoTime() - start) / 1_000_000;
+        LOGGER.info("Loaded snapshot of {} accounts and {} transfers up to record {} in {} ms",
+                snapshot.getAccountCount(), snapshot.getTransferCount(), lastLsn, loadMillis);
+        return lastLsn;
+    }
+
+    /**
+     * Folds the sealed segments of the log into a new snapshot and deletes them. Returns {@code false} if there was
+     * nothing to fold.
+     */
+    public synchronized boolean snapshot(WriteAheadLog log) throws IOException {
+        SnapshotFile previous = latest();
+        long afterLsn = previous == null ? 0 : previous.getLastLsn();
+        long sealedLsn = log.getSealedLsn();
+        if (sealedLsn <= afterLsn) {
+            return false;
+        }
+        long start = System.nanoTime();
+        Path temporary = directory.resolve(String.format("%020d%s", sealedLsn, TEMPORARY_SUFFIX));
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        // credits and debits made after the latest version of the account
+        Map<UUID, Money> changes = new LinkedHashMap<>();
+        // sub-balances by slot, replaced by a later version of the account
+        Map<UUID, Map<Integer, Money>> subBalances = new LinkedHashMap<>();
+        Map<UUID, Transfer> reservations = new LinkedHashMap<>();
+        long transferCount;
+        long accountCount;
+        try (HistoryStore.Appender transfers = history.append(
+                previous == null || previous.holdsTransfers() ? 0 : previous.getTransferCount());
+             SnapshotFile.Writer writer = new SnapshotFile.Writer(temporary)) {
+            Consumer<Transfer> newTransfers = unchecked(transfers::transfer);
+            Consumer<Account> updatedAccounts = unchecked(account -> writer.account(withChanges(account, changes)));
+            JournalCodec.EntryHandler folder = new JournalCodec.EntryHandler() {
+                @Override
+                public void account(Account account) {
+                    accounts.put(account.getId(), account);
+                    changes.remove(account.getId());
+                    subBalances.remove(account.getId());
+                }
+
+                @Override
+                public void subBalanceChange(UUID accountId, int slot, Money change) {
+                    subBalances.computeIfAbsent(accountId, id -> new TreeMap<>()).merge(slot, change, Money::plus);
+                }
+
+                @Override
+                public void balanceChange(UUID accountId, Money change) {
+                    changes.merge(accountId, change, Money::plus);
+                }
+
+                @Override
+                public void transfer(Transfer transfer) {
+                    newTransfers.accept(transfer);
+                }
+
+                @Override
+                public void reservation(Transfer transfer) {
+                    reservations.put(transfer.getId(), transfer);
+                }
+
+                @Override
+                public void reservationRemoval(Transfer transfer) {
+                    reservations.remove(transfer.getId());
+                }
+            };
+            if (previous != null) {
+                // the history of older snapshots moves to the history store
+                previous.forEachTransfer(newTransfers);
+                previous.forEachReservation(transfer -> reservations.put(transfer.getId(), transfer));
+            }
+            log.readSealed(afterLsn, sealedLsn, (lsn, payload) -> JournalCodec.decode(payload, folder));
+            transferCount = transfers.finish();
+            if (previous != null) {
+                previous.forEachSubBalance((accountId, slot, balance) -> {
+                    // replaced along with the balance by a later version of the account
+                    if (!accounts.containsKey(accountId)) {
+                        subBalances.computeIfAbsent(accountId, id -> new TreeMap<>()).merge(slot, balance, Money::plus);
+                    }
+                });
+            }
+            for (Transfer reservation : reservations.values()) {
+                writer.reservation(reservation);
+            }
+            for (Map.Entry<UUID, Map<Integer, Money>> account : subBalances.entrySet()) {
+                for (Map.Entry<Integer, Money> slot : account.getValue().entrySet()) {
+                    writer.subBalance(account.getKey(), slot.getKey(), slot.getValue());
+                }
+            }
+            if (previous != null) {
+                previous.forEachAccount(account -> {
+                    Account updated = accounts.remove(account.getId());
+                    updatedAccounts.accept(updated != null ? updated : account);
+                });
+            }
+            for (Account account : accounts.values()) {
+                writer.account(withChanges(account, changes));
+            }
+            writer.finish(sealedLsn, transferCount);
+            accountCount = writer.getAccountCount();
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(temporary);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Path path = directory.resolve(String.format("%020d%s", sealedLsn, SUFFIX));
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        for (Path old : list(SUFFIX)) {
+            if (!old.equals(path)) {
+                Files.delete(old);
+            }
+        }
+        log.truncate(sealedLsn);
+        snapshots++;
+        lastLsn = sealedLsn;
+        lastSnapshotMillis = (System.nanoTime() - start) / 1_000_000;
+        LOGGER.info("Wrote snapshot of {} accounts and {} transfers up to record {} in {} ms", accountCount,
+                transferCount, sealedLsn, lastSnapshotMillis);
+        return true;
+    }
+
+    /**
+     * Starts taking snapshots of the log periodically in the background.
+     */
+    public synchronized void start(WriteAheadLog log, long intervalSeconds) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(log);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Could not write snapshot", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        LOGGER.info("Taking snapshots every {} s", intervalSeconds);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "snapshots";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("snapshots", snapshots);
+        metrics.put("lastLsn", lastLsn);
+        metrics.put("lastSnapshotMillis", lastSnapshotMillis);
+        metrics.put("loadMillis", loadMillis);
+        return metrics;
+    }
+
+    private SnapshotFile latest() throws IOException {
+        List<Path> snapshots = list(SUFFIX);
+        return snapshots.isEmpty() ? null : SnapshotFile.open(snapshots.get(snapshots.size() - 1));
+    }
+
+    private List<Path> list(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void loadTransfers(DataSource dataSource, SnapshotFile snapshot) throws IOException {
+        inTransaction(dataSource, () -> {
+            long[] uncommitted = {0};
+            snapshot.forEachTransfer(transfer -> {
+                dataSource.createTransfer(transfer);
+                if (++uncommitted[0] == TRANSFER_BATCH_SIZE) {
+                    dataSource.commit();
+                    uncommitted[0] = 0;
+                }
+            });
+        });
+    }
+
+    /**
+     * Reads up to as many chunks ahead as there are loading threads, while the transfers of the earliest one are added.
+     */
+    private void loadHistory(DataSource dataSource, ExecutorService executor, List<HistoryStore.Chunk> chunks)
+            throws IOException, InterruptedException, ExecutionException {
+        Deque<Future<List<Transfer>>> reads = new ArrayDeque<>();
+        int next = 0;
+        while (next < chunks.size() || !reads.isEmpty()) {
+            while (next < chunks.size() && reads.size() < loadThreads) {
+                HistoryStore.Chunk chunk = chunks.get(next++);
+                reads.add(executor.submit(() -> HistoryStore.read(chunk)));
+            }
+            List<Transfer> transfers = reads.poll().get();
+            inTransaction(dataSource, () -> transfers.forEach(dataSource::createTransfer));
+        }
+    }
+
+    private static Account withChanges(Account account, Map<UUID, Money> changes) {
+        Money change = changes.get(account.getId());
+        return change == null ? account
+                : new Account(account.getId(), account.getName(), account.getBalance().plus(change));
+    }
+
+    private static void inTransaction(DataSource dataSource, Loader loader) throws IOException {
+        try {
+            loader.load();
+            dataSource.commit();
+        } catch (IOException | RuntimeException e) {
+            dataSource.rollback();
+            throw e;
+        }
+    }
+
+    private static <T> Consumer<T> unchecked(Output<T> output) {
+        return value -> {
+            try {
+                output.write(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private interface Loader {
+        void load() throws IOException;
+    }
+
+    private interface Output<T> {
+        void write(T value) throws IOException;
+    }
+}
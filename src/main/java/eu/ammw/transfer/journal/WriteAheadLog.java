@@ -0,0 +1,389 @@
+package eu.ammw.transfer.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records kept in preallocated, memory-mapped segment files. Every record is framed as
+ * {@code [int length][int crc32][long lsn][payload]} and its length is written last, so that a record torn by a crash
+ * reads as the end of the log. Records never span segments; when one does not fit, the next segment is started.
+ * <p>
+ * The log has to be replayed once before appending, which also finds the position after the last valid record.
+ * How often mapped pages are forced to disk is controlled by the {@link FsyncPolicy}.
+ */
+public class WriteAheadLog implements Closeable {
+    static final int HEADER_SIZE = 16;
+    private static final String SUFFIX = ".wal";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ScheduledExecutorService syncer;
+    private final List<Segment> segments = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private long nextLsn = 1;
+    private boolean recovered;
+    private boolean dirty;
+
+    private long appended;
+    private long appendedBytes;
+    private long syncs;
+
+    public WriteAheadLog(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis)
+            throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted()
+                    .collect(Collectors.toList())) {
+                segments.add(new Segment(path, firstLsnOf(path)));
+            }
+        }
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * Passes all valid records to the handler in order and prepares the log for appending after the last of them.
+     * Anything after the first invalid record is discarded. Returns the number of records replayed.
+     */
+    public long replay(RecordHandler handler) throws IOException {
+        return replay(1, handler);
+    }
+
+    /**
+     * Replays the log like {@link #replay(RecordHandler)}, skipping records before {@code firstLsn}, which are covered
+     * by a snapshot. If the log is empty, numbering of appended records starts at {@code firstLsn}.
+     */
+    public synchronized long replay(long firstLsn, RecordHandler handler) throws IOException {
+        if (!segments.isEmpty() && segments.get(0).firstLsn > firstLsn) {
+            throw new IOException("Log starts at record " + segments.get(0).firstLsn + ", expected " + firstLsn);
+        }
+        long count = 0;
+        long expectedLsn = segments.isEmpty() ? Math.max(nextLsn, firstLsn) : segments.get(0).firstLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (segment.firstLsn != expectedLsn) {
+                LOGGER.warn("Log segment {} does not follow record {}, discarding the rest of the log", segment.path,
+                        expectedLsn - 1);
+                discardAfter(i - 1);
+                break;
+            }
+            MappedByteBuffer buffer = segment.map();
+            long[] replayed = {0};
+            expectedLsn = scan(buffer, expectedLsn, (lsn, payload) -> {
+                if (lsn >= firstLsn && handler != null) {
+                    handler.handle(lsn, payload);
+                    replayed[0]++;
+                }
+            });
+            count += replayed[0];
+            if (active != null) {
+                active.release();
+            }
+            active = segment;
+            if (buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) != 0) {
+                LOGGER.warn("Invalid record at {}:{}, discarding the rest of the log", segment.path, buffer.position());
+                clear(buffer);
+                discardAfter(i);
+                break;
+            }
+        }
+        nextLsn = expectedLsn;
+        recovered = true;
+        LOGGER.info("Replayed {} records from {} segments", count, segments.size());
+        return count;
+    }
+
+    /**
+     * Returns the sequence number of the last record before the segment being appended to. Records up to it no
+     * longer change and can be read with {@link #readSealed(long, long, RecordHandler)}, unless already truncated.
+     */
+    public synchronized long getSealedLsn() {
+        return active == null ? 0 : active.firstLsn - 1;
+    }
+
+    /**
+     * Passes records with sequence numbers from {@code afterLsn} (exclusive) to {@code lastLsn} (inclusive) to
+     * the handler. The records must be sealed, so that they can be read without blocking appends.
+     */
+    public void readSealed(long afterLsn, long lastLsn, RecordHandler handler) throws IOException {
+        List<Segment> sealed;
+        synchronized (this) {
+            if (lastLsn > getSealedLsn()) {
+                throw new IllegalArgumentException("Record " + lastLsn + " is not sealed");
+            }
+            sealed = new ArrayList<>(segments.subList(0, segments.indexOf(active)));
+        }
+        for (int i = 0; i < sealed.size(); i++) {
+            Segment segment = sealed.get(i);
+            long segmentLastLsn = i + 1 < sealed.size() ? sealed.get(i + 1).firstLsn - 1 : lastLsn;
+            if (segmentLastLsn <= afterLsn || segment.firstLsn > lastLsn) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment.path)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                scan(buffer, segment.firstLsn, (lsn, payload) -> {
+                    if (lsn > afterLsn && lsn <= lastLsn) {
+                        handler.handle(lsn, payload);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Deletes segments holding only records up to {@code lastLsn}, e.g. after they were covered by a snapshot.
+     * The segment being appended to is always kept. Returns the number of deleted segments.
+     */
+    public synchronized int truncate(long lastLsn) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(0) != active && segments.get(1).firstLsn <= lastLsn + 1) {
+            Segment segment = segments.remove(0);
+            segment.release();
+            Files.delete(segment.path);
+            deleted++;
+        }
+        if (deleted > 0) {
+            LOGGER.info("Deleted {} log segments up to record {}", deleted, lastLsn);
+        }
+        return deleted;
+    }
+
+    /**
+     * Appends a record and returns its log sequence number. The record is durable on return only with
+     * {@link FsyncPolicy#ALWAYS}.
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (payload.length == 0 || payload.length > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid record size: " + payload.length);
+        }
+        if (!recovered) {
+            replay(null);
+        }
+        if (active == null || active.buffer.remaining() < HEADER_SIZE + payload.length) {
+            roll();
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int start = buffer.position();
+        long lsn = nextLsn++;
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.putLong(lsn);
+        buffer.put(payload);
+        int end = buffer.position();
+        buffer.putInt(start, payload.length);
+        buffer.position(end);
+        appended++;
+        appendedBytes += HEADER_SIZE + payload.length;
+        dirty = true;
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync();
+        }
+        return lsn;
+    }
+
+    /**
+     * Forces all appended records to disk.
+     */
+    public synchronized void sync() {
+        if (dirty && active != null) {
+            active.buffer.force();
+            syncs++;
+            dirty = false;
+        }
+    }
+
+    /**
+     * Returns the sequence number of the first record kept in the log, or the one the next appended record will get
+     * if the log is empty.
+     */
+    public synchronized long getFirstLsn() {
+        return segments.isEmpty() ? nextLsn : segments.get(0).firstLsn;
+    }
+
+    /**
+     * Returns the sequence number the next appended record will get.
+     */
+    public synchronized long getNextLsn() {
+        return nextLsn;
+    }
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    public synchronized long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        sync();
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            sync();
+            active.release();
+        }
+        Path path = directory.resolve(String.format("%020d%s", nextLsn, SUFFIX));
+        Segment segment = new Segment(path, nextLsn);
+        segment.map();
+        segments.add(segment);
+        active = segment;
+        LOGGER.info("Started log segment {}", path);
+    }
+
+    private void discardAfter(int index) throws IOException {
+        while (segments.size() > index + 1) {
+            Segment segment = segments.remove(segments.size() - 1);
+            Files.delete(segment.path);
+        }
+    }
+
+    /**
+     * Passes valid records starting at the buffer's position to the handler, stopping at the end of the log or at
+     * the first invalid record, where the position is left. Returns the sequence number expected next.
+     */
+    private static long scan(ByteBuffer buffer, long expectedLsn, RecordHandler handler) throws IOException {
+        CRC32 crc = new CRC32();
+        while (buffer.position() + HEADER_SIZE <= buffer.limit()) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            long lsn = buffer.getLong();
+            if (length <= 0 || length > buffer.remaining() || lsn != expectedLsn
+                    || checksum != checksum(crc, buffer, length)) {
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            handler.handle(lsn, payload);
+            buffer.position(buffer.position() + length);
+            expectedLsn++;
+        }
+        return expectedLsn;
+    }
+
+    private static int checksum(CRC32 crc, ByteBuffer buffer, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payload.position() + length);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void clear(MappedByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force();
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not sync log", e);
+        }
+    }
+
+    private static long firstLsnOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    public enum FsyncPolicy {
+        /**
+         * Forces every record to disk before {@link #append(byte[])} returns.
+         */
+        ALWAYS,
+        /**
+         * Forces records to disk periodically, losing at most one interval of commits on power failure.
+         */
+        INTERVAL,
+        /**
+         * Leaves flushing to the operating system, surviving process crashes but not power failures.
+         */
+        NEVER
+    }
+
+    public interface RecordHandler {
+        void handle(long lsn, ByteBuffer payload) throws IOException;
+    }
+
+    private class Segment {
+        private final Path path;
+        private final long firstLsn;
+        private MappedByteBuffer buffer;
+
+        private Segment(Path path, long firstLsn) {
+            this.path = path;
+            this.firstLsn = firstLsn;
+        }
+
+        private MappedByteBuffer map() throws IOException {
+            if (buffer == null) {
+                try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                    if (file.length() < segmentSize) {
+                        file.setLength(segmentSize);
+                    }
+                    buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+                }
+            }
+            return buffer;
+        }
+
+        // mapping is released by the garbage collector once the buffer is unreachable
+        private void release() {
+            buffer = null;
+        }
+    }
+}
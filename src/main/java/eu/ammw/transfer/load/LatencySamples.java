@@ -0,0 +1,51 @@
+package eu.ammw.transfer.load;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every recorded latency, so that percentiles are exact. Not thread-safe, every worker records its own samples
+ * and they are merged at the end.
+ */
+class LatencySamples {
+    private long[] values = new long[1024];
+    private int size;
+    private boolean sorted = true;
+
+    void add(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+        sorted = false;
+    }
+
+    void addAll(LatencySamples other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the smallest sample not exceeded by {@code percentile} percent of all samples, 0 without samples.
+     */
+    long getPercentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+        // without the tolerance, 99.9 percent of 1000 samples would round up to rank 1000
+        int rank = (int) Math.ceil(percentile / 100 * size - 1e-9);
+        return values[Math.min(Math.max(rank, 1), size) - 1];
+    }
+
+    long getMax() {
+        return getPercentile(100);
+    }
+}
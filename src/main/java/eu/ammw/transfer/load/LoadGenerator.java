@@ -0,0 +1,293 @@
+package eu.ammw.transfer.load;
+
+import com.google.gson.Gson;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures a running server end to end over HTTP. It seeds accounts with {@code POST /accounts} and a deposit each,
+ * sends a mix of requests for a while and reports throughput, error rates and latency percentiles by operation.
+ * Finally it checks that the total balance of the seeded accounts changed by exactly the deposits and withdrawals.
+ * <p>
+ * With a target rate, requests are scheduled at fixed intervals regardless of how fast the server answers (open loop),
+ * and latencies are measured from the scheduled start, so that a stalled server is charged for the requests it held
+ * up instead of having them silently postponed (coordinated omission). Without a rate, every connection sends its next
+ * request as soon as the previous one is answered (closed loop).
+ */
+public class LoadGenerator {
+    private final static String DEFAULT_URL = "http://localhost:1234";
+    private final static int DEFAULT_ACCOUNTS = 100;
+    private final static long DEFAULT_INITIAL_BALANCE = 1_000_000;
+    private final static int DEFAULT_CONCURRENCY = 16;
+    private final static long DEFAULT_WARMUP_SECONDS = 5;
+    private final static long DEFAULT_DURATION_SECONDS = 30;
+    private final static String DEFAULT_MIX = "transfer:60,deposit:10,withdraw:10,read:15,history:5";
+    private final static int HISTORY_PAGE_SIZE = 10;
+    private static final Money AMOUNT = Money.of(1);
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final LoadClient client;
+    private final Mix mix;
+    private final int concurrency;
+    private final double rate;
+    private final Gson gson = new Gson();
+    private final List<UUID> accounts = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong deposits = new AtomicLong();
+    private final AtomicLong withdrawals = new AtomicLong();
+    private final AtomicLong uncertainDeposits = new AtomicLong();
+    private final AtomicLong uncertainWithdrawals = new AtomicLong();
+    private double measuredSeconds;
+
+    /**
+     * @param rate requests per second, 0 to send requests back to back on every connection
+     */
+    LoadGenerator(LoadClient client, Mix mix, int concurrency, double rate) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate must not be negative: " + rate);
+        }
+        this.client = client;
+        this.mix = mix;
+        this.concurrency = concurrency;
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) {
+        try {
+            int concurrency = Integer.getInteger("load.concurrency", DEFAULT_CONCURRENCY);
+            // idle connections above this limit would be closed and opened again for every request
+            System.setProperty("http.maxConnections", String.valueOf(concurrency));
+            LoadGenerator generator = new LoadGenerator(
+                    new LoadClient(System.getProperty("load.url", DEFAULT_URL)),
+                    Mix.parse(System.getProperty("load.mix", DEFAULT_MIX)),
+                    concurrency,
+                    Double.parseDouble(System.getProperty("load.rate", "0")));
+            boolean conserved = generator.run(
+                    Integer.getInteger("load.accounts", DEFAULT_ACCOUNTS),
+                    Money.of(Long.getLong("load.initialBalance", DEFAULT_INITIAL_BALANCE)),
+                    Long.getLong("load.warmupSeconds", DEFAULT_WARMUP_SECONDS),
+                    Long.getLong("load.durationSeconds", DEFAULT_DURATION_SECONDS));
+            System.exit(conserved ? 0 : 1);
+        } catch (Exception e) {
+            LOGGER.error("Load test failed", e);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Runs the whole test and prints the report.
+     *
+     * @return whether the money of the seeded accounts was conserved
+     */
+    boolean run(int accountCount, Money initialBalance, long warmupSeconds, long durationSeconds) throws Exception {
+        if (accountCount < 2) {
+            throw new IllegalArgumentException("At least two accounts are needed: " + accountCount);
+        }
+        seed(accountCount, initialBalance);
+        Money before = getTotalBalance();
+        LOGGER.info("Seeded {} accounts holding {} in total", accountCount, before);
+
+        LoadReport report = drive(warmupSeconds * 1_000_000_000L, durationSeconds * 1_000_000_000L);
+        System.out.printf("%s, %d connections, %d s after %d s of warm-up, %d accounts%n",
+                rate > 0 ? String.format("target rate %.1f requests/s", rate) : "closed loop", concurrency,
+                durationSeconds, warmupSeconds, accountCount);
+        report.print(System.out, measuredSeconds);
+
+        return checkConservation(before);
+    }
+
+    void seed(int accountCount, Money initialBalance) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < accountCount; i++) {
+                String name = "Load " + i;
+                results.add(executor.submit(() -> {
+                    UUID id = createAccount(name);
+                    expectSuccess(client.post("/accounts/" + id + "/deposit", amountBody(initialBalance)),
+                            "deposit on " + id);
+                    accounts.add(id);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private UUID createAccount(String name) throws IOException {
+        LoadClient.Response response = client.post("/accounts", "{\"name\":\"" + name + "\"}");
+        expectSuccess(response, "creation of account " + name);
+        return gson.fromJson(response.getBody(), Account.class).getId();
+    }
+
+    LoadReport drive(long warmupNanos, long durationNanos) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            long start = System.nanoTime();
+            long measureFrom = start + warmupNanos;
+            long end = measureFrom + durationNanos;
+            List<Future<LoadReport>> results = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                results.add(executor.submit(() -> work(start, measureFrom, end)));
+            }
+            LoadReport report = new LoadReport();
+            for (Future<LoadReport> result : results) {
+                report.merge(result.get());
+            }
+            // until the last response, so that an overloaded server shows a lower throughput than the target rate
+            measuredSeconds = (System.nanoTime() - measureFrom) / 1e9;
+            return report;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private LoadReport work(long start, long measureFrom, long end) {
+        LoadReport report = new LoadReport();
+        Random random = ThreadLocalRandom.current();
+        long intervalNanos = rate > 0 ? Math.max(1, (long) (1_000_000_000L / rate)) : 0;
+        while (true) {
+            long scheduled;
+            if (intervalNanos > 0) {
+                scheduled = start + sequence.getAndIncrement() * intervalNanos;
+                if (scheduled >= end) {
+                    return report;
+                }
+                waitUntil(scheduled);
+            } else {
+                scheduled = System.nanoTime();
+                if (scheduled >= end) {
+                    return report;
+                }
+            }
+            Operation operation = mix.pick(random.nextInt(mix.getTotalWeight()));
+            int status = perform(operation, random);
+            long latency = System.nanoTime() - scheduled;
+            if (scheduled >= measureFrom) {
+                report.record(operation, status, latency);
+            }
+        }
+    }
+
+    private static void waitUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Sends a request of the operation and keeps track of the money it may have added or removed.
+     *
+     * @return status of the response, {@link LoadReport#NO_RESPONSE} if there was none
+     */
+    private int perform(Operation operation, Random random) {
+        UUID account = randomAccount(random);
+        int status;
+        try {
+            switch (operation) {
+                case TRANSFER:
+                    UUID to = randomAccount(random);
+                    while (to.equals(account)) {
+                        to = randomAccount(random);
+                    }
+                    status = client.post("/accounts/" + account + "/transfer",
+                            "{\"to\":\"" + to + "\",\"amount\":" + AMOUNT + "}").getStatus();
+                    break;
+                case DEPOSIT:
+                    status = client.post("/accounts/" + account + "/deposit", amountBody(AMOUNT)).getStatus();
+                    break;
+                case WITHDRAW:
+                    status = client.post("/accounts/" + account + "/withdraw", amountBody(AMOUNT)).getStatus();
+                    break;
+                case READ:
+                    status = client.get("/accounts/" + account).getStatus();
+                    break;
+                case HISTORY:
+                    status = client.get("/accounts/" + account + "/history?limit=" + HISTORY_PAGE_SIZE).getStatus();
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation: " + operation);
+            }
+        } catch (IOException e) {
+            status = LoadReport.NO_RESPONSE;
+        }
+        countMoney(operation, status);
+        return status;
+    }
+
+    private void countMoney(Operation operation, int status) {
+        if (operation != Operation.DEPOSIT && operation != Operation.WITHDRAW) {
+            return;
+        }
+        boolean deposit = operation == Operation.DEPOSIT;
+        if (status >= 200 && status < 300) {
+            (deposit ? deposits : withdrawals).incrementAndGet();
+        } else if (status == LoadReport.NO_RESPONSE || status >= 500) {
+            // the operation may have been committed before the failure
+            (deposit ? uncertainDeposits : uncertainWithdrawals).incrementAndGet();
+        }
+    }
+
+    private UUID randomAccount(Random random) {
+        return accounts.get(random.nextInt(accounts.size()));
+    }
+
+    boolean checkConservation(Money before) throws IOException {
+        Money after = getTotalBalance();
+        Money expected = before.plus(times(deposits.get())).minus(times(withdrawals.get()));
+        Money lowest = expected.minus(times(uncertainWithdrawals.get()));
+        Money highest = expected.plus(times(uncertainDeposits.get()));
+        boolean conserved = after.compareTo(lowest) >= 0 && after.compareTo(highest) <= 0;
+        System.out.printf("Money conservation: %s, total %s, expected %s%n", conserved ? "OK" : "FAILED", after,
+                lowest.equals(highest) ? expected : "from " + lowest + " to " + highest);
+        return conserved;
+    }
+
+    Money getTotalBalance() throws IOException {
+        Money total = Money.ZERO;
+        for (UUID id : accounts) {
+            LoadClient.Response response = client.get("/accounts/" + id);
+            expectSuccess(response, "lookup of account " + id);
+            total = total.plus(gson.fromJson(response.getBody(), Account.class).getBalance());
+        }
+        return total;
+    }
+
+    private static Money times(long count) {
+        return Money.ofMinorUnits(Math.multiplyExact(AMOUNT.getMinorUnits(), count));
+    }
+
+    private static String amountBody(Money amount) {
+        return "{\"amount\":" + amount + "}";
+    }
+
+    private static void expectSuccess(LoadClient.Response response, String what) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Failed " + what + " with status " + response.getStatus() + ": "
+                    + response.getBody());
+        }
+    }
+}
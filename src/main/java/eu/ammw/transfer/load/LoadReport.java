@@ -0,0 +1,74 @@
+package eu.ammw.transfer.load;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Requests, error statuses and latencies by operation. Every worker records into its own report, and the reports are
+ * merged once the workers are done.
+ */
+class LoadReport {
+    /**
+     * Status recorded for requests that failed without a response, e.g. on a timeout.
+     */
+    static final int NO_RESPONSE = 0;
+
+    private final Map<Operation, LatencySamples> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, Map<Integer, Long>> errors = new EnumMap<>(Operation.class);
+
+    void record(Operation operation, int status, long latencyNanos) {
+        latencies.computeIfAbsent(operation, key -> new LatencySamples()).add(latencyNanos);
+        if (status < 200 || status >= 400) {
+            errors.computeIfAbsent(operation, key -> new TreeMap<>()).merge(status, 1L, Long::sum);
+        }
+    }
+
+    void merge(LoadReport other) {
+        other.latencies.forEach((operation, samples) ->
+                latencies.computeIfAbsent(operation, key -> new LatencySamples()).addAll(samples));
+        other.errors.forEach((operation, counts) -> counts.forEach((status, count) ->
+                errors.computeIfAbsent(operation, key -> new TreeMap<>()).merge(status, count, Long::sum)));
+    }
+
+    LatencySamples getLatencies(Operation operation) {
+        return latencies.getOrDefault(operation, new LatencySamples());
+    }
+
+    long getRequests() {
+        return latencies.values().stream().mapToLong(LatencySamples::size).sum();
+    }
+
+    long getErrors() {
+        return errors.values().stream().flatMap(counts -> counts.values().stream()).mapToLong(Long::longValue).sum();
+    }
+
+    long getErrors(Operation operation) {
+        return errors.getOrDefault(operation, new TreeMap<>()).values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    void print(PrintStream out, double seconds) {
+        out.printf("%-10s %10s %12s %8s %10s %10s %10s %10s%n",
+                "operation", "requests", "requests/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        LatencySamples all = new LatencySamples();
+        latencies.forEach((operation, samples) -> {
+            printRow(out, operation.getName(), samples, getErrors(operation), seconds);
+            all.addAll(samples);
+        });
+        printRow(out, "total", all, getErrors(), seconds);
+        errors.forEach((operation, counts) -> counts.forEach((status, count) -> out.printf("%s errors with %s: %d%n",
+                operation.getName(), status == NO_RESPONSE ? "no response" : "status " + status, count)));
+    }
+
+    private static void printRow(PrintStream out, String name, LatencySamples samples, long errors, double seconds) {
+        out.printf("%-10s %10d %12.1f %7.2f%% %10.3f %10.3f %10.3f %10.3f%n", name, samples.size(),
+                samples.size() / seconds, samples.size() == 0 ? 0.0 : 100.0 * errors / samples.size(),
+                millis(samples.getPercentile(50)), millis(samples.getPercentile(99)),
+                millis(samples.getPercentile(99.9)), millis(samples.getMax()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,63 @@
+package eu.ammw.transfer.load;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Weighted choice of the operation of every request, given as e.g. {@code transfer:60,deposit:10,read:30}.
+ */
+class Mix {
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private Mix(Map<Operation, Integer> weights) {
+        operations = new Operation[weights.size()];
+        cumulativeWeights = new int[weights.size()];
+        int i = 0;
+        int total = 0;
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            total += weight.getValue();
+            operations[i] = weight.getKey();
+            cumulativeWeights[i++] = total;
+        }
+    }
+
+    static Mix parse(String spec) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry, expected <operation>:<weight>: " + part);
+            }
+            Operation operation = Operation.valueOf(nameAndWeight[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight of " + operation.getName() + ": " + weight);
+            }
+            if (weight > 0) {
+                weights.merge(operation, weight, Integer::sum);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Mix has no operations: " + spec);
+        }
+        return new Mix(weights);
+    }
+
+    int getTotalWeight() {
+        return cumulativeWeights[cumulativeWeights.length - 1];
+    }
+
+    /**
+     * @param random uniformly distributed value from 0 (inclusive) to {@link #getTotalWeight()} (exclusive)
+     */
+    Operation pick(int random) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (random < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalArgumentException("Value out of range: " + random);
+    }
+}
@@ -0,0 +1,18 @@
+package eu.ammw.transfer.load;
+
+import java.util.Locale;
+
+/**
+ * Kinds of requests sent by the load generator.
+ */
+enum Operation {
+    TRANSFER,
+    DEPOSIT,
+    WITHDRAW,
+    READ,
+    HISTORY;
+
+    String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
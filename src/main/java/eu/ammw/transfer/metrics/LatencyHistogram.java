@@ -0,0 +1,93 @@
+package eu.ammw.transfer.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the manner of HdrHistogram: every power of two
+ * from 1.024 us to 17.2 s is split into two buckets of equal width, so a bucket is never wider
+ * than half of its lower bound. The bucket of a value is found with bit arithmetic and recording only increments
+ * atomic counters, so it does not allocate and can be done on every call of a hot path.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 1;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_OCTAVE = 10;
+    private static final int MAX_OCTAVE = 34;
+
+    /**
+     * Inclusive upper bounds in nanoseconds of all buckets except the last one, which takes everything above.
+     */
+    private static final long[] BOUNDS = new long[1 + (MAX_OCTAVE - MIN_OCTAVE) * SUB_BUCKETS];
+    private static final String[] BOUNDS_IN_SECONDS = new String[BOUNDS.length];
+
+    static {
+        BOUNDS[0] = 1L << MIN_OCTAVE;
+        for (int octave = MIN_OCTAVE; octave < MAX_OCTAVE; octave++) {
+            for (int sub = 0; sub < SUB_BUCKETS; sub++) {
+                BOUNDS[1 + (octave - MIN_OCTAVE) * SUB_BUCKETS + sub] =
+                        (1L << octave) + ((sub + 1L) << (octave - SUB_BUCKET_BITS));
+            }
+        }
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS_IN_SECONDS[i] = BigDecimal.valueOf(BOUNDS[i], 9).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong sum = new AtomicLong();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(nanos));
+        sum.addAndGet(Math.max(nanos, 0));
+    }
+
+    static int indexOf(long nanos) {
+        if (nanos <= BOUNDS[0]) {
+            return 0;
+        }
+        // bounds are inclusive, so the value just below is placed instead
+        long below = nanos - 1;
+        int octave = 63 - Long.numberOfLeadingZeros(below);
+        if (octave >= MAX_OCTAVE) {
+            return BOUNDS.length;
+        }
+        int sub = (int) (below >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return 1 + (octave - MIN_OCTAVE) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Number of buckets with an upper bound, not counting the last one that takes everything above.
+     */
+    public static int getBucketCount() {
+        return BOUNDS.length;
+    }
+
+    public static long getUpperBound(int bucket) {
+        return BOUNDS[bucket];
+    }
+
+    static String getUpperBoundInSeconds(int bucket) {
+        return BOUNDS_IN_SECONDS[bucket];
+    }
+
+    /**
+     * Returns the number of values recorded in the bucket; {@link #getBucketCount()} is the bucket without bound.
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+}
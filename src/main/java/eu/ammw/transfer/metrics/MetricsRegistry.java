@@ -0,0 +1,148 @@
+package eu.ammw.transfer.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the histograms and counters of the application and writes them, together with the metrics of all registered
+ * sources, in the Prometheus text exposition format. Metrics are created once, when the component recording them is
+ * set up, and the component keeps the returned instance, so nothing is looked up on the hot path.
+ */
+public class MetricsRegistry {
+    private static final String PREFIX = "transfer_";
+    private static final String HISTOGRAM = "histogram";
+    private static final String COUNTER = "counter";
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+    private final List<MetricsSource> sources = new ArrayList<>();
+
+    /**
+     * Returns the histogram without labels, creating it the first time, so components asking for it share it.
+     */
+    public synchronized LatencyHistogram histogram(String name, String help) {
+        return (LatencyHistogram) family(name, help, HISTOGRAM)
+                .series.computeIfAbsent("", key -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the histogram of the series with the given label, creating it the first time.
+     */
+    public synchronized LatencyHistogram histogram(String name, String help, String label, String value) {
+        return (LatencyHistogram) family(name, help, HISTOGRAM)
+                .series.computeIfAbsent(labelPair(label, value), key -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the status counter of the series with the given label, creating it the first time. Every status
+     * counted is written as a separate series with an additional {@code status} label.
+     */
+    public synchronized StatusCounter statusCounter(String name, String help, String label, String value) {
+        return (StatusCounter) family(name, help, COUNTER)
+                .series.computeIfAbsent(labelPair(label, value), key -> new StatusCounter());
+    }
+
+    /**
+     * Exports the metrics of the source as untyped metrics named after the source and the metric.
+     */
+    public synchronized void register(MetricsSource source) {
+        sources.add(source);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(PREFIX + name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder();
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.series.forEach((labels, metric) -> {
+                if (metric instanceof LatencyHistogram) {
+                    writeHistogram(out, name, labels, (LatencyHistogram) metric);
+                } else {
+                    writeStatusCounter(out, name, labels, (StatusCounter) metric);
+                }
+            });
+        });
+        for (MetricsSource source : sources) {
+            source.getMetrics().forEach((metric, value) -> {
+                String name = PREFIX + snakeCase(source.getName()) + "_" + snakeCase(metric);
+                out.append("# TYPE ").append(name).append(" untyped\n");
+                out.append(name).append(' ').append(format(value.doubleValue())).append('\n');
+            });
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String bucketLabels = labels.isEmpty() ? "{le=\"" : "{" + labels + ",le=\"";
+        long cumulative = 0;
+        for (int i = 0; i < LatencyHistogram.getBucketCount(); i++) {
+            cumulative += histogram.getCount(i);
+            out.append(name).append("_bucket").append(bucketLabels)
+                    .append(LatencyHistogram.getUpperBoundInSeconds(i)).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += histogram.getCount(LatencyHistogram.getBucketCount());
+        out.append(name).append("_bucket").append(bucketLabels).append("+Inf\"} ").append(cumulative).append('\n');
+        String seriesLabels = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(seriesLabels).append(' ')
+                .append(format(histogram.getSum() / 1e9)).append('\n');
+        out.append(name).append("_count").append(seriesLabels).append(' ').append(cumulative).append('\n');
+    }
+
+    private static void writeStatusCounter(StringBuilder out, String name, String labels, StatusCounter counter) {
+        for (int status = StatusCounter.MIN_STATUS; status <= StatusCounter.MAX_STATUS; status++) {
+            long count = counter.getCount(status);
+            if (count > 0) {
+                out.append(name).append('{').append(labels).append(",status=\"").append(status).append("\"} ")
+                        .append(count).append('\n');
+            }
+        }
+    }
+
+    private static String labelPair(String label, String value) {
+        return label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    static String snakeCase(String name) {
+        StringBuilder result = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                result.append('_').append(Character.toLowerCase(c));
+            } else if (Character.isLetterOrDigit(c) && c < 128) {
+                result.append(c);
+            } else {
+                result.append('_');
+            }
+        }
+        return result.toString();
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> series = new LinkedHashMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
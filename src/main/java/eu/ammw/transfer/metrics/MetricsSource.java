@@ -0,0 +1,12 @@
+package eu.ammw.transfer.metrics;
+
+import java.util.Map;
+
+/**
+ * Component exposing its internal counters and gauges.
+ */
+public interface MetricsSource {
+    String getName();
+
+    Map<String, Number> getMetrics();
+}
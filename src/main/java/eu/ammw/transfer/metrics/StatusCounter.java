@@ -0,0 +1,23 @@
+package eu.ammw.transfer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts responses by HTTP status code without allocating, with a counter for every code from 100 to 599.
+ */
+public class StatusCounter {
+    static final int MIN_STATUS = 100;
+    static final int MAX_STATUS = 599;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAX_STATUS - MIN_STATUS + 1);
+
+    public void increment(int status) {
+        if (status >= MIN_STATUS && status <= MAX_STATUS) {
+            counts.incrementAndGet(status - MIN_STATUS);
+        }
+    }
+
+    public long getCount(int status) {
+        return status >= MIN_STATUS && status <= MAX_STATUS ? counts.get(status - MIN_STATUS) : 0;
+    }
+}
@@ -1,6 +1,5 @@
 package eu.ammw.transfer.model;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -9,13 +8,13 @@ import static java.util.Optional.ofNullable;
 public class Account {
     private final UUID id;
     private String name;
-    private BigDecimal balance;
+    private Money balance;
 
     public Account(UUID id) {
         this.id = ofNullable(id).orElse(UUID.randomUUID());
     }
 
-    public Account(UUID id, String name, BigDecimal balance) {
+    public Account(UUID id, String name, Money balance) {
         this(id);
         this.name = name;
         this.balance = balance;
@@ -33,11 +32,11 @@ public class Account {
         this.name = name;
     }
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 
@@ -48,7 +47,7 @@ public class Account {
         Account account = (Account) o;
         return id.equals(account.id) &&
                 Objects.equals(name, account.name) &&
-                balance.compareTo(account.balance) == 0;
+                Objects.equals(balance, account.balance);
     }
 
     @Override
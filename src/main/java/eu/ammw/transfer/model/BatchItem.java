@@ -0,0 +1,65 @@
+package eu.ammw.transfer.model;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A transfer of a batch as it was requested. The amount is kept as given and only converted to {@link Money} when the
+ * batch is applied, so that an amount that is not valid money fails its own transfer rather than the whole batch.
+ */
+public final class BatchItem {
+    private final UUID from;
+    private final UUID to;
+    private final BigDecimal amount;
+
+    public BatchItem(UUID from, UUID to, BigDecimal amount) {
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+    }
+
+    public static BatchItem of(Transfer transfer) {
+        Money amount = transfer.getAmount();
+        return new BatchItem(transfer.getFrom(), transfer.getTo(), amount == null ? null : amount.toBigDecimal());
+    }
+
+    public UUID getFrom() {
+        return from;
+    }
+
+    public UUID getTo() {
+        return to;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns the requested transfer, failing with {@link NumberFormatException} when the amount is not valid money.
+     */
+    public Transfer toTransfer() {
+        return new Transfer(null, from, to, amount == null ? null : Money.of(amount));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BatchItem that = (BatchItem) o;
+        return Objects.equals(from, that.from) &&
+                Objects.equals(to, that.to) &&
+                Objects.equals(amount, that.amount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, amount);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchItem: {from: %s, to: %s, amount: %s}", from, to, amount);
+    }
+}
@@ -0,0 +1,63 @@
+package eu.ammw.transfer.model;
+
+import java.util.Objects;
+
+public class BatchResult {
+    private final Status status;
+    private final Transfer transfer;
+    private final String error;
+
+    private BatchResult(Status status, Transfer transfer, String error) {
+        this.status = status;
+        this.transfer = transfer;
+        this.error = error;
+    }
+
+    public static BatchResult completed(Transfer transfer) {
+        return new BatchResult(Status.COMPLETED, transfer, null);
+    }
+
+    public static BatchResult failed(Transfer transfer, String error) {
+        return new BatchResult(Status.FAILED, transfer, error);
+    }
+
+    public static BatchResult notApplied(Transfer transfer) {
+        return new BatchResult(Status.NOT_APPLIED, transfer, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Transfer getTransfer() {
+        return transfer;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BatchResult that = (BatchResult) o;
+        return status == that.status &&
+                Objects.equals(transfer, that.transfer) &&
+                Objects.equals(error, that.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, transfer, error);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult: {status: %s, transfer: %s, error: '%s'}", status, transfer, error);
+    }
+
+    public enum Status {
+        COMPLETED, FAILED, NOT_APPLIED
+    }
+}
@@ -0,0 +1,87 @@
+package eu.ammw.transfer.model;
+
+import com.google.gson.annotations.JsonAdapter;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Totals of an account's transfers within an hour or a day (in UTC): how many there were, how much money came in and
+ * how much went out. Deposits count as credits and withdrawals as debits.
+ */
+public class Bucket {
+    @JsonAdapter(InstantTypeAdapter.class)
+    private final Instant start;
+    private final long transfers;
+    private final Money credits;
+    private final Money debits;
+
+    public Bucket(Instant start, long transfers, Money credits, Money debits) {
+        this.start = start;
+        this.transfers = transfers;
+        this.credits = credits;
+        this.debits = debits;
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    public long getTransfers() {
+        return transfers;
+    }
+
+    public Money getCredits() {
+        return credits;
+    }
+
+    public Money getDebits() {
+        return debits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Bucket bucket = (Bucket) o;
+        return transfers == bucket.transfers &&
+                Objects.equals(start, bucket.start) &&
+                Objects.equals(credits, bucket.credits) &&
+                Objects.equals(debits, bucket.debits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, transfers, credits, debits);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bucket: {start: %s, transfers: %d, credits: %s, debits: %s}",
+                start, transfers, credits, debits);
+    }
+
+    /**
+     * Length of a bucket. Buckets are aligned to the epoch, so hours and days start at full hours and midnights UTC.
+     */
+    public enum Resolution {
+        HOUR(3_600_000L), DAY(86_400_000L);
+
+        private final long millis;
+
+        Resolution(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns the start, in milliseconds since the epoch, of the bucket holding the given time.
+         */
+        public long startOf(long epochMilli) {
+            return Math.floorDiv(epochMilli, millis) * millis;
+        }
+    }
+}
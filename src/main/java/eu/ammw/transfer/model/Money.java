@@ -0,0 +1,89 @@
+package eu.ammw.transfer.model;
+
+import com.google.gson.annotations.JsonAdapter;
+
+import java.math.BigDecimal;
+
+/**
+ * Amount of money held as a {@code long} count of minor units (cents). Arithmetic fails with
+ * {@link ArithmeticException} instead of overflowing. Conversion from {@link BigDecimal} is exact: amounts with more
+ * than two decimal places or out of range are rejected, so no precision is ever lost.
+ */
+@JsonAdapter(MoneyTypeAdapter.class)
+public final class Money implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_UNITS_PER_UNIT = 100;
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    public static Money of(long units) {
+        return ofMinorUnits(Math.multiplyExact(units, MINOR_UNITS_PER_UNIT));
+    }
+
+    public static Money of(BigDecimal amount) {
+        if (amount.scale() > SCALE) {
+            throw new NumberFormatException("Invalid amount of money: " + amount);
+        }
+        try {
+            return ofMinorUnits(amount.movePointRight(SCALE).longValueExact());
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Invalid amount of money: " + amount);
+        }
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(Math.negateExact(minorUnits));
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return minorUnits == ((Money) o).minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
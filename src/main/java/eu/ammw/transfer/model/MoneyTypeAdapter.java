@@ -0,0 +1,32 @@
+package eu.ammw.transfer.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Reads and writes {@link Money} as a plain JSON number, e.g. {@code 12.34}.
+ */
+class MoneyTypeAdapter extends TypeAdapter<Money> {
+    @Override
+    public void write(JsonWriter out, Money value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(value.toBigDecimal());
+    }
+
+    @Override
+    public Money read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return Money.of(new BigDecimal(in.nextString()));
+    }
+}
@@ -0,0 +1,78 @@
+package eu.ammw.transfer.model;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Part of a result, with an opaque token to request the next part, if there is one.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String next;
+
+    public Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * Builds a page from up to {@code limit + 1} items, the extra item only signalling that more items follow.
+     */
+    public static <T> Page<T> of(List<T> items, int limit, Function<T, UUID> key) {
+        if (items.size() <= limit) {
+            return new Page<>(items, null);
+        }
+        List<T> page = items.subList(0, limit);
+        return new Page<>(page, encode(key.apply(page.get(limit - 1))));
+    }
+
+    public static String encode(UUID key) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(key.getMostSignificantBits());
+        buffer.putLong(key.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static UUID decode(String token) {
+        if (token == null) {
+            return null;
+        }
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Page<?> page = (Page<?>) o;
+        return Objects.equals(items, page.items) &&
+                Objects.equals(next, page.next);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(items, next);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Page: {items: %s, next: '%s'}", items, next);
+    }
+}
@@ -0,0 +1,59 @@
+package eu.ammw.transfer.model;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Page of an account's history together with its balance before the first and after the last transfer of the page.
+ */
+public class Statement {
+    private final Money openingBalance;
+    private final List<Transfer> items;
+    private final Money closingBalance;
+    private final String next;
+
+    public Statement(Money openingBalance, Page<Transfer> page, Money closingBalance) {
+        this.openingBalance = openingBalance;
+        this.items = page.getItems();
+        this.closingBalance = closingBalance;
+        this.next = page.getNext();
+    }
+
+    public Money getOpeningBalance() {
+        return openingBalance;
+    }
+
+    public List<Transfer> getItems() {
+        return items;
+    }
+
+    public Money getClosingBalance() {
+        return closingBalance;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Statement statement = (Statement) o;
+        return Objects.equals(openingBalance, statement.openingBalance) &&
+                Objects.equals(items, statement.items) &&
+                Objects.equals(closingBalance, statement.closingBalance) &&
+                Objects.equals(next, statement.next);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(openingBalance, items, closingBalance, next);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Statement: {opening balance: %s, items: %s, closing balance: %s, next: '%s'}",
+                openingBalance, items, closingBalance, next);
+    }
+}
@@ -1,24 +1,53 @@
 package eu.ammw.transfer.model;
 
-import java.math.BigDecimal;
+import com.google.gson.annotations.JsonAdapter;
+
+import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 
+/**
+ * A movement of money between two accounts, or a deposit or withdrawal when both are the same account. Once written,
+ * a transfer may carry the balances of both accounts right after it was applied; a balance is {@code null} when it
+ * was not recorded, e.g. for the side of a transfer held by another shard.
+ * <p>
+ * A new transfer is stamped with the current time in milliseconds; transfers read back from storage written before
+ * timestamps were recorded have none.
+ */
 public class Transfer {
     private final UUID id;
     private final UUID from;
     private final UUID to;
-    private final BigDecimal amount;
+    private final Money amount;
+    @JsonAdapter(InstantTypeAdapter.class)
+    private final Instant timestamp;
+    private final Money fromBalanceAfter;
+    private final Money toBalanceAfter;
+
+    public Transfer(UUID from, UUID to, Money amount) {
+        this(UUID.randomUUID(), from, to, amount, Instant.ofEpochMilli(System.currentTimeMillis()), null, null);
+    }
 
-    public Transfer(UUID from, UUID to, BigDecimal amount) {
-        this(UUID.randomUUID(), from, to, amount);
+    public Transfer(UUID id, UUID from, UUID to, Money amount) {
+        this(id, from, to, amount, null, null, null);
     }
 
-    public Transfer(UUID id, UUID from, UUID to, BigDecimal amount) {
+    public Transfer(UUID id, UUID from, UUID to, Money amount, Instant timestamp, Money fromBalanceAfter,
+                    Money toBalanceAfter) {
         this.id = id;
         this.from = from;
         this.to = to;
         this.amount = amount;
+        this.timestamp = timestamp;
+        this.fromBalanceAfter = fromBalanceAfter;
+        this.toBalanceAfter = toBalanceAfter;
+    }
+
+    /**
+     * Returns the same transfer with the given balances after it.
+     */
+    public Transfer withBalances(Money fromBalanceAfter, Money toBalanceAfter) {
+        return new Transfer(id, from, to, amount, timestamp, fromBalanceAfter, toBalanceAfter);
     }
 
     public UUID getId() {
@@ -33,10 +62,48 @@ public class Transfer {
         return to;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public Money getFromBalanceAfter() {
+        return fromBalanceAfter;
+    }
+
+    public Money getToBalanceAfter() {
+        return toBalanceAfter;
+    }
+
+    /**
+     * Returns the balance of the given side of the transfer right after it, or {@code null} if it was not recorded.
+     *
+     * @throws IllegalArgumentException if the account is not a side of the transfer
+     */
+    public Money getBalanceAfter(UUID accountId) {
+        if (accountId.equals(from)) {
+            return fromBalanceAfter;
+        }
+        if (accountId.equals(to)) {
+            return toBalanceAfter;
+        }
+        throw new IllegalArgumentException("Transfer " + id + " does not involve account " + accountId);
+    }
+
+    /**
+     * Returns how much the transfer changed the balance of the given account: positive for the receiving side and
+     * deposits, negative for the sending side and withdrawals, which are recorded with their sign.
+     */
+    public Money getSignedAmount(UUID accountId) {
+        if (from.equals(to) || accountId.equals(to)) {
+            return amount;
+        }
+        return amount.negate();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -45,16 +112,20 @@ public class Transfer {
         return Objects.equals(id, transfer.id) &&
                 Objects.equals(from, transfer.from) &&
                 Objects.equals(to, transfer.to) &&
-                amount.compareTo(transfer.amount) == 0;
+                Objects.equals(amount, transfer.amount) &&
+                Objects.equals(timestamp, transfer.timestamp) &&
+                Objects.equals(fromBalanceAfter, transfer.fromBalanceAfter) &&
+                Objects.equals(toBalanceAfter, transfer.toBalanceAfter);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, from, to, amount);
+        return Objects.hash(id, from, to, amount, timestamp, fromBalanceAfter, toBalanceAfter);
     }
 
     @Override
     public String toString() {
-        return String.format("Transfer: {id: '%s', from: '%s', to: '%s', amount: %s}", id, from, to, amount);
+        return String.format("Transfer: {id: '%s', from: '%s', to: '%s', amount: %s, timestamp: %s, balances after: %s, %s}",
+                id, from, to, amount, timestamp, fromBalanceAfter, toBalanceAfter);
     }
 }
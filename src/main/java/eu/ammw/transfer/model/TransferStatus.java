@@ -0,0 +1,71 @@
+package eu.ammw.transfer.model;
+
+import java.util.Objects;
+import java.util.UUID;
+
+public class TransferStatus {
+    private final UUID id;
+    private final State state;
+    private final Transfer transfer;
+    private final String error;
+
+    private TransferStatus(UUID id, State state, Transfer transfer, String error) {
+        this.id = id;
+        this.state = state;
+        this.transfer = transfer;
+        this.error = error;
+    }
+
+    public static TransferStatus pending(UUID id, Transfer request) {
+        return new TransferStatus(id, State.PENDING, request, null);
+    }
+
+    public static TransferStatus completed(UUID id, Transfer transfer) {
+        return new TransferStatus(id, State.COMPLETED, transfer, null);
+    }
+
+    public static TransferStatus failed(UUID id, Transfer request, String error) {
+        return new TransferStatus(id, State.FAILED, request, error);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Transfer getTransfer() {
+        return transfer;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransferStatus that = (TransferStatus) o;
+        return Objects.equals(id, that.id) &&
+                state == that.state &&
+                Objects.equals(transfer, that.transfer) &&
+                Objects.equals(error, that.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, state, transfer, error);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TransferStatus: {id: '%s', state: %s, transfer: %s, error: '%s'}", id, state, transfer, error);
+    }
+
+    public enum State {
+        PENDING, COMPLETED, FAILED
+    }
+}
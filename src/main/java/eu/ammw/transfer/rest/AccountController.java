@@ -3,6 +3,7 @@ package eu.ammw.transfer.rest;
 import com.google.gson.Gson;
 import eu.ammw.transfer.domain.AccountService;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Page;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
@@ -11,8 +12,6 @@ import spark.Response;
 import java.util.UUID;
 
 import static eu.ammw.transfer.rest.ErrorHandler.handleError;
-import static spark.Spark.get;
-import static spark.Spark.post;
 
 public class AccountController implements Controller {
 
@@ -23,22 +22,31 @@ public class AccountController implements Controller {
 
     private final AccountService accountService;
     private final Gson gson = new Gson();
+    private final JsonStreamer jsonStreamer = new JsonStreamer();
 
     public AccountController(AccountService accountService) {
         this.accountService = accountService;
     }
 
     @Override
-    public void registerEndpoints() {
-        get("/accounts", this::getAccounts);
-        post("/accounts", this::createAccount);
-        get("/accounts/:id", this::getAccount);
+    public void registerEndpoints(Endpoints endpoints) {
+        endpoints.get("/accounts", this::getAccounts);
+        endpoints.post("/accounts", this::createAccount);
+        endpoints.get("/accounts/:id", this::getAccount);
 
     }
 
     Object getAccounts(Request request, Response response) {
-        response.type(JSON_TYPE);
-        return accountService.getAccounts();
+        try {
+            if (Paging.isRequested(request)) {
+                Page<Account> page = accountService.getAccounts(Paging.after(request), Paging.limit(request));
+                response.type(JSON_TYPE);
+                return page;
+            }
+            return jsonStreamer.stream(response, Account.class, accountService::forEachAccount);
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
     }
 
     Object createAccount(Request request, Response response) {
@@ -0,0 +1,63 @@
+package eu.ammw.transfer.rest;
+
+import com.google.gson.Gson;
+import eu.ammw.transfer.domain.AsyncTransferService;
+import eu.ammw.transfer.model.Transfer;
+import eu.ammw.transfer.model.TransferStatus;
+import spark.Request;
+import spark.Response;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import static eu.ammw.transfer.rest.ErrorHandler.handleError;
+
+public class AsyncTransferController implements Controller {
+
+    private static final String JSON_TYPE = "application/json";
+    private static final String TEXT_TYPE = "text/plain";
+
+    private final AsyncTransferService asyncTransferService;
+    private final Gson gson = new Gson();
+
+    public AsyncTransferController(AsyncTransferService asyncTransferService) {
+        this.asyncTransferService = asyncTransferService;
+    }
+
+    @Override
+    public void registerEndpoints(Endpoints endpoints) {
+        endpoints.post("/transfers", this::submitTransfer);
+        endpoints.get("/transfers/:id", this::getTransferStatus);
+    }
+
+    Object submitTransfer(Request request, Response response) {
+        try {
+            Transfer transfer = gson.fromJson(request.body(), Transfer.class);
+            TransferStatus status = asyncTransferService.submit(Objects.requireNonNull(transfer.getFrom()),
+                    Objects.requireNonNull(transfer.getTo()), Objects.requireNonNull(transfer.getAmount()));
+            response.status(202);
+            response.header("Location", "/transfers/" + status.getId());
+            response.type(JSON_TYPE);
+            return status;
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+    }
+
+    Object getTransferStatus(Request request, Response response) {
+        try {
+            UUID id = UUID.fromString(request.params("id"));
+            Optional<TransferStatus> status = asyncTransferService.getStatus(id);
+            if (!status.isPresent()) {
+                response.type(TEXT_TYPE);
+                response.status(404);
+                return "Transfer not found!";
+            }
+            response.type(JSON_TYPE);
+            return status.get();
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+    }
+}
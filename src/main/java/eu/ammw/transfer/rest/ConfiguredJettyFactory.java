@@ -0,0 +1,60 @@
+package eu.ammw.transfer.rest;
+
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+/**
+ * Creates the Jetty server Spark runs on, with a thread pool and a connector built from {@link JettySettings}.
+ * Spark keeps connectors already present on the server, so the port is set here rather than through Spark.
+ */
+class ConfiguredJettyFactory implements JettyServerFactory {
+    private static final String HOST = "0.0.0.0";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfiguredJettyFactory.class);
+
+    private final JettySettings settings;
+    private final int port;
+
+    ConfiguredJettyFactory(JettySettings settings, int port) {
+        this.settings = settings;
+        this.port = port;
+    }
+
+    @Override
+    public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+        return create(createThreadPool());
+    }
+
+    @Override
+    public Server create(ThreadPool threadPool) {
+        Server server = new Server(threadPool != null ? threadPool : createThreadPool());
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setSendServerVersion(false);
+        ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(httpConfiguration));
+        connector.setHost(HOST);
+        connector.setPort(port);
+        connector.setAcceptQueueSize(settings.getAcceptQueueSize());
+        server.addConnector(connector);
+        return server;
+    }
+
+    private ThreadPool createThreadPool() {
+        if (settings.isVirtualThreads()) {
+            LOGGER.info("Handling requests on virtual threads");
+            return new VirtualThreadPool();
+        }
+        LOGGER.info("Handling requests on {} to {} threads, idle for up to {} ms", settings.getMinThreads(),
+                settings.getMaxThreads(), settings.getIdleTimeoutMillis());
+        QueuedThreadPool threadPool = new QueuedThreadPool(settings.getMaxThreads(), settings.getMinThreads(),
+                settings.getIdleTimeoutMillis());
+        threadPool.setName("http");
+        return threadPool;
+    }
+}
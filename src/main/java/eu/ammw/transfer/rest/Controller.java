@@ -1,5 +1,5 @@
 package eu.ammw.transfer.rest;
 
 public interface Controller {
-    void registerEndpoints();
+    void registerEndpoints(Endpoints endpoints);
 }
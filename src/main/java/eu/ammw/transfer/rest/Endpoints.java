@@ -0,0 +1,60 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.LatencyHistogram;
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import eu.ammw.transfer.metrics.StatusCounter;
+import spark.Route;
+import spark.Spark;
+
+/**
+ * Registers the routes of the controllers with Spark. With a metrics registry, every route gets its own latency
+ * histogram and error counter, labelled with the method and path pattern of the route.
+ */
+public class Endpoints {
+    static final String REQUEST_DURATION = "http_request_duration_seconds";
+    static final String ERRORS = "http_errors_total";
+
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * @param metricsRegistry registry of the route metrics, {@code null} to register the routes as they are
+     */
+    public Endpoints(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public void get(String path, Route route) {
+        Spark.get(path, instrument("GET", path, route));
+    }
+
+    public void post(String path, Route route) {
+        Spark.post(path, instrument("POST", path, route));
+    }
+
+    Route instrument(String method, String path, Route route) {
+        if (metricsRegistry == null) {
+            return route;
+        }
+        String name = method + " " + path;
+        LatencyHistogram latency = metricsRegistry.histogram(REQUEST_DURATION,
+                "Time spent handling requests of the route.", "route", name);
+        StatusCounter errors = metricsRegistry.statusCounter(ERRORS,
+                "Requests of the route answered with an error status.", "route", name);
+        return (request, response) -> {
+            long start = System.nanoTime();
+            boolean completed = false;
+            try {
+                Object body = route.handle(request, response);
+                completed = true;
+                return body;
+            } finally {
+                latency.record(System.nanoTime() - start);
+                // exceptions escaping the route are turned into internal server errors by Spark
+                int status = completed ? response.status() : 500;
+                if (status >= 400) {
+                    errors.increment(status);
+                }
+            }
+        };
+    }
+}
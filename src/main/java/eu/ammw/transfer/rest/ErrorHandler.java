@@ -3,11 +3,15 @@ package eu.ammw.transfer.rest;
 import com.google.gson.JsonSyntaxException;
 import eu.ammw.transfer.domain.AccountNotFoundException;
 import eu.ammw.transfer.domain.InsufficientFundsException;
+import eu.ammw.transfer.domain.InvalidTransferException;
 import eu.ammw.transfer.domain.NegativeTransferException;
+import eu.ammw.transfer.domain.SubmissionRejectedException;
+import eu.ammw.transfer.domain.TransferNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Response;
 
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -17,14 +21,19 @@ public class ErrorHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ErrorHandler.class);
 
     static {
-        HANDLER_MAP = new HashMap<>(7);
+        HANDLER_MAP = new HashMap<>(16);
         HANDLER_MAP.put(IllegalArgumentException.class, ErrorHandler::handleBadRequest);
         HANDLER_MAP.put(NumberFormatException.class, ErrorHandler::handleBadRequest);
         HANDLER_MAP.put(JsonSyntaxException.class, ErrorHandler::handleBadRequest);
+        HANDLER_MAP.put(DateTimeParseException.class, ErrorHandler::handleBadRequest);
         HANDLER_MAP.put(NullPointerException.class, ErrorHandler::handleBadRequest);
+        HANDLER_MAP.put(InvalidTransferException.class, ErrorHandler::handleInvalidTransfer);
         HANDLER_MAP.put(AccountNotFoundException.class, ErrorHandler::handleAccountNotFound);
+        HANDLER_MAP.put(TransferNotFoundException.class, ErrorHandler::handleTransferNotFound);
         HANDLER_MAP.put(InsufficientFundsException.class, ErrorHandler::handleImpossibleTransfer);
         HANDLER_MAP.put(NegativeTransferException.class, ErrorHandler::handleImpossibleTransfer);
+        HANDLER_MAP.put(IdempotencyStore.KeyConflictException.class, ErrorHandler::handleKeyConflict);
+        HANDLER_MAP.put(SubmissionRejectedException.class, ErrorHandler::handleOverload);
     }
 
     private ErrorHandler() {
@@ -41,6 +50,12 @@ public class ErrorHandler {
         return "Bad Request";
     }
 
+    private static Object handleInvalidTransfer(Response response, Exception e) {
+        response.type(TEXT_TYPE);
+        response.status(400);
+        return e.getMessage();
+    }
+
     private static Object handleAccountNotFound(Response response, Exception e) {
         LOGGER.warn("Could not find account", e);
         response.type(TEXT_TYPE);
@@ -48,16 +63,38 @@ public class ErrorHandler {
         return "Account not found!";
     }
 
+    private static Object handleTransferNotFound(Response response, Exception e) {
+        LOGGER.warn("Could not find transfer", e);
+        response.type(TEXT_TYPE);
+        response.status(404);
+        return "Transfer not found!";
+    }
+
     private static Object handleImpossibleTransfer(Response response, Exception e) {
         response.type(TEXT_TYPE);
         response.status(409);
         return e.getMessage();
     }
 
+    private static Object handleKeyConflict(Response response, Exception e) {
+        response.type(TEXT_TYPE);
+        response.status(((IdempotencyStore.KeyConflictException) e).getStatus());
+        return e.getMessage();
+    }
+
+    private static Object handleOverload(Response response, Exception e) {
+        response.type(TEXT_TYPE);
+        response.status(503);
+        return e.getMessage();
+    }
+
     private static Object handleOtherError(Response response, Exception e) {
         LOGGER.error("Error while performing request", e);
         response.type(TEXT_TYPE);
         response.status(500);
+        if (e.getCause() == null) {
+            return e.getMessage();
+        }
         return String.format("%s: %s", e.getMessage(), e.getCause().getMessage());
     }
 
@@ -0,0 +1,248 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.MetricsSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers responses to requests carrying an idempotency key, so that a retried request gets the original response
+ * instead of being processed again. Keys are reduced to 64-bit hashes and kept in flat primitive arrays organized as
+ * a set-associative table: a key can only live in one of {@value #WAYS} slots of its set, and when all of them hold
+ * unexpired entries, the oldest one is evicted. Sets are guarded by striped locks, so lookups of different keys
+ * rarely contend and no objects are allocated per key.
+ * <p>
+ * Capacity should cover all keys expected within the time to live, as evicted keys are forgotten early.
+ */
+public class IdempotencyStore implements MetricsSource {
+    static final int WAYS = 8;
+    private static final int STRIPES = 64;
+    private static final Object PENDING = new Object();
+    private static final Object UNKNOWN = new Object();
+
+    private final long[] keys;
+    private final long[] fingerprints;
+    private final long[] expiries;
+    private final Object[] responses;
+    private final Object[] locks;
+    private final int setMask;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyStore(int capacity, long ttlSeconds) {
+        this(capacity, TimeUnit.SECONDS.toNanos(ttlSeconds), System::nanoTime);
+    }
+
+    IdempotencyStore(int capacity, long ttlNanos, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int setsNeeded = (capacity + WAYS - 1) / WAYS;
+        int sets = setsNeeded == 1 ? 1 : Integer.highestOneBit(setsNeeded - 1) << 1;
+        this.keys = new long[sets * WAYS];
+        this.fingerprints = new long[sets * WAYS];
+        this.expiries = new long[sets * WAYS];
+        this.responses = new Object[sets * WAYS];
+        this.locks = new Object[Math.min(STRIPES, sets)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.setMask = sets - 1;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the response stored for the key, or claims the key and returns {@code null} if the request has to be
+     * processed. A claimed key has to be either completed, marked unknown or released afterwards.
+     *
+     * @throws KeyConflictException if the key is being processed, its outcome is unknown or it was used for a
+     *                              different request
+     */
+    public StoredResponse begin(String key, String request) {
+        long hash = hash(key);
+        long fingerprint = hash(request);
+        long now = clock.getAsLong();
+        int base = ((int) hash & setMask) * WAYS;
+        synchronized (lockOf(hash)) {
+            int slot = -1;
+            for (int i = base; i < base + WAYS; i++) {
+                if (keys[i] == hash && now - expiries[i] < 0) {
+                    if (fingerprints[i] != fingerprint) {
+                        conflicts.increment();
+                        throw new KeyConflictException(422, "Idempotency key was used for a different request");
+                    }
+                    if (responses[i] == PENDING) {
+                        conflicts.increment();
+                        throw new KeyConflictException(409, "Request with this idempotency key is in progress");
+                    }
+                    if (responses[i] == UNKNOWN) {
+                        conflicts.increment();
+                        throw new KeyConflictException(409, "Outcome of request with this idempotency key is unknown");
+                    }
+                    replays.increment();
+                    return (StoredResponse) responses[i];
+                }
+                if (slot < 0 || isBetterVictim(i, slot, now)) {
+                    slot = i;
+                }
+            }
+            if (!isFree(slot, now)) {
+                evictions.increment();
+            }
+            keys[slot] = hash;
+            fingerprints[slot] = fingerprint;
+            expiries[slot] = now + ttlNanos;
+            responses[slot] = PENDING;
+            claims.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the response to a claimed key.
+     */
+    public void complete(String key, StoredResponse response) {
+        update(key, response);
+    }
+
+    /**
+     * Remembers that the request with a claimed key failed after it might have made changes, so that retries are
+     * rejected instead of possibly repeating them.
+     */
+    public void markUnknown(String key) {
+        update(key, UNKNOWN);
+    }
+
+    /**
+     * Forgets a claimed key without a response, so that the request can be retried. Only for requests known to have
+     * failed before making any changes.
+     */
+    public void release(String key) {
+        update(key, null);
+    }
+
+    @Override
+    public String getName() {
+        return "idempotency";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("capacity", keys.length);
+        metrics.put("replays", replays.sum());
+        metrics.put("claims", claims.sum());
+        metrics.put("conflicts", conflicts.sum());
+        metrics.put("evictions", evictions.sum());
+        return metrics;
+    }
+
+    private void update(String key, Object response) {
+        long hash = hash(key);
+        int base = ((int) hash & setMask) * WAYS;
+        synchronized (lockOf(hash)) {
+            for (int i = base; i < base + WAYS; i++) {
+                if (keys[i] == hash && responses[i] == PENDING) {
+                    if (response == null) {
+                        keys[i] = 0;
+                        responses[i] = null;
+                    } else {
+                        responses[i] = response;
+                        expiries[i] = clock.getAsLong() + ttlNanos;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    // free slots first, then completed responses, then the entry expiring soonest
+    private boolean isBetterVictim(int slot, int current, long now) {
+        if (isFree(current, now)) {
+            return false;
+        }
+        if (isFree(slot, now)) {
+            return true;
+        }
+        if ((responses[slot] == PENDING) != (responses[current] == PENDING)) {
+            return responses[current] == PENDING;
+        }
+        return expiries[slot] - expiries[current] < 0;
+    }
+
+    private boolean isFree(int slot, long now) {
+        return keys[slot] == 0 || now - expiries[slot] >= 0;
+    }
+
+    private Object lockOf(long hash) {
+        return locks[(int) hash & setMask & (locks.length - 1)];
+    }
+
+    /**
+     * FNV-1a over UTF-16 code units followed by the finalizer of MurmurHash3, so that the low bits used to select
+     * the set are well mixed. Never returns 0, which marks empty slots.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Status, content type and body of a completed response.
+     */
+    public static class StoredResponse {
+        private final int status;
+        private final String type;
+        private final Object body;
+
+        public StoredResponse(int status, String type, Object body) {
+            this.status = status;
+            this.type = type;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public Object getBody() {
+            return body;
+        }
+    }
+
+    public static class KeyConflictException extends RuntimeException {
+        private final int status;
+
+        KeyConflictException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package eu.ammw.transfer.rest;
+
+/**
+ * Threading and connection settings of the embedded Jetty server. Without virtual threads, requests are handled by
+ * a pool of between {@code minThreads} and {@code maxThreads} platform threads, idle ones above the minimum are
+ * stopped after {@code idleTimeoutMillis}. With virtual threads, every task gets a new virtual thread and the pool
+ * sizes are ignored. Connections not yet accepted wait in a backlog of {@code acceptQueueSize}, {@code 0} leaves its
+ * size to the operating system.
+ */
+public class JettySettings {
+    private final int minThreads;
+    private final int maxThreads;
+    private final int idleTimeoutMillis;
+    private final int acceptQueueSize;
+    private final boolean virtualThreads;
+
+    public JettySettings(int minThreads, int maxThreads, int idleTimeoutMillis, int acceptQueueSize,
+                         boolean virtualThreads) {
+        if (minThreads <= 0 || maxThreads < minThreads) {
+            throw new IllegalArgumentException(String.format("Invalid thread pool size: %d to %d", minThreads, maxThreads));
+        }
+        if (idleTimeoutMillis <= 0 || acceptQueueSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid idle timeout or accept queue size: %d, %d",
+                    idleTimeoutMillis, acceptQueueSize));
+        }
+        if (virtualThreads && !VirtualThreadPool.isSupported()) {
+            throw new IllegalArgumentException("Virtual threads require Java 21 or newer");
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acceptQueueSize = acceptQueueSize;
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public int getAcceptQueueSize() {
+        return acceptQueueSize;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+}
@@ -0,0 +1,38 @@
+package eu.ammw.transfer.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import spark.Response;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Writes a JSON array straight to the servlet output stream while its items are produced, so that memory used
+ * by large responses is bounded by the buffer size instead of the number of items. Once the first buffer is flushed,
+ * the status can no longer be changed, so errors should be detected before the first item is produced.
+ */
+class JsonStreamer {
+    static final int BUFFER_SIZE = 8192;
+
+    private final Gson gson = new Gson();
+
+    <T> Object stream(Response response, Class<T> itemType, Source<T> source) throws Exception {
+        response.type("application/json");
+        OutputStreamWriter output = new OutputStreamWriter(response.raw().getOutputStream(), StandardCharsets.UTF_8);
+        // not closed on failure, so that an error raised before the first flush can still be reported normally
+        JsonWriter writer = new JsonWriter(new BufferedWriter(output, BUFFER_SIZE));
+        writer.beginArray();
+        source.forEach(item -> gson.toJson(item, itemType, writer));
+        writer.endArray();
+        writer.close();
+        // response is already committed, Spark will not write anything more
+        return "";
+    }
+
+    interface Source<T> {
+        void forEach(Consumer<T> consumer) throws Exception;
+    }
+}
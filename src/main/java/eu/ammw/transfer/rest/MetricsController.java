@@ -0,0 +1,33 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import spark.Request;
+import spark.Response;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class MetricsController implements Controller {
+
+    private static final String PROMETHEUS_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry metricsRegistry;
+
+    public MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    public void registerEndpoints(Endpoints endpoints) {
+        endpoints.get("/metrics", this::getMetrics);
+    }
+
+    Object getMetrics(Request request, Response response) throws Exception {
+        response.type(PROMETHEUS_TYPE);
+        // written straight to the servlet output, as the default transformer would turn the text into a JSON string
+        try (OutputStream output = response.raw().getOutputStream()) {
+            output.write(metricsRegistry.scrape().getBytes(StandardCharsets.UTF_8));
+        }
+        return "";
+    }
+}
@@ -0,0 +1,38 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.model.Page;
+import spark.Request;
+
+import java.util.UUID;
+
+/**
+ * Reads keyset pagination parameters: {@code limit} (page size) and {@code after} (token of the previous page).
+ */
+class Paging {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private Paging() {
+    }
+
+    static boolean isRequested(Request request) {
+        return request.queryParams("limit") != null || request.queryParams("after") != null;
+    }
+
+    static int limit(Request request) {
+        String limit = request.queryParams("limit");
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        int value = Integer.parseInt(limit);
+        if (value <= 0 || value > MAX_LIMIT) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_LIMIT + ": " + value);
+        }
+        return value;
+    }
+
+    static UUID after(Request request) {
+        String after = request.queryParams("after");
+        return after == null || after.isEmpty() ? null : Page.decode(after);
+    }
+}
@@ -1,8 +1,11 @@
 package eu.ammw.transfer.rest;
 
+import eu.ammw.transfer.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
 import java.util.Arrays;
 import java.util.List;
@@ -12,23 +15,49 @@ import static spark.Spark.*;
 public class ServerConfiguration {
     private static final Logger LOGGER = LoggerFactory.getLogger(ServerConfiguration.class);
 
+    private final JettySettings jettySettings;
+    private final MetricsRegistry metricsRegistry;
     private final List<Controller> controllers;
 
     public ServerConfiguration(Controller... controllers) {
+        this(null, null, controllers);
+    }
+
+    public ServerConfiguration(JettySettings jettySettings, Controller... controllers) {
+        this(jettySettings, null, controllers);
+    }
+
+    /**
+     * @param jettySettings   threading and connection settings of the server, {@code null} for Spark's defaults
+     * @param metricsRegistry registry of the latency and error metrics of the routes, {@code null} for none
+     */
+    public ServerConfiguration(JettySettings jettySettings, MetricsRegistry metricsRegistry,
+                               Controller... controllers) {
+        this.jettySettings = jettySettings;
+        this.metricsRegistry = metricsRegistry;
         this.controllers = Arrays.asList(controllers);
     }
 
+    /**
+     * Stops the server and waits until it is stopped, so that no request writes anything afterwards.
+     */
     public static void stop() {
         LOGGER.info("Stopping server");
         Spark.stop();
+        Spark.awaitStop();
     }
 
     public void configureAndStart(int port) {
+        if (jettySettings != null) {
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                    new EmbeddedJettyFactory(new ConfiguredJettyFactory(jettySettings, port)));
+        }
         port(port);
         defaultResponseTransformer(new JsonTransformer());
 
         get("/health", (rq, rs) -> "OK");
-        controllers.forEach(Controller::registerEndpoints);
+        Endpoints endpoints = new Endpoints(metricsRegistry);
+        controllers.forEach(controller -> controller.registerEndpoints(endpoints));
 
         LOGGER.info("Server startup finished on port {}", port);
     }
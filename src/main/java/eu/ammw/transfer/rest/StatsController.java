@@ -0,0 +1,33 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.MetricsSource;
+import spark.Request;
+import spark.Response;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StatsController implements Controller {
+
+    private static final String JSON_TYPE = "application/json";
+
+    private final List<MetricsSource> sources;
+
+    public StatsController(MetricsSource... sources) {
+        this.sources = Arrays.asList(sources);
+    }
+
+    @Override
+    public void registerEndpoints(Endpoints endpoints) {
+        endpoints.get("/stats", this::getStats);
+    }
+
+    Object getStats(Request request, Response response) {
+        Map<String, Map<String, Number>> stats = new LinkedHashMap<>();
+        sources.forEach(source -> stats.put(source.getName(), source.getMetrics()));
+        response.type(JSON_TYPE);
+        return stats;
+    }
+}
@@ -3,41 +3,64 @@ package eu.ammw.transfer.rest;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.BatchItem;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
+import eu.ammw.transfer.model.Statement;
 import eu.ammw.transfer.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 
-import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import static eu.ammw.transfer.rest.ErrorHandler.handleError;
-import static spark.Spark.get;
-import static spark.Spark.post;
 
 public class TransferController implements Controller {
 
     private static final String JSON_TYPE = "application/json";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String REPLAYED_HEADER = "Idempotent-Replayed";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TransferController.class);
 
     private final TransferService transferService;
+    private final IdempotencyStore idempotencyStore;
     private final Gson gson = new Gson();
+    private final JsonStreamer jsonStreamer = new JsonStreamer();
 
     public TransferController(TransferService transferService) {
+        this(transferService, null);
+    }
+
+    public TransferController(TransferService transferService, IdempotencyStore idempotencyStore) {
         this.transferService = transferService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @Override
-    public void registerEndpoints() {
-        post("/accounts/:id/transfer", this::transfer);
-        post("/accounts/:id/deposit", this::deposit);
-        post("/accounts/:id/withdraw", this::withdraw);
-        get("/accounts/:id/history", this::getHistory);
+    public void registerEndpoints(Endpoints endpoints) {
+        endpoints.post("/accounts/:id/transfer", this::transfer);
+        endpoints.post("/accounts/:id/deposit", this::deposit);
+        endpoints.post("/accounts/:id/withdraw", this::withdraw);
+        endpoints.get("/accounts/:id/history", this::getHistory);
+        endpoints.get("/accounts/:id/history/:transferId", this::getTransfer);
+        endpoints.get("/accounts/:id/statement", this::getStatement);
+        endpoints.get("/accounts/:id/buckets", this::getBuckets);
+        endpoints.post("/transfers/batch", this::transferBatch);
     }
 
     Object transfer(Request request, Response response) {
+        return idempotently(request, response, this::doTransfer);
+    }
+
+    private Object doTransfer(Request request, Response response) {
         try {
             Transfer transfer = gson.fromJson(request.body(), Transfer.class);
             UUID id = UUID.fromString(request.params("id"));
@@ -49,9 +72,13 @@ public class TransferController implements Controller {
     }
 
     Object deposit(Request request, Response response) {
+        return idempotently(request, response, this::doDeposit);
+    }
+
+    private Object doDeposit(Request request, Response response) {
         try {
             JsonObject jsonObject = gson.fromJson(request.body(), JsonObject.class);
-            BigDecimal amount = jsonObject.get("amount").getAsBigDecimal();
+            Money amount = Money.of(jsonObject.get("amount").getAsBigDecimal());
             UUID id = UUID.fromString(request.params("id"));
 
             response.type(JSON_TYPE);
@@ -63,9 +90,13 @@ public class TransferController implements Controller {
     }
 
     Object withdraw(Request request, Response response) {
+        return idempotently(request, response, this::doWithdraw);
+    }
+
+    private Object doWithdraw(Request request, Response response) {
         try {
             JsonObject jsonObject = gson.fromJson(request.body(), JsonObject.class);
-            BigDecimal amount = jsonObject.get("amount").getAsBigDecimal();
+            Money amount = Money.of(jsonObject.get("amount").getAsBigDecimal());
             UUID id = UUID.fromString(request.params("id"));
 
             response.type(JSON_TYPE);
@@ -76,13 +107,143 @@ public class TransferController implements Controller {
         }
     }
 
+    Object transferBatch(Request request, Response response) {
+        try {
+            JsonObject jsonObject = gson.fromJson(request.body(), JsonObject.class);
+            BatchMode mode = jsonObject.has("mode") ? BatchMode.valueOf(jsonObject.get("mode").getAsString()) : BatchMode.PER_ITEM;
+            // amounts are checked per transfer, so that one invalid amount does not reject the whole batch
+            List<BatchItem> items = Arrays.asList(gson.fromJson(jsonObject.get("transfers"), BatchItem[].class));
+
+            List<BatchResult> results = transferService.transferItems(items, mode == BatchMode.ALL_OR_NOTHING);
+            if (mode == BatchMode.ALL_OR_NOTHING
+                    && results.stream().anyMatch(result -> result.getStatus() != BatchResult.Status.COMPLETED)) {
+                response.status(409);
+            }
+            response.type(JSON_TYPE);
+            return results;
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+    }
+
     Object getHistory(Request request, Response response) {
         try {
             UUID id = UUID.fromString(request.params("id"));
+            if (request.queryParams("from") != null || request.queryParams("to") != null) {
+                Page<Transfer> page = transferService.getHistory(id, timeParam(request, "from", Instant.EPOCH),
+                        timeParam(request, "to", Instant.now()), Paging.after(request), Paging.limit(request));
+                response.type(JSON_TYPE);
+                return page;
+            }
+            if (Paging.isRequested(request)) {
+                Page<Transfer> page = transferService.getHistory(id, Paging.after(request), Paging.limit(request));
+                response.type(JSON_TYPE);
+                return page;
+            }
+            return jsonStreamer.stream(response, Transfer.class, consumer -> transferService.forEachTransfer(id, consumer));
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+    }
+
+    Object getTransfer(Request request, Response response) {
+        try {
+            UUID id = UUID.fromString(request.params("id"));
+            UUID transferId = UUID.fromString(request.params("transferId"));
+            Transfer transfer = transferService.getTransfer(id, transferId);
+            response.type(JSON_TYPE);
+            return transfer;
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+    }
+
+    Object getStatement(Request request, Response response) {
+        try {
+            UUID id = UUID.fromString(request.params("id"));
+            Statement statement = transferService.getStatement(id, Paging.after(request), Paging.limit(request));
             response.type(JSON_TYPE);
-            return transferService.getHistory(id);
+            return statement;
         } catch (Exception e) {
             return handleError(response, e);
         }
     }
+
+    Object getBuckets(Request request, Response response) {
+        try {
+            UUID id = UUID.fromString(request.params("id"));
+            String resolution = request.queryParams("resolution");
+            List<Bucket> buckets = transferService.getBuckets(id,
+                    resolution == null ? Bucket.Resolution.DAY : Bucket.Resolution.valueOf(resolution.toUpperCase()),
+                    timeParam(request, "from", null), timeParam(request, "to", Instant.now()));
+            response.type(JSON_TYPE);
+            return buckets;
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+    }
+
+    // times are ISO-8601 instants, e.g. 2020-01-31T00:00:00Z
+    private static Instant timeParam(Request request, String name, Instant defaultValue) {
+        String value = request.queryParams(name);
+        if (value == null || value.isEmpty()) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+            return defaultValue;
+        }
+        return Instant.parse(value);
+    }
+
+    /**
+     * Handles a request carrying an idempotency key at most once, later requests with the same key get the stored
+     * response. Rejections (4xx) are stored like successes, as they are decided before anything is written, and a
+     * request refused for overload (503) releases the key to be retried. After any other server error it is unknown
+     * whether the request made changes, so retries are rejected instead of possibly repeating them.
+     */
+    private Object idempotently(Request request, Response response, Handler handler) {
+        String key = idempotencyStore == null ? null : request.headers(IDEMPOTENCY_KEY_HEADER);
+        if (key == null) {
+            return handler.handle(request, response);
+        }
+        String scopedKey = request.requestMethod() + " " + request.pathInfo() + "\n" + key;
+        IdempotencyStore.StoredResponse stored;
+        try {
+            stored = idempotencyStore.begin(scopedKey, request.body());
+        } catch (Exception e) {
+            return handleError(response, e);
+        }
+        if (stored != null) {
+            LOGGER.info("Replaying response to request with idempotency key {}", key);
+            response.status(stored.getStatus());
+            response.type(stored.getType());
+            response.header(REPLAYED_HEADER, "true");
+            return stored.getBody();
+        }
+        Object body;
+        try {
+            body = handler.handle(request, response);
+        } catch (RuntimeException e) {
+            idempotencyStore.markUnknown(scopedKey);
+            throw e;
+        }
+        // 0 means the status was never set, which Jetty sends as 200
+        int status = response.status() == 0 ? 200 : response.status();
+        if (status == 503) {
+            idempotencyStore.release(scopedKey);
+        } else if (status >= 500) {
+            idempotencyStore.markUnknown(scopedKey);
+        } else {
+            idempotencyStore.complete(scopedKey, new IdempotencyStore.StoredResponse(status, response.type(), body));
+        }
+        return body;
+    }
+
+    private interface Handler {
+        Object handle(Request request, Response response);
+    }
+
+    private enum BatchMode {
+        ALL_OR_NOTHING, PER_ITEM
+    }
 }
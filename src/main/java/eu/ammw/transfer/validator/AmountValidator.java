@@ -1,13 +1,13 @@
 package eu.ammw.transfer.validator;
 
-import java.math.BigDecimal;
+import eu.ammw.transfer.model.Money;
 
 public class AmountValidator {
 
     private AmountValidator() {}
 
-    public static void validate(BigDecimal amount) {
-        if (amount.scale() > 2 || amount.signum() < 0) {
+    public static void validate(Money amount) {
+        if (amount.signum() < 0) {
             throw new NumberFormatException("Invalid amount of money: " + amount);
         }
     }
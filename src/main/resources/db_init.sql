@@ -1,4 +1,12 @@
-CREATE TABLE IF NOT EXISTS Accounts (id UUID not NULL, name VARCHAR not NULL, balance DECIMAL not NULL default 0, PRIMARY KEY ( id ));
-CREATE TABLE IF NOT EXISTS History (id UUID not NULL, account_from UUID not NULL, account_to UUID not NULL, amount DECIMAL not NULL, PRIMARY KEY ( id ));
-ALTER TABLE History ADD FOREIGN KEY (account_from) REFERENCES Accounts(id);
-ALTER TABLE History ADD FOREIGN KEY (account_to) REFERENCES Accounts(id);
+CREATE TABLE IF NOT EXISTS Accounts (id UUID not NULL, name VARCHAR not NULL, balance BIGINT not NULL default 0, PRIMARY KEY ( id ));
+CREATE TABLE IF NOT EXISTS SubBalances (account_id UUID not NULL, slot INT not NULL, balance BIGINT not NULL, PRIMARY KEY ( account_id, slot ));
+ALTER TABLE SubBalances ADD CONSTRAINT IF NOT EXISTS fk_sub_balances_account FOREIGN KEY (account_id) REFERENCES Accounts(id);
+CREATE TABLE IF NOT EXISTS History (id UUID not NULL, account_from UUID not NULL, account_to UUID not NULL, amount BIGINT not NULL, balance_from BIGINT, balance_to BIGINT, created_at BIGINT, seq BIGINT AUTO_INCREMENT not NULL, PRIMARY KEY ( id ));
+ALTER TABLE History ADD CONSTRAINT IF NOT EXISTS fk_history_from FOREIGN KEY (account_from) REFERENCES Accounts(id);
+ALTER TABLE History ADD CONSTRAINT IF NOT EXISTS fk_history_to FOREIGN KEY (account_to) REFERENCES Accounts(id);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_history_seq ON History(seq);
+CREATE INDEX IF NOT EXISTS idx_history_from_seq ON History(account_from, seq);
+CREATE INDEX IF NOT EXISTS idx_history_to_seq ON History(account_to, seq);
+CREATE INDEX IF NOT EXISTS idx_history_from_time ON History(account_from, created_at, seq);
+CREATE INDEX IF NOT EXISTS idx_history_to_time ON History(account_to, created_at, seq);
+CREATE TABLE IF NOT EXISTS Buckets (account_id UUID not NULL, resolution VARCHAR not NULL, start BIGINT not NULL, transfers BIGINT not NULL, credits BIGINT not NULL, debits BIGINT not NULL, PRIMARY KEY ( account_id, resolution, start ));
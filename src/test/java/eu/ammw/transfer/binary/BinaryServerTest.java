@@ -0,0 +1,217 @@
+package eu.ammw.transfer.binary;
+
+import eu.ammw.transfer.binary.BinaryClient.RequestFailedException;
+import eu.ammw.transfer.binary.BinaryClient.RequestFailedException.Reason;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryServerTest {
+    private static final UUID FIRST = UUID.randomUUID();
+    private static final UUID SECOND = UUID.randomUUID();
+
+    private AccountService accountService;
+    private BinaryServer server;
+    private BinaryClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        LedgerDataSource dataSource = new LedgerDataSource();
+        dataSource.createAccount(new Account(FIRST, "first", Money.of(100)));
+        dataSource.createAccount(new Account(SECOND, "second", Money.of(10)));
+        dataSource.commit();
+        accountService = new AccountService(dataSource);
+        server = new BinaryServer(new TransferService(dataSource, accountService), accountService, 2);
+        server.start(0);
+        client = new BinaryClient("localhost", server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void shouldTransferAndReturnBalancesAfter() throws Exception {
+        // WHEN
+        Transfer transfer = client.transfer(FIRST, SECOND, Money.of(30));
+
+        // THEN
+        assertThat(transfer.getId()).isNotNull();
+        assertThat(transfer.getTimestamp()).isNotNull();
+        assertThat(transfer.getAmount()).isEqualTo(Money.of(30));
+        assertThat(transfer.getFromBalanceAfter()).isEqualTo(Money.of(70));
+        assertThat(transfer.getToBalanceAfter()).isEqualTo(Money.of(40));
+        assertThat(accountService.getAccount(SECOND).getBalance()).isEqualTo(Money.of(40));
+    }
+
+    @Test
+    void shouldDepositWithdrawAndGetBalance() throws Exception {
+        // WHEN
+        client.deposit(FIRST, Money.of(5));
+        client.withdraw(FIRST, Money.ofMinorUnits(250));
+        Money balance = client.getBalance(FIRST);
+
+        // THEN
+        assertThat(balance).isEqualTo(Money.ofMinorUnits(10_250));
+    }
+
+    @Test
+    void shouldFailRequestsWithReasons() {
+        // WHEN
+        RequestFailedException notFound = assertThrows(RequestFailedException.class,
+                () -> client.transfer(FIRST, UUID.randomUUID(), Money.of(1)));
+        RequestFailedException insufficientFunds = assertThrows(RequestFailedException.class,
+                () -> client.withdraw(SECOND, Money.of(11)));
+        RequestFailedException negative = assertThrows(RequestFailedException.class,
+                () -> client.transfer(FIRST, SECOND, Money.of(-1)));
+
+        // THEN
+        assertThat(notFound.getReason()).isEqualTo(Reason.NOT_FOUND);
+        assertThat(insufficientFunds.getReason()).isEqualTo(Reason.CONFLICT);
+        assertThat(insufficientFunds.getMessage()).isNotEmpty();
+        assertThat(negative.getReason()).isEqualTo(Reason.CONFLICT);
+    }
+
+    @Test
+    void shouldAnswerPipelinedRequestsInOrder() throws Exception {
+        // WHEN
+        List<CompletableFuture<Transfer>> transfers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            transfers.add(client.transferAsync(FIRST, SECOND, Money.of(1)));
+        }
+        CompletableFuture<Money> balance = client.getBalanceAsync(SECOND);
+
+        // THEN
+        for (int i = 0; i < transfers.size(); i++) {
+            assertThat(transfers.get(i).get().getToBalanceAfter()).isEqualTo(Money.of(11 + i));
+        }
+        assertThat(balance.get()).isEqualTo(Money.of(110));
+    }
+
+    @Test
+    void shouldTransferBatchPerItem() throws Exception {
+        // GIVEN
+        List<Transfer> batch = Arrays.asList(new Transfer(FIRST, SECOND, Money.of(1)),
+                new Transfer(SECOND, FIRST, Money.of(1000)), new Transfer(SECOND, FIRST, Money.of(2)));
+
+        // WHEN
+        List<BatchResult> results = client.transferBatch(batch, false);
+
+        // THEN
+        assertThat(results).extracting(BatchResult::getStatus).containsExactly(BatchResult.Status.COMPLETED,
+                BatchResult.Status.FAILED, BatchResult.Status.COMPLETED);
+        assertThat(results.get(0).getTransfer().getToBalanceAfter()).isEqualTo(Money.of(11));
+        assertThat(results.get(1).getTransfer()).isEqualTo(batch.get(1));
+        assertThat(results.get(1).getError()).isNotEmpty();
+        assertThat(client.getBalance(SECOND)).isEqualTo(Money.of(9));
+    }
+
+    @Test
+    void shouldNotApplyAllOrNothingBatchWithFailure() throws Exception {
+        // GIVEN
+        List<Transfer> batch = Arrays.asList(new Transfer(FIRST, SECOND, Money.of(1)),
+                new Transfer(SECOND, FIRST, Money.of(1000)));
+
+        // WHEN
+        List<BatchResult> results = client.transferBatch(batch, true);
+
+        // THEN
+        assertThat(results).extracting(BatchResult::getStatus).containsExactly(BatchResult.Status.NOT_APPLIED,
+                BatchResult.Status.FAILED);
+        assertThat(client.getBalance(SECOND)).isEqualTo(Money.of(10));
+    }
+
+    @Test
+    void shouldAnswerUnknownOperationAndTrailingBytesWithBadRequest() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+
+            // WHEN
+            output.writeInt(9);
+            output.writeLong(7);
+            output.writeByte(42);
+            output.writeInt(9 + 16 + 1);
+            output.writeLong(8);
+            output.writeByte(BinaryProtocol.GET_BALANCE);
+            output.writeLong(FIRST.getMostSignificantBits());
+            output.writeLong(FIRST.getLeastSignificantBits());
+            output.writeByte(0);
+            output.flush();
+
+            // THEN
+            for (long requestId = 7; requestId <= 8; requestId++) {
+                int length = input.readInt();
+                assertThat(input.readLong()).isEqualTo(requestId);
+                assertThat(input.readByte()).isEqualTo(BinaryProtocol.BAD_REQUEST);
+                input.skipBytes(length - 9);
+            }
+        }
+    }
+
+    @Test
+    void shouldCloseConnectionOnOversizedFrame() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            // WHEN
+            new DataOutputStream(socket.getOutputStream()).writeInt(BinaryProtocol.MAX_FRAME_SIZE + 1);
+
+            // THEN
+            assertThrows(EOFException.class, () -> new DataInputStream(socket.getInputStream()).readInt());
+        }
+        assertThat(client.getBalance(FIRST)).isEqualTo(Money.of(100));
+    }
+
+    @Test
+    void shouldReadLargeBatchSpanningReads() throws Exception {
+        // GIVEN
+        List<Transfer> batch = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            batch.add(new Transfer(FIRST, SECOND, Money.ofMinorUnits(1)));
+        }
+
+        // WHEN
+        List<BatchResult> results = client.transferBatch(batch, false);
+
+        // THEN
+        assertThat(results).hasSize(5000).allMatch(result -> result.getStatus() == BatchResult.Status.COMPLETED);
+        assertThat(client.getBalance(SECOND)).isEqualTo(Money.of(60));
+    }
+
+    @Test
+    void shouldReportMetricsAndFailPendingRequestsWhenClosed() throws Exception {
+        // GIVEN
+        client.getBalance(FIRST);
+        assertThrows(RequestFailedException.class, () -> client.getBalance(UUID.randomUUID()));
+
+        // WHEN
+        server.close();
+
+        // THEN
+        assertThrows(IOException.class, () -> client.getBalance(FIRST));
+        assertThat(server.getMetrics()).containsEntry("accepted", 1L).containsEntry("requests", 2L)
+                .containsEntry("errors", 1L).containsEntry("connections", 0);
+    }
+}
@@ -0,0 +1,98 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares daily volume of an account over a quarter read from its buckets with the same totals computed by scanning
+ * its history, and measures a time-range history page, for the H2 database and the in-memory ledger.
+ * The history size can be changed with {@code -Dbenchmark.transfers=1000000}.
+ */
+@Tag("benchmark")
+class ActivityBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivityBenchmarkTest.class);
+
+    private static final int TRANSFERS = Integer.getInteger("benchmark.transfers", 100_000);
+    private static final int DAYS = 90;
+    private static final int LOOKUPS = 200;
+    private static final int COMMIT_BATCH = 1_000;
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Instant END = START.plusMillis(DAYS * Bucket.Resolution.DAY.getMillis());
+
+    @Test
+    void shouldCompareBucketsWithHistoryScan() {
+        InMemoryDatabase.create();
+        compare("h2", new InMemoryDatabaseService(new ConnectionPool(InMemoryDatabase::getConnection, 2)));
+        compare("ledger", new LedgerDataSource());
+    }
+
+    private void compare(String name, DataSource dataSource) {
+        Account target = createAccount(dataSource, "target");
+        Account other = createAccount(dataSource, "other");
+        long step = (END.toEpochMilli() - START.toEpochMilli()) / TRANSFERS;
+        for (int i = 0; i < TRANSFERS; i++) {
+            boolean incoming = i % 3 == 0;
+            dataSource.createTransfer(new Transfer(UUID.randomUUID(), incoming ? other.getId() : target.getId(),
+                    incoming ? target.getId() : other.getId(), Money.ofMinorUnits(1 + i % 100),
+                    START.plusMillis(i * step), null, null));
+            if ((i + 1) % COMMIT_BATCH == 0) {
+                dataSource.commit();
+            }
+        }
+        dataSource.commit();
+
+        List<Bucket> buckets = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            buckets = dataSource.getBuckets(target.getId(), Bucket.Resolution.DAY, START, END);
+        }
+        long bucketMicros = (System.nanoTime() - start) / LOOKUPS / 1000;
+
+        long[] scanned = new long[3];
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            scanned[0] = scanned[1] = scanned[2] = 0;
+            dataSource.forEachTransfer(target.getId(), transfer -> {
+                long change = transfer.getSignedAmount(target.getId()).getMinorUnits();
+                scanned[0]++;
+                scanned[change >= 0 ? 1 : 2] += Math.abs(change);
+            });
+        }
+        long scanMicros = (System.nanoTime() - start) / LOOKUPS / 1000;
+
+        Instant middle = START.plusMillis(DAYS / 2 * Bucket.Resolution.DAY.getMillis());
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertThat(dataSource.getHistory(target.getId(), middle, END, null, 100)).hasSize(100);
+        }
+        long pageMicros = (System.nanoTime() - start) / LOOKUPS / 1000;
+
+        LOGGER.info("{}, {} transfers: {} us for {} daily buckets, {} us for a history scan, {} us for a page of "
+                + "a time range", name, TRANSFERS, bucketMicros, buckets.size(), scanMicros, pageMicros);
+        assertThat(buckets).hasSize(DAYS);
+        assertThat(buckets.stream().mapToLong(Bucket::getTransfers).sum()).isEqualTo(scanned[0]);
+        assertThat(buckets.stream().mapToLong(bucket -> bucket.getCredits().getMinorUnits()).sum())
+                .isEqualTo(scanned[1]);
+        assertThat(buckets.stream().mapToLong(bucket -> bucket.getDebits().getMinorUnits()).sum())
+                .isEqualTo(scanned[2]);
+    }
+
+    private Account createAccount(DataSource dataSource, String name) {
+        Account account = new Account(UUID.randomUUID(), name, Money.ZERO);
+        dataSource.createAccount(account);
+        dataSource.commit();
+        return account;
+    }
+}
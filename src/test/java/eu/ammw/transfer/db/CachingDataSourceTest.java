@@ -0,0 +1,261 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingDataSourceTest {
+    private static final UUID TEST_UUID = UUID.randomUUID();
+
+    @Mock
+    private DataSource dataSource;
+
+    private CachingDataSource cachingDataSource;
+
+    @BeforeEach
+    void setUp() {
+        cachingDataSource = new CachingDataSource(dataSource, 2);
+    }
+
+    @Test
+    void shouldReadAccountOnceAndServeCopies() {
+        // GIVEN
+        Account account = new Account(TEST_UUID, "test", Money.of(10));
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.of(account));
+
+        // WHEN
+        Account first = cachingDataSource.getAccount(TEST_UUID).get();
+        first.setBalance(Money.of(1));
+        Account second = cachingDataSource.getAccount(TEST_UUID).get();
+
+        // THEN
+        verify(dataSource, times(1)).getAccount(TEST_UUID);
+        assertThat(second.getBalance()).isEqualTo(Money.of(10));
+        assertThat(cachingDataSource.getMetrics()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void shouldNotCacheMissingAccount() {
+        // GIVEN
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.empty());
+
+        // WHEN
+        cachingDataSource.getAccount(TEST_UUID);
+        Optional<Account> result = cachingDataSource.getAccount(TEST_UUID);
+
+        // THEN
+        assertThat(result).isEmpty();
+        verify(dataSource, times(2)).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldPublishUpdatedAccountOnCommit() {
+        // GIVEN
+        Account account = new Account(TEST_UUID, "test", Money.of(10));
+        cachingDataSource.updateAccount(account);
+
+        // WHEN
+        cachingDataSource.commit();
+
+        // THEN
+        assertThat(cachingDataSource.getAccount(TEST_UUID)).contains(account);
+        verify(dataSource).updateAccount(account);
+        verify(dataSource).commit();
+        verify(dataSource, never()).getAccount(any());
+    }
+
+    @Test
+    void shouldAddSubBalanceChangesToCachedAccountOnCommit() {
+        // GIVEN
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.of(new Account(TEST_UUID, "test", Money.of(10))));
+        cachingDataSource.getAccount(TEST_UUID);
+        cachingDataSource.addToSubBalance(TEST_UUID, 1, Money.of(2));
+        cachingDataSource.addToSubBalance(TEST_UUID, 2, Money.of(3));
+
+        // WHEN
+        Money pending = cachingDataSource.getAccount(TEST_UUID).get().getBalance();
+        cachingDataSource.commit();
+
+        // THEN
+        assertThat(pending).isEqualTo(Money.of(15));
+        assertThat(cachingDataSource.getAccount(TEST_UUID).get().getBalance()).isEqualTo(Money.of(15));
+        verify(dataSource).addToSubBalance(TEST_UUID, 1, Money.of(2));
+        verify(dataSource).addToSubBalance(TEST_UUID, 2, Money.of(3));
+        verify(dataSource, times(1)).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldAddCreditsAndDebitsToCachedAccountOnCommit() {
+        // GIVEN
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.of(new Account(TEST_UUID, "test", Money.of(10))));
+        when(dataSource.credit(TEST_UUID, Money.of(5))).thenReturn(Optional.of(Money.of(15)));
+        when(dataSource.debitIfSufficient(TEST_UUID, Money.of(2))).thenReturn(Optional.of(Money.of(13)));
+        when(dataSource.debitIfSufficient(TEST_UUID, Money.of(20))).thenReturn(Optional.empty());
+        cachingDataSource.getAccount(TEST_UUID);
+
+        // WHEN
+        cachingDataSource.credit(TEST_UUID, Money.of(5));
+        cachingDataSource.debitIfSufficient(TEST_UUID, Money.of(2));
+        cachingDataSource.debitIfSufficient(TEST_UUID, Money.of(20));
+        cachingDataSource.commit();
+
+        // THEN
+        assertThat(cachingDataSource.getAccount(TEST_UUID).get().getBalance()).isEqualTo(Money.of(13));
+        verify(dataSource, times(1)).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldNotCacheAccountReadWhileSubBalanceChangeCommitted() {
+        // GIVEN
+        cachingDataSource.addToSubBalance(TEST_UUID, 1, Money.of(2));
+        when(dataSource.getAccount(TEST_UUID)).thenAnswer(invocation -> {
+            // the change is committed while the balance before it is being read
+            cachingDataSource.commit();
+            return Optional.of(new Account(TEST_UUID, "test", Money.of(10)));
+        }).thenReturn(Optional.of(new Account(TEST_UUID, "test", Money.of(12))));
+        cachingDataSource.getAccount(TEST_UUID);
+
+        // WHEN
+        Optional<Account> result = cachingDataSource.getAccount(TEST_UUID);
+
+        // THEN
+        assertThat(result.get().getBalance()).isEqualTo(Money.of(12));
+        verify(dataSource, times(2)).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldNotCacheAccountReadBeforeEvictedUpdate() {
+        // GIVEN
+        Account first = new Account(UUID.randomUUID(), "first", Money.of(1));
+        Account second = new Account(UUID.randomUUID(), "second", Money.of(1));
+        when(dataSource.getAccount(TEST_UUID)).thenAnswer(invocation -> {
+            // the account is updated and evicted again while the balance before the update is being read
+            cachingDataSource.updateAccount(new Account(TEST_UUID, "test", Money.of(20)));
+            cachingDataSource.commit();
+            cachingDataSource.updateAccount(first);
+            cachingDataSource.commit();
+            cachingDataSource.updateAccount(second);
+            cachingDataSource.commit();
+            return Optional.of(new Account(TEST_UUID, "test", Money.of(10)));
+        }).thenReturn(Optional.of(new Account(TEST_UUID, "test", Money.of(20))));
+        cachingDataSource.getAccount(TEST_UUID);
+
+        // WHEN
+        Optional<Account> result = cachingDataSource.getAccount(TEST_UUID);
+
+        // THEN
+        assertThat(result.get().getBalance()).isEqualTo(Money.of(20));
+        verify(dataSource, times(2)).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldDiscardUpdatedAccountOnRollback() {
+        // GIVEN
+        Account committed = new Account(TEST_UUID, "test", Money.of(10));
+        cachingDataSource.updateAccount(committed);
+        cachingDataSource.commit();
+        cachingDataSource.updateAccount(new Account(TEST_UUID, "test", Money.of(1)));
+
+        // WHEN
+        cachingDataSource.rollback();
+
+        // THEN
+        assertThat(cachingDataSource.getAccount(TEST_UUID)).contains(committed);
+        verify(dataSource).rollback();
+    }
+
+    @Test
+    void shouldSeeOwnUncommittedWritesOnly() throws InterruptedException {
+        // GIVEN
+        Account account = new Account(TEST_UUID, "test", Money.of(10));
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.empty());
+        cachingDataSource.updateAccount(account);
+        Optional<?>[] seenByOther = new Optional<?>[1];
+
+        // WHEN
+        Thread other = new Thread(() -> seenByOther[0] = cachingDataSource.getAccount(TEST_UUID));
+        other.start();
+        other.join();
+
+        // THEN
+        assertThat(cachingDataSource.getAccount(TEST_UUID)).contains(account);
+        assertThat(seenByOther[0]).isEmpty();
+    }
+
+    @Test
+    void shouldInvalidateWrittenAccountsWhenCommitFails() {
+        // GIVEN
+        Account account = new Account(TEST_UUID, "test", Money.of(10));
+        cachingDataSource.updateAccount(account);
+        cachingDataSource.commit();
+        cachingDataSource.updateAccount(new Account(TEST_UUID, "test", Money.of(1)));
+        doThrow(new IllegalStateException("FAIL")).when(dataSource).commit();
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.of(account));
+
+        // WHEN
+        assertThrows(IllegalStateException.class, () -> cachingDataSource.commit());
+
+        // THEN
+        assertThat(cachingDataSource.getAccount(TEST_UUID)).contains(account);
+        verify(dataSource).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedAccount() {
+        // GIVEN
+        Account first = new Account(UUID.randomUUID(), "first", Money.of(1));
+        Account second = new Account(UUID.randomUUID(), "second", Money.of(1));
+        Account third = new Account(UUID.randomUUID(), "third", Money.of(1));
+        cachingDataSource.updateAccount(first);
+        cachingDataSource.updateAccount(second);
+        cachingDataSource.commit();
+        cachingDataSource.getAccount(first.getId());
+
+        // WHEN
+        cachingDataSource.updateAccount(third);
+        cachingDataSource.commit();
+
+        // THEN
+        when(dataSource.getAccount(second.getId())).thenReturn(Optional.of(second));
+        cachingDataSource.getAccount(first.getId());
+        cachingDataSource.getAccount(second.getId());
+        verify(dataSource, never()).getAccount(first.getId());
+        verify(dataSource).getAccount(second.getId());
+        assertThat(cachingDataSource.getMetrics()).containsEntry("evictions", 2L);
+    }
+
+    @Test
+    void shouldSplitLargeCacheIntoSegments() {
+        // GIVEN
+        CachingDataSource large = new CachingDataSource(dataSource, 10_000);
+        for (int i = 0; i < 100; i++) {
+            large.updateAccount(new Account(UUID.randomUUID(), "test", Money.of(1)));
+        }
+
+        // WHEN
+        large.commit();
+
+        // THEN
+        assertThat(large.getMetrics()).containsEntry("segments", 16).containsEntry("size", 100L)
+                .containsEntry("evictions", 0L);
+    }
+
+    @Test
+    void shouldRejectNonPositiveSize() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> new CachingDataSource(dataSource, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CachingDataSource(dataSource, 2, 3));
+    }
+}
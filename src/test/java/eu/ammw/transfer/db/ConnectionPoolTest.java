@@ -0,0 +1,88 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.db.ConnectionPool.PooledConnection;
+import eu.ammw.transfer.db.InMemoryDatabaseService.DatabaseServiceException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionPoolTest {
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Test
+    void shouldOpenConnectionsUpToSize() throws SQLException {
+        // GIVEN
+        when(connectionFactory.getConnection()).thenReturn(mock(Connection.class), mock(Connection.class));
+        ConnectionPool pool = new ConnectionPool(connectionFactory, 2, 10);
+
+        // WHEN
+        PooledConnection first = pool.acquire();
+        PooledConnection second = pool.acquire();
+
+        // THEN
+        assertThat(first.getConnection()).isNotSameAs(second.getConnection());
+        assertThrows(DatabaseServiceException.class, pool::acquire);
+        verify(connectionFactory, times(2)).getConnection();
+    }
+
+    @Test
+    void shouldReuseReleasedConnection() throws SQLException {
+        // GIVEN
+        when(connectionFactory.getConnection()).thenReturn(mock(Connection.class));
+        ConnectionPool pool = new ConnectionPool(connectionFactory, 1, 10);
+        PooledConnection first = pool.acquire();
+
+        // WHEN
+        pool.release(first);
+        PooledConnection second = pool.acquire();
+
+        // THEN
+        assertThat(second).isSameAs(first);
+        verify(connectionFactory).getConnection();
+    }
+
+    @Test
+    void shouldCachePreparedStatements() throws SQLException {
+        // GIVEN
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement("SELECT 1;")).thenReturn(mock(PreparedStatement.class));
+        when(connectionFactory.getConnection()).thenReturn(connection);
+        PooledConnection pooledConnection = new ConnectionPool(connectionFactory, 1).acquire();
+
+        // WHEN
+        PreparedStatement first = pooledConnection.statement("SELECT 1;");
+        PreparedStatement second = pooledConnection.statement("SELECT 1;");
+
+        // THEN
+        assertThat(second).isSameAs(first);
+        verify(connection).prepareStatement("SELECT 1;");
+    }
+
+    @Test
+    void shouldThrowWhenConnectionCannotBeOpened() throws SQLException {
+        // GIVEN
+        when(connectionFactory.getConnection()).thenThrow(SQLException.class).thenReturn(mock(Connection.class));
+        ConnectionPool pool = new ConnectionPool(connectionFactory, 1, 10);
+
+        // WHEN + THEN
+        assertThrows(DatabaseServiceException.class, pool::acquire);
+        assertThat(pool.acquire()).isNotNull();
+    }
+
+    @Test
+    void shouldRejectNonPositiveSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool(connectionFactory, 0));
+    }
+}
@@ -0,0 +1,103 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures history lookup latency of a single account while the history of other accounts grows.
+ * Table sizes can be changed with {@code -Dbenchmark.historySizes=10000,100000,1000000,10000000}.
+ */
+@Tag("benchmark")
+class HistoryLookupBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoryLookupBenchmarkTest.class);
+
+    private static final String HISTORY_SIZES = System.getProperty("benchmark.historySizes", "10000,100000,1000000");
+    private static final int OTHER_ACCOUNTS = 1_000;
+    private static final int OWN_TRANSFERS = 100;
+    private static final int LOOKUPS = 200;
+    private static final int INSERT_BATCH = 10_000;
+
+    @Test
+    void shouldKeepHistoryLatencyFlat() throws SQLException {
+        InMemoryDatabase.create();
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService(new ConnectionPool(InMemoryDatabase::getConnection, 2));
+        List<UUID> others = createAccounts(databaseService, OTHER_ACCOUNTS);
+        UUID target = createAccounts(databaseService, 1).get(0);
+        for (int i = 0; i < OWN_TRANSFERS; i++) {
+            databaseService.createTransfer(new Transfer(target, others.get(i), Money.of(1)));
+        }
+        databaseService.commit();
+
+        try (Connection connection = InMemoryDatabase.getConnection()) {
+            long rows = countHistory(connection);
+            for (long size : Arrays.stream(HISTORY_SIZES.split(",")).mapToLong(Long::parseLong).toArray()) {
+                rows = fillHistory(connection, others, rows, size);
+                for (int i = 0; i < LOOKUPS; i++) {
+                    assertThat(databaseService.getHistory(target)).hasSize(OWN_TRANSFERS);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    databaseService.getHistory(target);
+                }
+                long elapsed = (System.nanoTime() - start) / LOOKUPS;
+                LOGGER.info("History of {} rows: {} us per lookup", rows, elapsed / 1000);
+            }
+        }
+    }
+
+    private List<UUID> createAccounts(DataSource dataSource, int count) {
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Account account = new Account(null, "History " + i, Money.ZERO);
+            dataSource.createAccount(account);
+            accounts.add(account.getId());
+        }
+        dataSource.commit();
+        return accounts;
+    }
+
+    private long countHistory(Connection connection) throws SQLException {
+        try (ResultSet resultSet = connection.createStatement().executeQuery("SELECT COUNT(*) FROM History;")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private long fillHistory(Connection connection, List<UUID> accounts, long rows, long size) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO History (id, account_from, account_to, amount) VALUES (?, ?, ?, ?);")) {
+            while (rows < size) {
+                insert.setString(1, UUID.randomUUID().toString());
+                insert.setString(2, accounts.get(random.nextInt(accounts.size())).toString());
+                insert.setString(3, accounts.get(random.nextInt(accounts.size())).toString());
+                insert.setLong(4, 100);
+                insert.addBatch();
+                if (++rows % INSERT_BATCH == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        return rows;
+    }
+}
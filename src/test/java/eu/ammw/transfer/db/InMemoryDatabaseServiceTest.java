@@ -2,6 +2,8 @@ package eu.ammw.transfer.db;
 
 import eu.ammw.transfer.db.InMemoryDatabaseService.DatabaseServiceException;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
 import eu.ammw.transfer.model.Transfer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,11 +11,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -35,8 +40,69 @@ class InMemoryDatabaseServiceTest {
 
     @BeforeEach
     void setUp() throws SQLException {
-        when(connection.prepareStatement(anyString())).thenReturn(statement);
-        databaseService = new InMemoryDatabaseService(connection);
+        lenient().when(connection.prepareStatement(anyString())).thenReturn(statement);
+        databaseService = new InMemoryDatabaseService(new ConnectionPool(() -> connection, 1, 10));
+    }
+
+    @Test
+    void shouldStreamHistoryInPages() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(anyString())).thenReturn(TEST_UUID.toString());
+        List<Transfer> received = new ArrayList<>();
+
+        // WHEN
+        databaseService.forEachTransfer(TEST_UUID, received::add);
+
+        // THEN
+        verify(statement).setString(1, TEST_UUID.toString());
+        verify(statement).setLong(2, 0);
+        verify(statement).setInt(3, 1_000);
+        verify(resultSet, times(3)).next();
+        verify(resultSet).close();
+        assertThat(received).hasSize(2);
+    }
+
+    @Test
+    void shouldReleaseConnectionWhileStreamingHistory() throws SQLException {
+        // GIVEN
+        ConnectionPool pool = new ConnectionPool(() -> connection, 1, 10);
+        databaseService = new InMemoryDatabaseService(pool);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(anyString())).thenReturn(TEST_UUID.toString());
+        List<Transfer> received = new ArrayList<>();
+
+        // WHEN
+        databaseService.forEachTransfer(TEST_UUID, transfer -> {
+            // fails if the stream still held the only connection
+            pool.release(pool.acquire());
+            received.add(transfer);
+        });
+
+        // THEN
+        assertThat(received).hasSize(1);
+    }
+
+    @Test
+    void shouldStreamAccountsInPages() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("id")).thenReturn(TEST_UUID.toString());
+        List<Account> received = new ArrayList<>();
+
+        // WHEN
+        databaseService.forEachAccount(received::add);
+
+        // THEN
+        verify(connection).prepareStatement(startsWith("SELECT id, name"));
+        verify(statement).setInt(1, 1_000);
+        assertThat(received).extracting(Account::getId).containsExactly(TEST_UUID);
     }
 
     @Test
@@ -52,6 +118,7 @@ class InMemoryDatabaseServiceTest {
         verify(statement).clearParameters();
         verify(statement).setString(1, TEST_UUID.toString());
         verify(statement).setString(2, TEST_UUID.toString());
+        verify(statement).setString(3, TEST_UUID.toString());
         verifyNoMoreInteractions(statement);
         verify(resultSet).next();
     }
@@ -59,7 +126,7 @@ class InMemoryDatabaseServiceTest {
     @Test
     void shouldCreateAccount() throws SQLException {
         // GIVEN
-        Account account = new Account(TEST_UUID, "Test Account", BigDecimal.ZERO);
+        Account account = new Account(TEST_UUID, "Test Account", Money.ZERO);
 
         // WHEN
         databaseService.createAccount(account);
@@ -68,7 +135,7 @@ class InMemoryDatabaseServiceTest {
         verify(statement).clearParameters();
         verify(statement).setString(1, TEST_UUID.toString());
         verify(statement).setString(2, "Test Account");
-        verify(statement).setBigDecimal(3, BigDecimal.ZERO);
+        verify(statement).setLong(3, 0);
         verify(statement).executeUpdate();
         verifyNoMoreInteractions(statement);
     }
@@ -76,20 +143,106 @@ class InMemoryDatabaseServiceTest {
     @Test
     void shouldUpdateAccount() throws SQLException {
         // GIVEN
-        Account account = new Account(TEST_UUID, "Test Account", BigDecimal.ONE);
+        Account account = new Account(TEST_UUID, "Test Account", Money.of(1));
 
         // WHEN
         databaseService.updateAccount(account);
 
         // THEN
-        verify(statement).clearParameters();
+        verify(connection).prepareStatement("UPDATE Accounts SET name=?, balance=? WHERE id=?;");
+        verify(connection).prepareStatement("DELETE FROM SubBalances WHERE account_id=?;");
+        verify(statement, times(2)).clearParameters();
         verify(statement).setString(1, "Test Account");
-        verify(statement).setBigDecimal(2, BigDecimal.ONE);
+        verify(statement).setLong(2, 100);
         verify(statement).setString(3, TEST_UUID.toString());
+        verify(statement).setString(1, TEST_UUID.toString());
+        verify(statement, times(2)).executeUpdate();
+        verifyNoMoreInteractions(statement);
+    }
+
+    @Test
+    void shouldGetSubBalance() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(250L);
+
+        // WHEN
+        Money result = databaseService.getSubBalance(TEST_UUID, 3);
+
+        // THEN
+        verify(connection).prepareStatement("SELECT balance FROM SubBalances WHERE account_id=? AND slot=?;");
+        verify(statement).setString(1, TEST_UUID.toString());
+        verify(statement).setInt(2, 3);
+        assertThat(result).isEqualTo(Money.ofMinorUnits(250));
+    }
+
+    @Test
+    void shouldGetZeroForEmptySubBalance() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        // WHEN
+        Money result = databaseService.getSubBalance(TEST_UUID, 3);
+
+        // THEN
+        assertThat(result).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldAddToSubBalance() throws SQLException {
+        // WHEN
+        databaseService.addToSubBalance(TEST_UUID, 2, Money.of(-1));
+
+        // THEN
+        verify(statement).clearParameters();
+        verify(statement).setString(1, TEST_UUID.toString());
+        verify(statement).setInt(2, 2);
+        verify(statement).setLong(3, -100);
         verify(statement).executeUpdate();
         verifyNoMoreInteractions(statement);
     }
 
+    @Test
+    void shouldCreditWithSingleUpdateAndReadBalanceAfter() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeUpdate()).thenReturn(1);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("id")).thenReturn(TEST_UUID.toString());
+        when(resultSet.getLong("balance")).thenReturn(350L);
+
+        // WHEN
+        Optional<Money> result = databaseService.credit(TEST_UUID, Money.of(1));
+
+        // THEN
+        verify(connection).prepareStatement("UPDATE Accounts SET balance=balance+? WHERE id=?;");
+        verify(statement).setLong(1, 100);
+        verify(statement, times(2)).setString(anyInt(), eq(TEST_UUID.toString()));
+        assertThat(result).contains(Money.ofMinorUnits(350));
+    }
+
+    @Test
+    void shouldNotDebitWhenNoRowMatches() throws SQLException {
+        // GIVEN
+        when(statement.executeUpdate()).thenReturn(0);
+
+        // WHEN
+        Optional<Money> result = databaseService.debitIfSufficient(TEST_UUID, Money.of(1));
+
+        // THEN
+        verify(connection).prepareStatement("UPDATE Accounts a SET balance=balance-? WHERE id=? AND balance + "
+                + "COALESCE((SELECT SUM(s.balance) FROM SubBalances s WHERE s.account_id=a.id), 0)>=?;");
+        verify(statement).setLong(1, 100);
+        verify(statement).setString(2, TEST_UUID.toString());
+        verify(statement).setLong(3, 100);
+        verify(statement, never()).executeQuery();
+        assertThat(result).isEmpty();
+    }
+
     @Test
     void shouldGetAccountById() throws SQLException {
         // GIVEN
@@ -113,7 +266,7 @@ class InMemoryDatabaseServiceTest {
         ResultSet resultSet = mock(ResultSet.class);
         when(resultSet.next()).thenReturn(true);
         when(resultSet.getString(anyString())).thenReturn(TEST_UUID.toString());
-        when(resultSet.getBigDecimal(anyString())).thenReturn(BigDecimal.ONE);
+        when(resultSet.getLong(anyString())).thenReturn(100L);
         when(statement.executeQuery()).thenReturn(resultSet);
 
         // WHEN
@@ -141,7 +294,7 @@ class InMemoryDatabaseServiceTest {
     @Test
     void shouldCreateTransfer() throws SQLException {
         // GIVEN
-        Transfer transfer = new Transfer(TEST_UUID, UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ONE);
+        Transfer transfer = new Transfer(TEST_UUID, UUID.randomUUID(), UUID.randomUUID(), Money.of(1));
 
         // WHEN
         databaseService.createTransfer(transfer);
@@ -151,8 +304,171 @@ class InMemoryDatabaseServiceTest {
         verify(statement).setString(1, TEST_UUID.toString());
         verify(statement).setString(2, transfer.getFrom().toString());
         verify(statement).setString(3, transfer.getTo().toString());
-        verify(statement).setBigDecimal(4, BigDecimal.ONE);
+        verify(statement).setLong(4, 100);
+        verify(statement).setNull(5, Types.BIGINT);
+        verify(statement).setNull(6, Types.BIGINT);
+        verify(statement).setNull(7, Types.BIGINT);
+        verify(statement).executeUpdate();
+        verifyNoMoreInteractions(statement);
+    }
+
+    @Test
+    void shouldCreateTransferWithBalancesAfter() throws SQLException {
+        // GIVEN
+        Transfer transfer = new Transfer(TEST_UUID, UUID.randomUUID(), UUID.randomUUID(), Money.of(1), null,
+                Money.of(2), Money.ofMinorUnits(350));
+
+        // WHEN
+        databaseService.createTransfer(transfer);
+
+        // THEN
+        verify(statement).setLong(4, 100);
+        verify(statement).setLong(5, 200);
+        verify(statement).setLong(6, 350);
         verify(statement).executeUpdate();
+    }
+
+    @Test
+    void shouldUpdateBucketsOfBothSidesWithTimestampedTransfer() throws SQLException {
+        // GIVEN
+        Instant timestamp = Instant.parse("2020-01-31T12:34:56Z");
+        UUID to = UUID.randomUUID();
+        Transfer transfer = new Transfer(UUID.randomUUID(), TEST_UUID, to, Money.of(1), timestamp, null, null);
+
+        // WHEN
+        databaseService.createTransfer(transfer);
+
+        // THEN
+        verify(statement).setLong(7, timestamp.toEpochMilli());
+        verify(statement).executeUpdate();
+        verify(statement, times(2)).setString(2, Bucket.Resolution.HOUR.name());
+        verify(statement, times(2)).setString(2, Bucket.Resolution.DAY.name());
+        verify(statement, times(2)).setLong(3, Instant.parse("2020-01-31T12:00:00Z").toEpochMilli());
+        verify(statement, times(2)).setLong(3, Instant.parse("2020-01-31T00:00:00Z").toEpochMilli());
+        verify(statement, times(2)).setLong(5, 100);
+        verify(statement, times(3)).setLong(4, 100);
+        verify(statement, times(4)).addBatch();
+        verify(statement).executeBatch();
+    }
+
+    @Test
+    void shouldCommitOnTransactionConnection() throws SQLException {
+        // GIVEN
+        databaseService.createAccount(new Account(TEST_UUID, "Test Account", Money.ZERO));
+
+        // WHEN
+        databaseService.commit();
+
+        // THEN
+        verify(connection).commit();
+        verify(connection, never()).rollback();
+    }
+
+    @Test
+    void shouldReleaseConnectionAfterCommit() throws SQLException {
+        // GIVEN
+        databaseService.createAccount(new Account(TEST_UUID, "Test Account", Money.ZERO));
+        databaseService.commit();
+
+        // WHEN
+        databaseService.createAccount(new Account(TEST_UUID, "Test Account", Money.ZERO));
+        databaseService.rollback();
+
+        // THEN
+        verify(connection).commit();
+        verify(connection).rollback();
+    }
+
+    @Test
+    void shouldNotCommitWithoutTransaction() throws SQLException {
+        // WHEN
+        databaseService.commit();
+        databaseService.rollback();
+
+        // THEN
+        verify(connection, never()).commit();
+        verify(connection, never()).rollback();
+    }
+
+    @Test
+    void shouldReadWithinTransactionOnSameConnection() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        databaseService.createAccount(new Account(TEST_UUID, "Test Account", Money.ZERO));
+
+        // WHEN
+        Optional<Account> result = databaseService.getAccount(TEST_UUID);
+
+        // THEN
+        assertThat(result).isEmpty();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void shouldGetFirstPageOfAccounts() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        // WHEN
+        databaseService.getAccounts(null, 10);
+
+        // THEN
+        verify(connection).prepareStatement("SELECT id, name, balance + COALESCE((SELECT SUM(s.balance) FROM SubBalances s "
+                + "WHERE s.account_id=a.id), 0) balance FROM Accounts a ORDER BY id LIMIT ?;");
+        verify(statement).clearParameters();
+        verify(statement).setInt(1, 10);
         verifyNoMoreInteractions(statement);
     }
+
+    @Test
+    void shouldGetNextPageOfAccounts() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        // WHEN
+        databaseService.getAccounts(TEST_UUID, 10);
+
+        // THEN
+        verify(connection).prepareStatement("SELECT id, name, balance + COALESCE((SELECT SUM(s.balance) FROM SubBalances s "
+                + "WHERE s.account_id=a.id), 0) balance FROM Accounts a WHERE id>? ORDER BY id LIMIT ?;");
+        verify(statement).setString(1, TEST_UUID.toString());
+        verify(statement).setInt(2, 10);
+    }
+
+    @Test
+    void shouldGetHistoryPageAfterTransfer() throws SQLException {
+        // GIVEN
+        UUID after = UUID.randomUUID();
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(42L);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        // WHEN
+        databaseService.getHistory(TEST_UUID, after, 10);
+
+        // THEN
+        verify(statement).setString(1, after.toString());
+        verify(statement).setString(1, TEST_UUID.toString());
+        verify(statement).setLong(2, 42L);
+        verify(statement).setInt(3, 10);
+        verify(statement).setString(4, TEST_UUID.toString());
+        verify(statement).setString(5, TEST_UUID.toString());
+        verify(statement).setLong(6, 42L);
+        verify(statement).setInt(7, 10);
+        verify(statement).setInt(8, 10);
+    }
+
+    @Test
+    void shouldThrowWhenHistoryPageAfterUnknownTransfer() throws SQLException {
+        // GIVEN
+        ResultSet resultSet = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> databaseService.getHistory(TEST_UUID, UUID.randomUUID(), 10));
+    }
 }
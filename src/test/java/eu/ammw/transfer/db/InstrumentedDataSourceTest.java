@@ -0,0 +1,84 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InstrumentedDataSourceTest {
+    private static final UUID TEST_UUID = UUID.randomUUID();
+
+    @Mock
+    private DataSource dataSource;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    private InstrumentedDataSource instrumentedDataSource;
+
+    @BeforeEach
+    void setUp() {
+        instrumentedDataSource = new InstrumentedDataSource(dataSource, metricsRegistry);
+    }
+
+    @Test
+    void shouldRecordLatencyOfEachMethod() {
+        // GIVEN
+        Account account = new Account(TEST_UUID, "test", Money.of(10));
+        when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.of(account));
+
+        // WHEN
+        Optional<Account> result = instrumentedDataSource.getAccount(TEST_UUID);
+        instrumentedDataSource.getAccount(TEST_UUID);
+        instrumentedDataSource.getHistory(TEST_UUID, null, 10);
+
+        // THEN
+        assertThat(result).contains(account);
+        assertThat(histogramCount("getAccount")).isEqualTo(2);
+        assertThat(histogramCount("getHistoryPage")).isEqualTo(1);
+        assertThat(histogramCount("getHistory")).isEqualTo(0);
+    }
+
+    @Test
+    void shouldRecordLatencyOfFailedCall() {
+        // GIVEN
+        doThrow(new IllegalStateException("FAIL")).when(dataSource).commit();
+
+        // WHEN
+        assertThrows(IllegalStateException.class, () -> instrumentedDataSource.commit());
+
+        // THEN
+        verify(dataSource).commit();
+        assertThat(histogramCount("commit")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShareHistogramsBetweenInstances() {
+        // GIVEN
+        InstrumentedDataSource other = new InstrumentedDataSource(dataSource, metricsRegistry);
+
+        // WHEN
+        instrumentedDataSource.rollback();
+        other.rollback();
+
+        // THEN
+        assertThat(histogramCount("rollback")).isEqualTo(2);
+    }
+
+    private long histogramCount(String method) {
+        return metricsRegistry.histogram(InstrumentedDataSource.CALL_DURATION, "", "method", method).getCount();
+    }
+}
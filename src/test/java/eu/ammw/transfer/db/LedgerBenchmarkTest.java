@@ -0,0 +1,108 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares transfer throughput and account lookup latency of the H2 database and the in-memory ledger behind the same
+ * services. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class LedgerBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LedgerBenchmarkTest.class);
+
+    private static final int[] THREADS = {1, 4};
+    private static final int ACCOUNTS = 64;
+    private static final int TRANSFERS_PER_THREAD = Integer.getInteger("benchmark.transfers", 5_000);
+    private static final Money INITIAL_BALANCE = Money.of(1_000_000);
+
+    @Test
+    void shouldCompareStorages() throws Exception {
+        InMemoryDatabase.create();
+        DataSource database = new InMemoryDatabaseService(new ConnectionPool(InMemoryDatabase::getConnection, 16));
+        DataSource ledger = new LedgerDataSource();
+        for (int threads : THREADS) {
+            compare("h2", database, threads);
+            compare("ledger", ledger, threads);
+        }
+    }
+
+    private void compare(String name, DataSource dataSource, int threads) throws Exception {
+        AccountService accountService = new AccountService(dataSource);
+        TransferService transferService = new TransferService(dataSource, accountService);
+        List<UUID> accounts = createAccounts(accountService, transferService);
+
+        double throughput = measureTransfers(transferService, accounts, threads);
+        double lookupMicros = measureLookups(accountService, accounts);
+        LOGGER.info("{}, {} threads: {} transfers/s, {} us per account lookup", name, threads,
+                String.format("%.0f", throughput), String.format("%.2f", lookupMicros));
+
+        Money total = Money.ZERO;
+        for (UUID id : accounts) {
+            total = total.plus(accountService.getAccount(id).getBalance());
+        }
+        assertThat(total).isEqualTo(Money.ofMinorUnits(INITIAL_BALANCE.getMinorUnits() * ACCOUNTS));
+    }
+
+    private double measureTransfers(TransferService service, List<UUID> accounts, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < TRANSFERS_PER_THREAD; n++) {
+                        UUID from = accounts.get((thread + n) % ACCOUNTS);
+                        UUID to = accounts.get((thread + 7 * n + 1) % ACCOUNTS);
+                        if (!from.equals(to)) {
+                            service.transfer(from, to, Money.of(1));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return threads * (double) TRANSFERS_PER_THREAD * 1_000_000_000L / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private double measureLookups(AccountService service, List<UUID> accounts) throws Exception {
+        int lookups = TRANSFERS_PER_THREAD * 10;
+        long start = System.nanoTime();
+        for (int n = 0; n < lookups; n++) {
+            service.getAccount(accounts.get(n % ACCOUNTS));
+        }
+        return (System.nanoTime() - start) / 1000.0 / lookups;
+    }
+
+    private List<UUID> createAccounts(AccountService accountService, TransferService transferService) throws Exception {
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accountService.createAccount("Benchmark " + i);
+            transferService.deposit(account.getId(), INITIAL_BALANCE);
+            accounts.add(account.getId());
+        }
+        return accounts;
+    }
+}
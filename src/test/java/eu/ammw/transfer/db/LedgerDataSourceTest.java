@@ -0,0 +1,399 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.db.LedgerDataSource.LedgerException;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LedgerDataSourceTest {
+    private LedgerDataSource ledger;
+    private Account first;
+    private Account second;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new LedgerDataSource();
+        first = new Account(new UUID(1, 1), "first", Money.ofMinorUnits(1050));
+        second = new Account(new UUID(-1, 1), "second", Money.ZERO);
+        ledger.createAccount(first);
+        ledger.createAccount(second);
+        ledger.commit();
+    }
+
+    @Test
+    void shouldStoreAccounts() {
+        // WHEN
+        Optional<Account> result = ledger.getAccount(first.getId());
+
+        // THEN
+        assertThat(result).contains(first);
+        assertThat(ledger.getAccount(UUID.randomUUID())).isEmpty();
+    }
+
+    @Test
+    void shouldApplyWritesOnCommit() {
+        // GIVEN
+        Transfer transfer = new Transfer(first.getId(), second.getId(), Money.ofMinorUnits(50));
+        ledger.updateAccount(new Account(first.getId(), "first", Money.of(10)));
+        ledger.updateAccount(new Account(second.getId(), "second", Money.ofMinorUnits(50)));
+        ledger.createTransfer(transfer);
+
+        // WHEN
+        ledger.commit();
+
+        // THEN
+        assertThat(ledger.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(10));
+        assertThat(ledger.getAccount(second.getId()).get().getBalance()).isEqualTo(Money.ofMinorUnits(50));
+        assertThat(ledger.getHistory(first.getId())).containsExactly(transfer);
+        assertThat(ledger.getHistory(second.getId())).containsExactly(transfer);
+    }
+
+    @Test
+    void shouldKeepReservationsUntilRemoved() {
+        // GIVEN
+        Transfer kept = new Transfer(first.getId(), UUID.randomUUID(), Money.of(1));
+        Transfer removed = new Transfer(first.getId(), UUID.randomUUID(), Money.of(2));
+        ledger.addReservation(kept);
+        ledger.addReservation(removed);
+        ledger.commit();
+        ledger.removeReservation(removed);
+        ledger.addReservation(new Transfer(second.getId(), UUID.randomUUID(), Money.of(3)));
+
+        // WHEN
+        ledger.rollback();
+        List<Transfer> beforeRemoval = ledger.getReservations();
+        ledger.removeReservation(removed);
+        ledger.commit();
+
+        // THEN
+        assertThat(beforeRemoval).containsExactlyInAnyOrder(kept, removed);
+        assertThat(ledger.getReservations()).containsExactly(kept);
+    }
+
+    @Test
+    void shouldLookUpTransferWithBalancesAfter() {
+        // GIVEN
+        Transfer transfer = new Transfer(first.getId(), second.getId(), Money.ofMinorUnits(50))
+                .withBalances(Money.of(10), null);
+        ledger.createTransfer(transfer);
+        ledger.commit();
+
+        // WHEN
+        Optional<Transfer> result = ledger.getTransfer(transfer.getId());
+
+        // THEN
+        assertThat(result).contains(transfer);
+        assertThat(result.get().getBalanceAfter(first.getId())).isEqualTo(Money.of(10));
+        assertThat(result.get().getBalanceAfter(second.getId())).isNull();
+        assertThat(ledger.getTransfer(UUID.randomUUID())).isEmpty();
+    }
+
+    @Test
+    void shouldPageHistoryWithinTimeRange() {
+        // GIVEN
+        Instant start = Instant.parse("2020-01-31T10:00:00Z");
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Transfer transfer = new Transfer(UUID.randomUUID(), first.getId(), second.getId(), Money.of(1),
+                    start.plusSeconds(60L * (4 - i)), null, null);
+            ledger.createTransfer(transfer);
+            ledger.commit();
+            transfers.add(transfer);
+        }
+        ledger.createTransfer(new Transfer(first.getId(), second.getId(), Money.of(1)));
+        ledger.createTransfer(new Transfer(UUID.randomUUID(), first.getId(), second.getId(), Money.of(1)));
+        ledger.commit();
+
+        // WHEN
+        List<Transfer> firstPage = ledger.getHistory(first.getId(), start.plusSeconds(60), start.plusSeconds(240),
+                null, 2);
+        List<Transfer> secondPage = ledger.getHistory(first.getId(), start.plusSeconds(60), start.plusSeconds(240),
+                firstPage.get(1).getId(), 2);
+
+        // THEN
+        assertThat(firstPage).containsExactly(transfers.get(3), transfers.get(2));
+        assertThat(secondPage).containsExactly(transfers.get(1));
+        assertThat(ledger.getHistory(second.getId(), start, start.plusSeconds(1), null, 10))
+                .containsExactly(transfers.get(4));
+        assertThat(ledger.getHistory(first.getId(), start.plusSeconds(1), start, null, 10)).isEmpty();
+    }
+
+    @Test
+    void shouldAddTransfersToBucketsOfBothSides() {
+        // GIVEN
+        Instant morning = Instant.parse("2020-01-31T09:15:00Z");
+        ledger.createTransfer(new Transfer(UUID.randomUUID(), first.getId(), second.getId(), Money.of(2), morning,
+                null, null));
+        ledger.createTransfer(new Transfer(UUID.randomUUID(), first.getId(), first.getId(), Money.of(5),
+                morning.plusSeconds(1800), null, null));
+        ledger.createTransfer(new Transfer(UUID.randomUUID(), first.getId(), first.getId(), Money.of(-1),
+                morning.plusSeconds(3 * 3600), null, null));
+        ledger.commit();
+        Instant day = Instant.parse("2020-01-31T00:00:00Z");
+
+        // WHEN
+        List<Bucket> hours = ledger.getBuckets(first.getId(), Bucket.Resolution.HOUR, day, day.plusSeconds(86400));
+        List<Bucket> days = ledger.getBuckets(first.getId(), Bucket.Resolution.DAY, day, day.plusSeconds(86400));
+
+        // THEN
+        assertThat(hours).containsExactly(
+                new Bucket(Instant.parse("2020-01-31T09:00:00Z"), 2, Money.of(5), Money.of(2)),
+                new Bucket(Instant.parse("2020-01-31T12:00:00Z"), 1, Money.ZERO, Money.of(1)));
+        assertThat(days).containsExactly(new Bucket(day, 3, Money.of(5), Money.of(3)));
+        assertThat(ledger.getBuckets(second.getId(), Bucket.Resolution.DAY, day, day.plusSeconds(86400)))
+                .containsExactly(new Bucket(day, 1, Money.of(2), Money.ZERO));
+        assertThat(ledger.getBuckets(second.getId(), Bucket.Resolution.DAY, day.plusSeconds(86400),
+                day.plusSeconds(2 * 86400))).isEmpty();
+    }
+
+    @Test
+    void shouldDiscardWritesOnRollback() {
+        // GIVEN
+        ledger.updateAccount(new Account(first.getId(), "first", Money.of(1)));
+        ledger.createTransfer(new Transfer(first.getId(), second.getId(), Money.of(1)));
+
+        // WHEN
+        ledger.rollback();
+        ledger.commit();
+
+        // THEN
+        assertThat(ledger.getAccount(first.getId())).contains(first);
+        assertThat(ledger.getHistory(first.getId())).isEmpty();
+    }
+
+    @Test
+    void shouldSeeOwnUncommittedWritesOnly() throws InterruptedException {
+        // GIVEN
+        Account updated = new Account(first.getId(), "first", Money.of(1));
+        ledger.updateAccount(updated);
+        List<Optional<Account>> seenByOther = new ArrayList<>();
+
+        // WHEN
+        Thread other = new Thread(() -> seenByOther.add(ledger.getAccount(first.getId())));
+        other.start();
+        other.join();
+
+        // THEN
+        assertThat(ledger.getAccount(first.getId())).contains(updated);
+        assertThat(seenByOther).containsExactly(Optional.of(first));
+    }
+
+    @Test
+    void shouldRejectWholeTransactionReferringToMissingAccount() {
+        // GIVEN
+        ledger.updateAccount(new Account(first.getId(), "first", Money.of(1)));
+        ledger.createTransfer(new Transfer(first.getId(), UUID.randomUUID(), Money.of(1)));
+
+        // WHEN + THEN
+        assertThrows(LedgerException.class, () -> ledger.commit());
+        assertThat(ledger.getAccount(first.getId())).contains(first);
+    }
+
+    @Test
+    void shouldKeepTransferWithRemoteSideInPartialLedger() {
+        // GIVEN
+        LedgerDataSource partial = new LedgerDataSource(true);
+        partial.createAccount(first);
+        partial.commit();
+        Transfer transfer = new Transfer(first.getId(), UUID.randomUUID(), Money.of(1));
+
+        // WHEN
+        partial.createTransfer(transfer);
+        partial.commit();
+
+        // THEN
+        assertThat(partial.getHistory(first.getId())).containsExactly(transfer);
+        partial.createTransfer(new Transfer(UUID.randomUUID(), UUID.randomUUID(), Money.of(1)));
+        assertThrows(LedgerException.class, () -> partial.commit());
+    }
+
+    @Test
+    void shouldRejectDuplicateAccount() {
+        // WHEN + THEN
+        assertThrows(LedgerException.class, () -> ledger.createAccount(new Account(first.getId(), "copy", Money.ZERO)));
+    }
+
+    @Test
+    void shouldRejectUpdateOfMissingAccount() {
+        // WHEN + THEN
+        assertThrows(LedgerException.class, () -> ledger.updateAccount(new Account(UUID.randomUUID(), "x", Money.ZERO)));
+    }
+
+    @Test
+    void shouldSumSubBalancesIntoBalance() {
+        // GIVEN
+        ledger.addToSubBalance(first.getId(), 0, Money.of(2));
+        ledger.addToSubBalance(first.getId(), 3, Money.of(1));
+        ledger.addToSubBalance(first.getId(), 3, Money.of(1));
+
+        // WHEN
+        Money pending = ledger.getAccount(first.getId()).get().getBalance();
+        ledger.commit();
+
+        // THEN
+        assertThat(pending).isEqualTo(Money.ofMinorUnits(1450));
+        assertThat(ledger.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.ofMinorUnits(1450));
+        assertThat(ledger.getAllAccounts()).extracting(Account::getBalance)
+                .containsExactly(Money.ofMinorUnits(1450), Money.ZERO);
+        assertThat(ledger.getSubBalance(first.getId(), 0)).isEqualTo(Money.of(2));
+        assertThat(ledger.getSubBalance(first.getId(), 1)).isEqualTo(Money.ZERO);
+        assertThat(ledger.getSubBalance(first.getId(), 3)).isEqualTo(Money.of(2));
+        assertThat(ledger.getSubBalance(first.getId(), 7)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldFoldSubBalancesOnUpdate() {
+        // GIVEN
+        ledger.addToSubBalance(first.getId(), 1, Money.of(2));
+        ledger.commit();
+        ledger.updateAccount(new Account(first.getId(), "first", Money.of(5)));
+        ledger.addToSubBalance(first.getId(), 0, Money.of(1));
+
+        // WHEN
+        ledger.commit();
+
+        // THEN
+        assertThat(ledger.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(6));
+        assertThat(ledger.getSubBalance(first.getId(), 0)).isEqualTo(Money.of(1));
+        assertThat(ledger.getSubBalance(first.getId(), 1)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldDiscardSubBalanceChangesOnRollback() {
+        // GIVEN
+        ledger.addToSubBalance(first.getId(), 1, Money.of(2));
+
+        // WHEN
+        ledger.rollback();
+
+        // THEN
+        assertThat(ledger.getAccount(first.getId())).contains(first);
+        assertThat(ledger.getSubBalance(first.getId(), 1)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldRejectSubBalanceOfMissingAccount() {
+        // WHEN + THEN
+        assertThrows(LedgerException.class, () -> ledger.addToSubBalance(UUID.randomUUID(), 0, Money.of(1)));
+    }
+
+    @Test
+    void shouldCreditAndDebitWithoutWritingAccount() {
+        // GIVEN
+        ledger.addToSubBalance(first.getId(), 0, Money.of(1));
+
+        // WHEN
+        Optional<Money> credited = ledger.credit(first.getId(), Money.of(2));
+        Optional<Money> debited = ledger.debitIfSufficient(first.getId(), Money.ofMinorUnits(1350));
+        Optional<Money> rejected = ledger.debitIfSufficient(first.getId(), Money.ofMinorUnits(1));
+        ledger.commit();
+
+        // THEN
+        assertThat(credited).contains(Money.ofMinorUnits(1350));
+        assertThat(debited).contains(Money.ZERO);
+        assertThat(rejected).isEmpty();
+        assertThat(ledger.getAccount(first.getId())).contains(new Account(first.getId(), "first", Money.ZERO));
+        assertThat(ledger.getSubBalance(first.getId(), 0)).isEqualTo(Money.of(1));
+    }
+
+    @Test
+    void shouldNotCreditOrDebitMissingAccount() {
+        // WHEN + THEN
+        assertThat(ledger.credit(UUID.randomUUID(), Money.of(1))).isEmpty();
+        assertThat(ledger.debitIfSufficient(UUID.randomUUID(), Money.of(1))).isEmpty();
+    }
+
+    @Test
+    void shouldRejectDebitOnCommitWhenBalanceWasTakenMeanwhile() throws InterruptedException {
+        // GIVEN
+        ledger.debitIfSufficient(first.getId(), Money.ofMinorUnits(1000));
+        Thread other = new Thread(() -> {
+            ledger.debitIfSufficient(first.getId(), Money.ofMinorUnits(1000));
+            ledger.commit();
+        });
+        other.start();
+        other.join();
+
+        // WHEN + THEN
+        assertThrows(LedgerException.class, () -> ledger.commit());
+        assertThat(ledger.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.ofMinorUnits(50));
+    }
+
+    @Test
+    void shouldApplyCreditToAccountWrittenInSameTransaction() {
+        // GIVEN
+        ledger.updateAccount(new Account(first.getId(), "first", Money.of(5)));
+
+        // WHEN
+        Optional<Money> result = ledger.credit(first.getId(), Money.of(1));
+        ledger.commit();
+
+        // THEN
+        assertThat(result).contains(Money.of(6));
+        assertThat(ledger.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(6));
+    }
+
+    @Test
+    void shouldListAccountsInIdTextOrder() {
+        // WHEN
+        List<Account> result = ledger.getAllAccounts();
+
+        // THEN
+        assertThat(result).extracting(Account::getId).containsExactly(first.getId(), second.getId());
+        assertThat(first.getId().toString()).isLessThan(second.getId().toString());
+    }
+
+    @Test
+    void shouldPageAccounts() {
+        // WHEN
+        List<Account> firstPage = ledger.getAccounts(null, 1);
+        List<Account> secondPage = ledger.getAccounts(firstPage.get(0).getId(), 1);
+        List<Account> lastPage = ledger.getAccounts(secondPage.get(0).getId(), 1);
+
+        // THEN
+        assertThat(firstPage).containsExactly(first);
+        assertThat(secondPage).containsExactly(second);
+        assertThat(lastPage).isEmpty();
+    }
+
+    @Test
+    void shouldPageHistoryInOrder() {
+        // GIVEN
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Transfer transfer = new Transfer(first.getId(), i % 2 == 0 ? first.getId() : second.getId(), Money.of(1));
+            ledger.createTransfer(transfer);
+            ledger.commit();
+            transfers.add(transfer);
+        }
+
+        // WHEN
+        List<Transfer> firstPage = ledger.getHistory(first.getId(), null, 2);
+        List<Transfer> secondPage = ledger.getHistory(first.getId(), firstPage.get(1).getId(), 2);
+        List<Transfer> otherAccount = ledger.getHistory(second.getId(), null, 10);
+
+        // THEN
+        assertThat(firstPage).containsExactly(transfers.get(0), transfers.get(1));
+        assertThat(secondPage).containsExactly(transfers.get(2), transfers.get(3));
+        assertThat(otherAccount).containsExactly(transfers.get(1), transfers.get(3));
+        assertThat(ledger.getHistory(first.getId())).containsExactlyElementsOf(transfers);
+    }
+
+    @Test
+    void shouldRejectUnknownPageToken() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> ledger.getHistory(first.getId(), UUID.randomUUID(), 10));
+    }
+}
@@ -0,0 +1,93 @@
+package eu.ammw.transfer.db;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardedDataSourceTest {
+    private final List<LedgerDataSource> shards = Arrays.asList(
+            new LedgerDataSource(true), new LedgerDataSource(true), new LedgerDataSource(true));
+
+    private ShardedDataSource dataSource;
+    private List<Account> accounts;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new ShardedDataSource(new ArrayList<>(shards));
+        accounts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Account account = new Account(UUID.randomUUID(), "Account " + i, Money.of(i));
+            dataSource.createAccount(account);
+            accounts.add(account);
+        }
+        dataSource.commit();
+        accounts.sort((first, second) -> first.getId().toString().compareTo(second.getId().toString()));
+    }
+
+    @Test
+    void shouldKeepAccountsOnTheirShards() {
+        // WHEN + THEN
+        for (Account account : accounts) {
+            int shard = dataSource.shardOf(account.getId());
+            assertThat(shards.get(shard).getAccount(account.getId())).contains(account);
+            assertThat(dataSource.getAccount(account.getId())).contains(account);
+        }
+    }
+
+    @Test
+    void shouldMergeShardsInIdOrder() {
+        // WHEN
+        List<Account> result = dataSource.getAllAccounts();
+
+        // THEN
+        assertThat(result).containsExactlyElementsOf(accounts);
+    }
+
+    @Test
+    void shouldPageAcrossShards() {
+        // WHEN
+        List<Account> firstPage = dataSource.getAccounts(null, 7);
+        List<Account> secondPage = dataSource.getAccounts(firstPage.get(6).getId(), 7);
+
+        // THEN
+        assertThat(firstPage).containsExactlyElementsOf(accounts.subList(0, 7));
+        assertThat(secondPage).containsExactlyElementsOf(accounts.subList(7, 14));
+    }
+
+    @Test
+    void shouldKeepTransferBetweenShardsInBothHistories() {
+        // GIVEN
+        Account from = accounts.get(0);
+        Account to = accounts.stream()
+                .filter(account -> dataSource.shardOf(account.getId()) != dataSource.shardOf(from.getId()))
+                .findFirst().get();
+        Transfer transfer = new Transfer(from.getId(), to.getId(), Money.of(1));
+
+        // WHEN
+        dataSource.createTransfer(transfer);
+        dataSource.commit();
+
+        // THEN
+        assertThat(dataSource.getHistory(from.getId())).containsExactly(transfer);
+        assertThat(dataSource.getHistory(to.getId())).containsExactly(transfer);
+        assertThat(shards.stream().map(shard -> shard.getHistory(to.getId()).size()).collect(Collectors.toList()))
+                .containsExactlyInAnyOrder(1, 0, 0);
+    }
+
+    @Test
+    void shouldRejectNoShards() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> new ShardedDataSource(new ArrayList<>()));
+    }
+}
@@ -0,0 +1,125 @@
+package eu.ammw.transfer.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AccountLocksTest {
+    private final AccountLocks accountLocks = new AccountLocks(64);
+
+    @Test
+    void shouldNotBlockDisjointAccounts() throws Exception {
+        // GIVEN
+        UUID first = UUID.randomUUID();
+        UUID second = idOnOtherStripe(first);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // WHEN
+        try (AccountLocks.Held ignored = accountLocks.lock(first)) {
+            Future<Boolean> result = executor.submit(() -> {
+                try (AccountLocks.Held alsoIgnored = accountLocks.lock(second)) {
+                    return true;
+                }
+            });
+
+            // THEN
+            assertThat(result.get(1, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldBlockSameAccountUntilReleased() throws Exception {
+        // GIVEN
+        UUID id = UUID.randomUUID();
+        CountDownLatch acquired = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // WHEN
+        try {
+            try (AccountLocks.Held ignored = accountLocks.lock(id)) {
+                executor.submit(() -> {
+                    try (AccountLocks.Held alsoIgnored = accountLocks.lock(id)) {
+                        acquired.countDown();
+                    }
+                });
+                assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+            }
+
+            // THEN
+            assertThat(acquired.await(1, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotDeadlockOnOppositeTransfers() throws Exception {
+        // GIVEN
+        UUID first = UUID.randomUUID();
+        UUID second = idOnOtherStripe(first);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // WHEN
+        try {
+            Future<?> forward = executor.submit(() -> lockRepeatedly(first, second));
+            Future<?> backward = executor.submit(() -> lockRepeatedly(second, first));
+
+            // THEN
+            forward.get(5, TimeUnit.SECONDS);
+            backward.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldIgnoreNullIds() {
+        // WHEN
+        try (AccountLocks.Held ignored = accountLocks.lock(UUID.randomUUID(), null)) {
+            // THEN
+            assertThat(ignored).isNotNull();
+        }
+    }
+
+    @Test
+    void shouldLockSameStripeOnlyOnce() {
+        // GIVEN
+        UUID id = UUID.randomUUID();
+
+        // WHEN + THEN
+        try (AccountLocks.Held ignored = accountLocks.lock(id, id)) {
+            assertThat(ignored).isNotNull();
+        }
+    }
+
+    @Test
+    void shouldRejectNonPositiveStripeCount() {
+        assertThrows(IllegalArgumentException.class, () -> new AccountLocks(0));
+    }
+
+    private void lockRepeatedly(UUID from, UUID to) {
+        for (int i = 0; i < 10_000; i++) {
+            try (AccountLocks.Held ignored = accountLocks.lock(from, to)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private UUID idOnOtherStripe(UUID id) {
+        UUID other = UUID.randomUUID();
+        while (accountLocks.stripeOf(other) == accountLocks.stripeOf(id)) {
+            other = UUID.randomUUID();
+        }
+        return other;
+    }
+}
@@ -2,6 +2,8 @@ package eu.ammw.transfer.domain;
 
 import eu.ammw.transfer.db.DataSource;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,12 +11,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.math.BigDecimal;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class AccountServiceTest {
@@ -51,10 +51,24 @@ class AccountServiceTest {
         assertThat(result).isEmpty();
     }
 
+    @Test
+    void shouldGetPageOfAccounts() {
+        // GIVEN
+        List<Account> accounts = Arrays.asList(new Account(null, "A", Money.of(1)), new Account(null, "B", Money.of(1)));
+        when(dataSource.getAccounts(TEST_UUID, 2)).thenReturn(accounts);
+
+        // WHEN
+        Page<Account> result = service.getAccounts(TEST_UUID, 1);
+
+        // THEN
+        assertThat(result.getItems()).containsExactly(accounts.get(0));
+        assertThat(Page.decode(result.getNext())).isEqualTo(accounts.get(0).getId());
+    }
+
     @Test
     void shouldGetAccountByUUID() throws AccountNotFoundException {
         // GIVEN
-        Account expected = new Account(TEST_UUID, "Jane Doe", BigDecimal.TEN);
+        Account expected = new Account(TEST_UUID, "Jane Doe", Money.of(10));
         when(dataSource.getAccount(TEST_UUID)).thenReturn(Optional.of(expected));
 
         // WHEN
@@ -80,10 +94,23 @@ class AccountServiceTest {
 
         // THEN
         assertThat(result.getId()).isNotNull();
-        assertThat(result.getBalance()).isEqualTo(BigDecimal.ZERO);
+        assertThat(result.getBalance()).isEqualTo(Money.ZERO);
         assertThat(result.getName()).isEqualTo("Test");
     }
 
+    @Test
+    void shouldRollBackWhenAccountCreationFails() {
+        // GIVEN
+        doThrow(IllegalStateException.class).when(dataSource).createAccount(any());
+
+        // WHEN
+        Assertions.assertThrows(IllegalStateException.class, () -> service.createAccount("Test"));
+
+        // THEN
+        verify(dataSource).rollback();
+        verify(dataSource, never()).commit();
+    }
+
     @Test
     void shouldNotCreateAccountWithInvalidName() {
         Assertions.assertThrows(IllegalArgumentException.class, () -> service.createAccount(".::#$%::."));
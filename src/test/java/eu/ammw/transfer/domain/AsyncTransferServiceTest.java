@@ -0,0 +1,189 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.journal.WriteAheadLog;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import eu.ammw.transfer.model.TransferStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncTransferServiceTest {
+    private static final UUID FROM = UUID.randomUUID();
+    private static final UUID TO = UUID.randomUUID();
+
+    @Mock
+    private TransferService transferService;
+
+    @TempDir
+    Path directory;
+
+    private AsyncTransferService asyncTransferService;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        asyncTransferService.stop();
+    }
+
+    @Test
+    void shouldReportPendingAndThenCompletedTransfer() throws Exception {
+        // GIVEN
+        asyncTransferService = new AsyncTransferService(transferService, 1, 10, 10);
+        Transfer transfer = new Transfer(FROM, TO, Money.of(10));
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferService.transfer(any(UUID.class), eq(FROM), eq(TO), eq(Money.of(10)))).thenAnswer(invocation -> {
+            release.await();
+            return transfer;
+        });
+
+        // WHEN
+        TransferStatus submitted = asyncTransferService.submit(FROM, TO, Money.of(10));
+        TransferStatus pending = asyncTransferService.getStatus(submitted.getId()).get();
+        release.countDown();
+        asyncTransferService.stop();
+
+        // THEN
+        verify(transferService).transfer(submitted.getId(), FROM, TO, Money.of(10));
+        assertThat(submitted.getState()).isEqualTo(TransferStatus.State.PENDING);
+        assertThat(pending).isEqualTo(submitted);
+        assertThat(asyncTransferService.getStatus(submitted.getId()))
+                .contains(TransferStatus.completed(submitted.getId(), transfer));
+        assertThat(asyncTransferService.getMetrics()).containsEntry("submitted", 1L).containsEntry("completed", 1L);
+    }
+
+    @Test
+    void shouldReportFailedTransfer() throws Exception {
+        // GIVEN
+        asyncTransferService = new AsyncTransferService(transferService, 1, 10, 10);
+        when(transferService.transfer(any(UUID.class), eq(FROM), eq(TO), eq(Money.of(10)))).thenThrow(new TransferException("FAIL"));
+
+        // WHEN
+        TransferStatus submitted = asyncTransferService.submit(FROM, TO, Money.of(10));
+        asyncTransferService.stop();
+
+        // THEN
+        TransferStatus status = asyncTransferService.getStatus(submitted.getId()).get();
+        assertThat(status.getState()).isEqualTo(TransferStatus.State.FAILED);
+        assertThat(status.getError()).isEqualTo("FAIL");
+        assertThat(status.getTransfer()).isEqualTo(submitted.getTransfer());
+    }
+
+    @Test
+    void shouldRejectSubmissionWhenQueueIsFull() throws Exception {
+        // GIVEN
+        asyncTransferService = new AsyncTransferService(transferService, 1, 1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferService.transfer(any(UUID.class), eq(FROM), eq(TO), eq(Money.of(10)))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        asyncTransferService.submit(FROM, TO, Money.of(10));
+        started.await();
+        asyncTransferService.submit(FROM, TO, Money.of(10));
+
+        // WHEN + THEN
+        assertThrows(SubmissionRejectedException.class, () -> asyncTransferService.submit(FROM, TO, Money.of(10)));
+        release.countDown();
+        assertThat(asyncTransferService.getMetrics()).containsEntry("submitted", 2L).containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void shouldForgetOldestFinishedStatuses() throws Exception {
+        // GIVEN
+        asyncTransferService = new AsyncTransferService(transferService, 1, 10, 2);
+        TransferStatus first = asyncTransferService.submit(FROM, TO, Money.of(1));
+        TransferStatus second = asyncTransferService.submit(FROM, TO, Money.of(2));
+        TransferStatus third = asyncTransferService.submit(FROM, TO, Money.of(3));
+
+        // WHEN
+        asyncTransferService.stop();
+
+        // THEN
+        assertThat(asyncTransferService.getStatus(first.getId())).isEmpty();
+        assertThat(asyncTransferService.getStatus(second.getId())).isPresent();
+        assertThat(asyncTransferService.getStatus(third.getId())).isPresent();
+    }
+
+    @Test
+    void shouldQueuePendingTransfersAgainOnRecovery() throws Exception {
+        // GIVEN
+        asyncTransferService = new AsyncTransferService(transferService, 1, 10, 10, openLog());
+        asyncTransferService.recover();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferService.transfer(any(UUID.class), eq(FROM), eq(TO), any(Money.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        TransferStatus first = asyncTransferService.submit(FROM, TO, Money.of(10));
+        started.await();
+        TransferStatus second = asyncTransferService.submit(FROM, TO, Money.of(20));
+        // as if the process died with the first transfer made, but not recorded as finished
+        Transfer made = new Transfer(first.getId(), FROM, TO, Money.of(10));
+        Transfer madeAfterRestart = new Transfer(second.getId(), FROM, TO, Money.of(20));
+        when(transferService.findTransfer(first.getId())).thenReturn(Optional.of(made));
+        when(transferService.findTransfer(second.getId())).thenReturn(Optional.empty());
+        doReturn(madeAfterRestart).when(transferService).transfer(second.getId(), FROM, TO, Money.of(20));
+        AsyncTransferService restarted = new AsyncTransferService(transferService, 1, 10, 10, openLog());
+
+        // WHEN
+        int recovered;
+        try {
+            recovered = restarted.recover();
+            restarted.stop();
+        } finally {
+            release.countDown();
+        }
+
+        // THEN
+        assertThat(recovered).isEqualTo(2);
+        assertThat(restarted.getStatus(first.getId())).contains(TransferStatus.completed(first.getId(), made));
+        assertThat(restarted.getStatus(second.getId()))
+                .contains(TransferStatus.completed(second.getId(), madeAfterRestart));
+        verify(transferService, times(1)).transfer(first.getId(), FROM, TO, Money.of(10));
+    }
+
+    @Test
+    void shouldNotQueueFinishedTransfersAgain() throws Exception {
+        // GIVEN
+        WriteAheadLog log = openLog();
+        asyncTransferService = new AsyncTransferService(transferService, 1, 10, 10, log);
+        asyncTransferService.recover();
+        for (int i = 0; i < 5; i++) {
+            asyncTransferService.submit(FROM, TO, Money.of(10));
+        }
+        asyncTransferService.stop();
+
+        AsyncTransferService restarted = new AsyncTransferService(transferService, 1, 10, 10, openLog());
+
+        // WHEN
+        int recovered = restarted.recover();
+        restarted.stop();
+
+        // THEN
+        assertThat(recovered).isZero();
+        assertThat(log.getSegmentCount()).isEqualTo(1);
+    }
+
+    private WriteAheadLog openLog() throws IOException {
+        // small segments, so that finished transfers fill whole segments to delete
+        return new WriteAheadLog(directory, 128, WriteAheadLog.FsyncPolicy.NEVER, 0);
+    }
+}
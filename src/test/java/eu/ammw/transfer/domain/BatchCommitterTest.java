@@ -0,0 +1,107 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchCommitterTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    private BatchCommitter committer;
+
+    @BeforeEach
+    void setUp() {
+        committer = new BatchCommitter(dataSource);
+    }
+
+    @Test
+    void shouldCommitBatchTogether() {
+        // GIVEN
+        List<BatchCommitter.Pending> batch = Arrays.asList(pending(() -> "first"), pending(() -> "second"));
+
+        // WHEN
+        committer.commit(batch);
+
+        // THEN
+        assertThat(batch).extracting(pending -> pending.result).containsExactly("first", "second");
+        verify(dataSource, times(1)).commit();
+        assertThat(committer.getBatchesCommitted()).isEqualTo(1);
+        assertThat(committer.getOperationsCommitted()).isEqualTo(2);
+        assertThat(committer.getLastBatchSize()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepCheckedExceptionAsOutcome() {
+        // GIVEN
+        TransferException error = new TransferException("rejected");
+        List<BatchCommitter.Pending> batch = Arrays.asList(pending(() -> {
+            throw error;
+        }), pending(() -> "second"));
+
+        // WHEN
+        committer.commit(batch);
+
+        // THEN
+        assertThat(batch.get(0).error).isSameAs(error);
+        assertThat(batch.get(1).result).isEqualTo("second");
+        verify(dataSource, times(1)).commit();
+        verify(dataSource, never()).rollback();
+    }
+
+    @Test
+    void shouldApplyOperationsOneByOneWhenBatchFails() {
+        // GIVEN
+        IllegalStateException failure = new IllegalStateException("broken");
+        List<BatchCommitter.Pending> batch = Arrays.asList(pending(() -> {
+            throw failure;
+        }), pending(() -> "second"));
+
+        // WHEN
+        committer.commit(batch);
+
+        // THEN
+        assertThat(batch.get(0).error).isSameAs(failure);
+        assertThat(batch.get(1).error).isNull();
+        assertThat(batch.get(1).result).isEqualTo("second");
+        verify(dataSource, times(2)).rollback();
+        verify(dataSource, times(1)).commit();
+        assertThat(committer.getBatchFailures()).isEqualTo(1);
+        assertThat(committer.getOperationsCommitted()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFailWholeBatchWithUnknownOutcome() {
+        // GIVEN
+        CommitOutcomeUnknownException unknown = new CommitOutcomeUnknownException("journal failed", null);
+        doThrow(unknown).when(dataSource).commit();
+        List<BatchCommitter.Pending> batch = Arrays.asList(pending(() -> "first"), pending(() -> "second"));
+
+        // WHEN
+        committer.commit(batch);
+
+        // THEN
+        assertThat(batch).extracting(pending -> pending.error).containsExactly(unknown, unknown);
+        verify(dataSource, times(1)).commit();
+        verify(dataSource).rollback();
+        assertThat(committer.getOperationsCommitted()).isZero();
+    }
+
+    private static BatchCommitter.Pending pending(WriteExecutor.Operation<?> operation) {
+        BatchCommitter.Pending pending = new BatchCommitter.Pending();
+        pending.operation = operation;
+        return pending;
+    }
+}
@@ -0,0 +1,173 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GroupCommitExecutorTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    private GroupCommitExecutor executor;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        executor.stop();
+    }
+
+    @Test
+    void shouldCommitSingleOperationAfterLinger() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 10, 1000);
+
+        // WHEN
+        String result = executor.execute(() -> "done");
+
+        // THEN
+        assertThat(result).isEqualTo("done");
+        verify(dataSource).commit();
+        assertThat(executor.getMetrics()).containsEntry("groupsCommitted", 1L).containsEntry("lastBatchSize", 1);
+    }
+
+    @Test
+    void shouldCommitConcurrentOperationsTogether() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 4, 10_000_000);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        // WHEN
+        for (int i = 0; i < 4; i++) {
+            int value = i;
+            results.add(callers.submit(() -> executor.execute(() -> value)));
+        }
+
+        // THEN
+        for (int i = 0; i < 4; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+        verify(dataSource).commit();
+        assertThat(executor.getMetrics())
+                .containsEntry("groupsCommitted", 1L)
+                .containsEntry("operationsCommitted", 4L)
+                .containsEntry("largestBatchSize", 4)
+                .containsEntry("queueDepth", 0);
+    }
+
+    @Test
+    void shouldRejectOperationWithoutFailingGroup() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 2, 10_000_000);
+
+        // WHEN
+        Future<Object> rejected = callers.submit(() -> executor.execute(() -> {
+            throw new InsufficientFundsException(new Account(null), Money.of(10));
+        }));
+        Future<String> accepted = callers.submit(() -> executor.execute(() -> "done"));
+
+        // THEN
+        assertThat(accepted.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        Exception exception = assertThrows(Exception.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasCauseInstanceOf(InsufficientFundsException.class);
+        verify(dataSource).commit();
+        verify(dataSource, never()).rollback();
+    }
+
+    @Test
+    void shouldRetryOperationsOneByOneWhenGroupFails() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 2, 10_000_000);
+        doThrow(IllegalStateException.class).doNothing().when(dataSource).commit();
+
+        // WHEN
+        Future<String> first = callers.submit(() -> executor.execute(() -> "first"));
+        Future<String> second = callers.submit(() -> executor.execute(() -> "second"));
+
+        // THEN
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+        verify(dataSource).rollback();
+        verify(dataSource, times(3)).commit();
+        assertThat(executor.getMetrics()).containsEntry("groupFailures", 1L).containsEntry("operationsCommitted", 2L);
+    }
+
+    @Test
+    void shouldNotRetryGroupWithUnknownOutcome() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 2, 10_000_000);
+        doThrow(new CommitOutcomeUnknownException("journal failed", null)).when(dataSource).commit();
+
+        // WHEN
+        Future<String> first = callers.submit(() -> executor.execute(() -> "first"));
+        Future<String> second = callers.submit(() -> executor.execute(() -> "second"));
+
+        // THEN
+        for (Future<String> result : Arrays.asList(first, second)) {
+            Exception exception = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertThat(exception).hasCauseInstanceOf(CommitOutcomeUnknownException.class);
+        }
+        verify(dataSource, times(1)).commit();
+        assertThat(executor.getMetrics()).containsEntry("groupFailures", 1L).containsEntry("operationsCommitted", 0L);
+    }
+
+    @Test
+    void shouldFailOnlyFaultyOperationWhenRetrying() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 2, 10_000_000);
+
+        // WHEN
+        Future<Object> faulty = callers.submit(() -> executor.execute(() -> {
+            throw new IllegalStateException("broken");
+        }));
+        Future<String> healthy = callers.submit(() -> executor.execute(() -> "healthy"));
+
+        // THEN
+        assertThat(healthy.get(5, TimeUnit.SECONDS)).isEqualTo("healthy");
+        Exception exception = assertThrows(Exception.class, () -> faulty.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldRejectOperationAfterStop() throws Exception {
+        // GIVEN
+        executor = new GroupCommitExecutor(dataSource, 10, 1000);
+        executor.execute(() -> "first");
+
+        // WHEN
+        executor.stop();
+
+        // THEN
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> executor.execute(() -> "second"));
+        assertThat(exception).hasMessage("Group commit executor is stopped");
+        verify(dataSource).commit();
+    }
+
+    @Test
+    void shouldRejectNonPositiveBatchSize() {
+        assertThrows(IllegalArgumentException.class, () -> new GroupCommitExecutor(dataSource, 0, 1000));
+        executor = new GroupCommitExecutor(dataSource, 1, 1000);
+    }
+}
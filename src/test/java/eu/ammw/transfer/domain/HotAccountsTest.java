@@ -0,0 +1,129 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HotAccountsTest {
+    private static final UUID HOT = UUID.randomUUID();
+    private static final UUID OTHER = UUID.randomUUID();
+
+    private final HotAccounts hotAccounts = new HotAccounts(Arrays.asList(HOT), 4);
+
+    @Test
+    void shouldDeriveDistinctStableKeysPerSlot() {
+        // WHEN
+        List<UUID> keys = new ArrayList<>();
+        for (int slot = 0; slot < 4; slot++) {
+            keys.add(hotAccounts.lockKey(HOT, slot));
+        }
+
+        // THEN
+        assertThat(new HashSet<>(keys)).hasSize(4).doesNotContain(HOT);
+        assertThat(new HotAccounts(Arrays.asList(HOT), 4).lockKey(HOT, 2)).isEqualTo(keys.get(2));
+        assertThat(hotAccounts.lockKey(HOT, HotAccounts.WHOLE)).isEqualTo(HOT);
+        assertThat(hotAccounts.lockKey(OTHER, HotAccounts.WHOLE)).isEqualTo(OTHER);
+    }
+
+    @Test
+    void shouldPickSlotsOfHotAccountsOnly() {
+        // WHEN + THEN
+        for (int i = 0; i < 100; i++) {
+            assertThat(hotAccounts.pickSlot(HOT)).isBetween(0, 3);
+        }
+        assertThat(hotAccounts.pickSlot(OTHER)).isEqualTo(HotAccounts.WHOLE);
+        assertThat(hotAccounts.getSlots(HOT)).isEqualTo(4);
+        assertThat(hotAccounts.getSlots(OTHER)).isZero();
+    }
+
+    @Test
+    void shouldLockWholeHotAccountWithAllSlotsOnce() {
+        // WHEN
+        UUID[] keys = hotAccounts.lockKeys(OTHER, HOT, HOT);
+
+        // THEN
+        assertThat(keys).containsExactly(OTHER, HOT, HOT, hotAccounts.lockKey(HOT, 0), hotAccounts.lockKey(HOT, 1),
+                hotAccounts.lockKey(HOT, 2), hotAccounts.lockKey(HOT, 3));
+        assertThat(HotAccounts.NONE.lockKeys(OTHER, HOT)).containsExactly(OTHER, HOT);
+    }
+
+    @Test
+    void shouldRejectNonPositiveSlots() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> new HotAccounts(Arrays.asList(HOT), 0));
+    }
+
+    @Test
+    void shouldConserveMoneyUnderConcurrentWritesToHotAccount() throws Exception {
+        // GIVEN
+        LedgerDataSource dataSource = new LedgerDataSource();
+        AccountService accountService = new AccountService(dataSource);
+        TransferService transferService = new TransferService(dataSource, accountService,
+                new LockingWriteExecutor(dataSource, new AccountLocks()), hotAccounts);
+        UUID customer = UUID.randomUUID();
+        dataSource.createAccount(new Account(HOT, "hot", Money.of(10)));
+        dataSource.createAccount(new Account(customer, "customer", Money.of(1000)));
+        dataSource.commit();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // WHEN
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(() -> {
+                    long withdrawn = 0;
+                    for (int i = 0; i < 500; i++) {
+                        int operation = ThreadLocalRandom.current().nextInt(4);
+                        if (operation == 0) {
+                            transferService.deposit(HOT, Money.of(1));
+                            withdrawn -= 100;
+                        } else if (operation == 1) {
+                            transferService.transfer(customer, HOT, Money.ofMinorUnits(10));
+                        } else {
+                            try {
+                                if (operation == 2) {
+                                    transferService.withdraw(HOT, Money.of(1));
+                                    withdrawn += 100;
+                                } else {
+                                    transferService.transfer(HOT, customer, Money.ofMinorUnits(10));
+                                }
+                            } catch (InsufficientFundsException e) {
+                                // the hot account ran dry, which its balance is checked for below
+                            }
+                        }
+                    }
+                    return withdrawn;
+                }));
+            }
+            long withdrawn = 0;
+            for (Future<Long> result : results) {
+                withdrawn += result.get();
+            }
+
+            // THEN
+            Money hot = accountService.getAccount(HOT).getBalance();
+            Money total = hot.plus(accountService.getAccount(customer).getBalance());
+            assertThat(total).isEqualTo(Money.ofMinorUnits(101_000 - withdrawn));
+            assertThat(hot.signum()).isGreaterThanOrEqualTo(0);
+            for (int slot = 0; slot < 4; slot++) {
+                assertThat(dataSource.getSubBalance(HOT, slot).signum()).isGreaterThanOrEqualTo(0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.metrics.LatencyHistogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LockingWriteExecutorTest {
+    private static final UUID TEST_UUID = UUID.randomUUID();
+
+    @Mock
+    private DataSource dataSource;
+
+    @Spy
+    private AccountLocks accountLocks = new AccountLocks(16);
+
+    private LockingWriteExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new LockingWriteExecutor(dataSource, accountLocks);
+    }
+
+    @Test
+    void shouldCommitUnderLock() throws Exception {
+        // WHEN
+        String result = executor.execute(() -> "done", TEST_UUID);
+
+        // THEN
+        assertThat(result).isEqualTo("done");
+        verify(accountLocks).lock(TEST_UUID);
+        verify(dataSource).commit();
+        verify(dataSource, never()).rollback();
+    }
+
+    @Test
+    void shouldRollBackAndRethrowOnFailure() {
+        // WHEN
+        AccountNotFoundException exception = assertThrows(AccountNotFoundException.class, () -> executor.execute(() -> {
+            throw new AccountNotFoundException(TEST_UUID);
+        }, TEST_UUID));
+
+        // THEN
+        assertThat(exception).hasMessageContaining(TEST_UUID.toString());
+        verify(dataSource).rollback();
+        verify(dataSource, never()).commit();
+    }
+
+    @Test
+    void shouldRecordLockWait() throws Exception {
+        // GIVEN
+        LatencyHistogram lockWait = new LatencyHistogram();
+        executor = new LockingWriteExecutor(dataSource, accountLocks, lockWait);
+
+        // WHEN
+        executor.execute(() -> "done", TEST_UUID);
+        executor.execute(() -> "done", TEST_UUID);
+
+        // THEN
+        assertThat(lockWait.getCount()).isEqualTo(2);
+    }
+}
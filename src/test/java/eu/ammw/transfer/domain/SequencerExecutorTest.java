@@ -0,0 +1,152 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SequencerExecutorTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    private SequencerExecutor executor;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        executor.stop();
+    }
+
+    @Test
+    void shouldApplyAndCommitOperation() throws Exception {
+        // GIVEN
+        executor = new SequencerExecutor(dataSource, 4);
+
+        // WHEN
+        String result = executor.execute(() -> "done");
+
+        // THEN
+        assertThat(result).isEqualTo("done");
+        verify(dataSource).commit();
+        assertThat(executor.getMetrics()).containsEntry("operationsCommitted", 1L).containsEntry("backlog", 0L);
+    }
+
+    @Test
+    void shouldApplyAllOperationsOnWriterThreadWhenRingWrapsAround() throws Exception {
+        // GIVEN
+        executor = new SequencerExecutor(dataSource, 4);
+        Set<String> writers = ConcurrentHashMap.newKeySet();
+        List<Future<Integer>> results = new ArrayList<>();
+
+        // WHEN
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            results.add(callers.submit(() -> executor.execute(() -> {
+                writers.add(Thread.currentThread().getName());
+                return value;
+            })));
+        }
+
+        // THEN
+        for (int i = 0; i < 100; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+        assertThat(writers).containsExactly("sequencer-writer");
+        assertThat(executor.getMetrics()).containsEntry("operationsCommitted", 100L);
+        assertThat((int) executor.getMetrics().get("largestBatchSize")).isBetween(1, 4);
+    }
+
+    @Test
+    void shouldRejectOperationWithoutFailingBatch() throws Exception {
+        // GIVEN
+        executor = new SequencerExecutor(dataSource, 4);
+
+        // WHEN
+        Future<Object> rejected = callers.submit(() -> executor.execute(() -> {
+            throw new InsufficientFundsException(new Account(null), Money.of(10));
+        }));
+        Future<String> accepted = callers.submit(() -> executor.execute(() -> "done"));
+
+        // THEN
+        assertThat(accepted.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        Exception exception = assertThrows(Exception.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasCauseInstanceOf(InsufficientFundsException.class);
+        verify(dataSource, never()).rollback();
+    }
+
+    @Test
+    void shouldRetryOperationsOneByOneWhenCommitFails() throws Exception {
+        // GIVEN
+        executor = new SequencerExecutor(dataSource, 4);
+        doThrow(IllegalStateException.class).doNothing().when(dataSource).commit();
+
+        // WHEN
+        String result = executor.execute(() -> "retried");
+
+        // THEN
+        assertThat(result).isEqualTo("retried");
+        verify(dataSource).rollback();
+        verify(dataSource, times(2)).commit();
+        assertThat(executor.getMetrics()).containsEntry("batchFailures", 1L).containsEntry("operationsCommitted", 1L);
+    }
+
+    @Test
+    void shouldFailOnlyFaultyOperation() throws Exception {
+        // GIVEN
+        executor = new SequencerExecutor(dataSource, 4);
+
+        // WHEN
+        Future<Object> faulty = callers.submit(() -> executor.execute(() -> {
+            throw new IllegalStateException("broken");
+        }));
+        Future<String> healthy = callers.submit(() -> executor.execute(() -> "healthy"));
+
+        // THEN
+        assertThat(healthy.get(5, TimeUnit.SECONDS)).isEqualTo("healthy");
+        Exception exception = assertThrows(Exception.class, () -> faulty.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldRejectOperationAfterStop() throws Exception {
+        // GIVEN
+        executor = new SequencerExecutor(dataSource, 4);
+        executor.execute(() -> "first");
+
+        // WHEN
+        executor.stop();
+
+        // THEN
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> executor.execute(() -> "second"));
+        assertThat(exception).hasMessage("Sequencer is stopped");
+        verify(dataSource).commit();
+    }
+
+    @Test
+    void shouldRejectRingSizeNotPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new SequencerExecutor(dataSource, 3));
+        executor = new SequencerExecutor(dataSource, 1);
+    }
+}
@@ -0,0 +1,112 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.db.ShardedDataSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures transfer throughput of random transfers between accounts partitioned into 1, 2, 4 and 8 shards, each
+ * written by its own sequencer. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class ShardScalingBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardScalingBenchmarkTest.class);
+
+    private static final int[] SHARDS = {1, 2, 4, 8};
+    private static final int CLIENTS = 16;
+    private static final int ACCOUNTS = 1024;
+    private static final int TRANSFERS_PER_CLIENT = Integer.getInteger("benchmark.transfers", 5_000);
+    private static final Money INITIAL_BALANCE = Money.of(1_000_000);
+
+    @Test
+    void shouldReportThroughputPerShardCount() throws Exception {
+        for (int shards : SHARDS) {
+            List<DataSource> dataSources = new ArrayList<>();
+            List<WriteExecutor> executors = new ArrayList<>();
+            List<SequencerExecutor> sequencers = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                LedgerDataSource ledger = new LedgerDataSource(true);
+                SequencerExecutor sequencer = new SequencerExecutor(ledger, 1024);
+                dataSources.add(ledger);
+                executors.add(sequencer);
+                sequencers.add(sequencer);
+            }
+            ShardedDataSource dataSource = new ShardedDataSource(dataSources);
+            AccountService accountService = new AccountService(dataSource);
+            ShardedTransferService transferService = new ShardedTransferService(dataSource, accountService,
+                    new ShardedWriteExecutor(dataSource, executors));
+            try {
+                List<UUID> accounts = createAccounts(accountService, transferService);
+                double throughput = measure(transferService, accounts);
+                LOGGER.info("{} shards, {} clients: {} transfers/s, {}", shards, CLIENTS,
+                        String.format("%.0f", throughput), transferService.getMetrics());
+                assertMoneyConserved(accountService, accounts);
+            } finally {
+                for (SequencerExecutor sequencer : sequencers) {
+                    sequencer.stop();
+                }
+            }
+        }
+    }
+
+    private double measure(TransferService service, List<UUID> accounts) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < CLIENTS; i++) {
+                int client = i;
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < TRANSFERS_PER_CLIENT; n++) {
+                        UUID from = accounts.get((client * 31 + n * 7) % ACCOUNTS);
+                        UUID to = accounts.get((client * 17 + n * 13 + 1) % ACCOUNTS);
+                        if (!from.equals(to)) {
+                            service.transfer(from, to, Money.of(1));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return CLIENTS * (double) TRANSFERS_PER_CLIENT * 1_000_000_000L / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<UUID> createAccounts(AccountService accountService, TransferService transferService) throws Exception {
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accountService.createAccount("Benchmark " + i);
+            transferService.deposit(account.getId(), INITIAL_BALANCE);
+            accounts.add(account.getId());
+        }
+        return accounts;
+    }
+
+    private void assertMoneyConserved(AccountService accountService, List<UUID> accounts) throws Exception {
+        Money total = Money.ZERO;
+        for (UUID id : accounts) {
+            total = total.plus(accountService.getAccount(id).getBalance());
+        }
+        assertThat(total).isEqualTo(Money.ofMinorUnits(INITIAL_BALANCE.getMinorUnits() * ACCOUNTS));
+    }
+}
@@ -0,0 +1,200 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.db.ShardedDataSource;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+class ShardedTransferServiceTest {
+    private final LedgerDataSource first = new LedgerDataSource(true);
+    private final LedgerDataSource second = spy(new LedgerDataSource(true));
+
+    private ShardedDataSource dataSource;
+    private ShardedTransferService transferService;
+    private Account source;
+    private Account sameShard;
+    private Account otherShard;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new ShardedDataSource(Arrays.asList(first, second));
+        List<WriteExecutor> executors = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            executors.add(new LockingWriteExecutor(dataSource.getShard(i), new AccountLocks()));
+        }
+        AccountService accountService = new AccountService(dataSource);
+        transferService = new ShardedTransferService(dataSource, accountService,
+                new ShardedWriteExecutor(dataSource, executors));
+        source = createAccount(0, Money.of(100));
+        sameShard = createAccount(0, Money.ZERO);
+        otherShard = createAccount(1, Money.ZERO);
+    }
+
+    @Test
+    void shouldTransferWithinShard() throws Exception {
+        // WHEN
+        transferService.transfer(source.getId(), sameShard.getId(), Money.of(10));
+
+        // THEN
+        assertThat(balanceOf(source)).isEqualTo(Money.of(90));
+        assertThat(balanceOf(sameShard)).isEqualTo(Money.of(10));
+        assertThat(transferService.getMetrics()).containsEntry("sameShardTransfers", 1L)
+                .containsEntry("crossShardTransfers", 0L);
+    }
+
+    @Test
+    void shouldTransferBetweenShards() throws Exception {
+        // WHEN
+        Transfer transfer = transferService.transfer(source.getId(), otherShard.getId(), Money.of(10));
+
+        // THEN
+        assertThat(balanceOf(source)).isEqualTo(Money.of(90));
+        assertThat(balanceOf(otherShard)).isEqualTo(Money.of(10));
+        assertThat(transfer.getFromBalanceAfter()).isEqualTo(Money.of(90));
+        assertThat(transfer.getToBalanceAfter()).isEqualTo(Money.of(10));
+        assertThat(transferService.getHistory(source.getId())).containsExactly(transfer.withBalances(Money.of(90), null));
+        assertThat(transferService.getHistory(otherShard.getId())).containsExactly(transfer.withBalances(null, Money.of(10)));
+        assertThat(dataSource.getTransfer(transfer.getId())).contains(transfer);
+        assertThat(transferService.getMetrics()).containsEntry("crossShardTransfers", 1L);
+    }
+
+    @Test
+    void shouldNotReserveWithoutFunds() {
+        // WHEN + THEN
+        assertThrows(InsufficientFundsException.class,
+                () -> transferService.transfer(source.getId(), otherShard.getId(), Money.of(1000)));
+        assertThat(balanceOf(source)).isEqualTo(Money.of(100));
+        assertThat(balanceOf(otherShard)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldRejectMissingTargetBeforeReserving() {
+        // GIVEN
+        UUID missing = idOnShard(1);
+
+        // WHEN + THEN
+        assertThrows(AccountNotFoundException.class,
+                () -> transferService.transfer(source.getId(), missing, Money.of(1)));
+        assertThat(balanceOf(source)).isEqualTo(Money.of(100));
+    }
+
+    @Test
+    void shouldCancelReservationWhenTargetShardFails() throws Exception {
+        // GIVEN
+        doThrow(new IllegalStateException("FAIL")).when(second).commit();
+
+        // WHEN
+        assertThrows(TransferException.class,
+                () -> transferService.transfer(source.getId(), otherShard.getId(), Money.of(10)));
+
+        // THEN
+        assertThat(balanceOf(source)).isEqualTo(Money.of(100));
+        List<Transfer> history = transferService.getHistory(source.getId());
+        assertThat(history).hasSize(2);
+        assertThat(history.get(1).getFrom()).isEqualTo(source.getId());
+        assertThat(history.get(1).getTo()).isEqualTo(source.getId());
+        assertThat(history.get(1).getAmount()).isEqualTo(Money.of(10));
+        assertThat(history.get(1).getToBalanceAfter()).isEqualTo(Money.of(100));
+        assertThat(dataSource.getReservations()).isEmpty();
+        assertThat(transferService.getMetrics()).containsEntry("cancelledReservations", 1L)
+                .containsEntry("inFlight", Money.ZERO.toBigDecimal());
+    }
+
+    @Test
+    void shouldKeepReservationWhenTargetOutcomeIsUnknown() {
+        // GIVEN
+        doThrow(new CommitOutcomeUnknownException("FAIL", null)).when(second).commit();
+
+        // WHEN
+        assertThrows(TransferException.class,
+                () -> transferService.transfer(source.getId(), otherShard.getId(), Money.of(10)));
+
+        // THEN
+        assertThat(balanceOf(source)).isEqualTo(Money.of(90));
+        assertThat(balanceOf(otherShard)).isEqualTo(Money.ZERO);
+        assertThat(first.getReservations()).hasSize(1);
+        assertThat(transferService.getMetrics()).containsEntry("cancelledReservations", 0L)
+                .containsEntry("inFlight", Money.of(10).toBigDecimal());
+    }
+
+    @Test
+    void shouldCompleteReservationsOnRecovery() throws Exception {
+        // GIVEN
+        doThrow(new CommitOutcomeUnknownException("FAIL", null)).when(second).commit();
+        assertThrows(TransferException.class,
+                () -> transferService.transfer(source.getId(), otherShard.getId(), Money.of(10)));
+        doCallRealMethod().when(second).commit();
+
+        // WHEN
+        int recovered = transferService.recover();
+
+        // THEN
+        assertThat(recovered).isEqualTo(1);
+        assertThat(balanceOf(source)).isEqualTo(Money.of(90));
+        assertThat(balanceOf(otherShard)).isEqualTo(Money.of(10));
+        assertThat(dataSource.getReservations()).isEmpty();
+        assertThat(transferService.getMetrics()).containsEntry("inFlight", Money.ZERO.toBigDecimal());
+    }
+
+    @Test
+    void shouldNotCompleteTransferTwiceOnRecovery() throws Exception {
+        // GIVEN
+        Transfer transfer = transferService.transfer(source.getId(), otherShard.getId(), Money.of(10));
+        // as if the reservation was not released before a restart
+        first.addReservation(transfer.withBalances(Money.of(90), null));
+        first.commit();
+
+        // WHEN
+        transferService.recover();
+
+        // THEN
+        assertThat(balanceOf(otherShard)).isEqualTo(Money.of(10));
+        assertThat(transferService.getHistory(otherShard.getId())).hasSize(1);
+        assertThat(dataSource.getReservations()).isEmpty();
+    }
+
+    @Test
+    void shouldRejectBatchSpanningShards() {
+        // GIVEN
+        List<Transfer> batch = Arrays.asList(new Transfer(source.getId(), sameShard.getId(), Money.of(1)),
+                new Transfer(source.getId(), otherShard.getId(), Money.of(1)));
+
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> transferService.transferBatch(batch, false));
+        assertThat(balanceOf(source)).isEqualTo(Money.of(100));
+    }
+
+    private Account createAccount(int shard, Money balance) {
+        Account account = new Account(idOnShard(shard), "Shard " + shard, balance);
+        dataSource.createAccount(account);
+        dataSource.commit();
+        return account;
+    }
+
+    private UUID idOnShard(int shard) {
+        UUID id;
+        do {
+            id = UUID.randomUUID();
+        } while (dataSource.shardOf(id) != shard);
+        return id;
+    }
+
+    private Money balanceOf(Account account) {
+        DataSource shard = dataSource.getShard(dataSource.shardOf(account.getId()));
+        return shard.getAccount(account.getId()).get().getBalance();
+    }
+}
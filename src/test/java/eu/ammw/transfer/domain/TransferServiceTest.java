@@ -3,17 +3,27 @@ package eu.ammw.transfer.domain;
 import eu.ammw.transfer.db.DataSource;
 import eu.ammw.transfer.db.InMemoryDatabaseService;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.BatchItem;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
+import eu.ammw.transfer.model.Statement;
 import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -29,16 +39,23 @@ class TransferServiceTest {
     @Mock
     private AccountService accountService;
 
-    @InjectMocks
+    @Spy
+    private AccountLocks accountLocks = new AccountLocks(16);
+
     private TransferService transferService;
 
+    @BeforeEach
+    void setUp() {
+        transferService = new TransferService(dataSource, accountService, new LockingWriteExecutor(dataSource, accountLocks));
+    }
+
     @Test
     void shouldTransfer() throws Exception {
         // GIVEN
         UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = BigDecimal.ONE;
-        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", BigDecimal.TEN));
-        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", BigDecimal.ZERO));
+        Money amount = Money.of(1);
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
 
         // WHEN
         Transfer result = transferService.transfer(TEST_UUID, anotherId, amount);
@@ -48,18 +65,22 @@ class TransferServiceTest {
         assertThat(result)
                 .extracting(Transfer::getFrom, Transfer::getTo, Transfer::getAmount)
                 .containsExactly(TEST_UUID, anotherId, amount);
-        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", BigDecimal.valueOf(9)));
-        verify(dataSource).updateAccount(new Account(anotherId, "John Doe", BigDecimal.ONE));
+        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", Money.of(9)));
+        verify(dataSource).updateAccount(new Account(anotherId, "John Doe", Money.of(1)));
+        assertThat(result)
+                .extracting(Transfer::getFromBalanceAfter, Transfer::getToBalanceAfter)
+                .containsExactly(Money.of(9), Money.of(1));
         verify(dataSource).createTransfer(result);
         verify(dataSource).commit();
         verify(dataSource, never()).rollback();
+        verify(accountLocks).lock(TEST_UUID, anotherId);
     }
 
     @Test
     void shouldTransferThrowWhenAmountZero() throws Exception {
         // GIVEN
         UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = BigDecimal.ZERO;
+        Money amount = Money.ZERO;
 
         // WHEN + THEN
         assertThrows(NegativeTransferException.class, () -> transferService.transfer(TEST_UUID, anotherId, amount));
@@ -69,29 +90,19 @@ class TransferServiceTest {
     void shouldTransferThrowWhenAmountNegative() throws Exception {
         // GIVEN
         UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = BigDecimal.ONE.negate();
+        Money amount = Money.of(-1);
 
         // WHEN + THEN
         assertThrows(NegativeTransferException.class, () -> transferService.transfer(TEST_UUID, anotherId, amount));
     }
 
-    @Test
-    void shouldTransferThrowWhenAmountInvalid() throws Exception {
-        // GIVEN
-        UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = new BigDecimal("0.001");
-
-        // WHEN + THEN
-        assertThrows(NumberFormatException.class, () -> transferService.transfer(TEST_UUID, anotherId, amount));
-    }
-
     @Test
     void shouldTransferThrowWhenFundsInsufficient() throws Exception {
         // GIVEN
         UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = BigDecimal.valueOf(10.01);
-        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", BigDecimal.TEN));
-        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", BigDecimal.ZERO));
+        Money amount = Money.ofMinorUnits(1001);
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
 
         // WHEN + THEN
         assertThrows(InsufficientFundsException.class, () -> transferService.transfer(TEST_UUID, anotherId, amount));
@@ -101,7 +112,7 @@ class TransferServiceTest {
     void shouldTransferThrowWhenNoAccountFound() throws Exception {
         // GIVEN
         UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = BigDecimal.ONE;
+        Money amount = Money.of(1);
         doThrow(AccountNotFoundException.class).when(accountService).getAccount(anotherId);
 
         // WHEN + THEN
@@ -113,9 +124,9 @@ class TransferServiceTest {
     void shouldTransferRollBackOnFailure() throws Exception {
         // GIVEN
         UUID anotherId = UUID.randomUUID();
-        BigDecimal amount = BigDecimal.ONE;
-        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", BigDecimal.TEN));
-        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", BigDecimal.ZERO));
+        Money amount = Money.of(1);
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
         doThrow(InMemoryDatabaseService.DatabaseServiceException.class).when(dataSource).updateAccount(any());
 
         // WHEN
@@ -127,6 +138,115 @@ class TransferServiceTest {
         verify(dataSource, never()).commit();
     }
 
+    @Test
+    void shouldRejectTransferToSameAccountBeforeWriting() {
+        // WHEN + THEN
+        assertThrows(InvalidTransferException.class,
+                () -> transferService.transfer(TEST_UUID, TEST_UUID, Money.of(1)));
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void shouldTransferBatchWithSingleCommit() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
+        List<Transfer> transfers = Arrays.asList(
+                new Transfer(null, TEST_UUID, anotherId, Money.of(1)),
+                new Transfer(null, anotherId, TEST_UUID, Money.of(2)),
+                new Transfer(null, TEST_UUID, anotherId, Money.of(9)));
+
+        // WHEN
+        List<BatchResult> results = transferService.transferBatch(transfers, false);
+
+        // THEN
+        assertThat(results).extracting(BatchResult::getStatus).containsExactly(
+                BatchResult.Status.COMPLETED, BatchResult.Status.FAILED, BatchResult.Status.COMPLETED);
+        assertThat(results.get(1).getError()).contains("insufficient funds");
+        verify(dataSource).createTransfer(results.get(0).getTransfer());
+        verify(dataSource).createTransfer(results.get(2).getTransfer());
+        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", Money.ZERO));
+        verify(dataSource).updateAccount(new Account(anotherId, "John Doe", Money.of(10)));
+        verify(dataSource).commit();
+        verify(dataSource, never()).rollback();
+        verify(accountService, times(1)).getAccount(TEST_UUID);
+    }
+
+    @Test
+    void shouldNotApplyBatchWhenAllOrNothingFails() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
+        List<Transfer> transfers = Arrays.asList(
+                new Transfer(null, TEST_UUID, anotherId, Money.of(1)),
+                new Transfer(null, TEST_UUID, TEST_UUID, Money.of(1)),
+                new Transfer(null, TEST_UUID, anotherId, Money.of(-1)));
+
+        // WHEN
+        List<BatchResult> results = transferService.transferBatch(transfers, true);
+
+        // THEN
+        assertThat(results).extracting(BatchResult::getStatus).containsExactly(
+                BatchResult.Status.NOT_APPLIED, BatchResult.Status.FAILED, BatchResult.Status.FAILED);
+        verify(dataSource, never()).createTransfer(any());
+        verify(dataSource, never()).updateAccount(any());
+    }
+
+    @Test
+    void shouldFailOnlyBatchItemWithInvalidAmount() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
+        List<BatchItem> items = Arrays.asList(
+                new BatchItem(TEST_UUID, anotherId, new BigDecimal("1.234")),
+                new BatchItem(TEST_UUID, anotherId, new BigDecimal("1.50")));
+
+        // WHEN
+        List<BatchResult> results = transferService.transferItems(items, false);
+
+        // THEN
+        assertThat(results.get(0)).isEqualTo(BatchResult.failed(new Transfer(null, TEST_UUID, anotherId, null),
+                "Invalid amount of money: 1.234"));
+        assertThat(results.get(1).getStatus()).isEqualTo(BatchResult.Status.COMPLETED);
+        verify(dataSource).updateAccount(new Account(anotherId, "John Doe", Money.ofMinorUnits(150)));
+        verify(dataSource).commit();
+    }
+
+    @Test
+    void shouldTransferBatchRollBackOnFailure() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "John Doe", Money.ZERO));
+        doThrow(InMemoryDatabaseService.DatabaseServiceException.class).when(dataSource).createTransfer(any());
+        List<Transfer> transfers = Arrays.asList(new Transfer(null, TEST_UUID, anotherId, Money.of(1)));
+
+        // WHEN
+        assertThrows(TransferException.class, () -> transferService.transferBatch(transfers, false));
+
+        // THEN
+        verify(dataSource).rollback();
+        verify(dataSource, never()).commit();
+    }
+
+    @Test
+    void shouldReportMissingAccountInBatch() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        when(accountService.getAccount(anotherId)).thenThrow(new AccountNotFoundException(anotherId));
+        List<Transfer> transfers = Arrays.asList(new Transfer(null, TEST_UUID, anotherId, Money.of(1)));
+
+        // WHEN
+        List<BatchResult> results = transferService.transferBatch(transfers, false);
+
+        // THEN
+        assertThat(results).containsExactly(BatchResult.failed(transfers.get(0), "No account with ID " + anotherId));
+        verify(dataSource).commit();
+    }
+
     @Test
     void shouldGetHistory() throws Exception {
         // GIVEN
@@ -141,6 +261,55 @@ class TransferServiceTest {
         assertThat(result).isSameAs(expected);
     }
 
+    @Test
+    void shouldStreamHistory() throws Exception {
+        // GIVEN
+        Consumer<Transfer> consumer = transfer -> {
+        };
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+
+        // WHEN
+        transferService.forEachTransfer(TEST_UUID, consumer);
+
+        // THEN
+        verify(dataSource).forEachTransfer(TEST_UUID, consumer);
+    }
+
+    @Test
+    void shouldStreamHistoryThrowWhenAccountNotFound() {
+        // GIVEN
+        when(accountService.accountExists(TEST_UUID)).thenReturn(false);
+
+        // WHEN + THEN
+        assertThrows(AccountNotFoundException.class, () -> transferService.forEachTransfer(TEST_UUID, transfer -> {
+        }));
+        verify(dataSource, never()).forEachTransfer(any(), any());
+    }
+
+    @Test
+    void shouldGetHistoryPage() throws Exception {
+        // GIVEN
+        UUID after = UUID.randomUUID();
+        List<Transfer> transfers = Arrays.asList(new Transfer(TEST_UUID, TEST_UUID, Money.of(1)));
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getHistory(TEST_UUID, after, 11)).thenReturn(transfers);
+
+        // WHEN
+        Page<Transfer> result = transferService.getHistory(TEST_UUID, after, 10);
+
+        // THEN
+        assertThat(result).isEqualTo(new Page<>(transfers, null));
+    }
+
+    @Test
+    void shouldGetHistoryPageThrowWhenAccountNotFound() {
+        // GIVEN
+        when(accountService.accountExists(TEST_UUID)).thenReturn(false);
+
+        // WHEN + THEN
+        assertThrows(AccountNotFoundException.class, () -> transferService.getHistory(TEST_UUID, null, 10));
+    }
+
     @Test
     void shouldGetHistoryThrowWhenAccountNotFound() {
         // GIVEN
@@ -153,69 +322,290 @@ class TransferServiceTest {
     @Test
     void shouldDeposit() throws Exception {
         // GIVEN
-        BigDecimal amount = BigDecimal.ONE;
-        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", BigDecimal.TEN));
+        Money amount = Money.of(1);
+        when(dataSource.credit(TEST_UUID, amount)).thenReturn(Optional.of(Money.of(11)));
 
         // WHEN
         transferService.deposit(TEST_UUID, amount);
 
         // THEN
-        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", BigDecimal.valueOf(11)));
+        verify(dataSource).createTransfer(argThat(transfer -> transfer.getAmount().equals(amount)
+                && Money.of(11).equals(transfer.getToBalanceAfter())));
+        verify(dataSource, never()).updateAccount(any());
+        verify(accountService, never()).getAccount(any());
         verify(dataSource).commit();
         verify(dataSource, never()).rollback();
     }
 
     @Test
     void shouldDepositThrowWhenAmountInvalid() {
-        assertThrows(NumberFormatException.class, () -> transferService.deposit(TEST_UUID, new BigDecimal("0.123")));
+        assertThrows(NumberFormatException.class, () -> transferService.deposit(TEST_UUID, Money.of(-1)));
     }
 
     @Test
-    void shouldDepositThrowWhenNoAccount() throws Exception {
+    void shouldDepositThrowWhenNoAccount() {
         // GIVEN
-        BigDecimal amount = BigDecimal.ONE;
-        when(accountService.getAccount(TEST_UUID)).thenThrow(AccountNotFoundException.class);
+        Money amount = Money.of(1);
+        when(dataSource.credit(TEST_UUID, amount)).thenReturn(Optional.empty());
 
         // WHEN + THEN
         assertThrows(AccountNotFoundException.class, () -> transferService.deposit(TEST_UUID, amount));
+        verify(dataSource, never()).createTransfer(any());
     }
 
     @Test
     void shouldWithdraw() throws Exception {
         // GIVEN
-        BigDecimal amount = BigDecimal.TEN;
-        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", BigDecimal.TEN));
+        Money amount = Money.of(10);
+        when(dataSource.debitIfSufficient(TEST_UUID, amount)).thenReturn(Optional.of(Money.ZERO));
 
         // WHEN
         transferService.withdraw(TEST_UUID, amount);
 
         // THEN
-        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", BigDecimal.ZERO));
+        verify(dataSource).createTransfer(argThat(transfer -> transfer.getAmount().equals(amount.negate())
+                && Money.ZERO.equals(transfer.getFromBalanceAfter())));
+        verify(dataSource, never()).updateAccount(any());
+        verify(accountService, never()).getAccount(any());
         verify(dataSource).commit();
         verify(dataSource, never()).rollback();
     }
 
+    @Test
+    void shouldDepositToSlotOfHotAccount() throws Exception {
+        // GIVEN
+        HotAccounts hotAccounts = new HotAccounts(Arrays.asList(TEST_UUID), 1);
+        transferService = new TransferService(dataSource, accountService,
+                new LockingWriteExecutor(dataSource, accountLocks), hotAccounts);
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+
+        // WHEN
+        transferService.deposit(TEST_UUID, Money.of(1));
+
+        // THEN
+        verify(accountLocks).lock(hotAccounts.lockKey(TEST_UUID, 0));
+        verify(dataSource).addToSubBalance(TEST_UUID, 0, Money.of(1));
+        verify(dataSource).createTransfer(argThat(transfer -> transfer.getAmount().equals(Money.of(1))
+                && transfer.getFromBalanceAfter() == null && transfer.getToBalanceAfter() == null));
+        verify(dataSource, never()).updateAccount(any());
+        verify(dataSource).commit();
+    }
+
+    @Test
+    void shouldWithdrawFromSlotOfHotAccount() throws Exception {
+        // GIVEN
+        HotAccounts hotAccounts = new HotAccounts(Arrays.asList(TEST_UUID), 1);
+        transferService = new TransferService(dataSource, accountService,
+                new LockingWriteExecutor(dataSource, accountLocks), hotAccounts);
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(dataSource.getSubBalance(TEST_UUID, 0)).thenReturn(Money.of(1));
+
+        // WHEN
+        transferService.withdraw(TEST_UUID, Money.of(1));
+
+        // THEN
+        verify(accountLocks).lock(hotAccounts.lockKey(TEST_UUID, 0));
+        verify(dataSource).addToSubBalance(TEST_UUID, 0, Money.of(-1));
+        verify(dataSource, never()).updateAccount(any());
+        verify(dataSource).commit();
+    }
+
+    @Test
+    void shouldRebalanceHotAccountWhenSlotHoldsTooLittle() throws Exception {
+        // GIVEN
+        HotAccounts hotAccounts = new HotAccounts(Arrays.asList(TEST_UUID), 4);
+        transferService = new TransferService(dataSource, accountService,
+                new LockingWriteExecutor(dataSource, accountLocks), hotAccounts);
+        when(accountService.getAccount(TEST_UUID))
+                .thenAnswer(invocation -> new Account(TEST_UUID, "Jane Doe", Money.ofMinorUnits(1001)));
+        when(dataSource.getSubBalance(eq(TEST_UUID), anyInt())).thenReturn(Money.ZERO);
+
+        // WHEN
+        transferService.withdraw(TEST_UUID, Money.of(1));
+
+        // THEN
+        verify(accountLocks).lock(hotAccounts.lockKeys(TEST_UUID));
+        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", Money.ofMinorUnits(1)));
+        for (int slot = 0; slot < 4; slot++) {
+            verify(dataSource).addToSubBalance(TEST_UUID, slot, Money.ofMinorUnits(225));
+        }
+        verify(dataSource).createTransfer(argThat(transfer -> Money.ofMinorUnits(901).equals(
+                transfer.getFromBalanceAfter())));
+        verify(dataSource, times(2)).commit();
+    }
+
+    @Test
+    void shouldWithdrawThrowWhenHotAccountHasNoFunds() throws Exception {
+        // GIVEN
+        transferService = new TransferService(dataSource, accountService,
+                new LockingWriteExecutor(dataSource, accountLocks), new HotAccounts(Arrays.asList(TEST_UUID), 4));
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(1)));
+        when(dataSource.getSubBalance(eq(TEST_UUID), anyInt())).thenReturn(Money.ZERO);
+
+        // WHEN + THEN
+        assertThrows(InsufficientFundsException.class, () -> transferService.withdraw(TEST_UUID, Money.of(10)));
+        verify(dataSource, never()).addToSubBalance(any(), anyInt(), any());
+    }
+
+    @Test
+    void shouldTransferToSlotOfHotAccount() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        HotAccounts hotAccounts = new HotAccounts(Arrays.asList(anotherId), 1);
+        transferService = new TransferService(dataSource, accountService,
+                new LockingWriteExecutor(dataSource, accountLocks), hotAccounts);
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(10)));
+        when(accountService.getAccount(anotherId)).thenReturn(new Account(anotherId, "Shop", Money.ZERO));
+
+        // WHEN
+        Transfer result = transferService.transfer(TEST_UUID, anotherId, Money.of(1));
+
+        // THEN
+        verify(accountLocks).lock(TEST_UUID, hotAccounts.lockKey(anotherId, 0));
+        verify(dataSource).updateAccount(new Account(TEST_UUID, "Jane Doe", Money.of(9)));
+        verify(dataSource).addToSubBalance(anotherId, 0, Money.of(1));
+        assertThat(result)
+                .extracting(Transfer::getFromBalanceAfter, Transfer::getToBalanceAfter)
+                .containsExactly(Money.of(9), null);
+        verify(dataSource).createTransfer(result);
+    }
+
     @Test
     void shouldWithdrawThrowWhenAmountInvalid() {
-        assertThrows(NumberFormatException.class, () -> transferService.withdraw(TEST_UUID, new BigDecimal("0.123")));
+        assertThrows(NumberFormatException.class, () -> transferService.withdraw(TEST_UUID, Money.of(-1)));
     }
 
     @Test
     void shouldWithdrawThrowWhenNoFunds() throws AccountNotFoundException {
         // GIVEN
-        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", BigDecimal.ONE));
+        when(dataSource.debitIfSufficient(TEST_UUID, Money.of(10))).thenReturn(Optional.empty());
+        when(accountService.getAccount(TEST_UUID)).thenReturn(new Account(TEST_UUID, "Jane Doe", Money.of(1)));
 
         // WHEN + THEN
-        assertThrows(InsufficientFundsException.class, () -> transferService.withdraw(TEST_UUID, BigDecimal.TEN));
+        assertThrows(InsufficientFundsException.class, () -> transferService.withdraw(TEST_UUID, Money.of(10)));
+        verify(dataSource, never()).createTransfer(any());
     }
 
     @Test
     void shouldWithdrawThrowWhenNoAccount() throws Exception {
         // GIVEN
-        BigDecimal amount = BigDecimal.ONE;
+        Money amount = Money.of(1);
         when(accountService.getAccount(TEST_UUID)).thenThrow(AccountNotFoundException.class);
 
         // WHEN + THEN
         assertThrows(AccountNotFoundException.class, () -> transferService.withdraw(TEST_UUID, amount));
     }
+
+    @Test
+    void shouldReadBalanceAfterTransferFromTransfer() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        Transfer transfer = new Transfer(anotherId, TEST_UUID, Money.of(1)).withBalances(Money.of(2), Money.of(3));
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getTransfer(transfer.getId())).thenReturn(Optional.of(transfer));
+
+        // WHEN
+        Money result = transferService.getBalanceAfter(TEST_UUID, transfer.getId());
+
+        // THEN
+        assertThat(result).isEqualTo(Money.of(3));
+        verify(dataSource, never()).forEachTransfer(any(), any());
+    }
+
+    @Test
+    void shouldRejectBalanceAfterTransferWithoutBalances() {
+        // GIVEN
+        Transfer transfer = new Transfer(TEST_UUID, UUID.randomUUID(), Money.of(3));
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getTransfer(transfer.getId())).thenReturn(Optional.of(transfer));
+
+        // WHEN
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> transferService.getBalanceAfter(TEST_UUID, transfer.getId()));
+
+        // THEN
+        assertThat(e.getMessage()).contains("was not recorded");
+        verify(dataSource, never()).forEachTransfer(any(), any());
+    }
+
+    @Test
+    void shouldNotFindTransferOfAnotherAccount() {
+        // GIVEN
+        Transfer transfer = new Transfer(UUID.randomUUID(), UUID.randomUUID(), Money.of(1));
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getTransfer(transfer.getId())).thenReturn(Optional.of(transfer));
+
+        // WHEN + THEN
+        assertThrows(TransferNotFoundException.class, () -> transferService.getTransfer(TEST_UUID, transfer.getId()));
+    }
+
+    @Test
+    void shouldBuildStatementFromBalanceBeforePage() throws Exception {
+        // GIVEN
+        UUID anotherId = UUID.randomUUID();
+        Transfer previous = new Transfer(TEST_UUID, TEST_UUID, Money.of(10)).withBalances(Money.of(10), Money.of(10));
+        Transfer withdrawal = new Transfer(TEST_UUID, TEST_UUID, Money.of(-2));
+        Transfer incoming = new Transfer(anotherId, TEST_UUID, Money.of(5));
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getTransfer(previous.getId())).thenReturn(Optional.of(previous));
+        when(dataSource.getHistory(TEST_UUID, previous.getId(), 3)).thenReturn(Arrays.asList(withdrawal, incoming));
+
+        // WHEN
+        Statement result = transferService.getStatement(TEST_UUID, previous.getId(), 2);
+
+        // THEN
+        assertThat(result.getOpeningBalance()).isEqualTo(Money.of(10));
+        assertThat(result.getItems()).containsExactly(withdrawal, incoming);
+        assertThat(result.getClosingBalance()).isEqualTo(Money.of(13));
+        assertThat(result.getNext()).isNull();
+    }
+
+    @Test
+    void shouldGetBucketsFromStartOfFirstBucket() throws Exception {
+        // GIVEN
+        Instant from = Instant.parse("2020-01-31T09:15:00Z");
+        Instant to = Instant.parse("2020-02-02T00:00:00Z");
+        List<Bucket> expected = Arrays.asList(new Bucket(Instant.parse("2020-01-31T00:00:00Z"), 1, Money.of(1),
+                Money.ZERO));
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getBuckets(TEST_UUID, Bucket.Resolution.DAY, Instant.parse("2020-01-31T00:00:00Z"), to))
+                .thenReturn(expected);
+
+        // WHEN
+        List<Bucket> result = transferService.getBuckets(TEST_UUID, Bucket.Resolution.DAY, from, to);
+
+        // THEN
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldRejectBucketRangeTooLong() {
+        // GIVEN
+        Instant from = Instant.parse("2020-01-01T00:00:00Z");
+
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> transferService.getBuckets(TEST_UUID,
+                Bucket.Resolution.HOUR, from, from.plusSeconds(3600L * TransferService.MAX_BUCKETS + 1)));
+        assertThrows(IllegalArgumentException.class, () -> transferService.getBuckets(TEST_UUID,
+                Bucket.Resolution.HOUR, from, from));
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void shouldGetHistoryWithinTimeRange() throws Exception {
+        // GIVEN
+        Instant from = Instant.parse("2020-01-31T00:00:00Z");
+        Instant to = Instant.parse("2020-02-01T00:00:00Z");
+        Transfer first = new Transfer(UUID.randomUUID(), TEST_UUID, TEST_UUID, Money.of(1), from, null, null);
+        Transfer second = new Transfer(UUID.randomUUID(), TEST_UUID, TEST_UUID, Money.of(1), from, null, null);
+        when(accountService.accountExists(TEST_UUID)).thenReturn(true);
+        when(dataSource.getHistory(TEST_UUID, from, to, null, 2)).thenReturn(Arrays.asList(first, second));
+
+        // WHEN
+        Page<Transfer> result = transferService.getHistory(TEST_UUID, from, to, null, 1);
+
+        // THEN
+        assertThat(result.getItems()).containsExactly(first);
+        assertThat(result.getNext()).isEqualTo(Page.encode(first.getId()));
+    }
 }
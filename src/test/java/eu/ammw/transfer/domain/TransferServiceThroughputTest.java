@@ -0,0 +1,163 @@
+package eu.ammw.transfer.domain;
+
+import eu.ammw.transfer.db.ConnectionPool;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.db.InMemoryDatabase;
+import eu.ammw.transfer.db.InMemoryDatabaseService;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures transfer throughput for growing number of threads, with each thread working on its own pair of accounts
+ * (disjoint) or all threads competing for the same pair (overlapping), and compares the locking and sequencer
+ * write modes with many clients on a few hot accounts. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class TransferServiceThroughputTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferServiceThroughputTest.class);
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int[] MANY_CLIENTS = {64, 128};
+    private static final int HOT_ACCOUNTS = 8;
+    private static final int TRANSFERS_PER_THREAD = Integer.getInteger("benchmark.transfers", 2_000);
+    private static final Money INITIAL_BALANCE = Money.of(1_000_000);
+
+    private static DataSource dataSource;
+    private static AccountService accountService;
+    private static TransferService transferService;
+
+    @BeforeAll
+    static void setUp() {
+        InMemoryDatabase.create();
+        dataSource = new InMemoryDatabaseService(new ConnectionPool(InMemoryDatabase::getConnection, 16));
+        accountService = new AccountService(dataSource);
+        transferService = new TransferService(dataSource, accountService);
+    }
+
+    @Test
+    void shouldScaleOnDisjointAccounts() throws Exception {
+        for (int threads : THREADS) {
+            List<UUID> accounts = createAccounts(2 * threads);
+            double throughput = measure(threads, i -> accounts.get(2 * i), i -> accounts.get(2 * i + 1));
+            LOGGER.info("Disjoint accounts, {} threads: {} transfers/s", threads, String.format("%.0f", throughput));
+            assertMoneyConserved(accounts);
+        }
+    }
+
+    @Test
+    void shouldSerializeOnOverlappingAccounts() throws Exception {
+        for (int threads : THREADS) {
+            List<UUID> accounts = createAccounts(2);
+            double throughput = measure(threads, i -> accounts.get(i % 2), i -> accounts.get((i + 1) % 2));
+            LOGGER.info("Overlapping accounts, {} threads: {} transfers/s", threads, String.format("%.0f", throughput));
+            assertMoneyConserved(accounts);
+        }
+    }
+
+    @Test
+    void shouldGroupCommitsOnDisjointAccounts() throws Exception {
+        GroupCommitExecutor executor = new GroupCommitExecutor(dataSource, 128, 1000);
+        TransferService groupCommitService = new TransferService(dataSource, accountService, executor);
+        try {
+            for (int threads : THREADS) {
+                List<UUID> accounts = createAccounts(2 * threads);
+                double throughput = measure(groupCommitService, threads, i -> accounts.get(2 * i), i -> accounts.get(2 * i + 1));
+                LOGGER.info("Group commit, disjoint accounts, {} threads: {} transfers/s, {}", threads,
+                        String.format("%.0f", throughput), executor.getMetrics());
+                assertMoneyConserved(accounts);
+            }
+        } finally {
+            executor.stop();
+        }
+    }
+
+    @Test
+    void shouldCompareLockingAndSequencerWithManyClients() throws Exception {
+        SequencerExecutor executor = new SequencerExecutor(dataSource, 1024);
+        TransferService sequencerService = new TransferService(dataSource, accountService, executor);
+        try {
+            for (int threads : MANY_CLIENTS) {
+                List<UUID> accounts = createAccounts(HOT_ACCOUNTS);
+                AccountPicker from = i -> accounts.get(i % HOT_ACCOUNTS);
+                AccountPicker to = i -> accounts.get((i + 1) % HOT_ACCOUNTS);
+                double locking = measure(transferService, threads, from, to);
+                double sequencer = measure(sequencerService, threads, from, to);
+                LOGGER.info("{} clients on {} hot accounts: locking {} transfers/s, sequencer {} transfers/s, {}",
+                        threads, HOT_ACCOUNTS, String.format("%.0f", locking), String.format("%.0f", sequencer),
+                        executor.getMetrics());
+                assertMoneyConserved(accounts);
+            }
+        } finally {
+            executor.stop();
+        }
+    }
+
+    private double measure(int threads, AccountPicker from, AccountPicker to) throws Exception {
+        return measure(transferService, threads, from, to);
+    }
+
+    private double measure(TransferService service, int threads, AccountPicker from, AccountPicker to) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                UUID source = from.pick(i);
+                UUID target = to.pick(i);
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < TRANSFERS_PER_THREAD; n++) {
+                        if (n % 2 == 0) {
+                            service.transfer(source, target, Money.of(1));
+                        } else {
+                            service.transfer(target, source, Money.of(1));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return threads * (double) TRANSFERS_PER_THREAD * 1_000_000_000L / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<UUID> createAccounts(int count) throws Exception {
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Account account = accountService.createAccount("Benchmark " + i);
+            transferService.deposit(account.getId(), INITIAL_BALANCE);
+            accounts.add(account.getId());
+        }
+        return accounts;
+    }
+
+    private void assertMoneyConserved(List<UUID> accounts) throws AccountNotFoundException {
+        Money total = Money.ZERO;
+        for (UUID id : accounts) {
+            total = total.plus(accountService.getAccount(id).getBalance());
+        }
+        assertThat(total).isEqualTo(Money.ofMinorUnits(INITIAL_BALANCE.getMinorUnits() * accounts.size()));
+    }
+
+    private interface AccountPicker {
+        UUID pick(int thread);
+    }
+}
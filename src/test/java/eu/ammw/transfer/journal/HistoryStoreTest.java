@@ -0,0 +1,94 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldSplitHistoryIntoChunks() throws IOException {
+        // GIVEN
+        HistoryStore history = new HistoryStore(directory, 2);
+        List<Transfer> transfers = transfers(5);
+
+        // WHEN
+        long count = append(history, 0, transfers);
+
+        // THEN
+        List<HistoryStore.Chunk> chunks = history.chunks(count);
+        assertThat(count).isEqualTo(5);
+        assertThat(chunks).extracting(HistoryStore.Chunk::getCount).containsExactly(2, 2, 1);
+        assertThat(read(chunks)).containsExactlyElementsOf(transfers);
+    }
+
+    @Test
+    void shouldAppendAfterCountAndDropRest() throws IOException {
+        // GIVEN
+        HistoryStore history = new HistoryStore(directory, 2);
+        List<Transfer> transfers = transfers(5);
+        append(history, 0, transfers);
+        List<Transfer> later = transfers(2);
+
+        // WHEN
+        long count = append(history, 3, later);
+
+        // THEN
+        List<Transfer> expected = new ArrayList<>(transfers.subList(0, 3));
+        expected.addAll(later);
+        assertThat(count).isEqualTo(5);
+        assertThat(read(history.chunks(count))).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldIgnoreTransfersPastCount() throws IOException {
+        // GIVEN
+        HistoryStore history = new HistoryStore(directory, 4);
+        List<Transfer> transfers = transfers(3);
+        append(history, 0, transfers);
+
+        // WHEN
+        List<HistoryStore.Chunk> chunks = history.chunks(2);
+
+        // THEN
+        assertThat(read(chunks)).containsExactlyElementsOf(transfers.subList(0, 2));
+        assertThrows(IOException.class, () -> history.chunks(4));
+    }
+
+    private static long append(HistoryStore history, long count, List<Transfer> transfers) throws IOException {
+        try (HistoryStore.Appender appender = history.append(count)) {
+            for (Transfer transfer : transfers) {
+                appender.transfer(transfer);
+            }
+            return appender.finish();
+        }
+    }
+
+    private static List<Transfer> read(List<HistoryStore.Chunk> chunks) throws IOException {
+        List<Transfer> transfers = new ArrayList<>();
+        for (HistoryStore.Chunk chunk : chunks) {
+            transfers.addAll(HistoryStore.read(chunk));
+        }
+        return transfers;
+    }
+
+    private static List<Transfer> transfers(int count) {
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            transfers.add(new Transfer(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinorUnits(i + 1)));
+        }
+        return transfers;
+    }
+}
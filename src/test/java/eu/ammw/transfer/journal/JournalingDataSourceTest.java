@@ -0,0 +1,288 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.db.CommitOutcomeUnknownException;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.GroupCommitExecutor;
+import eu.ammw.transfer.domain.TransferException;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.journal.WriteAheadLog.FsyncPolicy;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JournalingDataSourceTest {
+    private static final int SEGMENT_SIZE = 1 << 16;
+
+    @TempDir
+    Path directory;
+
+    private JournalingDataSource journal;
+    private WriteAheadLog log;
+    private volatile boolean failAppend;
+    private Account first;
+    private Account second;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journal = open(new LedgerDataSource());
+        first = new Account(UUID.randomUUID(), "first", Money.of(10));
+        second = new Account(UUID.randomUUID(), "Żaneta", Money.ZERO);
+        journal.createAccount(first);
+        journal.createAccount(second);
+        journal.commit();
+    }
+
+    @Test
+    void shouldRebuildCommittedState() throws IOException {
+        // GIVEN
+        Transfer transfer = new Transfer(first.getId(), second.getId(), Money.ofMinorUnits(250))
+                .withBalances(Money.ofMinorUnits(750), Money.ofMinorUnits(250));
+        journal.updateAccount(new Account(first.getId(), "first", Money.ofMinorUnits(750)));
+        journal.updateAccount(new Account(second.getId(), "Żaneta", Money.ofMinorUnits(250)));
+        journal.createTransfer(transfer);
+        journal.commit();
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        long count = open(recovered).recover();
+
+        // THEN
+        assertThat(count).isEqualTo(2);
+        assertThat(recovered.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.ofMinorUnits(750));
+        assertThat(recovered.getAccount(second.getId())).contains(new Account(second.getId(), "Żaneta",
+                Money.ofMinorUnits(250)));
+        assertThat(recovered.getHistory(second.getId())).containsExactly(transfer);
+    }
+
+    @Test
+    void shouldFillInBalancesOfTransfersJournaledWithoutThem() throws IOException {
+        // GIVEN
+        Account third = new Account(UUID.randomUUID(), "third", Money.of(6));
+        Transfer deposit = new Transfer(third.getId(), third.getId(), Money.of(10));
+        Transfer transfer = new Transfer(third.getId(), second.getId(), Money.of(4));
+        byte[] accounts = JournalCodec.encode(Arrays.asList(
+                third, new Account(second.getId(), second.getName(), Money.of(4))));
+        ByteBuffer record = ByteBuffer.allocate(accounts.length + 2 * (1 + JournalCodec.TRANSFER_WITHOUT_BALANCES_SIZE));
+        record.putInt(4).put(accounts, 4, accounts.length - 4);
+        for (Transfer legacy : Arrays.asList(deposit, transfer)) {
+            // the entry type of transfers written before balances were recorded
+            record.put((byte) 2);
+            for (UUID id : Arrays.asList(legacy.getId(), legacy.getFrom(), legacy.getTo())) {
+                record.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+            }
+            record.putLong(legacy.getAmount().getMinorUnits());
+        }
+        log.append(record.array());
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        open(recovered).recover();
+
+        // THEN
+        assertThat(recovered.getHistory(third.getId())).containsExactly(
+                new Transfer(deposit.getId(), third.getId(), third.getId(), Money.of(10), null, Money.of(10),
+                        Money.of(10)),
+                new Transfer(transfer.getId(), third.getId(), second.getId(), Money.of(4), null, Money.of(6),
+                        Money.of(4)));
+    }
+
+    @Test
+    void shouldReplaySubBalanceChanges() throws IOException {
+        // GIVEN
+        journal.addToSubBalance(first.getId(), 2, Money.of(3));
+        journal.commit();
+        journal.updateAccount(new Account(first.getId(), "first", Money.of(20)));
+        journal.addToSubBalance(first.getId(), 1, Money.of(1));
+        journal.commit();
+        journal.addToSubBalance(first.getId(), 1, Money.of(-2));
+        journal.commit();
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        open(recovered).recover();
+
+        // THEN
+        assertThat(recovered.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(19));
+        assertThat(recovered.getSubBalance(first.getId(), 1)).isEqualTo(Money.of(-1));
+        assertThat(recovered.getSubBalance(first.getId(), 2)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldReplayCreditsAndDebits() throws IOException {
+        // GIVEN
+        journal.credit(first.getId(), Money.of(5));
+        journal.debitIfSufficient(second.getId(), Money.of(1));
+        journal.commit();
+        journal.debitIfSufficient(first.getId(), Money.of(12));
+        journal.commit();
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        long count = open(recovered).recover();
+
+        // THEN
+        assertThat(count).isEqualTo(3);
+        assertThat(recovered.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(3));
+        assertThat(recovered.getAccount(second.getId()).get().getBalance()).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void shouldReplayReservations() throws IOException {
+        // GIVEN
+        Transfer kept = new Transfer(first.getId(), UUID.randomUUID(), Money.of(1)).withBalances(Money.of(9), null);
+        Transfer removed = new Transfer(first.getId(), UUID.randomUUID(), Money.of(2));
+        journal.addReservation(kept);
+        journal.addReservation(removed);
+        journal.commit();
+        journal.removeReservation(removed);
+        journal.commit();
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        open(recovered).recover();
+
+        // THEN
+        assertThat(recovered.getReservations()).containsExactly(kept);
+    }
+
+    @Test
+    void shouldNotJournalRolledBackWrites() throws IOException {
+        // GIVEN
+        journal.updateAccount(new Account(first.getId(), "first", Money.ZERO));
+        journal.rollback();
+        journal.commit();
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        long count = open(recovered).recover();
+
+        // THEN
+        assertThat(count).isEqualTo(1);
+        assertThat(recovered.getAccount(first.getId())).contains(first);
+    }
+
+    @Test
+    void shouldNotJournalTransactionRejectedByStorage() throws IOException {
+        // GIVEN
+        journal.createTransfer(new Transfer(first.getId(), UUID.randomUUID(), Money.of(1)));
+
+        // WHEN
+        assertThrows(LedgerDataSource.LedgerException.class, () -> journal.commit());
+        journal.credit(first.getId(), Money.of(1));
+        journal.commit();
+        journal.close();
+
+        // THEN
+        assertThat(journal.isStopped()).isFalse();
+        LedgerDataSource recovered = new LedgerDataSource();
+        assertThat(open(recovered).recover()).isEqualTo(2);
+        assertThat(recovered.getHistory(first.getId())).isEmpty();
+        assertThat(recovered.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(11));
+    }
+
+    @Test
+    void shouldStopAcceptingWritesWhenStorageFailsAfterJournaling() {
+        // GIVEN
+        LedgerDataSource ledger = new LedgerDataSource() {
+            @Override
+            public void commit(Runnable beforeCommit) {
+                super.commit(() -> {
+                    beforeCommit.run();
+                    throw new IllegalStateException("storage failed");
+                });
+            }
+        };
+        JournalingDataSource failing = new JournalingDataSource(ledger, log);
+        failing.createAccount(new Account(UUID.randomUUID(), "third", Money.ZERO));
+
+        // WHEN
+        assertThrows(CommitOutcomeUnknownException.class, failing::commit);
+        failing.createAccount(new Account(UUID.randomUUID(), "fourth", Money.ZERO));
+        assertThrows(IllegalStateException.class, failing::commit);
+
+        // THEN
+        assertThat(failing.isStopped()).isTrue();
+        assertThat(failing.getMetrics()).containsEntry("stopped", 1);
+        assertThat(ledger.getAllAccounts()).isEmpty();
+    }
+
+    @Test
+    void shouldNotRetryGroupWhoseJournalingFailed() throws Exception {
+        // GIVEN
+        failAppend = true;
+        GroupCommitExecutor executor = new GroupCommitExecutor(journal, 2, 1_000_000);
+        TransferService transferService = new TransferService(journal, new AccountService(journal), executor);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+
+        // WHEN
+        List<Future<Transfer>> transfers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                transfers.add(callers.submit(() -> transferService.transfer(first.getId(), second.getId(),
+                        Money.of(1))));
+            }
+            for (Future<Transfer> transfer : transfers) {
+                ExecutionException exception = assertThrows(ExecutionException.class,
+                        () -> transfer.get(5, TimeUnit.SECONDS));
+                assertThat(exception.getCause()).hasCauseInstanceOf(CommitOutcomeUnknownException.class);
+            }
+            TransferException refused = assertThrows(TransferException.class,
+                    () -> transferService.transfer(first.getId(), second.getId(), Money.of(1)));
+            assertThat(refused).hasCauseInstanceOf(IllegalStateException.class);
+        } finally {
+            callers.shutdownNow();
+            executor.stop();
+        }
+
+        // THEN
+        assertThat(journal.getAccount(first.getId()).get().getBalance()).isEqualTo(Money.of(10));
+        assertThat(journal.getAccount(second.getId()).get().getBalance()).isEqualTo(Money.ZERO);
+        assertThat(journal.getHistory(first.getId())).isEmpty();
+        assertThat(executor.getMetrics()).containsEntry("groupsCommitted", 0L).containsEntry("operationsCommitted", 0L);
+    }
+
+    @Test
+    void shouldReportAppendedTransactions() {
+        // WHEN + THEN
+        assertThat(journal.getMetrics()).containsEntry("appended", 1L).containsEntry("segments", 1);
+    }
+
+    private JournalingDataSource open(LedgerDataSource ledger) throws IOException {
+        log = new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0) {
+            @Override
+            public synchronized long append(byte[] payload) throws IOException {
+                if (failAppend) {
+                    throw new IOException("No space left on device");
+                }
+                return super.append(payload);
+            }
+        };
+        return new JournalingDataSource(ledger, log);
+    }
+}
@@ -0,0 +1,157 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.journal.WriteAheadLog.FsyncPolicy;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures how long it takes to rebuild the in-memory ledger from a log of transfers, from a snapshot of accounts and
+ * from a snapshot carrying a long history. The sizes are set with {@code -Dbenchmark.walEntries},
+ * {@code -Dbenchmark.snapshotAccounts} and {@code -Dbenchmark.snapshotTransfers}, e.g.
+ * {@code mvn test -Pbenchmark -Dbenchmark.walEntries=10000000}.
+ */
+@Tag("benchmark")
+class RecoveryBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecoveryBenchmarkTest.class);
+
+    private static final int ACCOUNTS = 1_000;
+    private static final int ENTRIES = Integer.getInteger("benchmark.walEntries", 1_000_000);
+    private static final int SNAPSHOT_ACCOUNTS = Integer.getInteger("benchmark.snapshotAccounts", 1_000_000);
+    private static final int SNAPSHOT_TRANSFERS = Integer.getInteger("benchmark.snapshotTransfers", 1_000_000);
+    private static final int SEGMENT_SIZE = 64 << 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldMeasureRecoveryTime() throws Exception {
+        List<Account> accounts = writeLog();
+
+        long start = System.nanoTime();
+        LedgerDataSource ledger = new LedgerDataSource();
+        try (JournalingDataSource journal = open(ledger)) {
+            long recovered = journal.recover();
+            long elapsed = System.nanoTime() - start;
+            LOGGER.info("Recovered {} entries in {} ms, {} entries/s", recovered, elapsed / 1_000_000,
+                    String.format("%.0f", recovered * 1_000_000_000.0 / elapsed));
+            assertThat(recovered).isEqualTo(ENTRIES + 1L);
+        }
+        for (Account account : accounts) {
+            assertThat(ledger.getAccount(account.getId())).contains(account);
+        }
+    }
+
+    @Test
+    void shouldMeasureSnapshotLoadTime() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, 8 << 20, FsyncPolicy.NEVER, 0);
+        try (JournalingDataSource journal = new JournalingDataSource(new LedgerDataSource(), log)) {
+            journal.recover();
+            for (int i = 0; i < SNAPSHOT_ACCOUNTS; i++) {
+                journal.createAccount(new Account(UUID.randomUUID(), "Benchmark " + i, Money.ofMinorUnits(i)));
+                journal.commit();
+            }
+            long start = System.nanoTime();
+            new SnapshotStore(directory, 1).snapshot(log);
+            LOGGER.info("Wrote snapshot in {} ms", (System.nanoTime() - start) / 1_000_000);
+        }
+
+        for (int threads : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+            LedgerDataSource ledger = new LedgerDataSource();
+            long start = System.nanoTime();
+            try (JournalingDataSource journal = new JournalingDataSource(ledger,
+                    new WriteAheadLog(directory, 8 << 20, FsyncPolicy.NEVER, 0), new SnapshotStore(directory, threads))) {
+                journal.recover();
+            }
+            LOGGER.info("Loaded {} accounts with {} threads in {} ms", SNAPSHOT_ACCOUNTS, threads,
+                    (System.nanoTime() - start) / 1_000_000);
+            long[] loaded = {0};
+            ledger.forEachAccount(account -> loaded[0]++);
+            assertThat(loaded[0]).isEqualTo(SNAPSHOT_ACCOUNTS);
+        }
+    }
+
+    @Test
+    void shouldMeasureSnapshotWithHistoryLoadTime() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, 8 << 20, FsyncPolicy.NEVER, 0);
+        List<Account> accounts;
+        try (JournalingDataSource journal = new JournalingDataSource(new LedgerDataSource(), log)) {
+            journal.recover();
+            accounts = logTransfers(journal, SNAPSHOT_TRANSFERS);
+            long start = System.nanoTime();
+            new SnapshotStore(directory, 1).snapshot(log);
+            LOGGER.info("Wrote snapshot with history in {} ms", (System.nanoTime() - start) / 1_000_000);
+        }
+
+        for (int threads : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+            LedgerDataSource ledger = new LedgerDataSource();
+            long start = System.nanoTime();
+            try (JournalingDataSource journal = new JournalingDataSource(ledger,
+                    new WriteAheadLog(directory, 8 << 20, FsyncPolicy.NEVER, 0), new SnapshotStore(directory, threads))) {
+                journal.recover();
+            }
+            LOGGER.info("Loaded {} accounts and {} transfers with {} threads in {} ms", ACCOUNTS, SNAPSHOT_TRANSFERS,
+                    threads, (System.nanoTime() - start) / 1_000_000);
+            long[] loaded = {0};
+            for (Account account : accounts) {
+                ledger.forEachTransfer(account.getId(), transfer -> loaded[0]++);
+            }
+            // every transfer is in the history of both accounts
+            assertThat(loaded[0]).isEqualTo(2L * SNAPSHOT_TRANSFERS);
+        }
+    }
+
+    private List<Account> writeLog() throws Exception {
+        try (JournalingDataSource journal = open(new LedgerDataSource())) {
+            return logTransfers(journal, ENTRIES);
+        }
+    }
+
+    private static List<Account> logTransfers(JournalingDataSource journal, int count) {
+        List<Account> accounts = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account(UUID.randomUUID(), "Benchmark " + i, Money.ZERO);
+            journal.createAccount(account);
+            accounts.add(account);
+        }
+        journal.commit();
+        long[] balances = new long[ACCOUNTS];
+        for (int n = 0; n < count; n++) {
+            int from = n % ACCOUNTS;
+            int to = (7 * n + 1) % ACCOUNTS;
+            balances[from] -= 1;
+            balances[to] += 1;
+            journal.updateAccount(withBalance(accounts.get(from), balances[from]));
+            journal.updateAccount(withBalance(accounts.get(to), balances[to]));
+            journal.createTransfer(new Transfer(accounts.get(from).getId(), accounts.get(to).getId(), Money.ofMinorUnits(1)));
+            journal.commit();
+        }
+        LOGGER.info("Logged {} entries in {} ms", count, (System.nanoTime() - start) / 1_000_000);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.set(i, withBalance(accounts.get(i), balances[i]));
+        }
+        return accounts;
+    }
+
+    private JournalingDataSource open(LedgerDataSource ledger) throws Exception {
+        return new JournalingDataSource(ledger, new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0));
+    }
+
+    private static Account withBalance(Account account, long minorUnits) {
+        return new Account(account.getId(), account.getName(), Money.ofMinorUnits(minorUnits));
+    }
+}
@@ -0,0 +1,69 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotFileTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldSplitAccountsIntoChunks() throws IOException {
+        // GIVEN
+        Path path = directory.resolve("test.snap");
+        Transfer reservation = new Transfer(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinorUnits(5));
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(path)) {
+            writer.reservation(reservation);
+            writer.subBalance(new UUID(0, 0), 3, Money.ofMinorUnits(7));
+            for (int i = 0; i <= SnapshotFile.CHUNK_SIZE; i++) {
+                writer.account(new Account(new UUID(0, i), "Account " + i, Money.ofMinorUnits(i)));
+            }
+            writer.finish(42, 1000);
+        }
+
+        // WHEN
+        SnapshotFile snapshot = SnapshotFile.open(path);
+
+        // THEN
+        List<Account> lastChunk = new ArrayList<>();
+        snapshot.forEachAccount(1, lastChunk::add);
+        List<Transfer> reservations = new ArrayList<>();
+        snapshot.forEachReservation(reservations::add);
+        List<String> subBalances = new ArrayList<>();
+        snapshot.forEachSubBalance((accountId, slot, balance) -> subBalances.add(accountId + "/" + slot + "=" + balance));
+        long[] all = {0};
+        snapshot.forEachAccount(account -> all[0]++);
+        assertThat(snapshot.getLastLsn()).isEqualTo(42);
+        assertThat(snapshot.getChunkCount()).isEqualTo(2);
+        assertThat(lastChunk).containsExactly(new Account(new UUID(0, SnapshotFile.CHUNK_SIZE),
+                "Account " + SnapshotFile.CHUNK_SIZE, Money.ofMinorUnits(SnapshotFile.CHUNK_SIZE)));
+        assertThat(reservations).containsExactly(reservation);
+        assertThat(subBalances).containsExactly(new UUID(0, 0) + "/3=" + Money.ofMinorUnits(7));
+        assertThat(snapshot.getTransferCount()).isEqualTo(1000);
+        assertThat(snapshot.holdsTransfers()).isFalse();
+        assertThat(all[0]).isEqualTo(SnapshotFile.CHUNK_SIZE + 1);
+    }
+
+    @Test
+    void shouldRejectSubBalanceAfterAccounts() throws IOException {
+        // GIVEN
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(directory.resolve("test.snap"))) {
+            writer.account(new Account(UUID.randomUUID(), "test", Money.ZERO));
+
+            // WHEN + THEN
+            assertThrows(IllegalStateException.class, () -> writer.subBalance(UUID.randomUUID(), 0, Money.ZERO));
+        }
+    }
+}
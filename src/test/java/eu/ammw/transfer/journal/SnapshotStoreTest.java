@@ -0,0 +1,210 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.journal.WriteAheadLog.FsyncPolicy;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotStoreTest {
+    // fits a few transactions, so that they span several segments
+    private static final int SEGMENT_SIZE = 512;
+
+    @TempDir
+    Path directory;
+
+    private WriteAheadLog log;
+    private SnapshotStore snapshots;
+    private JournalingDataSource journal;
+    private List<Account> accounts;
+    private List<Transfer> transfers;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        log = new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0);
+        snapshots = new SnapshotStore(directory, 2);
+        journal = new JournalingDataSource(new LedgerDataSource(), log, snapshots);
+        journal.recover();
+        accounts = new ArrayList<>();
+        transfers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Account account = new Account(UUID.randomUUID(), "Account " + i, Money.of(100));
+            journal.createAccount(account);
+            journal.commit();
+            accounts.add(account);
+        }
+        transfer(10);
+    }
+
+    @Test
+    void shouldFoldSealedSegmentsIntoSnapshot() throws IOException {
+        // GIVEN
+        int segments = log.getSegmentCount();
+
+        // WHEN
+        boolean written = snapshots.snapshot(log);
+
+        // THEN
+        assertThat(written).isTrue();
+        assertThat(segments).isGreaterThan(1);
+        assertThat(log.getSegmentCount()).isEqualTo(1);
+        assertThat(files(".snap")).hasSize(1);
+        assertThat(snapshots.getMetrics()).containsEntry("snapshots", 1L)
+                .containsEntry("lastLsn", log.getSealedLsn());
+        assertThat(snapshots.snapshot(log)).isFalse();
+    }
+
+    @Test
+    void shouldRecoverFromSnapshotAndLogTail() throws IOException {
+        // GIVEN
+        snapshots.snapshot(log);
+        transfer(10);
+        snapshots.snapshot(log);
+        transfer(3);
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        JournalingDataSource reopened = new JournalingDataSource(recovered,
+                new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0), new SnapshotStore(directory, 2));
+        reopened.recover();
+
+        // THEN
+        assertThat(files(".snap")).hasSize(1);
+        for (Account account : accounts) {
+            assertThat(recovered.getAccount(account.getId())).contains(account);
+        }
+        List<Transfer> history = new ArrayList<>();
+        for (Account account : accounts) {
+            history.addAll(recovered.getHistory(account.getId()));
+        }
+        assertThat(history).hasSize(2 * transfers.size());
+        assertThat(recovered.getHistory(accounts.get(0).getId())).containsExactlyElementsOf(transfers.stream()
+                .filter(transfer -> transfer.getFrom().equals(accounts.get(0).getId())
+                        || transfer.getTo().equals(accounts.get(0).getId()))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void shouldKeepSubBalancesInSnapshot() throws IOException {
+        // GIVEN
+        UUID hot = accounts.get(0).getId();
+        for (int i = 0; i < 10; i++) {
+            journal.addToSubBalance(hot, i % 3, Money.of(1));
+            journal.commit();
+        }
+        boolean written = snapshots.snapshot(log);
+        journal.addToSubBalance(hot, 2, Money.of(1));
+        journal.commit();
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        new JournalingDataSource(recovered, new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0),
+                new SnapshotStore(directory, 2)).recover();
+
+        // THEN
+        assertThat(written).isTrue();
+        assertThat(recovered.getAccount(hot).get().getBalance())
+                .isEqualTo(accounts.get(0).getBalance().plus(Money.of(11)));
+        assertThat(recovered.getSubBalance(hot, 0)).isEqualTo(Money.of(4));
+        assertThat(recovered.getSubBalance(hot, 2)).isEqualTo(Money.of(4));
+        assertThat(recovered.getAccount(accounts.get(1).getId())).contains(accounts.get(1));
+    }
+
+    @Test
+    void shouldKeepHistoryOutOfSnapshots() throws IOException {
+        // GIVEN
+        snapshots.snapshot(log);
+        long firstSize = Files.size(files(".snap").get(0));
+        transfer(20);
+
+        // WHEN
+        snapshots.snapshot(log);
+
+        // THEN
+        assertThat(Files.size(files(".snap").get(0))).isEqualTo(firstSize);
+        assertThat(files(".hist")).hasSize(1);
+    }
+
+    @Test
+    void shouldKeepOpenReservationsInSnapshot() throws IOException {
+        // GIVEN
+        Transfer kept = new Transfer(accounts.get(0).getId(), UUID.randomUUID(), Money.of(1));
+        Transfer removed = new Transfer(accounts.get(1).getId(), UUID.randomUUID(), Money.of(2));
+        journal.addReservation(kept);
+        journal.addReservation(removed);
+        journal.commit();
+        snapshots.snapshot(log);
+        journal.removeReservation(removed);
+        journal.commit();
+        transfer(10);
+        boolean written = snapshots.snapshot(log);
+        journal.close();
+
+        // WHEN
+        LedgerDataSource recovered = new LedgerDataSource();
+        new JournalingDataSource(recovered, new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0),
+                new SnapshotStore(directory, 2)).recover();
+
+        // THEN
+        assertThat(written).isTrue();
+        assertThat(recovered.getReservations()).containsExactly(kept);
+        assertThat(recovered.getHistory(accounts.get(0).getId())).hasSize(transfers.size() / 2);
+    }
+
+    @Test
+    void shouldContinueLogAfterSnapshot() throws IOException {
+        // GIVEN
+        snapshots.snapshot(log);
+        long nextLsn = log.getNextLsn();
+        journal.close();
+
+        // WHEN
+        WriteAheadLog reopened = new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0);
+        new JournalingDataSource(new LedgerDataSource(), reopened, new SnapshotStore(directory, 2)).recover();
+
+        // THEN
+        assertThat(reopened.getNextLsn()).isEqualTo(nextLsn);
+    }
+
+    private void transfer(int count) {
+        for (int i = 0; i < count; i++) {
+            int from = (transfers.size()) % accounts.size();
+            int to = (transfers.size() + 1) % accounts.size();
+            Transfer transfer = new Transfer(accounts.get(from).getId(), accounts.get(to).getId(), Money.of(1));
+            accounts.set(from, withBalance(accounts.get(from), -100));
+            accounts.set(to, withBalance(accounts.get(to), 100));
+            journal.updateAccount(accounts.get(from));
+            journal.updateAccount(accounts.get(to));
+            journal.createTransfer(transfer);
+            journal.commit();
+            transfers.add(transfer);
+        }
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+
+    private static Account withBalance(Account account, long change) {
+        return new Account(account.getId(), account.getName(),
+                Money.ofMinorUnits(account.getBalance().getMinorUnits() + change));
+    }
+}
@@ -0,0 +1,147 @@
+package eu.ammw.transfer.journal;
+
+import eu.ammw.transfer.journal.WriteAheadLog.FsyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteAheadLogTest {
+    // fits two records of 8 bytes
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplayRecordsAcrossSegments() throws IOException {
+        // GIVEN
+        try (WriteAheadLog log = open()) {
+            log.replay(null);
+            for (int i = 0; i < 5; i++) {
+                assertThat(log.append(bytes("record " + i))).isEqualTo(i + 1);
+            }
+            assertThat(log.getSegmentCount()).isGreaterThan(1);
+        }
+
+        // WHEN
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open()) {
+            long count = log.replay((lsn, payload) -> replayed.add(lsn + ":" + string(payload)));
+
+            // THEN
+            assertThat(count).isEqualTo(5);
+            assertThat(log.getNextLsn()).isEqualTo(6);
+        }
+        assertThat(replayed).containsExactly("1:record 0", "2:record 1", "3:record 2", "4:record 3", "5:record 4");
+    }
+
+    @Test
+    void shouldContinueAfterReplayedRecords() throws IOException {
+        // GIVEN
+        try (WriteAheadLog log = open()) {
+            log.append(bytes("first"));
+        }
+
+        // WHEN
+        try (WriteAheadLog log = open()) {
+            log.replay(null);
+            log.append(bytes("second"));
+        }
+
+        // THEN
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open()) {
+            log.replay((lsn, payload) -> replayed.add(lsn + ":" + string(payload)));
+        }
+        assertThat(replayed).containsExactly("1:first", "2:second");
+    }
+
+    @Test
+    void shouldDiscardTornRecordAndLaterSegments() throws IOException {
+        // GIVEN
+        try (WriteAheadLog log = open()) {
+            for (int i = 0; i < 5; i++) {
+                log.append(bytes("record " + i));
+            }
+        }
+        List<Path> segments = segments();
+        try (RandomAccessFile file = new RandomAccessFile(segments.get(1).toFile(), "rw")) {
+            file.seek(WriteAheadLog.HEADER_SIZE);
+            file.write('X');
+        }
+
+        // WHEN
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = open()) {
+            log.replay((lsn, payload) -> replayed.add(string(payload)));
+            log.append(bytes("after"));
+        }
+
+        // THEN
+        List<String> reopened = new ArrayList<>();
+        try (WriteAheadLog log = open()) {
+            log.replay((lsn, payload) -> reopened.add(lsn + ":" + string(payload)));
+        }
+        assertThat(segments).hasSize(3);
+        assertThat(replayed).containsExactly("record 0", "record 1");
+        assertThat(reopened).containsExactly("1:record 0", "2:record 1", "3:after");
+        assertThat(segments()).hasSize(2);
+    }
+
+    @Test
+    void shouldRejectRecordLargerThanSegment() throws IOException {
+        // GIVEN
+        try (WriteAheadLog log = open()) {
+            // WHEN + THEN
+            assertThrows(IllegalArgumentException.class, () -> log.append(new byte[SEGMENT_SIZE]));
+            assertThrows(IllegalArgumentException.class, () -> log.append(new byte[0]));
+        }
+    }
+
+    @Test
+    void shouldSyncEveryRecordWithAlwaysPolicy() throws IOException {
+        // GIVEN
+        try (WriteAheadLog log = open()) {
+            // WHEN
+            log.append(bytes("first"));
+            log.append(bytes("second"));
+
+            // THEN
+            assertThat(log.getSyncs()).isEqualTo(2);
+            assertThat(log.getAppended()).isEqualTo(2);
+        }
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return new WriteAheadLog(directory, SEGMENT_SIZE, FsyncPolicy.ALWAYS, 0);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,35 @@
+package eu.ammw.transfer.load;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencySamplesTest {
+
+    @Test
+    void shouldComputeExactPercentiles() {
+        // GIVEN
+        LatencySamples first = new LatencySamples();
+        LatencySamples second = new LatencySamples();
+        for (int i = 1000; i >= 1; i--) {
+            (i % 2 == 0 ? first : second).add(i);
+        }
+
+        // WHEN
+        first.addAll(second);
+
+        // THEN
+        assertThat(first.size()).isEqualTo(1000);
+        assertThat(first.getPercentile(50)).isEqualTo(500);
+        assertThat(first.getPercentile(99)).isEqualTo(990);
+        assertThat(first.getPercentile(99.9)).isEqualTo(999);
+        assertThat(first.getMax()).isEqualTo(1000);
+        assertThat(first.getPercentile(0)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReturnZeroWithoutSamples() {
+        // WHEN + THEN
+        assertThat(new LatencySamples().getPercentile(99)).isZero();
+    }
+}
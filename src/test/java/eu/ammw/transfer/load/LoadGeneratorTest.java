@@ -0,0 +1,148 @@
+package eu.ammw.transfer.load;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadGeneratorTest {
+    private final StubClient client = new StubClient();
+
+    @Test
+    void shouldChargeStallToRequestsQueuedBehindIt() throws Exception {
+        // GIVEN
+        LoadGenerator generator = new LoadGenerator(client, Mix.parse("read:1"), 1, 100);
+        generator.seed(2, Money.of(100));
+        client.stallNextRead(500);
+
+        // WHEN
+        LoadReport report = generator.drive(0, TimeUnit.MILLISECONDS.toNanos(600));
+
+        // THEN
+        LatencySamples latencies = report.getLatencies(Operation.READ);
+        // requests are scheduled every 10 ms, whether or not the previous one was answered
+        assertThat(latencies.size()).isEqualTo(60);
+        assertThat(latencies.getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        // most requests waited for the stalled one, a closed loop would have recorded a single slow request
+        assertThat(latencies.getPercentile(50)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void shouldWidenConservationRangeOnServerErrors() throws Exception {
+        // GIVEN
+        LoadGenerator generator = new LoadGenerator(client, Mix.parse("deposit:1,withdraw:1"), 2, 1000);
+        generator.seed(4, Money.of(100));
+        Money before = generator.getTotalBalance();
+        // deposits are committed before the failure, withdrawals are not
+        client.answerDeposits(500, true);
+        client.answerWithdrawals(503, false);
+
+        // WHEN
+        LoadReport report = generator.drive(0, TimeUnit.MILLISECONDS.toNanos(100));
+
+        // THEN
+        assertThat(report.getErrors(Operation.DEPOSIT)).isPositive();
+        assertThat(report.getErrors(Operation.WITHDRAW)).isPositive();
+        assertThat(generator.getTotalBalance()).isNotEqualTo(before);
+        assertThat(generator.checkConservation(before)).isTrue();
+    }
+
+    @Test
+    void shouldDetectMoneyNotConserved() throws Exception {
+        // GIVEN
+        LoadGenerator generator = new LoadGenerator(client, Mix.parse("deposit:1"), 1, 1000);
+        generator.seed(2, Money.of(100));
+        Money before = generator.getTotalBalance();
+        client.answerDeposits(200, false);
+
+        // WHEN
+        generator.drive(0, TimeUnit.MILLISECONDS.toNanos(20));
+
+        // THEN
+        assertThat(generator.checkConservation(before)).isFalse();
+    }
+
+    /**
+     * Keeps accounts in memory and answers deposits and withdrawals with the configured status, applying them or not.
+     */
+    private static class StubClient extends LoadClient {
+        private final Gson gson = new Gson();
+        private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+        private final AtomicLong stallMillis = new AtomicLong();
+        private volatile int depositStatus = 200;
+        private volatile boolean depositApplied = true;
+        private volatile int withdrawalStatus = 200;
+        private volatile boolean withdrawalApplied = true;
+
+        private StubClient() {
+            super("http://localhost");
+        }
+
+        void stallNextRead(long millis) {
+            stallMillis.set(millis);
+        }
+
+        void answerDeposits(int status, boolean applied) {
+            depositStatus = status;
+            depositApplied = applied;
+        }
+
+        void answerWithdrawals(int status, boolean applied) {
+            withdrawalStatus = status;
+            withdrawalApplied = applied;
+        }
+
+        @Override
+        Response get(String path) {
+            long stall = stallMillis.getAndSet(0);
+            if (stall > 0) {
+                try {
+                    Thread.sleep(stall);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Account account = accounts.get(idOf(path));
+            return account == null ? new Response(404, "") : new Response(200, gson.toJson(account));
+        }
+
+        @Override
+        Response post(String path, String body) {
+            if (path.equals("/accounts")) {
+                String name = gson.fromJson(body, JsonObject.class).get("name").getAsString();
+                Account account = new Account(UUID.randomUUID(), name, Money.ZERO);
+                accounts.put(account.getId(), account);
+                return new Response(201, gson.toJson(account));
+            }
+            Money amount = Money.of(gson.fromJson(body, JsonObject.class).get("amount").getAsBigDecimal());
+            if (path.endsWith("/deposit")) {
+                return change(idOf(path), amount, depositStatus, depositApplied);
+            }
+            if (path.endsWith("/withdraw")) {
+                return change(idOf(path), amount.negate(), withdrawalStatus, withdrawalApplied);
+            }
+            return new Response(404, "");
+        }
+
+        private Response change(UUID id, Money amount, int status, boolean applied) {
+            if (applied) {
+                accounts.computeIfPresent(id, (key, account) ->
+                        new Account(key, account.getName(), account.getBalance().plus(amount)));
+            }
+            return new Response(status, "");
+        }
+
+        private static UUID idOf(String path) {
+            return UUID.fromString(path.split("/")[2]);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package eu.ammw.transfer.load;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MixTest {
+
+    @Test
+    void shouldPickOperationsByWeight() {
+        // GIVEN
+        Mix mix = Mix.parse("transfer:3, read:1,deposit:0,withdraw:2");
+
+        // WHEN + THEN
+        assertThat(mix.getTotalWeight()).isEqualTo(6);
+        assertThat(mix.pick(0)).isEqualTo(Operation.TRANSFER);
+        assertThat(mix.pick(2)).isEqualTo(Operation.TRANSFER);
+        assertThat(mix.pick(3)).isEqualTo(Operation.WITHDRAW);
+        assertThat(mix.pick(4)).isEqualTo(Operation.WITHDRAW);
+        assertThat(mix.pick(5)).isEqualTo(Operation.READ);
+        assertThrows(IllegalArgumentException.class, () -> mix.pick(6));
+    }
+
+    @Test
+    void shouldRejectInvalidMix() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> Mix.parse("transfer"));
+        assertThrows(IllegalArgumentException.class, () -> Mix.parse("refund:1"));
+        assertThrows(IllegalArgumentException.class, () -> Mix.parse("transfer:-1"));
+        assertThrows(IllegalArgumentException.class, () -> Mix.parse("transfer:0"));
+    }
+}
@@ -0,0 +1,91 @@
+package eu.ammw.transfer.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void shouldPlaceValuesInBucketsWithInclusiveUpperBounds() {
+        // WHEN + THEN
+        assertThat(LatencyHistogram.indexOf(-5)).isEqualTo(0);
+        assertThat(LatencyHistogram.indexOf(1024)).isEqualTo(0);
+        assertThat(LatencyHistogram.indexOf(1025)).isEqualTo(1);
+        assertThat(LatencyHistogram.indexOf(1536)).isEqualTo(1);
+        assertThat(LatencyHistogram.indexOf(1537)).isEqualTo(2);
+        assertThat(LatencyHistogram.indexOf(2048)).isEqualTo(2);
+        assertThat(LatencyHistogram.indexOf(2049)).isEqualTo(3);
+        assertThat(LatencyHistogram.indexOf(1L << 34)).isEqualTo(LatencyHistogram.getBucketCount() - 1);
+        assertThat(LatencyHistogram.indexOf((1L << 34) + 1)).isEqualTo(LatencyHistogram.getBucketCount());
+        assertThat(LatencyHistogram.indexOf(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.getBucketCount());
+    }
+
+    @Test
+    void shouldKeepEveryValueWithinBoundsOfItsBucket() {
+        for (long value = 1025; value < 1L << 34; value = value * 9 / 7) {
+            // WHEN
+            int bucket = LatencyHistogram.indexOf(value);
+
+            // THEN
+            assertThat(value).isLessThanOrEqualTo(LatencyHistogram.getUpperBound(bucket));
+            assertThat(value).isGreaterThan(LatencyHistogram.getUpperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    void shouldFormatBoundsInSeconds() {
+        // WHEN + THEN
+        assertThat(LatencyHistogram.getUpperBoundInSeconds(0)).isEqualTo("0.000001024");
+        assertThat(LatencyHistogram.getUpperBoundInSeconds(1)).isEqualTo("0.000001536");
+        assertThat(LatencyHistogram.getUpperBoundInSeconds(LatencyHistogram.getBucketCount() - 1))
+                .isEqualTo("17.179869184");
+    }
+
+    @Test
+    void shouldCountAndSumRecordedValues() {
+        // GIVEN
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // WHEN
+        histogram.record(500);
+        histogram.record(1500);
+        histogram.record(1400);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        // THEN
+        assertThat(histogram.getCount(0)).isEqualTo(1);
+        assertThat(histogram.getCount(1)).isEqualTo(2);
+        assertThat(histogram.getCount(LatencyHistogram.getBucketCount())).isEqualTo(1);
+        assertThat(histogram.getCount()).isEqualTo(4);
+        assertThat(histogram.getSum()).isEqualTo(3400 + Long.MAX_VALUE / 2);
+    }
+
+    @Test
+    void shouldRecordWithoutAllocating() {
+        // GIVEN
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i * 1013L);
+        }
+        long threadId = Thread.currentThread().getId();
+
+        // WHEN
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) {
+            histogram.record(i * 1013L);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // THEN
+        assertThat(allocated).isLessThan(1024);
+    }
+}
@@ -0,0 +1,106 @@
+package eu.ammw.transfer.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsRegistryTest {
+
+    @Mock
+    private MetricsSource metricsSource;
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    void shouldWriteHistogramsInPrometheusFormat() {
+        // GIVEN
+        LatencyHistogram histogram = registry.histogram("call_seconds", "Calls.", "method", "get\"One\"");
+        histogram.record(1000);
+        histogram.record(1_500_000_000L);
+
+        // WHEN
+        String result = registry.scrape();
+
+        // THEN
+        assertThat(result)
+                .startsWith("# HELP transfer_call_seconds Calls.\n# TYPE transfer_call_seconds histogram\n")
+                .contains("transfer_call_seconds_bucket{method=\"get\\\"One\\\"\",le=\"0.000001024\"} 1\n")
+                .contains("transfer_call_seconds_bucket{method=\"get\\\"One\\\"\",le=\"1.073741824\"} 1\n")
+                .contains("transfer_call_seconds_bucket{method=\"get\\\"One\\\"\",le=\"1.610612736\"} 2\n")
+                .contains("transfer_call_seconds_bucket{method=\"get\\\"One\\\"\",le=\"+Inf\"} 2\n")
+                .contains("transfer_call_seconds_sum{method=\"get\\\"One\\\"\"} 1.500001\n")
+                .contains("transfer_call_seconds_count{method=\"get\\\"One\\\"\"} 2\n");
+    }
+
+    @Test
+    void shouldShareSeriesWithSameLabel() {
+        // WHEN
+        LatencyHistogram first = registry.histogram("wait_seconds", "Waits.");
+        LatencyHistogram second = registry.histogram("wait_seconds", "Waits.");
+        first.record(1);
+
+        // THEN
+        assertThat(second).isSameAs(first);
+        assertThat(registry.histogram("call_seconds", "Calls.", "method", "a"))
+                .isNotSameAs(registry.histogram("call_seconds", "Calls.", "method", "b"));
+        assertThat(registry.scrape()).contains("transfer_wait_seconds_bucket{le=\"+Inf\"} 1\n")
+                .contains("transfer_wait_seconds_count 1\n");
+    }
+
+    @Test
+    void shouldWriteCountedStatusesOnly() {
+        // GIVEN
+        StatusCounter counter = registry.statusCounter("errors_total", "Errors.", "route", "GET /x");
+        counter.increment(404);
+        counter.increment(404);
+        counter.increment(503);
+
+        // WHEN
+        String result = registry.scrape();
+
+        // THEN
+        assertThat(result).isEqualTo("# HELP transfer_errors_total Errors.\n"
+                + "# TYPE transfer_errors_total counter\n"
+                + "transfer_errors_total{route=\"GET /x\",status=\"404\"} 2\n"
+                + "transfer_errors_total{route=\"GET /x\",status=\"503\"} 1\n");
+    }
+
+    @Test
+    void shouldWriteMetricsOfSources() {
+        // GIVEN
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", 3);
+        metrics.put("hitRatio", 0.25);
+        when(metricsSource.getName()).thenReturn("groupCommit");
+        when(metricsSource.getMetrics()).thenReturn(metrics);
+        registry.register(metricsSource);
+
+        // WHEN
+        String result = registry.scrape();
+
+        // THEN
+        assertThat(result).isEqualTo("# TYPE transfer_group_commit_queue_depth untyped\n"
+                + "transfer_group_commit_queue_depth 3\n"
+                + "# TYPE transfer_group_commit_hit_ratio untyped\n"
+                + "transfer_group_commit_hit_ratio 0.25\n");
+    }
+
+    @Test
+    void shouldRejectSameNameWithOtherType() {
+        // GIVEN
+        registry.histogram("errors_total", "Errors.");
+
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.statusCounter("errors_total", "Errors.", "route", "GET /x"));
+    }
+}
@@ -0,0 +1,83 @@
+package eu.ammw.transfer.model;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+
+    @Test
+    void shouldConvertFromBigDecimalExactly() {
+        assertThat(Money.of(new BigDecimal("12.34")).getMinorUnits()).isEqualTo(1234);
+        assertThat(Money.of(new BigDecimal("12")).getMinorUnits()).isEqualTo(1200);
+        assertThat(Money.of(new BigDecimal("1E+3")).getMinorUnits()).isEqualTo(100_000);
+        assertThat(Money.of(new BigDecimal("-0.01")).getMinorUnits()).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldCentFractionsFail() {
+        assertThrows(NumberFormatException.class, () -> Money.of(new BigDecimal("12.345")));
+    }
+
+    @Test
+    void shouldScientificNotationFail() {
+        assertThrows(NumberFormatException.class, () -> Money.of(new BigDecimal("1.23e-4")));
+    }
+
+    @Test
+    void shouldAmountOutOfRangeFail() {
+        assertThrows(NumberFormatException.class, () -> Money.of(BigDecimal.valueOf(Long.MAX_VALUE)));
+        assertThrows(NumberFormatException.class, () -> Money.of(BigDecimal.valueOf(Double.MAX_VALUE)));
+    }
+
+    @Test
+    void shouldConvertToBigDecimal() {
+        assertThat(Money.ofMinorUnits(1234).toBigDecimal()).isEqualTo(new BigDecimal("12.34"));
+        assertThat(Money.of(5).toString()).isEqualTo("5.00");
+    }
+
+    @Test
+    void shouldAddAndSubtract() {
+        assertThat(Money.of(10).plus(Money.ofMinorUnits(1))).isEqualTo(Money.ofMinorUnits(1001));
+        assertThat(Money.of(10).minus(Money.of(11))).isEqualTo(Money.of(-1));
+        assertThat(Money.of(10).negate()).isEqualTo(Money.of(-10));
+    }
+
+    @Test
+    void shouldFailOnOverflow() {
+        Money max = Money.ofMinorUnits(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinorUnits(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MIN_VALUE).minus(Money.ofMinorUnits(1)));
+        assertThrows(ArithmeticException.class, () -> Money.of(Long.MAX_VALUE));
+    }
+
+    @Test
+    void shouldCompare() {
+        assertThat(Money.of(1)).isLessThan(Money.of(2));
+        assertThat(Money.ZERO.signum()).isZero();
+        assertThat(Money.of(-3).signum()).isNegative();
+    }
+
+    @Test
+    void shouldSerializeAsJsonNumber() {
+        // GIVEN
+        Gson gson = new Gson();
+
+        // WHEN
+        String json = gson.toJson(new Transfer(null, null, null, Money.ofMinorUnits(1050)));
+        Transfer transfer = gson.fromJson("{\"amount\": 10.5}", Transfer.class);
+
+        // THEN
+        assertThat(json).isEqualTo("{\"amount\":10.50}");
+        assertThat(transfer.getAmount()).isEqualTo(Money.ofMinorUnits(1050));
+    }
+
+    @Test
+    void shouldRejectJsonAmountWithCentFractions() {
+        assertThrows(NumberFormatException.class, () -> new Gson().fromJson("{\"amount\": 0.001}", Transfer.class));
+    }
+}
@@ -0,0 +1,67 @@
+package eu.ammw.transfer.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PageTest {
+
+    @Test
+    void shouldDecodeEncodedToken() {
+        // GIVEN
+        UUID id = UUID.randomUUID();
+
+        // WHEN
+        String token = Page.encode(id);
+
+        // THEN
+        assertThat(token).hasSize(22).doesNotContain(id.toString());
+        assertThat(Page.decode(token)).isEqualTo(id);
+    }
+
+    @Test
+    void shouldDecodeMissingTokenAsNull() {
+        assertThat(Page.decode(null)).isNull();
+    }
+
+    @Test
+    void shouldRejectInvalidToken() {
+        assertThrows(IllegalArgumentException.class, () -> Page.decode("bm9uc2Vuc2U"));
+        assertThrows(IllegalArgumentException.class, () -> Page.decode("!@#"));
+    }
+
+    @Test
+    void shouldPointToLastItemWhenMoreFollow() {
+        // GIVEN
+        List<Account> accounts = Arrays.asList(account(), account(), account());
+
+        // WHEN
+        Page<Account> page = Page.of(accounts, 2, Account::getId);
+
+        // THEN
+        assertThat(page.getItems()).containsExactly(accounts.get(0), accounts.get(1));
+        assertThat(Page.decode(page.getNext())).isEqualTo(accounts.get(1).getId());
+    }
+
+    @Test
+    void shouldHaveNoNextTokenOnLastPage() {
+        // GIVEN
+        List<Account> accounts = Arrays.asList(account(), account());
+
+        // WHEN
+        Page<Account> page = Page.of(accounts, 2, Account::getId);
+
+        // THEN
+        assertThat(page.getItems()).isEqualTo(accounts);
+        assertThat(page.getNext()).isNull();
+    }
+
+    private Account account() {
+        return new Account(null, "Test", Money.ZERO);
+    }
+}
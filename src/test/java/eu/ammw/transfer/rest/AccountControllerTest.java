@@ -1,8 +1,11 @@
 package eu.ammw.transfer.rest;
 
+import com.google.gson.Gson;
 import eu.ammw.transfer.domain.AccountNotFoundException;
 import eu.ammw.transfer.domain.AccountService;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -14,8 +17,10 @@ import spark.Response;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,10 +40,45 @@ class AccountControllerTest {
     private AccountController accountController;
 
     @Test
-    void shouldGetAccountsFromService() {
+    void shouldStreamAccountsFromService() throws Exception {
         // GIVEN
-        List<Account> expected = Arrays.asList(mock(Account.class), mock(Account.class));
-        when(accountService.getAccounts()).thenReturn(expected);
+        StreamedBody body = StreamedBody.capture(response);
+        Account first = new Account(TEST_UUID, "first", Money.of(1));
+        Account second = new Account(UUID.randomUUID(), "second", Money.of(10));
+        doAnswer(invocation -> {
+            Consumer<Account> consumer = invocation.getArgument(0);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(accountService).forEachAccount(any());
+
+        // WHEN
+        accountController.getAccounts(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        assertThat(body.toString()).isEqualTo(new Gson().toJson(Arrays.asList(first, second)));
+    }
+
+    @Test
+    void shouldStreamEmptyArrayWhenNoAccounts() throws Exception {
+        // GIVEN
+        StreamedBody body = StreamedBody.capture(response);
+
+        // WHEN
+        accountController.getAccounts(request, response);
+
+        // THEN
+        assertThat(body.toString()).isEqualTo("[]");
+    }
+
+    @Test
+    void shouldGetPageOfAccountsFromService() {
+        // GIVEN
+        Page<Account> expected = new Page<>(Arrays.asList(mock(Account.class)), "next");
+        when(request.queryParams("limit")).thenReturn("1");
+        when(request.queryParams("after")).thenReturn(Page.encode(TEST_UUID));
+        when(accountService.getAccounts(TEST_UUID, 1)).thenReturn(expected);
 
         // WHEN
         Object result = accountController.getAccounts(request, response);
@@ -48,6 +88,35 @@ class AccountControllerTest {
         assertThat(result).isSameAs(expected);
     }
 
+    @Test
+    void shouldGetFirstPageOfAccountsWithDefaultLimit() {
+        // GIVEN
+        Page<Account> expected = new Page<>(Arrays.asList(mock(Account.class)), null);
+        when(request.queryParams("limit")).thenReturn(null);
+        when(request.queryParams("after")).thenReturn("");
+        when(accountService.getAccounts(null, 100)).thenReturn(expected);
+
+        // WHEN
+        Object result = accountController.getAccounts(request, response);
+
+        // THEN
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenPageLimitTooLarge() {
+        // GIVEN
+        when(request.queryParams("limit")).thenReturn("1001");
+
+        // WHEN
+        Object result = accountController.getAccounts(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
     @Test
     void shouldCreateAccount() {
         // GIVEN
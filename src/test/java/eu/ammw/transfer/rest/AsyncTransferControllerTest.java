@@ -0,0 +1,113 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.domain.AsyncTransferService;
+import eu.ammw.transfer.domain.SubmissionRejectedException;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Transfer;
+import eu.ammw.transfer.model.TransferStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import spark.Request;
+import spark.Response;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncTransferControllerTest {
+    private static final UUID TEST_UUID = UUID.randomUUID();
+
+    @Mock
+    private AsyncTransferService asyncTransferService;
+
+    @Mock
+    private Request request;
+
+    @Mock
+    private Response response;
+
+    @InjectMocks
+    private AsyncTransferController asyncTransferController;
+
+    @Test
+    void shouldAcceptTransfer() throws Exception {
+        // GIVEN
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        TransferStatus expected = TransferStatus.pending(TEST_UUID, new Transfer(TEST_UUID, from, to, Money.of(10)));
+        when(asyncTransferService.submit(from, to, Money.of(10))).thenReturn(expected);
+        when(request.body()).thenReturn("{\"from\": \"" + from + "\", \"to\": \"" + to + "\", \"amount\": 10}");
+
+        // WHEN
+        Object result = asyncTransferController.submitTransfer(request, response);
+
+        // THEN
+        verify(response).status(202);
+        verify(response).header("Location", "/transfers/" + TEST_UUID);
+        verify(response).type("application/json");
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldSubmitReturnBadRequestWhenNoTarget() {
+        // GIVEN
+        when(request.body()).thenReturn("{\"from\": \"" + TEST_UUID + "\", \"amount\": 10}");
+
+        // WHEN
+        Object result = asyncTransferController.submitTransfer(request, response);
+
+        // THEN
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
+    @Test
+    void shouldSubmitReturnServiceUnavailableWhenQueueFull() throws Exception {
+        // GIVEN
+        when(asyncTransferService.submit(any(), any(), any())).thenThrow(new SubmissionRejectedException("FULL"));
+        when(request.body()).thenReturn("{\"from\": \"" + TEST_UUID + "\", \"to\": \"" + UUID.randomUUID() + "\", \"amount\": 10}");
+
+        // WHEN
+        Object result = asyncTransferController.submitTransfer(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(503);
+        assertThat(result).isEqualTo("FULL");
+    }
+
+    @Test
+    void shouldGetTransferStatus() {
+        // GIVEN
+        TransferStatus expected = TransferStatus.failed(TEST_UUID, null, "FAIL");
+        when(asyncTransferService.getStatus(TEST_UUID)).thenReturn(Optional.of(expected));
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+
+        // WHEN
+        Object result = asyncTransferController.getTransferStatus(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownTransfer() {
+        // GIVEN
+        when(asyncTransferService.getStatus(TEST_UUID)).thenReturn(Optional.empty());
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+
+        // WHEN
+        Object result = asyncTransferController.getTransferStatus(request, response);
+
+        // THEN
+        verify(response).status(404);
+        assertThat(result).isEqualTo("Transfer not found!");
+    }
+}
@@ -0,0 +1,49 @@
+package eu.ammw.transfer.rest;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConfiguredJettyFactoryTest {
+
+    @Test
+    void shouldCreateServerWithConfiguredPoolAndConnector() {
+        // GIVEN
+        ConfiguredJettyFactory factory = new ConfiguredJettyFactory(new JettySettings(4, 32, 1000, 512, false), 4321);
+
+        // WHEN
+        Server server = factory.create(0, 0, 0);
+
+        // THEN
+        assertThat(server.getThreadPool()).isInstanceOf(QueuedThreadPool.class);
+        QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+        assertThat(threadPool.getMinThreads()).isEqualTo(4);
+        assertThat(threadPool.getMaxThreads()).isEqualTo(32);
+        assertThat(threadPool.getIdleTimeout()).isEqualTo(1000);
+        assertThat(server.getConnectors()).hasSize(1);
+        ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+        assertThat(connector.getPort()).isEqualTo(4321);
+        assertThat(connector.getAcceptQueueSize()).isEqualTo(512);
+    }
+
+    @Test
+    void shouldUseVirtualThreadsWhenSupported() {
+        // WHEN + THEN
+        if (VirtualThreadPool.isSupported()) {
+            ConfiguredJettyFactory factory = new ConfiguredJettyFactory(new JettySettings(8, 200, 60_000, 0, true), 4321);
+            assertThat(factory.create(0, 0, 0).getThreadPool()).isInstanceOf(VirtualThreadPool.class);
+        } else {
+            assertThrows(IllegalArgumentException.class, () -> new JettySettings(8, 200, 60_000, 0, true));
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidPoolSize() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> new JettySettings(8, 4, 60_000, 0, false));
+    }
+}
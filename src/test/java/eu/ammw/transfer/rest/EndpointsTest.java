@@ -0,0 +1,68 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EndpointsTest {
+
+    @Mock
+    private Request request;
+
+    @Mock
+    private Response response;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    @Test
+    void shouldTimeRouteAndCountErrorStatuses() throws Exception {
+        // GIVEN
+        Route route = new Endpoints(metricsRegistry).instrument("GET", "/accounts/:id", (rq, rs) -> "body");
+        when(response.status()).thenReturn(200, 404);
+
+        // WHEN
+        Object first = route.handle(request, response);
+        route.handle(request, response);
+
+        // THEN
+        assertThat(first).isEqualTo("body");
+        assertThat(metricsRegistry.histogram(Endpoints.REQUEST_DURATION, "", "route", "GET /accounts/:id")
+                .getCount()).isEqualTo(2);
+        assertThat(metricsRegistry.statusCounter(Endpoints.ERRORS, "", "route", "GET /accounts/:id").getCount(404))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldCountEscapingExceptionAsInternalServerError() {
+        // GIVEN
+        Route route = new Endpoints(metricsRegistry).instrument("POST", "/accounts", (rq, rs) -> {
+            throw new IllegalStateException("FAIL");
+        });
+
+        // WHEN
+        assertThrows(IllegalStateException.class, () -> route.handle(request, response));
+
+        // THEN
+        assertThat(metricsRegistry.statusCounter(Endpoints.ERRORS, "", "route", "POST /accounts").getCount(500))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void shouldLeaveRouteAsItIsWithoutRegistry() {
+        // GIVEN
+        Route route = (rq, rs) -> "body";
+
+        // WHEN + THEN
+        assertThat(new Endpoints(null).instrument("GET", "/accounts", route)).isSameAs(route);
+    }
+}
@@ -0,0 +1,149 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.db.ConnectionPool;
+import eu.ammw.transfer.db.DataSource;
+import eu.ammw.transfer.db.InMemoryDatabase;
+import eu.ammw.transfer.db.InMemoryDatabaseService;
+import eu.ammw.transfer.domain.AccountService;
+import eu.ammw.transfer.domain.TransferService;
+import eu.ammw.transfer.model.Account;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Spark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares platform and virtual request threads on the blocking H2 path: thousands of concurrent connections make
+ * deposits through the HTTP API, each waiting for account locks and one of the few database connections. Virtual
+ * threads are measured only on a JDK supporting them. Run with
+ * {@code mvn test -Pbenchmark -Dtest=HttpThreadingBenchmarkTest}, the number of connections is set by
+ * {@code -Dbenchmark.connections}.
+ */
+@Tag("benchmark")
+class HttpThreadingBenchmarkTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpThreadingBenchmarkTest.class);
+
+    private static final int CONNECTIONS = Integer.getInteger("benchmark.connections", 2_000);
+    private static final int REQUESTS_PER_CONNECTION = Integer.getInteger("benchmark.requestsPerConnection", 20);
+    private static final int ACCOUNTS = 256;
+    private static final int DB_CONNECTIONS = 16;
+    private static final long MAX_LATENCY_MILLIS = 60_000;
+
+    @Test
+    void shouldComparePlatformAndVirtualThreads() throws Exception {
+        InMemoryDatabase.create();
+        DataSource dataSource = new InMemoryDatabaseService(new ConnectionPool(InMemoryDatabase::getConnection, DB_CONNECTIONS));
+        AccountService accountService = new AccountService(dataSource);
+        TransferService transferService = new TransferService(dataSource, accountService);
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accountService.createAccount("Benchmark " + i);
+            accounts.add(account.getId());
+        }
+
+        HttpClient client = new HttpClient();
+        client.setMaxConnectionsPerDestination(CONNECTIONS);
+        client.setMaxRequestsQueuedPerDestination(CONNECTIONS);
+        client.start();
+        try {
+            for (boolean virtual : Arrays.asList(false, true)) {
+                if (virtual && !VirtualThreadPool.isSupported()) {
+                    LOGGER.info("Virtual threads are not supported by this JDK, skipping");
+                    continue;
+                }
+                int port = freePort();
+                new ServerConfiguration(new JettySettings(8, 200, 60_000, CONNECTIONS, virtual),
+                        new AccountController(accountService), new TransferController(transferService))
+                        .configureAndStart(port);
+                Spark.awaitInitialization();
+                try {
+                    measure(virtual ? "virtual" : "platform", client, port, accounts);
+                } finally {
+                    Spark.stop();
+                    Spark.awaitStop();
+                }
+            }
+        } finally {
+            client.stop();
+        }
+    }
+
+    private void measure(String name, HttpClient client, int port, List<UUID> accounts) throws InterruptedException {
+        AtomicLongArray histogram = new AtomicLongArray((int) MAX_LATENCY_MILLIS + 1);
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(CONNECTIONS);
+        long start = System.nanoTime();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            send(client, port, accounts, REQUESTS_PER_CONNECTION, histogram, errors, done);
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        long requests = (long) CONNECTIONS * REQUESTS_PER_CONNECTION;
+        LOGGER.info("{} threads, {} connections: {} requests/s, latency p50 {} ms, p99 {} ms, max {} ms, {} errors",
+                name, CONNECTIONS, String.format("%.0f", requests * 1_000_000_000.0 / elapsed),
+                percentile(histogram, requests, 0.5), percentile(histogram, requests, 0.99),
+                percentile(histogram, requests, 1.0), errors.get());
+        assertThat(errors.get()).isZero();
+    }
+
+    private void send(HttpClient client, int port, List<UUID> accounts, int remaining, AtomicLongArray histogram,
+                      AtomicInteger errors, CountDownLatch done) {
+        UUID account = accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+        Request request = client.newRequest("localhost", port)
+                .method(HttpMethod.POST)
+                .path("/accounts/" + account + "/deposit")
+                .content(new StringContentProvider("{\"amount\": 1}"))
+                .timeout(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+        long sent = System.nanoTime();
+        request.send(result -> {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+            histogram.incrementAndGet((int) Math.min(millis, MAX_LATENCY_MILLIS));
+            if (result.isFailed() || result.getResponse().getStatus() != 200) {
+                errors.incrementAndGet();
+            }
+            if (remaining > 1) {
+                send(client, port, accounts, remaining - 1, histogram, errors, done);
+            } else {
+                done.countDown();
+            }
+        });
+    }
+
+    private static long percentile(AtomicLongArray histogram, long count, double percentile) {
+        long threshold = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int millis = 0; millis < histogram.length(); millis++) {
+            seen += histogram.get(millis);
+            if (seen >= threshold) {
+                return millis;
+            }
+        }
+        return MAX_LATENCY_MILLIS;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.rest.IdempotencyStore.KeyConflictException;
+import eu.ammw.transfer.rest.IdempotencyStore.StoredResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotencyStoreTest {
+    private static final long TTL = 1000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private IdempotencyStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new IdempotencyStore(IdempotencyStore.WAYS, TTL, clock::get);
+    }
+
+    @Test
+    void shouldClaimNewKeyAndReplayCompletedOne() {
+        // GIVEN
+        StoredResponse response = new StoredResponse(200, "application/json", "body");
+
+        // WHEN
+        StoredResponse first = store.begin("key", "request");
+        store.complete("key", response);
+        StoredResponse second = store.begin("key", "request");
+
+        // THEN
+        assertThat(first).isNull();
+        assertThat(second).isSameAs(response);
+        assertThat(store.getMetrics()).containsEntry("claims", 1L).containsEntry("replays", 1L);
+    }
+
+    @Test
+    void shouldRejectKeyInProgressOrUsedForDifferentRequest() {
+        // GIVEN
+        store.begin("key", "request");
+
+        // WHEN
+        KeyConflictException inProgress = assertThrows(KeyConflictException.class, () -> store.begin("key", "request"));
+        KeyConflictException different = assertThrows(KeyConflictException.class, () -> store.begin("key", "other"));
+
+        // THEN
+        assertThat(inProgress.getStatus()).isEqualTo(409);
+        assertThat(different.getStatus()).isEqualTo(422);
+        assertThat(store.getMetrics()).containsEntry("conflicts", 2L);
+    }
+
+    @Test
+    void shouldForgetReleasedKey() {
+        // GIVEN
+        store.begin("key", "request");
+
+        // WHEN
+        store.release("key");
+
+        // THEN
+        assertThat(store.begin("key", "other")).isNull();
+    }
+
+    @Test
+    void shouldRejectKeyWithUnknownOutcome() {
+        // GIVEN
+        store.begin("key", "request");
+
+        // WHEN
+        store.markUnknown("key");
+
+        // THEN
+        KeyConflictException unknown = assertThrows(KeyConflictException.class, () -> store.begin("key", "request"));
+        assertThat(unknown.getStatus()).isEqualTo(409);
+        assertThat(unknown).hasMessage("Outcome of request with this idempotency key is unknown");
+    }
+
+    @Test
+    void shouldForgetExpiredKey() {
+        // GIVEN
+        store.begin("key", "request");
+        store.complete("key", new StoredResponse(200, null, null));
+
+        // WHEN
+        clock.addAndGet(TTL);
+
+        // THEN
+        assertThat(store.begin("key", "other")).isNull();
+        assertThat(store.getMetrics()).containsEntry("evictions", 0L);
+    }
+
+    @Test
+    void shouldEvictOldestKeyWhenFull() {
+        // GIVEN
+        for (int i = 0; i <= IdempotencyStore.WAYS; i++) {
+            store.begin("key" + i, "request");
+            store.complete("key" + i, new StoredResponse(200, null, i));
+            clock.incrementAndGet();
+        }
+
+        // WHEN
+        StoredResponse oldest = store.begin("key0", "request");
+        StoredResponse newest = store.begin("key" + IdempotencyStore.WAYS, "request");
+
+        // THEN
+        assertThat(oldest).isNull();
+        assertThat(newest.getBody()).isEqualTo(IdempotencyStore.WAYS);
+        assertThat(store.getMetrics()).containsEntry("capacity", IdempotencyStore.WAYS).containsEntry("evictions", 2L);
+    }
+
+    @Test
+    void shouldRejectNonPositiveCapacity() {
+        // WHEN + THEN
+        assertThrows(IllegalArgumentException.class, () -> new IdempotencyStore(0, 60));
+    }
+}
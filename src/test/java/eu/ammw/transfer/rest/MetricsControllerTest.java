@@ -0,0 +1,38 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import spark.Request;
+import spark.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsControllerTest {
+
+    @Mock
+    private Request request;
+
+    @Mock
+    private Response response;
+
+    @Test
+    void shouldWriteMetricsAsText() throws Exception {
+        // GIVEN
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.histogram("lock_wait_seconds", "Waits.").record(1000);
+        StreamedBody body = StreamedBody.capture(response);
+
+        // WHEN
+        Object result = new MetricsController(metricsRegistry).getMetrics(request, response);
+
+        // THEN
+        verify(response).type("text/plain; version=0.0.4; charset=utf-8");
+        assertThat(result).isEqualTo("");
+        assertThat(body.toString()).isEqualTo(metricsRegistry.scrape());
+    }
+}
@@ -0,0 +1,45 @@
+package eu.ammw.transfer.rest;
+
+import eu.ammw.transfer.metrics.MetricsSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import spark.Request;
+import spark.Response;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatsControllerTest {
+
+    @Mock
+    private MetricsSource metricsSource;
+
+    @Mock
+    private Request request;
+
+    @Mock
+    private Response response;
+
+    @Test
+    void shouldGetStatsOfAllSources() {
+        // GIVEN
+        Map<String, Number> metrics = Collections.singletonMap("queueDepth", 3);
+        when(metricsSource.getName()).thenReturn("groupCommit");
+        when(metricsSource.getMetrics()).thenReturn(metrics);
+        StatsController statsController = new StatsController(metricsSource);
+
+        // WHEN
+        Object result = statsController.getStats(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        assertThat(result).isEqualTo(Collections.singletonMap("groupCommit", metrics));
+    }
+}
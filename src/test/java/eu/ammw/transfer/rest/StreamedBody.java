@@ -0,0 +1,48 @@
+package eu.ammw.transfer.rest;
+
+import spark.Response;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Captures what a route streams to the raw servlet response.
+ */
+class StreamedBody extends ServletOutputStream {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    static StreamedBody capture(Response response) throws IOException {
+        StreamedBody body = new StreamedBody();
+        HttpServletResponse raw = mock(HttpServletResponse.class);
+        when(raw.getOutputStream()).thenReturn(body);
+        when(response.raw()).thenReturn(raw);
+        return body;
+    }
+
+    @Override
+    public void write(int b) {
+        bytes.write(b);
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -1,7 +1,16 @@
 package eu.ammw.transfer.rest;
 
+import com.google.gson.Gson;
+import eu.ammw.transfer.db.LedgerDataSource;
+import eu.ammw.transfer.db.ShardedDataSource;
 import eu.ammw.transfer.domain.*;
 import eu.ammw.transfer.model.Account;
+import eu.ammw.transfer.model.BatchItem;
+import eu.ammw.transfer.model.BatchResult;
+import eu.ammw.transfer.model.Bucket;
+import eu.ammw.transfer.model.Money;
+import eu.ammw.transfer.model.Page;
+import eu.ammw.transfer.model.Statement;
 import eu.ammw.transfer.model.Transfer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,11 +21,16 @@ import spark.Request;
 import spark.Response;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,8 +54,8 @@ class TransferControllerTest {
         // GIVEN
         UUID from = UUID.randomUUID();
         UUID to = UUID.randomUUID();
-        Transfer expected = new Transfer(from, to, BigDecimal.TEN);
-        when(transferService.transfer(from, to, BigDecimal.TEN)).thenReturn(expected);
+        Transfer expected = new Transfer(from, to, Money.of(10));
+        when(transferService.transfer(from, to, Money.of(10))).thenReturn(expected);
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": 10}");
 
@@ -100,7 +114,7 @@ class TransferControllerTest {
     void shouldTransferReturnNotFoundWhenNoAccountGiven() throws Exception {
         // GIVEN
         UUID from = UUID.randomUUID();
-        when(transferService.transfer(from, null, BigDecimal.TEN)).thenThrow(AccountNotFoundException.class);
+        when(transferService.transfer(from, null, Money.of(10))).thenThrow(AccountNotFoundException.class);
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"amount\": 10}");
 
@@ -118,7 +132,7 @@ class TransferControllerTest {
         // GIVEN
         UUID from = UUID.randomUUID();
         UUID to = UUID.randomUUID();
-        when(transferService.transfer(from, to, BigDecimal.TEN)).thenThrow(AccountNotFoundException.class);
+        when(transferService.transfer(from, to, Money.of(10))).thenThrow(AccountNotFoundException.class);
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": 10}");
 
@@ -136,8 +150,8 @@ class TransferControllerTest {
         // GIVEN
         UUID from = UUID.randomUUID();
         UUID to = UUID.randomUUID();
-        when(transferService.transfer(from, to, BigDecimal.TEN))
-                .thenThrow(new InsufficientFundsException(new Account(from), BigDecimal.TEN));
+        when(transferService.transfer(from, to, Money.of(10)))
+                .thenThrow(new InsufficientFundsException(new Account(from), Money.of(10)));
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": 10}");
 
@@ -155,8 +169,8 @@ class TransferControllerTest {
         // GIVEN
         UUID from = UUID.randomUUID();
         UUID to = UUID.randomUUID();
-        when(transferService.transfer(from, to, BigDecimal.TEN.negate()))
-                .thenThrow(new NegativeTransferException(BigDecimal.TEN.negate()));
+        when(transferService.transfer(from, to, Money.of(-10)))
+                .thenThrow(new NegativeTransferException(Money.of(-10)));
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": -10}");
 
@@ -174,7 +188,7 @@ class TransferControllerTest {
         // GIVEN
         UUID from = UUID.randomUUID();
         UUID to = UUID.randomUUID();
-        when(transferService.transfer(from, to, BigDecimal.TEN))
+        when(transferService.transfer(from, to, Money.of(10)))
                 .thenThrow(NumberFormatException.class);
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": 10}");
@@ -193,7 +207,7 @@ class TransferControllerTest {
         // GIVEN
         UUID from = UUID.randomUUID();
         UUID to = UUID.randomUUID();
-        when(transferService.transfer(from, to, BigDecimal.TEN.negate()))
+        when(transferService.transfer(from, to, Money.of(-10)))
                 .thenThrow(new TransferException("FAIL", new Exception("blablah")));
         when(request.params("id")).thenReturn(from.toString());
         when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": -10}");
@@ -208,11 +222,168 @@ class TransferControllerTest {
     }
 
     @Test
-    void shouldGetAccountFromService() throws Exception {
+    void shouldDoBatchTransfer() throws Exception {
         // GIVEN
-        List<Transfer> expected = Arrays.asList(mock(Transfer.class), mock(Transfer.class));
-        when(transferService.getHistory(TEST_UUID)).thenReturn(expected);
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        List<BatchResult> expected = Arrays.asList(BatchResult.completed(new Transfer(from, to, Money.of(10))));
+        when(transferService.transferItems(Arrays.asList(new BatchItem(from, to, BigDecimal.TEN)), false))
+                .thenReturn(expected);
+        when(request.body()).thenReturn("{\"transfers\": [{\"from\": \"" + from + "\", \"to\": \"" + to + "\", \"amount\": 10}]}");
+
+        // WHEN
+        Object result = transferController.transferBatch(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        verify(response, never()).status(anyInt());
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldReturnConflictWhenBatchNotApplied() throws Exception {
+        // GIVEN
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        Transfer transfer = new Transfer(null, from, to, Money.of(10));
+        List<BatchResult> expected = Arrays.asList(BatchResult.notApplied(transfer), BatchResult.failed(transfer, "FAIL"));
+        BatchItem batchItem = new BatchItem(from, to, BigDecimal.TEN);
+        when(transferService.transferItems(Arrays.asList(batchItem, batchItem), true)).thenReturn(expected);
+        String item = "{\"from\": \"" + from + "\", \"to\": \"" + to + "\", \"amount\": 10}";
+        when(request.body()).thenReturn("{\"mode\": \"ALL_OR_NOTHING\", \"transfers\": [" + item + ", " + item + "]}");
+
+        // WHEN
+        Object result = transferController.transferBatch(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        verify(response).status(409);
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldReturnConflictWhenEveryItemOfAllOrNothingBatchFailed() throws Exception {
+        // GIVEN
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        List<BatchResult> expected = Arrays.asList(BatchResult.failed(new Transfer(null, from, to, Money.of(10)), "FAIL"));
+        when(transferService.transferItems(Arrays.asList(new BatchItem(from, to, BigDecimal.TEN)), true))
+                .thenReturn(expected);
+        when(request.body()).thenReturn("{\"mode\": \"ALL_OR_NOTHING\", \"transfers\": [{\"from\": \"" + from
+                + "\", \"to\": \"" + to + "\", \"amount\": 10}]}");
+
+        // WHEN
+        Object result = transferController.transferBatch(request, response);
+
+        // THEN
+        verify(response).status(409);
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldPassInvalidBatchAmountToService() throws Exception {
+        // GIVEN
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        List<BatchResult> expected = Arrays.asList(
+                BatchResult.failed(new Transfer(null, from, to, null), "Invalid amount of money: 1.234"));
+        when(transferService.transferItems(Arrays.asList(new BatchItem(from, to, new BigDecimal("1.234"))), false))
+                .thenReturn(expected);
+        when(request.body()).thenReturn("{\"transfers\": [{\"from\": \"" + from + "\", \"to\": \"" + to
+                + "\", \"amount\": 1.234}]}");
+
+        // WHEN
+        Object result = transferController.transferBatch(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        verify(response, never()).status(anyInt());
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldBatchTransferReturnBadRequestWhenNoTransfers() {
+        // GIVEN
+        when(request.body()).thenReturn("{\"mode\": \"PER_ITEM\"}");
+
+        // WHEN
+        Object result = transferController.transferBatch(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
+    @Test
+    void shouldBatchTransferReturnBadRequestWhenBatchSpansShards() {
+        // GIVEN
+        ShardedDataSource dataSource = new ShardedDataSource(
+                Arrays.asList(new LedgerDataSource(true), new LedgerDataSource(true)));
+        List<WriteExecutor> executors = Arrays.asList(
+                new LockingWriteExecutor(dataSource.getShard(0), new AccountLocks()),
+                new LockingWriteExecutor(dataSource.getShard(1), new AccountLocks()));
+        TransferService shardedService = new ShardedTransferService(dataSource, new AccountService(dataSource),
+                new ShardedWriteExecutor(dataSource, executors));
+        UUID first = idOnShard(dataSource, 0);
+        UUID second = idOnShard(dataSource, 1);
+        when(request.body()).thenReturn("{\"mode\": \"PER_ITEM\", \"transfers\": [{\"from\": \"" + first
+                + "\", \"amount\": 10}, {\"from\": \"" + second + "\", \"amount\": 10}]}");
+
+        // WHEN
+        Object result = new TransferController(shardedService).transferBatch(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
+    @Test
+    void shouldBatchTransferReturnBadRequestWhenModeInvalid() {
+        // GIVEN
+        when(request.body()).thenReturn("{\"mode\": \"SOMETIMES\", \"transfers\": []}");
+
+        // WHEN
+        Object result = transferController.transferBatch(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
+    @Test
+    void shouldStreamHistoryFromService() throws Exception {
+        // GIVEN
+        StreamedBody body = StreamedBody.capture(response);
+        Transfer first = new Transfer(TEST_UUID, UUID.randomUUID(), Money.of(1));
+        Transfer second = new Transfer(UUID.randomUUID(), TEST_UUID, Money.of(10));
+        doAnswer(invocation -> {
+            Consumer<Transfer> consumer = invocation.getArgument(1);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(transferService).forEachTransfer(eq(TEST_UUID), any());
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+
+        // WHEN
+        transferController.getHistory(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        assertThat(body.toString()).isEqualTo(new Gson().toJson(Arrays.asList(first, second)));
+    }
+
+    @Test
+    void shouldGetHistoryPageFromService() throws Exception {
+        // GIVEN
+        UUID after = UUID.randomUUID();
+        Page<Transfer> expected = new Page<>(Arrays.asList(mock(Transfer.class)), null);
+        when(transferService.getHistory(TEST_UUID, after, 5)).thenReturn(expected);
         when(request.params("id")).thenReturn(TEST_UUID.toString());
+        lenient().when(request.queryParams("limit")).thenReturn("5");
+        lenient().when(request.queryParams("after")).thenReturn(Page.encode(after));
 
         // WHEN
         Object result = transferController.getHistory(request, response);
@@ -222,6 +393,22 @@ class TransferControllerTest {
         assertThat(result).isSameAs(expected);
     }
 
+    @Test
+    void shouldReturnBadRequestOnInvalidPageToken() {
+        // GIVEN
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        lenient().when(request.queryParams("limit")).thenReturn("5");
+        lenient().when(request.queryParams("after")).thenReturn("@@@");
+
+        // WHEN
+        Object result = transferController.getHistory(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
     @Test
     void shouldReturnBadRequestOnInvalidId() {
         // GIVEN
@@ -237,10 +424,11 @@ class TransferControllerTest {
     }
 
     @Test
-    void shouldReturnNotFoundWhenServiceThrowsAccountNotFoundException() throws AccountNotFoundException {
+    void shouldReturnNotFoundWhenServiceThrowsAccountNotFoundException() throws Exception {
         // GIVEN
         when(request.params("id")).thenReturn(TEST_UUID.toString());
-        when(transferService.getHistory(TEST_UUID)).thenThrow(new AccountNotFoundException(TEST_UUID));
+        StreamedBody body = StreamedBody.capture(response);
+        doThrow(new AccountNotFoundException(TEST_UUID)).when(transferService).forEachTransfer(eq(TEST_UUID), any());
 
         // WHEN
         Object result = transferController.getHistory(request, response);
@@ -249,6 +437,7 @@ class TransferControllerTest {
         verify(response).type("text/plain");
         verify(response).status(404);
         assertThat(result).isEqualTo("Account not found!");
+        assertThat(body.toString()).isEmpty();
     }
 
     @Test
@@ -272,7 +461,21 @@ class TransferControllerTest {
         UUID to = UUID.randomUUID();
         when(request.params("id")).thenReturn(to.toString());
         when(request.body()).thenReturn("{\"amount\": -10}");
-        doThrow(NumberFormatException.class).when(transferService).deposit(to, BigDecimal.TEN.negate());
+        doThrow(NumberFormatException.class).when(transferService).deposit(to, Money.of(-10));
+
+        // WHEN
+        Object result = transferController.deposit(request, response);
+
+        // THEN
+        verify(response).type("text/plain");
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
+    @Test
+    void shouldDepositReturnBadRequestOnCentFractions() {
+        // GIVEN
+        when(request.body()).thenReturn("{\"amount\": 0.123}");
 
         // WHEN
         Object result = transferController.deposit(request, response);
@@ -281,6 +484,21 @@ class TransferControllerTest {
         verify(response).type("text/plain");
         verify(response).status(400);
         assertThat(result).isEqualTo("Bad Request");
+        verifyNoInteractions(transferService);
+    }
+
+    @Test
+    void shouldTransferReturnBadRequestOnCentFractions() {
+        // GIVEN
+        when(request.body()).thenReturn("{\"to\": \"" + TEST_UUID + "\", \"amount\": 0.001}");
+
+        // WHEN
+        Object result = transferController.transfer(request, response);
+
+        // THEN
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+        verifyNoInteractions(transferService);
     }
 
     @Test
@@ -315,7 +533,7 @@ class TransferControllerTest {
         UUID to = UUID.randomUUID();
         when(request.params("id")).thenReturn(to.toString());
         when(request.body()).thenReturn("{\"amount\": -10}");
-        doThrow(AccountNotFoundException.class).when(transferService).deposit(to, BigDecimal.TEN.negate());
+        doThrow(AccountNotFoundException.class).when(transferService).deposit(to, Money.of(-10));
 
         // WHEN
         Object result = transferController.deposit(request, response);
@@ -347,7 +565,7 @@ class TransferControllerTest {
         UUID to = UUID.randomUUID();
         when(request.params("id")).thenReturn(to.toString());
         when(request.body()).thenReturn("{\"amount\": -10}");
-        doThrow(NumberFormatException.class).when(transferService).withdraw(to, BigDecimal.TEN.negate());
+        doThrow(NumberFormatException.class).when(transferService).withdraw(to, Money.of(-10));
 
         // WHEN
         Object result = transferController.withdraw(request, response);
@@ -393,7 +611,7 @@ class TransferControllerTest {
         UUID to = UUID.randomUUID();
         when(request.params("id")).thenReturn(to.toString());
         when(request.body()).thenReturn("{\"amount\": -10}");
-        doThrow(AccountNotFoundException.class).when(transferService).withdraw(to, BigDecimal.TEN.negate());
+        doThrow(AccountNotFoundException.class).when(transferService).withdraw(to, Money.of(-10));
 
         // WHEN
         Object result = transferController.withdraw(request, response);
@@ -410,7 +628,7 @@ class TransferControllerTest {
         UUID to = UUID.randomUUID();
         when(request.params("id")).thenReturn(to.toString());
         when(request.body()).thenReturn("{\"amount\": 10}");
-        doThrow(InsufficientFundsException.class).when(transferService).withdraw(to, BigDecimal.TEN);
+        doThrow(InsufficientFundsException.class).when(transferService).withdraw(to, Money.of(10));
 
         // WHEN
         transferController.withdraw(request, response);
@@ -419,4 +637,189 @@ class TransferControllerTest {
         verify(response).type("text/plain");
         verify(response).status(409);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldReplayTransferWithSameIdempotencyKey() throws Exception {
+        // GIVEN
+        TransferController idempotentController = new TransferController(transferService, new IdempotencyStore(16, 60));
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        Transfer expected = new Transfer(from, to, Money.of(10));
+        when(transferService.transfer(from, to, Money.of(10))).thenReturn(expected);
+        when(request.headers("Idempotency-Key")).thenReturn("retry-me");
+        when(request.requestMethod()).thenReturn("POST");
+        when(request.pathInfo()).thenReturn("/accounts/" + from + "/transfer");
+        when(request.params("id")).thenReturn(from.toString());
+        when(request.body()).thenReturn("{\"to\": \"" + to + "\", \"amount\": 10}");
+
+        // WHEN
+        Object first = idempotentController.transfer(request, response);
+        Object second = idempotentController.transfer(request, response);
+
+        // THEN
+        verify(transferService, times(1)).transfer(from, to, Money.of(10));
+        verify(response).header("Idempotent-Replayed", "true");
+        verify(response).status(200);
+        assertThat(first).isSameAs(expected);
+        assertThat(second).isSameAs(expected);
+    }
+
+    @Test
+    void shouldRejectIdempotencyKeyReusedForDifferentDeposit() throws Exception {
+        // GIVEN
+        TransferController idempotentController = new TransferController(transferService, new IdempotencyStore(16, 60));
+        when(request.headers("Idempotency-Key")).thenReturn("reused");
+        when(request.requestMethod()).thenReturn("POST");
+        when(request.pathInfo()).thenReturn("/accounts/" + TEST_UUID + "/deposit");
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        when(request.body()).thenReturn("{\"amount\": 10}", "{\"amount\": 20}");
+        idempotentController.deposit(request, response);
+
+        // WHEN
+        Object result = idempotentController.deposit(request, response);
+
+        // THEN
+        verify(transferService, times(1)).deposit(any(), any());
+        verify(response).status(422);
+        assertThat(result).isEqualTo("Idempotency key was used for a different request");
+    }
+
+    @Test
+    void shouldRejectRetryOfIdempotentWithdrawalWithUnknownOutcome() throws Exception {
+        // GIVEN
+        TransferController idempotentController = new TransferController(transferService, new IdempotencyStore(16, 60));
+        doThrow(new TransferException("FAIL", new Exception("blablah"))).when(transferService).withdraw(TEST_UUID, Money.of(10));
+        when(request.headers("Idempotency-Key")).thenReturn("failing");
+        when(request.requestMethod()).thenReturn("POST");
+        when(request.pathInfo()).thenReturn("/accounts/" + TEST_UUID + "/withdraw");
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        when(request.body()).thenReturn("{\"amount\": 10}");
+        // the error handler sets the status the controller reads back
+        lenient().when(response.status()).thenReturn(500);
+        idempotentController.withdraw(request, response);
+
+        // WHEN
+        Object result = idempotentController.withdraw(request, response);
+
+        // THEN
+        verify(transferService, times(1)).withdraw(TEST_UUID, Money.of(10));
+        verify(response).status(409);
+        assertThat(result).isEqualTo("Outcome of request with this idempotency key is unknown");
+    }
+
+    @Test
+    void shouldReplayRejectedSelfTransferWithSameIdempotencyKey() throws Exception {
+        // GIVEN
+        TransferController idempotentController = new TransferController(transferService, new IdempotencyStore(16, 60));
+        when(transferService.transfer(TEST_UUID, TEST_UUID, Money.of(10)))
+                .thenThrow(new InvalidTransferException("Cannot transfer money to yourself!"));
+        when(request.headers("Idempotency-Key")).thenReturn("self");
+        when(request.requestMethod()).thenReturn("POST");
+        when(request.pathInfo()).thenReturn("/accounts/" + TEST_UUID + "/transfer");
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        when(request.body()).thenReturn("{\"to\": \"" + TEST_UUID + "\", \"amount\": 10}");
+        // the error handler sets the status the controller reads back
+        lenient().when(response.status()).thenReturn(400);
+        lenient().when(response.type()).thenReturn("text/plain");
+
+        // WHEN
+        Object first = idempotentController.transfer(request, response);
+        Object second = idempotentController.transfer(request, response);
+
+        // THEN
+        verify(transferService, times(1)).transfer(TEST_UUID, TEST_UUID, Money.of(10));
+        verify(response, times(2)).status(400);
+        verify(response).header("Idempotent-Replayed", "true");
+        assertThat(first).isEqualTo("Cannot transfer money to yourself!");
+        assertThat(second).isEqualTo("Cannot transfer money to yourself!");
+    }
+
+    @Test
+    void shouldReturnMessageOfServerErrorWithoutCause() throws Exception {
+        // GIVEN
+        doThrow(new TransferException("FAIL")).when(transferService).withdraw(TEST_UUID, Money.of(10));
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        when(request.body()).thenReturn("{\"amount\": 10}");
+
+        // WHEN
+        Object result = transferController.withdraw(request, response);
+
+        // THEN
+        verify(response).status(500);
+        assertThat(result).isEqualTo("FAIL");
+    }
+
+    @Test
+    void shouldGetStatementFromService() throws Exception {
+        // GIVEN
+        Statement expected = new Statement(Money.ZERO, new Page<>(Collections.emptyList(), null), Money.ZERO);
+        when(transferService.getStatement(TEST_UUID, null, 100)).thenReturn(expected);
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+
+        // WHEN
+        Object result = transferController.getStatement(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldReturnNotFoundForTransferOfAnotherAccount() throws Exception {
+        // GIVEN
+        UUID transferId = UUID.randomUUID();
+        when(transferService.getTransfer(TEST_UUID, transferId)).thenThrow(new TransferNotFoundException(transferId));
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        when(request.params("transferId")).thenReturn(transferId.toString());
+
+        // WHEN
+        Object result = transferController.getTransfer(request, response);
+
+        // THEN
+        verify(response).status(404);
+        assertThat(result).isEqualTo("Transfer not found!");
+    }
+
+    @Test
+    void shouldGetBucketsOfRequestedResolution() throws Exception {
+        // GIVEN
+        Instant from = Instant.parse("2020-01-01T00:00:00Z");
+        Instant to = Instant.parse("2020-02-01T00:00:00Z");
+        List<Bucket> expected = Collections.singletonList(new Bucket(from, 1, Money.of(1), Money.ZERO));
+        when(transferService.getBuckets(TEST_UUID, Bucket.Resolution.HOUR, from, to)).thenReturn(expected);
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        when(request.queryParams("resolution")).thenReturn("hour");
+        when(request.queryParams("from")).thenReturn(from.toString());
+        when(request.queryParams("to")).thenReturn(to.toString());
+
+        // WHEN
+        Object result = transferController.getBuckets(request, response);
+
+        // THEN
+        verify(response).type("application/json");
+        assertThat(result).isSameAs(expected);
+    }
+
+    @Test
+    void shouldReturnBadRequestOnInvalidTime() {
+        // GIVEN
+        when(request.params("id")).thenReturn(TEST_UUID.toString());
+        lenient().when(request.queryParams("resolution")).thenReturn(null);
+        when(request.queryParams("from")).thenReturn("yesterday");
+
+        // WHEN
+        Object result = transferController.getBuckets(request, response);
+
+        // THEN
+        verify(response).status(400);
+        assertThat(result).isEqualTo("Bad Request");
+    }
+
+    private static UUID idOnShard(ShardedDataSource dataSource, int shard) {
+        UUID id;
+        do {
+            id = UUID.randomUUID();
+        } while (dataSource.shardOf(id) != shard);
+        return id;
+    }
+}